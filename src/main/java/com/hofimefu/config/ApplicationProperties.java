@@ -1,5 +1,6 @@
 package com.hofimefu.config;
 
+import java.time.Duration;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -10,7 +11,612 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
  */
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
+
+    private final Chat chat = new Chat();
+
+    private final RateLimit rateLimit = new RateLimit();
+
+    private final FriendGraph friendGraph = new FriendGraph();
+
+    private final Events events = new Events();
+
+    private final FriendRequests friendRequests = new FriendRequests();
+
     // jhipster-needle-application-properties-property
+
+    public Chat getChat() {
+        return chat;
+    }
+
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    public FriendGraph getFriendGraph() {
+        return friendGraph;
+    }
+
+    public Events getEvents() {
+        return events;
+    }
+
+    public FriendRequests getFriendRequests() {
+        return friendRequests;
+    }
+
     // jhipster-needle-application-properties-property-getter
+
+    public static class Chat {
+
+        private final Broadcast broadcast = new Broadcast();
+
+        private final Cache cache = new Cache();
+
+        private final WriteBehind writeBehind = new WriteBehind();
+
+        private final Archive archive = new Archive();
+
+        public Broadcast getBroadcast() {
+            return broadcast;
+        }
+
+        public Cache getCache() {
+            return cache;
+        }
+
+        public WriteBehind getWriteBehind() {
+            return writeBehind;
+        }
+
+        public Archive getArchive() {
+            return archive;
+        }
+
+        public static class Broadcast {
+
+            private int queueCapacity = 256;
+
+            private Duration emitterTimeout = Duration.ofMinutes(30);
+
+            private int threads = 4;
+
+            private int executorQueueCapacity = 10000;
+
+            private Duration sendTimeout = Duration.ofSeconds(10);
+
+            public int getQueueCapacity() {
+                return queueCapacity;
+            }
+
+            public void setQueueCapacity(int queueCapacity) {
+                this.queueCapacity = queueCapacity;
+            }
+
+            public Duration getEmitterTimeout() {
+                return emitterTimeout;
+            }
+
+            public void setEmitterTimeout(Duration emitterTimeout) {
+                this.emitterTimeout = emitterTimeout;
+            }
+
+            public int getThreads() {
+                return threads;
+            }
+
+            public void setThreads(int threads) {
+                this.threads = threads;
+            }
+
+            public int getExecutorQueueCapacity() {
+                return executorQueueCapacity;
+            }
+
+            public void setExecutorQueueCapacity(int executorQueueCapacity) {
+                this.executorQueueCapacity = executorQueueCapacity;
+            }
+
+            public Duration getSendTimeout() {
+                return sendTimeout;
+            }
+
+            public void setSendTimeout(Duration sendTimeout) {
+                this.sendTimeout = sendTimeout;
+            }
+        }
+
+        public static class Cache {
+
+            private boolean enabled = true;
+
+            private int capacity = 500;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public int getCapacity() {
+                return capacity;
+            }
+
+            public void setCapacity(int capacity) {
+                this.capacity = capacity;
+            }
+        }
+
+        public static class WriteBehind {
+
+            private boolean enabled = false;
+
+            private int batchSize = 25;
+
+            private Duration maxLinger = Duration.ofMillis(10);
+
+            private int queueCapacity = 10000;
+
+            private Duration maxWait = Duration.ofSeconds(10);
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public int getBatchSize() {
+                return batchSize;
+            }
+
+            public void setBatchSize(int batchSize) {
+                this.batchSize = batchSize;
+            }
+
+            public Duration getMaxLinger() {
+                return maxLinger;
+            }
+
+            public void setMaxLinger(Duration maxLinger) {
+                this.maxLinger = maxLinger;
+            }
+
+            public int getQueueCapacity() {
+                return queueCapacity;
+            }
+
+            public void setQueueCapacity(int queueCapacity) {
+                this.queueCapacity = queueCapacity;
+            }
+
+            public Duration getMaxWait() {
+                return maxWait;
+            }
+
+            public void setMaxWait(Duration maxWait) {
+                this.maxWait = maxWait;
+            }
+        }
+
+        public static class Archive {
+
+            private boolean enabled = true;
+
+            private String cron = "0 30 3 * * ?";
+
+            private int retentionMonths = 12;
+
+            private int monthsAhead = 2;
+
+            private String directory = "archive/global-chat";
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public String getCron() {
+                return cron;
+            }
+
+            public void setCron(String cron) {
+                this.cron = cron;
+            }
+
+            public int getRetentionMonths() {
+                return retentionMonths;
+            }
+
+            public void setRetentionMonths(int retentionMonths) {
+                this.retentionMonths = retentionMonths;
+            }
+
+            public int getMonthsAhead() {
+                return monthsAhead;
+            }
+
+            public void setMonthsAhead(int monthsAhead) {
+                this.monthsAhead = monthsAhead;
+            }
+
+            public String getDirectory() {
+                return directory;
+            }
+
+            public void setDirectory(String directory) {
+                this.directory = directory;
+            }
+        }
+    }
+
+    public static class RateLimit {
+
+        private boolean enabled = true;
+
+        private Duration idleTimeout = Duration.ofMinutes(10);
+
+        private final Limit globalChats = new Limit(10, Duration.ofSeconds(1));
+
+        private final Limit write = new Limit(30, Duration.ofMillis(200));
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getIdleTimeout() {
+            return idleTimeout;
+        }
+
+        public void setIdleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+        }
+
+        public Limit getGlobalChats() {
+            return globalChats;
+        }
+
+        public Limit getWrite() {
+            return write;
+        }
+
+        public static class Limit {
+
+            private int capacity;
+
+            private Duration refillPeriod;
+
+            public Limit(int capacity, Duration refillPeriod) {
+                this.capacity = capacity;
+                this.refillPeriod = refillPeriod;
+            }
+
+            public int getCapacity() {
+                return capacity;
+            }
+
+            public void setCapacity(int capacity) {
+                this.capacity = capacity;
+            }
+
+            public Duration getRefillPeriod() {
+                return refillPeriod;
+            }
+
+            public void setRefillPeriod(Duration refillPeriod) {
+                this.refillPeriod = refillPeriod;
+            }
+        }
+    }
+
+    public static class FriendGraph {
+
+        private final Rebuild rebuild = new Rebuild();
+
+        private final Analytics analytics = new Analytics();
+
+        private final Suggestions suggestions = new Suggestions();
+
+        private final Path path = new Path();
+
+        public Rebuild getRebuild() {
+            return rebuild;
+        }
+
+        public Analytics getAnalytics() {
+            return analytics;
+        }
+
+        public Suggestions getSuggestions() {
+            return suggestions;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public static class Rebuild {
+
+            private boolean enabled = true;
+
+            private String cron = "0 45 3 * * ?";
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public String getCron() {
+                return cron;
+            }
+
+            public void setCron(String cron) {
+                this.cron = cron;
+            }
+        }
+
+        public static class Analytics {
+
+            private boolean enabled = true;
+
+            private String cron = "0 0 4 * * ?";
+
+            private int parallelism = 0;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public String getCron() {
+                return cron;
+            }
+
+            public void setCron(String cron) {
+                this.cron = cron;
+            }
+
+            public int getParallelism() {
+                return parallelism;
+            }
+
+            public void setParallelism(int parallelism) {
+                this.parallelism = parallelism;
+            }
+        }
+
+        public static class Suggestions {
+
+            private boolean enabled = true;
+
+            private String cron = "0 30 4 * * ?";
+
+            private Duration incrementalDelay = Duration.ofMinutes(1);
+
+            private int size = 20;
+
+            private int mutualFriendWeight = 2;
+
+            private int sharedSchoolWeight = 1;
+
+            private int maxSchoolMembers = 1000;
+
+            private int parallelism = 0;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public String getCron() {
+                return cron;
+            }
+
+            public void setCron(String cron) {
+                this.cron = cron;
+            }
+
+            public Duration getIncrementalDelay() {
+                return incrementalDelay;
+            }
+
+            public void setIncrementalDelay(Duration incrementalDelay) {
+                this.incrementalDelay = incrementalDelay;
+            }
+
+            public int getSize() {
+                return size;
+            }
+
+            public void setSize(int size) {
+                this.size = size;
+            }
+
+            public int getMutualFriendWeight() {
+                return mutualFriendWeight;
+            }
+
+            public void setMutualFriendWeight(int mutualFriendWeight) {
+                this.mutualFriendWeight = mutualFriendWeight;
+            }
+
+            public int getSharedSchoolWeight() {
+                return sharedSchoolWeight;
+            }
+
+            public void setSharedSchoolWeight(int sharedSchoolWeight) {
+                this.sharedSchoolWeight = sharedSchoolWeight;
+            }
+
+            public int getMaxSchoolMembers() {
+                return maxSchoolMembers;
+            }
+
+            public void setMaxSchoolMembers(int maxSchoolMembers) {
+                this.maxSchoolMembers = maxSchoolMembers;
+            }
+
+            public int getParallelism() {
+                return parallelism;
+            }
+
+            public void setParallelism(int parallelism) {
+                this.parallelism = parallelism;
+            }
+        }
+
+        public static class Path {
+
+            private int maxDepth = 6;
+
+            private int workBudget = 100000;
+
+            public int getMaxDepth() {
+                return maxDepth;
+            }
+
+            public void setMaxDepth(int maxDepth) {
+                this.maxDepth = maxDepth;
+            }
+
+            public int getWorkBudget() {
+                return workBudget;
+            }
+
+            public void setWorkBudget(int workBudget) {
+                this.workBudget = workBudget;
+            }
+        }
+    }
+
+    public static class Events {
+
+        private final Nearby nearby = new Nearby();
+
+        private final Attendees attendees = new Attendees();
+
+        public Nearby getNearby() {
+            return nearby;
+        }
+
+        public Attendees getAttendees() {
+            return attendees;
+        }
+
+        public static class Nearby {
+
+            private boolean inMemoryIndex = true;
+
+            private double cellSizeDegrees = 0.25;
+
+            private double maxRadiusKm = 200;
+
+            private int maxLimit = 100;
+
+            public boolean isInMemoryIndex() {
+                return inMemoryIndex;
+            }
+
+            public void setInMemoryIndex(boolean inMemoryIndex) {
+                this.inMemoryIndex = inMemoryIndex;
+            }
+
+            public double getCellSizeDegrees() {
+                return cellSizeDegrees;
+            }
+
+            public void setCellSizeDegrees(double cellSizeDegrees) {
+                this.cellSizeDegrees = cellSizeDegrees;
+            }
+
+            public double getMaxRadiusKm() {
+                return maxRadiusKm;
+            }
+
+            public void setMaxRadiusKm(double maxRadiusKm) {
+                this.maxRadiusKm = maxRadiusKm;
+            }
+
+            public int getMaxLimit() {
+                return maxLimit;
+            }
+
+            public void setMaxLimit(int maxLimit) {
+                this.maxLimit = maxLimit;
+            }
+        }
+
+        public static class Attendees {
+
+            private boolean enabled = true;
+
+            private String cron = "0 0 5 * * ?";
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public String getCron() {
+                return cron;
+            }
+
+            public void setCron(String cron) {
+                this.cron = cron;
+            }
+        }
+    }
+    public static class FriendRequests {
+
+        private final Counters counters = new Counters();
+
+        public Counters getCounters() {
+            return counters;
+        }
+
+        public static class Counters {
+
+            private boolean enabled = true;
+
+            private String cron = "0 15 5 * * ?";
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public String getCron() {
+                return cron;
+            }
+
+            public void setCron(String cron) {
+                this.cron = cron;
+            }
+        }
+    }
     // jhipster-needle-application-properties-property-class
 }
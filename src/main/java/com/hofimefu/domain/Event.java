@@ -1,6 +1,7 @@
 package com.hofimefu.domain;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import java.io.Serializable;
 import java.time.ZonedDateTime;
 import java.util.HashSet;
@@ -43,6 +44,18 @@ public class Event implements Serializable {
     @Column(name = "planned")
     private ZonedDateTime planned;
 
+    @Min(value = 0)
+    @Column(name = "capacity")
+    private Integer capacity;
+
+    /**
+     * The number of users of the {@link EvetUser}s of this event, maintained by atomic updates as they join and leave,
+     * so it is never written from the entity.
+     */
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Column(name = "attendee_count", nullable = false, insertable = false, updatable = false)
+    private Integer attendeeCount = 0;
+
     @ManyToOne
     private User createdBy;
 
@@ -143,6 +156,32 @@ public class Event implements Serializable {
         this.planned = planned;
     }
 
+    public Integer getCapacity() {
+        return this.capacity;
+    }
+
+    public Event capacity(Integer capacity) {
+        this.setCapacity(capacity);
+        return this;
+    }
+
+    public void setCapacity(Integer capacity) {
+        this.capacity = capacity;
+    }
+
+    public Integer getAttendeeCount() {
+        return this.attendeeCount;
+    }
+
+    public Event attendeeCount(Integer attendeeCount) {
+        this.setAttendeeCount(attendeeCount);
+        return this;
+    }
+
+    public void setAttendeeCount(Integer attendeeCount) {
+        this.attendeeCount = attendeeCount;
+    }
+
     public User getCreatedBy() {
         return this.createdBy;
     }
@@ -217,6 +256,8 @@ public class Event implements Serializable {
             ", description='" + getDescription() + "'" +
             ", created='" + getCreated() + "'" +
             ", planned='" + getPlanned() + "'" +
+            ", capacity=" + getCapacity() +
+            ", attendeeCount=" + getAttendeeCount() +
             "}";
     }
 }
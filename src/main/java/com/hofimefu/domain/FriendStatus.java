@@ -30,6 +30,12 @@ public class FriendStatus implements Serializable {
     @Column(name = "status")
     private FriendshipStatus status;
 
+    /**
+     * The user a {@link FriendshipStatus#PENDING} request was sent to, who can accept it.
+     */
+    @ManyToOne
+    private User recipient;
+
     // jhipster-needle-entity-add-field - JHipster will add fields here
 
     public Long getId() {
@@ -84,6 +90,19 @@ public class FriendStatus implements Serializable {
         this.status = status;
     }
 
+    public User getRecipient() {
+        return this.recipient;
+    }
+
+    public void setRecipient(User user) {
+        this.recipient = user;
+    }
+
+    public FriendStatus recipient(User user) {
+        this.setRecipient(user);
+        return this;
+    }
+
     // jhipster-needle-entity-add-getters-setters - JHipster will add getters and setters here
 
     @Override
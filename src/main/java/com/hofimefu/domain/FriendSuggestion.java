@@ -0,0 +1,113 @@
+package com.hofimefu.domain;
+
+import java.io.Serializable;
+
+/**
+ * A precomputed friend suggestion: a row of the {@code friend_suggestion} table.
+ * <p>
+ * This is not an entity, the rows are written and read in bulk with plain JDBC.
+ */
+public class FriendSuggestion implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long userId;
+
+    private int rank;
+
+    private Long suggestedUserId;
+
+    private String suggestedLogin;
+
+    private int mutualFriends;
+
+    private int sharedSchools;
+
+    private int score;
+
+    public FriendSuggestion() {}
+
+    public FriendSuggestion(Long userId, int rank, Long suggestedUserId, int mutualFriends, int sharedSchools, int score) {
+        this.userId = userId;
+        this.rank = rank;
+        this.suggestedUserId = suggestedUserId;
+        this.mutualFriends = mutualFriends;
+        this.sharedSchools = sharedSchools;
+        this.score = score;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    /**
+     * @return the position of the suggestion among those of the user, from 0 for the best one.
+     */
+    public int getRank() {
+        return rank;
+    }
+
+    public void setRank(int rank) {
+        this.rank = rank;
+    }
+
+    public Long getSuggestedUserId() {
+        return suggestedUserId;
+    }
+
+    public void setSuggestedUserId(Long suggestedUserId) {
+        this.suggestedUserId = suggestedUserId;
+    }
+
+    /**
+     * @return the login of the suggested user, only set when read back.
+     */
+    public String getSuggestedLogin() {
+        return suggestedLogin;
+    }
+
+    public void setSuggestedLogin(String suggestedLogin) {
+        this.suggestedLogin = suggestedLogin;
+    }
+
+    public int getMutualFriends() {
+        return mutualFriends;
+    }
+
+    public void setMutualFriends(int mutualFriends) {
+        this.mutualFriends = mutualFriends;
+    }
+
+    public int getSharedSchools() {
+        return sharedSchools;
+    }
+
+    public void setSharedSchools(int sharedSchools) {
+        this.sharedSchools = sharedSchools;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public void setScore(int score) {
+        this.score = score;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "FriendSuggestion{" +
+            "userId=" + getUserId() +
+            ", rank=" + getRank() +
+            ", suggestedUserId=" + getSuggestedUserId() +
+            ", mutualFriends=" + getMutualFriends() +
+            ", sharedSchools=" + getSharedSchools() +
+            ", score=" + getScore() +
+            "}";
+    }
+}
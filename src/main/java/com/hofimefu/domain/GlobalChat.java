@@ -2,6 +2,9 @@ package com.hofimefu.domain;
 
 import java.io.Serializable;
 import java.time.ZonedDateTime;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.persistence.*;
 
 /**
@@ -22,9 +25,15 @@ public class GlobalChat implements Serializable {
     @Column(name = "message")
     private String message;
 
-    @Column(name = "created")
+    @Column(name = "created", nullable = false)
     private ZonedDateTime created;
 
+    @Column(name = "author_login", length = 50)
+    private String authorLogin;
+
+    @Column(name = "author_name", length = 101)
+    private String authorName;
+
     @ManyToOne
     private User user;
 
@@ -69,6 +78,32 @@ public class GlobalChat implements Serializable {
         this.created = created;
     }
 
+    public String getAuthorLogin() {
+        return this.authorLogin;
+    }
+
+    public GlobalChat authorLogin(String authorLogin) {
+        this.setAuthorLogin(authorLogin);
+        return this;
+    }
+
+    public void setAuthorLogin(String authorLogin) {
+        this.authorLogin = authorLogin;
+    }
+
+    public String getAuthorName() {
+        return this.authorName;
+    }
+
+    public GlobalChat authorName(String authorName) {
+        this.setAuthorName(authorName);
+        return this;
+    }
+
+    public void setAuthorName(String authorName) {
+        this.authorName = authorName;
+    }
+
     public User getUser() {
         return this.user;
     }
@@ -82,6 +117,36 @@ public class GlobalChat implements Serializable {
         return this;
     }
 
+    /**
+     * Set the user and store the snapshot of their login and display name shown with the message.
+     *
+     * @param user the author, or {@code null}.
+     * @return this message.
+     */
+    public GlobalChat author(User user) {
+        this.setUser(user);
+        this.setAuthorLogin(user == null ? null : user.getLogin());
+        this.setAuthorName(displayName(user));
+        return this;
+    }
+
+    /**
+     * @param user a user, or {@code null}.
+     * @return the first and last names of the user, or their login if they have none.
+     */
+    public static String displayName(User user) {
+        if (user == null) {
+            return null;
+        }
+        String name = Stream
+            .of(user.getFirstName(), user.getLastName())
+            .filter(Objects::nonNull)
+            .map(String::trim)
+            .filter(part -> !part.isEmpty())
+            .collect(Collectors.joining(" "));
+        return name.isEmpty() ? user.getLogin() : name;
+    }
+
     // jhipster-needle-entity-add-getters-setters - JHipster will add getters and setters here
 
     @Override
@@ -108,6 +173,8 @@ public class GlobalChat implements Serializable {
             "id=" + getId() +
             ", message='" + getMessage() + "'" +
             ", created='" + getCreated() + "'" +
+            ", authorLogin='" + getAuthorLogin() + "'" +
+            ", authorName='" + getAuthorName() + "'" +
             "}";
     }
 }
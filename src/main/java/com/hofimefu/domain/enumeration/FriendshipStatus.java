@@ -6,4 +6,5 @@ package com.hofimefu.domain.enumeration;
 public enum FriendshipStatus {
     ACTIVE,
     BLOCKED,
+    PENDING,
 }
@@ -0,0 +1,33 @@
+package com.hofimefu.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository of the locks shared by every instance of the application, as PostgreSQL advisory locks.
+ * <p>
+ * A lock is held by a transaction and released when it ends, so a scheduled job running on every instance takes it
+ * in each transaction it must not run concurrently with another instance.
+ */
+@Repository
+public class ClusterLockRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ClusterLockRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Take a lock for the rest of the current transaction, without waiting. Taking it again in the same transaction
+     * succeeds.
+     * <p>
+     * Must run in a transaction.
+     *
+     * @param name the name of the lock.
+     * @return whether the lock was taken, {@code false} if another transaction holds it.
+     */
+    public boolean tryLock(String name) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("select pg_try_advisory_xact_lock(hashtext(?))", Boolean.class, name));
+    }
+}
@@ -1,8 +1,13 @@
 package com.hofimefu.repository;
 
 import com.hofimefu.domain.Event;
+import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -11,6 +16,225 @@ import org.springframework.stereotype.Repository;
 @SuppressWarnings("unused")
 @Repository
 public interface EventRepository extends JpaRepository<Event, Long> {
+    /**
+     * The great-circle distance in kilometers between an event and {@code (:latitude, :longitude)}, by the haversine
+     * formula on a sphere of the mean radius of the Earth.
+     */
+    String DISTANCE_KM =
+        "2 * 6371.0088 * asin(least(1, sqrt(power(sin(radians(e.latitude - :latitude) / 2), 2) + " +
+        "cos(radians(:latitude)) * cos(radians(e.latitude)) * power(sin(radians(e.longitude - :longitude) / 2), 2))))";
+
+    /**
+     * The bounding box of the circle, served by the index on {@code (latitude, longitude)}. A longitude range crossing
+     * the antimeridian is given as two ranges, otherwise the second one is empty.
+     */
+    String WITHIN_BOUNDING_BOX =
+        "e.latitude between :minLatitude and :maxLatitude and " +
+        "(e.longitude between :minLongitude and :maxLongitude or e.longitude between :otherMinLongitude and :otherMaxLongitude)";
+
+    /**
+     * The events whose creator and the user {@code :userId} have not blocked each other, checked on the unique index of
+     * the pairs of users.
+     */
+    String CREATOR_NOT_BLOCKED =
+        "not exists (select 1 from friend f join friend_status s on s.id = f.status_id where s.status = 'BLOCKED' and " +
+        "f.user1_id = least(:userId, e.created_by_id) and f.user2_id = greatest(:userId, e.created_by_id))";
+
+    /**
+     * The ids of the events within a radius of a location that the user may see, nearest first, ties going to the
+     * lower id.
+     * <p>
+     * The bounding box is checked first, so that the distance is only computed for the events it holds.
+     */
+    String NEARBY =
+        "select e.id from event e where " +
+        WITHIN_BOUNDING_BOX +
+        " and " +
+        DISTANCE_KM +
+        " <= :radiusKm and " +
+        CREATOR_NOT_BLOCKED +
+        " order by " +
+        DISTANCE_KM +
+        ", e.id";
+
+    /**
+     * Select clause of the {@link EventSummary} projections: the events of a list, with the count of their attendees but
+     * neither them nor the creator.
+     */
+    String EVENT_SUMMARY =
+        "select event.id as id, event.header as header, event.latitude as latitude, event.longitude as longitude, " +
+        "event.planned as planned, event.capacity as capacity, event.attendeeCount as attendeeCount from Event event ";
+
+    /**
+     * Keyset page of the upcoming events: those strictly after the {@code (planned, id)} cursor, in that order.
+     * <p>
+     * The redundant {@code planned >= :planned} predicate gives the planner an index range start, so the page
+     * costs the same wherever the cursor is.
+     */
+    String UPCOMING_AFTER =
+        EVENT_SUMMARY +
+        "where event.planned >= :planned and (event.planned > :planned or event.id > :id) " +
+        "order by event.planned, event.id";
+
     @Query("select event from Event event where event.createdBy.login = ?#{principal.username}")
     List<Event> findByCreatedByIsCurrentUser();
+
+    /**
+     * @return the id, latitude, longitude and creator id of every event having both coordinates.
+     */
+    @Query(
+        "select event.id, event.latitude, event.longitude, createdBy.id from Event event left join event.createdBy createdBy " +
+        "where event.latitude is not null and event.longitude is not null"
+    )
+    List<Object[]> findLocations();
+
+    /**
+     * @param ids the ids of the events.
+     * @return the events, in no particular order.
+     */
+    @Query(EVENT_SUMMARY + "where event.id in :ids")
+    List<EventSummary> findSummariesByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * First page of the upcoming events: those planned from the given instant on, in {@code (planned, id)} order.
+     */
+    @Query(EVENT_SUMMARY + "where event.planned >= :from order by event.planned, event.id")
+    List<EventSummary> findUpcoming(@Param("from") ZonedDateTime from, Pageable pageable);
+
+    /**
+     * Keyset page of the upcoming events, see {@link #UPCOMING_AFTER}.
+     */
+    @Query(UPCOMING_AFTER)
+    List<EventSummary> findUpcomingAfter(@Param("planned") ZonedDateTime planned, @Param("id") Long id, Pageable pageable);
+
+    /**
+     * The ids of the events within a radius of a location, see {@link #NEARBY}. The given pageable must be unsorted,
+     * the order being the distance. The user id is {@code 0} for an anonymous user, as no user has it.
+     * <p>
+     * The ids are numbers, as native queries return {@code bigint} columns as {@link java.math.BigInteger}.
+     */
+    @Query(
+        value = NEARBY,
+        countQuery = "select count(*) from event e where " +
+        WITHIN_BOUNDING_BOX +
+        " and " +
+        DISTANCE_KM +
+        " <= :radiusKm and " +
+        CREATOR_NOT_BLOCKED,
+        nativeQuery = true
+    )
+    Page<Number> findNearbyIds(
+        @Param("latitude") double latitude,
+        @Param("longitude") double longitude,
+        @Param("radiusKm") double radiusKm,
+        @Param("minLatitude") double minLatitude,
+        @Param("maxLatitude") double maxLatitude,
+        @Param("minLongitude") double minLongitude,
+        @Param("maxLongitude") double maxLongitude,
+        @Param("otherMinLongitude") double otherMinLongitude,
+        @Param("otherMaxLongitude") double otherMaxLongitude,
+        @Param("userId") long userId,
+        Pageable pageable
+    );
+
+    /**
+     * Add to the attendee counter of an event, in a single atomic update, so that concurrent joins and leaves
+     * serialize on the event row instead of losing updates. A counter that drifted may go below zero, until
+     * {@link #reconcileAttendeeCounts()} repairs it.
+     * <p>
+     * Must run in a transaction.
+     *
+     * @return the number of updated events, 0 if there is no such event.
+     */
+    @Modifying
+    @Query(
+        value = "update event set attendee_count = attendee_count + :delta where id = :id",
+        nativeQuery = true
+    )
+    int addAttendees(@Param("id") Long id, @Param("delta") int delta);
+
+    /**
+     * Add attendees to an event if it has that many free seats and nobody waiting for one, the same way as
+     * {@link #admit(Long)}. An event without a capacity always takes them.
+     * <p>
+     * Must run in a transaction.
+     *
+     * @return 1 if the attendees were admitted, 0 if there is not enough room or no such event.
+     */
+    @Modifying
+    @Query(
+        value = "update event e set attendee_count = attendee_count + :delta " +
+        "where e.id = :id and (e.capacity is null or (e.attendee_count + :delta <= e.capacity " +
+        "and not exists (select 1 from event_waitlist w where w.event_id = e.id)))",
+        nativeQuery = true
+    )
+    int admitAttendees(@Param("id") Long id, @Param("delta") int delta);
+
+    /**
+     * Admit one more attendee to an event if it has a free seat and nobody waiting for one, in a single conditional
+     * update of the counter. Concurrent admissions serialize on the event row, and each one checks the capacity
+     * against the counter left by the previous one, so an event is never overbooked.
+     * <p>
+     * Must run in a transaction.
+     *
+     * @return 1 if the attendee was admitted, 0 if the event is full, has a waitlist or does not exist.
+     */
+    @Modifying
+    @Query(
+        value = "update event e set attendee_count = attendee_count + 1 " +
+        "where e.id = :id and (e.capacity is null or e.attendee_count < e.capacity) " +
+        "and not exists (select 1 from event_waitlist w where w.event_id = e.id)",
+        nativeQuery = true
+    )
+    int admit(@Param("id") Long id);
+
+    /**
+     * Admit one more attendee to an event if it has a free seat and somebody waiting for one, the same way as
+     * {@link #admit(Long)}.
+     *
+     * @return 1 if a seat was taken for the head of the waitlist, 0 otherwise.
+     */
+    @Modifying
+    @Query(
+        value = "update event e set attendee_count = attendee_count + 1 " +
+        "where e.id = :id and (e.capacity is null or e.attendee_count < e.capacity) " +
+        "and exists (select 1 from event_waitlist w where w.event_id = e.id)",
+        nativeQuery = true
+    )
+    int admitFromWaitlist(@Param("id") Long id);
+
+    /**
+     * Set the attendee counter of every event that drifted from its {@code rel_evet_user__user} rows back to their
+     * number, in a single update touching only those events.
+     *
+     * @return the number of repaired events.
+     */
+    @Modifying
+    @Query(
+        value = "update event e set attendee_count = coalesce(a.attendees, 0) from event c left join (" +
+        "select eu.event_id, count(*) as attendees from evet_user eu " +
+        "join rel_evet_user__user r on r.evet_user_id = eu.id group by eu.event_id" +
+        ") a on a.event_id = c.id where c.id = e.id and e.attendee_count <> coalesce(a.attendees, 0)",
+        nativeQuery = true
+    )
+    int reconcileAttendeeCounts();
+
+    /**
+     * An event of a list, with the count of its attendees.
+     */
+    interface EventSummary {
+        Long getId();
+
+        String getHeader();
+
+        Double getLatitude();
+
+        Double getLongitude();
+
+        ZonedDateTime getPlanned();
+
+        Integer getCapacity();
+
+        Integer getAttendeeCount();
+    }
 }
@@ -0,0 +1,78 @@
+package com.hofimefu.repository;
+
+import java.util.List;
+import java.util.Optional;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository of the waitlists of the full events, the {@code event_waitlist} table.
+ * <p>
+ * A waitlist is in arrival order, the order of the generated ids, and a user is at most once on the waitlist of an
+ * event.
+ */
+@Repository
+public class EventWaitlistRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public EventWaitlistRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Put a user at the end of the waitlist of an event, unless it is already on it.
+     *
+     * @return whether the user was added.
+     */
+    public boolean add(Long eventId, Long userId) {
+        int added = jdbcTemplate.update(
+            "insert into event_waitlist (event_id, user_id, created) values (?, ?, now()) on conflict (event_id, user_id) do nothing",
+            eventId,
+            userId
+        );
+        return added > 0;
+    }
+
+    /**
+     * @return the position of a user on the waitlist of an event, starting from 1; empty if the user is not on it.
+     */
+    public Optional<Integer> findPosition(Long eventId, Long userId) {
+        Integer position = jdbcTemplate.queryForObject(
+            "select count(*) from event_waitlist w join event_waitlist mine on mine.event_id = w.event_id and w.id <= mine.id " +
+            "where mine.event_id = ? and mine.user_id = ?",
+            Integer.class,
+            eventId,
+            userId
+        );
+        return position == null || position == 0 ? Optional.empty() : Optional.of(position);
+    }
+
+    /**
+     * Take a user off the waitlist of an event.
+     *
+     * @return whether the user was on it.
+     */
+    public boolean remove(Long eventId, Long userId) {
+        return jdbcTemplate.update("delete from event_waitlist where event_id = ? and user_id = ?", eventId, userId) > 0;
+    }
+
+    /**
+     * Take the first user off the waitlist of an event. An entry locked by a transaction taking it off is skipped, so
+     * the next one is taken instead of none.
+     * <p>
+     * Must run in a transaction.
+     *
+     * @return the id of the user taken off, empty if there is none to take.
+     */
+    public Optional<Long> pollFirst(Long eventId) {
+        List<Long> userIds = jdbcTemplate.queryForList(
+            "delete from event_waitlist where id = (" +
+            "select id from event_waitlist where event_id = ? order by id limit 1 for update skip locked" +
+            ") returning user_id",
+            Long.class,
+            eventId
+        );
+        return userIds.stream().findFirst();
+    }
+}
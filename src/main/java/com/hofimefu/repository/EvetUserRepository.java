@@ -28,4 +28,52 @@ public interface EvetUserRepository extends EvetUserRepositoryWithBagRelationshi
     default Page<EvetUser> findAllWithEagerRelationships(Pageable pageable) {
         return this.fetchBagRelationships(this.findAll(pageable));
     }
+
+    /**
+     * The event and number of users of an EvetUser, counted without loading its users.
+     *
+     * @return the event id, {@code null} if none, and the number of users; empty if there is no such EvetUser.
+     */
+    @Query(
+        "select event.id, size(evetUser.users) from EvetUser evetUser left join evetUser.event event " +
+        "where evetUser.id = :id"
+    )
+    List<Object[]> findAttendance(@Param("id") Long id);
+
+    /**
+     * @return whether a user is one of the users of an EvetUser of an event.
+     */
+    boolean existsByEvent_IdAndUsers_Id(Long eventId, Long userId);
+
+    /**
+     * @return the ids of the users of an EvetUser.
+     */
+    @Query("select user.id from EvetUser evetUser join evetUser.users user where evetUser.id = :id")
+    List<Long> findUserIds(@Param("id") Long id);
+
+    /**
+     * @return the ids of the EvetUsers of an event having a user among their users.
+     */
+    @Query("select evetUser.id from EvetUser evetUser join evetUser.users user where evetUser.event.id = :eventId and user.id = :userId")
+    List<Long> findIdsByEventIdAndUserId(@Param("eventId") Long eventId, @Param("userId") Long userId);
+
+    /**
+     * Take a user out of some EvetUsers.
+     *
+     * @return the number of EvetUsers the user was taken out of.
+     */
+    @Modifying
+    @Query(value = "delete from rel_evet_user__user where evet_user_id in (:ids) and user_id = :userId", nativeQuery = true)
+    int removeUser(@Param("ids") List<Long> ids, @Param("userId") Long userId);
+
+    /**
+     * Delete those of some EvetUsers that have no users left.
+     */
+    @Modifying
+    @Query(
+        value = "delete from evet_user eu where eu.id in (:ids) " +
+        "and not exists (select 1 from rel_evet_user__user r where r.evet_user_id = eu.id)",
+        nativeQuery = true
+    )
+    int deleteEmpty(@Param("ids") List<Long> ids);
 }
@@ -0,0 +1,44 @@
+package com.hofimefu.repository;
+
+import com.hofimefu.domain.Friend;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository of the inserts of {@link Friend} rows racing with the inserts of concurrent transactions.
+ * <p>
+ * A pair of users has at most one row, enforced by the {@link FriendRepository#PAIR_INDEX_NAME} index: a pair checked
+ * free may be taken by a transaction committing in between, so the inserts skip the taken pairs instead of failing.
+ */
+@Repository
+public class FriendPairRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public FriendPairRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Insert friendships in one JDBC batch, skipping the pairs that have one already. An insert racing with a
+     * transaction inserting the same pair waits for its outcome. The ids come from the sequence of the entities, and
+     * are not set on the given friendships.
+     * <p>
+     * Must run in a transaction, once the statuses of the friendships are flushed.
+     *
+     * @param friends the friendships, lower user id first.
+     */
+    public void insertAbsent(List<Friend> friends) {
+        List<Object[]> arguments = new ArrayList<>(friends.size());
+        for (Friend friend : friends) {
+            arguments.add(new Object[] { friend.getUser1().getId(), friend.getUser2().getId(), friend.getStatus().getId() });
+        }
+        jdbcTemplate.batchUpdate(
+            "insert into friend (id, user1_id, user2_id, status_id) values (nextval('sequence_generator'), ?, ?, ?) " +
+            "on conflict (user1_id, user2_id) do nothing",
+            arguments
+        );
+    }
+}
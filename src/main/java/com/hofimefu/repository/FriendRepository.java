@@ -1,19 +1,185 @@
 package com.hofimefu.repository;
 
 import com.hofimefu.domain.Friend;
+import com.hofimefu.domain.enumeration.FriendshipStatus;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
  * Spring Data JPA repository for the Friend entity.
+ * <p>
+ * A pair of users is stored once, lower id as {@code user1}, which the {@code (user1_id, user2_id)} unique index and its
+ * {@code (user2_id, user1_id)} reverse serve.
  */
 @SuppressWarnings("unused")
 @Repository
 public interface FriendRepository extends JpaRepository<Friend, Long> {
-    @Query("select friend from Friend friend where friend.user1.login = ?#{principal.username}")
-    List<Friend> findByUser1IsCurrentUser();
+    /**
+     * Name of the unique index holding a single friendship per pair of users, lower user id first.
+     */
+    String PAIR_INDEX_NAME = "ux_friend__user1_id_user2_id";
 
-    @Query("select friend from Friend friend where friend.user2.login = ?#{principal.username}")
-    List<Friend> findByUser2IsCurrentUser();
+    /**
+     * Predicate of the friendships that count as such: the ones that are neither blocked nor still pending, given
+     * {@code status} is the left joined {@code FriendStatus}.
+     */
+    String ACCEPTED = "(status.status is null or status.status = com.hofimefu.domain.enumeration.FriendshipStatus.ACTIVE) ";
+
+    /**
+     * Id of the current user, as a subquery so that both sides of the pair are matched on their index in one statement.
+     */
+    String CURRENT_USER_ID = "(select currentUser.id from User currentUser where currentUser.login = ?#{principal.username})";
+
+    /**
+     * Select clause of the {@link FriendshipEntry} projections, given the {@code status}, {@code user1} and {@code user2}
+     * joins.
+     */
+    String FRIENDSHIP_ENTRY =
+        "select friend.id as id, status.id as statusId, status.status as friendshipStatus, " +
+        "user1.id as user1Id, user1.login as user1Login, user2.id as user2Id, user2.login as user2Login ";
+
+    /**
+     * Page of every friendship, with its status and the public columns of its users, in a single statement.
+     */
+    @Query(
+        value = FRIENDSHIP_ENTRY +
+        "from Friend friend left join friend.status status left join friend.user1 user1 left join friend.user2 user2",
+        countQuery = "select count(friend) from Friend friend"
+    )
+    Page<FriendshipEntry> findAllEntries(Pageable pageable);
+
+    /**
+     * The friendships of the current user, whichever side of the pair the user is on, with their status and the public
+     * columns of their users, in a single statement.
+     */
+    @Query(
+        value = FRIENDSHIP_ENTRY +
+        "from Friend friend left join friend.status status left join friend.user1 user1 left join friend.user2 user2 " +
+        "where friend.user1.id = " +
+        CURRENT_USER_ID +
+        " or friend.user2.id = " +
+        CURRENT_USER_ID,
+        countQuery = "select count(friend) from Friend friend where friend.user1.id = " +
+        CURRENT_USER_ID +
+        " or friend.user2.id = " +
+        CURRENT_USER_ID
+    )
+    Page<FriendshipEntry> findAllOfCurrentUser(Pageable pageable);
+
+    /**
+     * @param user1 the lower id of the pair.
+     * @param user2 the higher id of the pair.
+     * @return the friendship of the pair.
+     */
+    Optional<Friend> findOneByUser1IdAndUser2Id(Long user1, Long user2);
+
+    Optional<Friend> findOneByStatusId(Long statusId);
+
+    /**
+     * For every one of the given users that exists: its id, and the id of its friendship with a user, with the id,
+     * value and recipient id of its status, if any. Set based, so that a whole batch of friend requests is checked in
+     * one statement.
+     */
+    @Query(
+        "select target.id, friend.id, status.id, status.status, status.recipient.id from User target " +
+        "left join Friend friend " +
+        "on (friend.user1.id = :userId and friend.user2 = target) or (friend.user1 = target and friend.user2.id = :userId) " +
+        "left join friend.status status where target.id in :ids"
+    )
+    List<Object[]> findFriendshipsWith(@Param("userId") Long userId, @Param("ids") Collection<Long> ids);
+
+    /**
+     * The {@code (user1, user2)} id pairs of every friendship, in no particular order.
+     */
+    @Query(
+        "select friend.user1.id, friend.user2.id from Friend friend left join friend.status status " +
+        "where friend.user1 is not null and friend.user2 is not null and " +
+        ACCEPTED
+    )
+    List<Object[]> findFriendshipPairs();
+
+    /**
+     * The {@code (user1, user2)} id pairs of every blocked friendship.
+     */
+    @Query(
+        "select friend.user1.id, friend.user2.id from Friend friend join friend.status status " +
+        "where friend.user1 is not null and friend.user2 is not null and " +
+        "status.status = com.hofimefu.domain.enumeration.FriendshipStatus.BLOCKED"
+    )
+    List<Object[]> findBlockedPairs();
+
+    /**
+     * The {@code (user1, user2)} id pairs of every pending friend request.
+     */
+    @Query(
+        "select friend.user1.id, friend.user2.id from Friend friend join friend.status status " +
+        "where friend.user1 is not null and friend.user2 is not null and " +
+        "status.status = com.hofimefu.domain.enumeration.FriendshipStatus.PENDING"
+    )
+    List<Object[]> findPendingPairs();
+
+    /**
+     * Page of the pending friend requests sent to the current user, newest first, served by the
+     * {@code (recipient_id, status, created)} index. There is no count query, the counters hold the total.
+     */
+    @Query(
+        FRIENDSHIP_ENTRY +
+        "from Friend friend join friend.status status left join friend.user1 user1 left join friend.user2 user2 " +
+        "where status.recipient.id = " +
+        CURRENT_USER_ID +
+        " and status.status = com.hofimefu.domain.enumeration.FriendshipStatus.PENDING " +
+        "order by status.created desc, status.id desc"
+    )
+    List<FriendshipEntry> findPendingRequestsOfCurrentUser(Pageable pageable);
+
+    /**
+     * Whether the friendship of the two users is blocked.
+     *
+     * @param user1 the lower id of the pair.
+     * @param user2 the higher id of the pair.
+     */
+    @Query(
+        "select case when count(friend) > 0 then true else false end from Friend friend join friend.status status " +
+        "where friend.user1.id = :user1 and friend.user2.id = :user2 and " +
+        "status.status = com.hofimefu.domain.enumeration.FriendshipStatus.BLOCKED"
+    )
+    boolean existsBlocked(@Param("user1") Long user1, @Param("user2") Long user2);
+
+    /**
+     * Whether the two users are friends.
+     *
+     * @param user1 the lower id of the pair.
+     * @param user2 the higher id of the pair.
+     */
+    @Query(
+        "select case when count(friend) > 0 then true else false end from Friend friend left join friend.status status " +
+        "where friend.user1.id = :user1 and friend.user2.id = :user2 and " +
+        ACCEPTED
+    )
+    boolean existsFriendship(@Param("user1") Long user1, @Param("user2") Long user2);
+
+    /**
+     * A friendship, with its status and the public columns of its users.
+     */
+    interface FriendshipEntry {
+        Long getId();
+
+        Long getStatusId();
+
+        FriendshipStatus getFriendshipStatus();
+
+        Long getUser1Id();
+
+        String getUser1Login();
+
+        Long getUser2Id();
+
+        String getUser2Login();
+    }
 }
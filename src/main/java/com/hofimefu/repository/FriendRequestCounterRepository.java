@@ -0,0 +1,77 @@
+package com.hofimefu.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository of the per-user counters of pending friend requests, the {@code friend_request_counter} table.
+ * <p>
+ * A counter is only ever changed by an atomic upsert adding to it, in the transaction changing the requests, so
+ * concurrent requests to the same user serialize on its row instead of losing updates.
+ */
+@Repository
+public class FriendRequestCounterRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public FriendRequestCounterRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Add to the counters of some users, creating the missing ones. A counter that drifted may go below zero, until
+     * {@link #reconcile()} repairs it.
+     * <p>
+     * Must run in a transaction.
+     *
+     * @param deltas what to add to the counter of every user, by user id.
+     */
+    public void add(Map<Long, Integer> deltas) {
+        List<Object[]> arguments = new ArrayList<>(deltas.size());
+        // a fixed order, so that concurrent transactions lock the rows in the same order
+        new TreeMap<>(deltas).forEach((userId, delta) -> arguments.add(new Object[] { userId, delta, delta }));
+        jdbcTemplate.batchUpdate(
+            "insert into friend_request_counter (user_id, pending) values (?, ?) " +
+            "on conflict (user_id) do update set pending = friend_request_counter.pending + ?",
+            arguments
+        );
+    }
+
+    /**
+     * Set every counter that drifted from the pending statuses it counts back to their number.
+     * <p>
+     * Must run in a transaction.
+     *
+     * @return the number of repaired counters.
+     */
+    public int reconcile() {
+        int repaired = jdbcTemplate.update(
+            "insert into friend_request_counter (user_id, pending) " +
+            "select recipient_id, count(*) from friend_status where recipient_id is not null and status = 'PENDING' group by recipient_id " +
+            "on conflict (user_id) do update set pending = excluded.pending where friend_request_counter.pending <> excluded.pending"
+        );
+        repaired +=
+            jdbcTemplate.update(
+                "update friend_request_counter c set pending = 0 where c.pending <> 0 and not exists " +
+                "(select 1 from friend_status s where s.recipient_id = c.user_id and s.status = 'PENDING')"
+            );
+        return repaired;
+    }
+
+    /**
+     * @param login the login of a user.
+     * @return the number of pending friend requests sent to the user, read from its counter.
+     */
+    public int findPendingByLogin(String login) {
+        List<Integer> pending = jdbcTemplate.queryForList(
+            "select c.pending from friend_request_counter c join jhi_user u on u.id = c.user_id where u.login = ?",
+            Integer.class,
+            login
+        );
+        return pending.isEmpty() ? 0 : pending.get(0);
+    }
+}
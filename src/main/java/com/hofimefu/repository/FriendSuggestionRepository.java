@@ -0,0 +1,99 @@
+package com.hofimefu.repository;
+
+import com.hofimefu.domain.FriendSuggestion;
+import java.sql.PreparedStatement;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository of the precomputed {@link FriendSuggestion}s.
+ * <p>
+ * The suggestions of a user are always replaced as a whole, with one delete and one batched insert per chunk of users.
+ * Reads go through the primary key {@code (user_id, rank)}, so serving the best suggestions of a user is an index range scan.
+ */
+@Repository
+public class FriendSuggestionRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public FriendSuggestionRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Replace the suggestions of some users.
+     * <p>
+     * Must run in a transaction.
+     *
+     * @param userIds the users whose suggestions are replaced, including those which now have none.
+     * @param suggestions the new suggestions of these users.
+     * @param computed when the suggestions were computed.
+     */
+    public void replaceSuggestions(Collection<Long> userIds, List<FriendSuggestion> suggestions, Instant computed) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement("delete from friend_suggestion where user_id = any(?)");
+            statement.setArray(1, connection.createArrayOf("bigint", userIds.toArray()));
+            return statement;
+        });
+        LocalDateTime timestamp = LocalDateTime.ofInstant(computed, ZoneOffset.UTC);
+        jdbcTemplate.batchUpdate(
+            "insert into friend_suggestion (user_id, rank, suggested_user_id, mutual_friends, shared_schools, score, computed) " +
+            "values (?, ?, ?, ?, ?, ?, ?)",
+            suggestions,
+            suggestions.size(),
+            (statement, suggestion) -> {
+                statement.setLong(1, suggestion.getUserId());
+                statement.setInt(2, suggestion.getRank());
+                statement.setLong(3, suggestion.getSuggestedUserId());
+                statement.setInt(4, suggestion.getMutualFriends());
+                statement.setInt(5, suggestion.getSharedSchools());
+                statement.setInt(6, suggestion.getScore());
+                statement.setObject(7, timestamp);
+            }
+        );
+    }
+
+    /**
+     * Delete the suggestions computed before a given instant, which a full run did not replace.
+     *
+     * @return the number of deleted rows.
+     */
+    public int deleteComputedBefore(Instant computed) {
+        return jdbcTemplate.update("delete from friend_suggestion where computed < ?", LocalDateTime.ofInstant(computed, ZoneOffset.UTC));
+    }
+
+    /**
+     * @param login the login of a user.
+     * @param limit the maximum number of suggestions.
+     * @return the best suggestions of the user, best first, with the logins of the suggested users.
+     */
+    public List<FriendSuggestion> findByUserLogin(String login, int limit) {
+        return jdbcTemplate.query(
+            "select s.user_id, s.rank, s.suggested_user_id, u.login, s.mutual_friends, s.shared_schools, s.score " +
+            "from friend_suggestion s join jhi_user u on u.id = s.suggested_user_id " +
+            "where s.user_id = (select id from jhi_user where login = ?) order by s.rank limit ?",
+            (resultSet, rowNum) -> {
+                FriendSuggestion suggestion = new FriendSuggestion(
+                    resultSet.getLong("user_id"),
+                    resultSet.getInt("rank"),
+                    resultSet.getLong("suggested_user_id"),
+                    resultSet.getInt("mutual_friends"),
+                    resultSet.getInt("shared_schools"),
+                    resultSet.getInt("score")
+                );
+                suggestion.setSuggestedLogin(resultSet.getString("login"));
+                return suggestion;
+            },
+            login,
+            limit
+        );
+    }
+}
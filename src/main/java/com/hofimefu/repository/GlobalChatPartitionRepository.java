@@ -0,0 +1,147 @@
+package com.hofimefu.repository;
+
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository managing the monthly partitions of the {@code global_chat} table.
+ * <p>
+ * Partitions are named {@code global_chat_pYYYY_MM} and cover one UTC month of {@code created}; rows outside of them
+ * land in {@code global_chat_default}. Partition names end up in DDL, so only names of that form are accepted.
+ */
+@Repository
+public class GlobalChatPartitionRepository {
+
+    private static final String PREFIX = "global_chat_p";
+
+    private static final DateTimeFormatter SUFFIX_FORMAT = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private static final Pattern NAME_PATTERN = Pattern.compile(PREFIX + "\\d{4}_\\d{2}");
+
+    /** The stored columns of {@code global_chat}, without the search vector the database generates from the message. */
+    private static final String COLUMNS = "id, message, created, user_id, author_login, author_name";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public GlobalChatPartitionRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public static String partitionName(YearMonth month) {
+        return PREFIX + month.format(SUFFIX_FORMAT);
+    }
+
+    public static YearMonth partitionMonth(String partitionName) {
+        return YearMonth.parse(checkName(partitionName).substring(PREFIX.length()), SUFFIX_FORMAT);
+    }
+
+    /**
+     * @return the monthly partitions currently attached to {@code global_chat}.
+     */
+    public List<String> findAttachedPartitions() {
+        return jdbcTemplate.queryForList(
+            "select c.relname from pg_inherits i join pg_class c on c.oid = i.inhrelid join pg_class p on p.oid = i.inhparent " +
+            "where p.relname = 'global_chat' and c.relname ~ '^global_chat_p[0-9]{4}_[0-9]{2}$' order by c.relname",
+            String.class
+        );
+    }
+
+    /**
+     * @return the monthly partitions detached from {@code global_chat} but not dropped yet.
+     */
+    public List<String> findDetachedPartitions() {
+        return jdbcTemplate.queryForList(
+            "select c.relname from pg_class c where c.relkind = 'r' and not c.relispartition " +
+            "and c.relnamespace = current_schema()::regnamespace and c.relname ~ '^global_chat_p[0-9]{4}_[0-9]{2}$' order by c.relname",
+            String.class
+        );
+    }
+
+    /**
+     * Create the partition of the given month, moving over the rows the default partition already holds for it.
+     * <p>
+     * Must run in a transaction.
+     */
+    public void createPartition(YearMonth month) {
+        String name = partitionName(month);
+        String from = month.atDay(1).atStartOfDay().toString();
+        String to = month.plusMonths(1).atDay(1).atStartOfDay().toString();
+        jdbcTemplate.execute("create table " + name + " (like global_chat including defaults including generated)");
+        jdbcTemplate.update(
+            "with moved as (delete from global_chat_default where created >= ?::timestamp and created < ?::timestamp returning *) " +
+            "insert into " +
+            name +
+            " (" +
+            COLUMNS +
+            ") select " +
+            COLUMNS +
+            " from moved",
+            from,
+            to
+        );
+        jdbcTemplate.execute(
+            "alter table global_chat attach partition " + name + " for values from ('" + from + "') to ('" + to + "')"
+        );
+    }
+
+    public void detachPartition(String partitionName) {
+        jdbcTemplate.execute("alter table global_chat detach partition " + checkName(partitionName));
+    }
+
+    public void dropPartition(String partitionName) {
+        jdbcTemplate.execute("drop table " + checkName(partitionName));
+    }
+
+    /**
+     * Read every row of a partition in {@code (created, id)} order, without holding them all in memory.
+     * <p>
+     * Must run in a transaction for the rows to be fetched in chunks.
+     *
+     * @param partitionName the partition to read.
+     * @param consumer receives every row as {@code id}, {@code message}, {@code created}, {@code userId}, and the
+     * {@code authorLogin} and {@code authorName} snapshot of its author, which outlives the user.
+     */
+    public void streamPartition(String partitionName, Consumer<Map<String, Object>> consumer) {
+        jdbcTemplate.query(
+            connection -> {
+                PreparedStatement statement = connection.prepareStatement(
+                    "select " +
+                    COLUMNS +
+                    " from " +
+                    checkName(partitionName) +
+                    " order by created, id"
+                );
+                statement.setFetchSize(1000);
+                return statement;
+            },
+            resultSet -> {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("id", resultSet.getLong("id"));
+                row.put("message", resultSet.getString("message"));
+                row.put("created", resultSet.getObject("created", LocalDateTime.class).toInstant(ZoneOffset.UTC));
+                long userId = resultSet.getLong("user_id");
+                row.put("userId", resultSet.wasNull() ? null : userId);
+                row.put("authorLogin", resultSet.getString("author_login"));
+                row.put("authorName", resultSet.getString("author_name"));
+                consumer.accept(row);
+            }
+        );
+    }
+
+    private static String checkName(String partitionName) {
+        if (!NAME_PATTERN.matcher(partitionName).matches()) {
+            throw new IllegalArgumentException("Not a global_chat partition: " + partitionName);
+        }
+        return partitionName;
+    }
+}
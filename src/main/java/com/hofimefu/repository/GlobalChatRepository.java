@@ -1,8 +1,14 @@
 package com.hofimefu.repository;
 
 import com.hofimefu.domain.GlobalChat;
+import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -13,4 +19,92 @@ import org.springframework.stereotype.Repository;
 public interface GlobalChatRepository extends JpaRepository<GlobalChat, Long> {
     @Query("select globalChat from GlobalChat globalChat where globalChat.user.login = ?#{principal.username}")
     List<GlobalChat> findByUserIsCurrentUser();
+
+    @Query("select globalChat.created from GlobalChat globalChat where globalChat.id = :id")
+    Optional<ZonedDateTime> findCreatedById(@Param("id") Long id);
+
+    /**
+     * Select clause of the {@link TimelineEntry} projections, reading the author snapshot instead of joining {@code jhi_user}.
+     */
+    String TIMELINE_ENTRY =
+        "select globalChat.id as id, globalChat.message as message, globalChat.created as created, " +
+        "globalChat.authorLogin as authorLogin, globalChat.authorName as authorName from GlobalChat globalChat ";
+
+    @Query(TIMELINE_ENTRY + "order by globalChat.id")
+    List<TimelineEntry> findAllEntries();
+
+    /**
+     * First page of the timeline, newest first, in {@code (created, id)} order.
+     */
+    @Query(TIMELINE_ENTRY + "order by globalChat.created desc, globalChat.id desc")
+    List<TimelineEntry> findLatest(Pageable pageable);
+
+    @Query("select globalChat.id from GlobalChat globalChat order by globalChat.id desc")
+    List<Long> findLatestIds(Pageable pageable);
+
+    /**
+     * Keyset page of the timeline: the entries strictly older than the {@code (created, id)} cursor, newest first.
+     * <p>
+     * The redundant {@code created <= :created} predicate gives the planner an index range start, so the page
+     * costs the same wherever the cursor is.
+     */
+    @Query(
+        TIMELINE_ENTRY +
+        "where globalChat.created <= :created and (globalChat.created < :created or globalChat.id < :id) " +
+        "order by globalChat.created desc, globalChat.id desc"
+    )
+    List<TimelineEntry> findBefore(@Param("created") ZonedDateTime created, @Param("id") Long id, Pageable pageable);
+
+    /**
+     * The entries with a greater id than the given one, in id order.
+     */
+    @Query(TIMELINE_ENTRY + "where globalChat.id > :id order by globalChat.id")
+    List<TimelineEntry> findAfter(@Param("id") Long id, Pageable pageable);
+
+    /**
+     * Rewrite the author snapshot of every message of a user.
+     */
+    @Modifying
+    @Query(
+        "update GlobalChat globalChat set globalChat.authorLogin = :login, globalChat.authorName = :name " +
+        "where globalChat.user.id = :userId"
+    )
+    int updateAuthor(@Param("userId") Long userId, @Param("login") String login, @Param("name") String name);
+
+    /**
+     * @param ids the ids of the messages.
+     * @return the messages, in no particular order.
+     */
+    @Query(TIMELINE_ENTRY + "where globalChat.id in :ids")
+    List<TimelineEntry> findEntriesByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Full-text search of the messages, best match first, served by the GIN index on {@code message_tsv}, which the
+     * database generates from the message.
+     * <p>
+     * The given pageable must be unsorted, the order being the rank. The ids are numbers, as native queries return
+     * {@code bigint} columns as {@link java.math.BigInteger}.
+     */
+    @Query(
+        value = "select g.id from global_chat g, plainto_tsquery('simple', :query) q where g.message_tsv @@ q " +
+        "order by ts_rank(g.message_tsv, q) desc, g.id desc",
+        countQuery = "select count(*) from global_chat g where g.message_tsv @@ plainto_tsquery('simple', :query)",
+        nativeQuery = true
+    )
+    Page<Number> searchIds(@Param("query") String query, Pageable pageable);
+
+    /**
+     * A message of the timeline, with the author snapshot stored on it.
+     */
+    interface TimelineEntry {
+        Long getId();
+
+        String getMessage();
+
+        ZonedDateTime getCreated();
+
+        String getAuthorLogin();
+
+        String getAuthorName();
+    }
 }
@@ -1,6 +1,7 @@
 package com.hofimefu.repository;
 
 import com.hofimefu.domain.UserSchool;
+import java.util.Collection;
 import java.util.List;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.stereotype.Repository;
@@ -13,4 +14,24 @@ import org.springframework.stereotype.Repository;
 public interface UserSchoolRepository extends JpaRepository<UserSchool, Long> {
     @Query("select userSchool from UserSchool userSchool where userSchool.user.login = ?#{principal.username}")
     List<UserSchool> findByUserIsCurrentUser();
+
+    /**
+     * @return every membership as a {@code (userId, schoolId)} pair, whatever its status.
+     */
+    @Query(
+        "select userSchool.user.id, userSchool.school.id from UserSchool userSchool " +
+        "where userSchool.user is not null and userSchool.school is not null"
+    )
+    List<Object[]> findMembershipPairs();
+
+    /**
+     * @param userIds the ids of some users.
+     * @return the memberships of the schools of these users, those of the other members included, as {@code (userId, schoolId)} pairs.
+     */
+    @Query(
+        "select membership.user.id, membership.school.id from UserSchool membership " +
+        "where membership.user is not null and membership.school.id in " +
+        "(select userSchool.school.id from UserSchool userSchool where userSchool.user.id in ?1)"
+    )
+    List<Object[]> findMembershipPairsOfSchoolsOf(Collection<Long> userIds);
 }
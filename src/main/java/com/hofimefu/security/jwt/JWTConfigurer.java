@@ -1,5 +1,6 @@
 package com.hofimefu.security.jwt;
 
+import com.hofimefu.security.ratelimit.RateLimitFilter;
 import org.springframework.security.config.annotation.SecurityConfigurerAdapter;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.web.DefaultSecurityFilterChain;
@@ -9,13 +10,17 @@ public class JWTConfigurer extends SecurityConfigurerAdapter<DefaultSecurityFilt
 
     private final TokenProvider tokenProvider;
 
-    public JWTConfigurer(TokenProvider tokenProvider) {
+    private final RateLimitFilter rateLimitFilter;
+
+    public JWTConfigurer(TokenProvider tokenProvider, RateLimitFilter rateLimitFilter) {
         this.tokenProvider = tokenProvider;
+        this.rateLimitFilter = rateLimitFilter;
     }
 
     @Override
     public void configure(HttpSecurity http) {
         JWTFilter customFilter = new JWTFilter(tokenProvider);
         http.addFilterBefore(customFilter, UsernamePasswordAuthenticationFilter.class);
+        http.addFilterAfter(rateLimitFilter, JWTFilter.class);
     }
 }
@@ -0,0 +1,78 @@
+package com.hofimefu.security.ratelimit;
+
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.security.SecurityUtils;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.GenericFilterBean;
+
+/**
+ * Filters the write requests of authenticated users through their token buckets, answering {@code 429 (Too Many
+ * Requests)} with a {@code Retry-After} header once a bucket is empty.
+ * <p>
+ * It runs right after the {@link com.hofimefu.security.jwt.JWTFilter}, so that the user is known.
+ */
+public class RateLimitFilter extends GenericFilterBean {
+
+    static final String GLOBAL_CHATS_ROUTE = "global-chats";
+    static final String WRITE_ROUTE = "write";
+
+    private final RateLimiter rateLimiter;
+
+    private final ApplicationProperties.RateLimit properties;
+
+    public RateLimitFilter(RateLimiter rateLimiter, ApplicationProperties applicationProperties) {
+        this.rateLimiter = rateLimiter;
+        this.properties = applicationProperties.getRateLimit();
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain)
+        throws IOException, ServletException {
+        HttpServletRequest httpServletRequest = (HttpServletRequest) servletRequest;
+        String route = resolveRoute(httpServletRequest);
+        Optional<String> login = SecurityUtils.getCurrentUserLogin();
+        if (route != null && login.isPresent() && rateLimiter.isEnabled()) {
+            ApplicationProperties.RateLimit.Limit limit = GLOBAL_CHATS_ROUTE.equals(route)
+                ? properties.getGlobalChats()
+                : properties.getWrite();
+            long wait = rateLimiter.acquire(route, login.get(), limit);
+            if (wait > 0) {
+                HttpServletResponse httpServletResponse = (HttpServletResponse) servletResponse;
+                httpServletResponse.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+                httpServletResponse.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(toSeconds(wait)));
+                return;
+            }
+        }
+        filterChain.doFilter(servletRequest, servletResponse);
+    }
+
+    private static String resolveRoute(HttpServletRequest request) {
+        HttpMethod method = HttpMethod.resolve(request.getMethod());
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (method == null || method == HttpMethod.GET || method == HttpMethod.HEAD || method == HttpMethod.OPTIONS) {
+            return null;
+        }
+        if (!path.startsWith("/api/")) {
+            return null;
+        }
+        if (method == HttpMethod.POST && "/api/global-chats".equals(path)) {
+            return GLOBAL_CHATS_ROUTE;
+        }
+        return WRITE_ROUTE;
+    }
+
+    private static long toSeconds(long nanos) {
+        return Math.max(1, (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+}
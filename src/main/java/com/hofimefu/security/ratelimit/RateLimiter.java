@@ -0,0 +1,108 @@
+package com.hofimefu.security.ratelimit;
+
+import com.hofimefu.config.ApplicationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Token buckets per route and login, implemented with the generic cell rate algorithm.
+ * <p>
+ * A bucket is a single {@link AtomicLong} holding its theoretical arrival time: the instant at which it will be full
+ * again. Taking a token is one compare-and-set on that value, and buckets live in a {@link ConcurrentHashMap}, so
+ * requests of different users never contend and no lock is taken once a bucket exists. A bucket that has been full for
+ * the idle timeout holds no information and is evicted.
+ */
+@Component
+public class RateLimiter {
+
+    public static final String REJECTED_METER_NAME = "security.rate-limit.rejected";
+    public static final String BUCKETS_METER_NAME = "security.rate-limit.buckets";
+
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    private final ApplicationProperties.RateLimit properties;
+
+    private final MeterRegistry registry;
+
+    private final LongSupplier clock;
+
+    @Autowired
+    public RateLimiter(ApplicationProperties applicationProperties, MeterRegistry registry) {
+        this(applicationProperties, registry, System::nanoTime);
+    }
+
+    RateLimiter(ApplicationProperties applicationProperties, MeterRegistry registry, LongSupplier clock) {
+        this.properties = applicationProperties.getRateLimit();
+        this.registry = registry;
+        this.clock = clock;
+        Gauge.builder(BUCKETS_METER_NAME, buckets, Map::size).description("Number of active rate limit buckets.").register(registry);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Take a token from the bucket of a login on a route.
+     *
+     * @param route the rate limited route, also used as the {@code route} tag of the rejection metric.
+     * @param login the login of the current user.
+     * @param limit the limit of the route.
+     * @return {@code 0} if the request may proceed, otherwise the number of nanoseconds until it would be allowed.
+     */
+    public long acquire(String route, String login, ApplicationProperties.RateLimit.Limit limit) {
+        long now = clock.getAsLong();
+        long interval = limit.getRefillPeriod().toNanos();
+        long tolerance = interval * (limit.getCapacity() - 1);
+        AtomicLong bucket = buckets.get(route + ':' + login);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(route + ':' + login, key -> new AtomicLong(now));
+        }
+        while (true) {
+            long arrival = bucket.get();
+            long base = arrival - now > 0 ? arrival : now;
+            long wait = base - tolerance - now;
+            if (wait > 0) {
+                Counter
+                    .builder(REJECTED_METER_NAME)
+                    .description("Requests rejected because their user exceeded the rate limit.")
+                    .tag("route", route)
+                    .register(registry)
+                    .increment();
+                return wait;
+            }
+            if (bucket.compareAndSet(arrival, base + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Evict the buckets that have been full for longer than the idle timeout.
+     * <p>
+     * A request racing with the eviction may update a bucket that was just removed; as the bucket was full, this
+     * costs at most one extra request.
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdleBuckets() {
+        long now = clock.getAsLong();
+        long idleTimeout = properties.getIdleTimeout().toNanos();
+        buckets.forEach((key, bucket) -> {
+            if (now - bucket.get() > idleTimeout) {
+                buckets.remove(key, bucket);
+            }
+        });
+    }
+
+    int getBucketCount() {
+        return buckets.size();
+    }
+}
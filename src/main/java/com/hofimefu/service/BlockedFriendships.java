@@ -0,0 +1,256 @@
+package com.hofimefu.service;
+
+import com.hofimefu.domain.Friend;
+import com.hofimefu.domain.enumeration.FriendshipStatus;
+import com.hofimefu.repository.FriendRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Answers whether two users have blocked each other, that is whether their {@link Friend} pair has the
+ * {@link FriendshipStatus#BLOCKED} status. The chat stream, the users added to events, the nearby events and the friend
+ * suggestions all ask it for every user they show.
+ * <p>
+ * A Bloom filter over the blocked pairs answers most lookups, which are negative, with a few memory probes; only the
+ * possible positives are checked against the database, on the {@code (user1_id, user2_id)} unique index. Blocks are
+ * added to the filter once committed. Unblocked pairs cannot be taken out of a Bloom filter, so they are only counted,
+ * and the filter is rebuilt from the database once the blocks and unblocks it has seen exceed its capacity.
+ * <p>
+ * Until the filter is first built, every lookup goes to the database.
+ */
+@Service
+public class BlockedFriendships {
+
+    public static final String LOOKUPS_METER_NAME = "friend.blocked.lookups";
+    public static final String MEMORY_METER_NAME = "friend.blocked.memory";
+    public static final String REBUILD_METER_NAME = "friend.blocked.rebuild";
+
+    /** The rate of false positives the filter is sized for, when full. */
+    static final double FALSE_POSITIVE_RATE = 0.01;
+
+    /** The filter is sized for this many blocks at least, or twice the current blocks. */
+    static final int MIN_CAPACITY = 1024;
+
+    private final Logger log = LoggerFactory.getLogger(BlockedFriendships.class);
+
+    private final FriendRepository friendRepository;
+
+    private final Counter filteredLookups;
+
+    private final Counter databaseLookups;
+
+    private final Timer rebuildTimer;
+
+    private volatile Filter filter;
+
+    public BlockedFriendships(FriendRepository friendRepository, MeterRegistry registry) {
+        this.friendRepository = friendRepository;
+        this.filteredLookups =
+            Counter
+                .builder(LOOKUPS_METER_NAME)
+                .description("Blocked friendship lookups, by where they were answered.")
+                .tag("source", "filter")
+                .register(registry);
+        this.databaseLookups =
+            Counter
+                .builder(LOOKUPS_METER_NAME)
+                .description("Blocked friendship lookups, by where they were answered.")
+                .tag("source", "database")
+                .register(registry);
+        this.rebuildTimer =
+            Timer
+                .builder(REBUILD_METER_NAME)
+                .description("Time taken to rebuild the blocked friendship filter from the database.")
+                .register(registry);
+        Gauge
+            .builder(MEMORY_METER_NAME, this, BlockedFriendships::sizeInBytes)
+            .description("Memory held by the blocked friendship filter.")
+            .baseUnit("bytes")
+            .register(registry);
+    }
+
+    /**
+     * Load the filter from the blocked friendships of the database.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        long start = System.nanoTime();
+        List<Object[]> pairs = friendRepository.findBlockedPairs();
+        Filter rebuilt = Filter.withCapacity(Math.max(MIN_CAPACITY, pairs.size() * 2));
+        for (Object[] pair : pairs) {
+            rebuilt.add((Long) pair[0], (Long) pair[1]);
+        }
+        filter = rebuilt;
+        long elapsed = System.nanoTime() - start;
+        rebuildTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        log.debug("Rebuilt the blocked friendship filter with {} blocks in {} ms", pairs.size(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    /**
+     * Rebuild the filter once it has seen more changes than it was sized for, as its false positive rate then grows.
+     */
+    @Scheduled(fixedDelay = 60000)
+    public synchronized void rebuildIfSaturated() {
+        Filter current = filter;
+        if (current != null && current.changes > current.capacity) {
+            rebuild();
+        }
+    }
+
+    /**
+     * @param user1 the id of a user.
+     * @param user2 the id of the other user.
+     * @return whether the friendship of the two users, whichever way round, is blocked.
+     */
+    public boolean isBlocked(Long user1, Long user2) {
+        if (user1 == null || user2 == null || user1.equals(user2)) {
+            return false;
+        }
+        long lower = Math.min(user1, user2);
+        long higher = Math.max(user1, user2);
+        Filter current = filter;
+        if (current != null && !current.mightContain(lower, higher)) {
+            filteredLookups.increment();
+            return false;
+        }
+        databaseLookups.increment();
+        return friendRepository.existsBlocked(lower, higher);
+    }
+
+    /**
+     * Update the filter with the current state of a friendship once the transaction changing it has committed.
+     *
+     * @param friend the friendship that was created, updated or deleted, with its users as they were changed.
+     */
+    public void refresh(Friend friend) {
+        if (friend.getUser1() == null || friend.getUser2() == null) {
+            return;
+        }
+        refresh(friend.getUser1().getId(), friend.getUser2().getId());
+    }
+
+    /**
+     * Update the filter with the current state of the friendship between two users once the transaction has committed.
+     *
+     * @param user1 the id of a user.
+     * @param user2 the id of the other user.
+     */
+    public void refresh(Long user1, Long user2) {
+        if (user1 == null || user2 == null || user1.equals(user2)) {
+            return;
+        }
+        long lower = Math.min(user1, user2);
+        long higher = Math.max(user1, user2);
+        boolean blocked = friendRepository.existsBlocked(lower, higher);
+        TransactionUtils.afterCommit(() -> set(lower, higher, blocked));
+    }
+
+    synchronized void set(long lower, long higher, boolean blocked) {
+        Filter current = filter;
+        if (current == null) {
+            // not built yet, the first build reads the committed state
+            return;
+        }
+        if (blocked) {
+            current.add(lower, higher);
+            current.changes++;
+        } else if (current.mightContain(lower, higher)) {
+            // possibly an unblock, whose bits stay set
+            current.changes++;
+        }
+    }
+
+    private long sizeInBytes() {
+        Filter current = filter;
+        return current == null ? 0 : current.sizeInBytes();
+    }
+
+    /**
+     * Bloom filter over {@code (lower id, higher id)} pairs, probed with double hashing of a single 64 bits hash.
+     * <p>
+     * The bits are atomic so that a block added by a writer is seen by the readers without publishing a new filter.
+     */
+    static final class Filter {
+
+        final AtomicLongArray bits;
+
+        final long bitCount;
+
+        final int hashCount;
+
+        final int capacity;
+
+        /** The blocks and unblocks seen since the filter was built, guarded by the enclosing instance. */
+        int changes;
+
+        private Filter(long bitCount, int hashCount, int capacity) {
+            this.bits = new AtomicLongArray((int) ((bitCount + 63) / 64));
+            this.bitCount = bitCount;
+            this.hashCount = hashCount;
+            this.capacity = capacity;
+        }
+
+        static Filter withCapacity(int capacity) {
+            double ln2 = Math.log(2);
+            long bitCount = Math.max(64, (long) Math.ceil(-capacity * Math.log(FALSE_POSITIVE_RATE) / (ln2 * ln2)));
+            int hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * ln2));
+            return new Filter(bitCount, hashCount, capacity);
+        }
+
+        void add(long lower, long higher) {
+            long hash = hash(lower, higher);
+            long hash1 = hash >>> 32;
+            long hash2 = hash & 0xFFFFFFFFL;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = (hash1 + i * hash2) % bitCount;
+                long mask = 1L << bit;
+                int word = (int) (bit >>> 6);
+                long value;
+                do {
+                    value = bits.get(word);
+                } while ((value & mask) == 0 && !bits.compareAndSet(word, value, value | mask));
+            }
+        }
+
+        boolean mightContain(long lower, long higher) {
+            long hash = hash(lower, higher);
+            long hash1 = hash >>> 32;
+            long hash2 = hash & 0xFFFFFFFFL;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = (hash1 + i * hash2) % bitCount;
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        long sizeInBytes() {
+            return (long) bits.length() * Long.BYTES;
+        }
+
+        /**
+         * The finalizer of MurmurHash3 over both ids, which spreads close ids over the whole 64 bits.
+         */
+        private static long hash(long lower, long higher) {
+            long hash = lower * 0x9E3779B97F4A7C15L + higher;
+            hash ^= hash >>> 33;
+            hash *= 0xFF51AFD7ED558CCDL;
+            hash ^= hash >>> 33;
+            hash *= 0xC4CEB93E1A85EC53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.hofimefu.service;
+
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.domain.Event;
+import com.hofimefu.domain.EvetUser;
+import com.hofimefu.repository.ClusterLockRepository;
+import com.hofimefu.repository.EventRepository;
+import com.hofimefu.repository.EvetUserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Keeps the attendee counter of every {@link Event} in line with the users of its {@link EvetUser}s.
+ * <p>
+ * The counter is what event lists show as "N people going", so they read a column of the event row instead of loading
+ * the {@code rel_evet_user__user} bag of every EvetUser. Every change of an EvetUser must go through here, in the
+ * transaction making it: each changed event gets one atomic update adding the difference. Like the answers of
+ * {@link EventRsvps}, attendees are only added within the capacity of the event, and the seats freed go to its
+ * waitlist. A nightly job sets the counters that drifted anyway, e.g. through users deleted with their rows, back to
+ * the count of the rows.
+ */
+@Service
+public class EventAttendees {
+
+    public static final String REPAIRED_METER_NAME = "event.attendees.repaired";
+
+    private static final String LOCK_NAME = "event-attendees-reconcile";
+
+    private final Logger log = LoggerFactory.getLogger(EventAttendees.class);
+
+    private final EventRepository eventRepository;
+
+    private final EvetUserRepository evetUserRepository;
+
+    private final EventRsvps eventRsvps;
+
+    private final ClusterLockRepository clusterLockRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ApplicationProperties.Events.Attendees properties;
+
+    private final Counter repairedCounter;
+
+    public EventAttendees(
+        EventRepository eventRepository,
+        EvetUserRepository evetUserRepository,
+        EventRsvps eventRsvps,
+        ClusterLockRepository clusterLockRepository,
+        PlatformTransactionManager transactionManager,
+        ApplicationProperties applicationProperties,
+        MeterRegistry registry
+    ) {
+        this.eventRepository = eventRepository;
+        this.evetUserRepository = evetUserRepository;
+        this.eventRsvps = eventRsvps;
+        this.clusterLockRepository = clusterLockRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = applicationProperties.getEvents().getAttendees();
+        this.repairedCounter =
+            Counter
+                .builder(REPAIRED_METER_NAME)
+                .description("Number of events whose attendee counter had drifted and was repaired.")
+                .register(registry);
+    }
+
+    /**
+     * Copy what the counters depend on in a stored EvetUser, before it changes.
+     *
+     * @param evetUserId the id of the EvetUser.
+     * @return its event and number of users, read without loading them; {@code null} if there is no such EvetUser.
+     */
+    public Snapshot snapshot(Long evetUserId) {
+        if (evetUserId == null) {
+            return null;
+        }
+        List<Object[]> attendance = evetUserRepository.findAttendance(evetUserId);
+        if (attendance.isEmpty()) {
+            return null;
+        }
+        return new Snapshot((Long) attendance.get(0)[0], ((Number) attendance.get(0)[1]).intValue());
+    }
+
+    /**
+     * Account for an EvetUser that was created, updated or deleted.
+     *
+     * @param previous the EvetUser before the change, {@code null} if it was created.
+     * @param current the EvetUser after the change, {@code null} if it was deleted.
+     * @throws EventFullException if attendees were added to an event without that many free seats, or with a waitlist.
+     */
+    public void changed(Snapshot previous, Snapshot current) {
+        Map<Long, Integer> deltas = new TreeMap<>();
+        if (previous != null && previous.eventId != null) {
+            deltas.merge(previous.eventId, -previous.attendees, Integer::sum);
+        }
+        if (current != null && current.eventId != null) {
+            deltas.merge(current.eventId, current.attendees, Integer::sum);
+        }
+        // in id order, so that concurrent transactions moving attendees lock the events in the same order
+        deltas.forEach((eventId, delta) -> {
+            if (delta > 0) {
+                if (eventRepository.admitAttendees(eventId, delta) == 0) {
+                    throw new EventFullException();
+                }
+            } else if (delta < 0) {
+                eventRepository.addAttendees(eventId, delta);
+                eventRsvps.promote(eventId);
+            }
+        });
+    }
+
+    /**
+     * Repair the counters.
+     * <p>
+     * This is scheduled to get fired every night, at 05:00 (am) by default.
+     */
+    @Scheduled(cron = "${application.events.attendees.cron:0 0 5 * * ?}")
+    public void scheduledRun() {
+        if (properties.isEnabled()) {
+            reconcile();
+        }
+    }
+
+    /**
+     * Set every counter that drifted from the rows it counts back to their number, in one update.
+     * <p>
+     * A counter changed by a transaction committing while this runs may be set to the count seen before it; such a
+     * drift is left to the next run. Only one instance repairs the counters at a time, the others skip the run.
+     *
+     * @return the number of repaired events.
+     */
+    public int reconcile() {
+        Integer result = transactionTemplate.execute(status ->
+            clusterLockRepository.tryLock(LOCK_NAME) ? eventRepository.reconcileAttendeeCounts() : null
+        );
+        if (result == null) {
+            log.debug("The attendee counters are being repaired by another instance");
+            return 0;
+        }
+        int repaired = result;
+        repairedCounter.increment(repaired);
+        if (repaired > 0) {
+            log.warn("Repaired the attendee counter of {} events", repaired);
+        } else {
+            log.debug("No attendee counter to repair");
+        }
+        return repaired;
+    }
+
+    /**
+     * What the counters depend on in an EvetUser, copied before it changes.
+     */
+    public static final class Snapshot {
+
+        private final Long eventId;
+
+        private final int attendees;
+
+        private Snapshot(Long eventId, int attendees) {
+            this.eventId = eventId;
+            this.attendees = attendees;
+        }
+
+        public static Snapshot of(EvetUser evetUser) {
+            Event event = evetUser.getEvent();
+            return new Snapshot(event == null ? null : event.getId(), evetUser.getUsers() == null ? 0 : evetUser.getUsers().size());
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.hofimefu.service;
+
+public class EventFullException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public EventFullException() {
+        super("Event is full!");
+    }
+}
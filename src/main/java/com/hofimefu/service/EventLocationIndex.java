@@ -0,0 +1,507 @@
+package com.hofimefu.service;
+
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.domain.Event;
+import com.hofimefu.repository.EventRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongPredicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * In-memory spatial index of the locations of the {@link Event}s, for "events near me" searches.
+ * <p>
+ * The globe is cut into a grid of cells {@code cellSizeDegrees} wide in latitude and longitude, and every event having
+ * both coordinates is bucketed in its cell. A search only scans the cells overlapping the bounding box of its circle,
+ * then keeps the events actually within the radius by their great-circle distance, so its cost depends on the number
+ * of events around the location and not on the total number of events. The creator of every event is indexed too, so
+ * that a search leaves out the events the user may not see while it ranks them.
+ * <p>
+ * Every cell holds immutable primitive arrays, which writers copy and replace in a concurrent map, so readers never
+ * lock and a change costs a copy of a single cell. When the index is disabled, nothing is loaded and searches go to
+ * the database instead, see {@link EventRepository#findNearby}.
+ */
+@Service
+public class EventLocationIndex {
+
+    public static final String EVENTS_METER_NAME = "event.location.index.events";
+    public static final String REBUILD_METER_NAME = "event.location.index.rebuild";
+    public static final String SEARCH_METER_NAME = "event.location.index.search";
+
+    /** The mean radius of the Earth. */
+    static final double EARTH_RADIUS_KM = 6371.0088;
+
+    /** The creator id of the events without one, which no user has. */
+    static final long NO_CREATOR = 0;
+
+    private static final Comparator<Hit> NEAREST_FIRST = Comparator.comparingDouble(Hit::getDistanceKm).thenComparingLong(Hit::getEventId);
+
+    private final Logger log = LoggerFactory.getLogger(EventLocationIndex.class);
+
+    private final EventRepository eventRepository;
+
+    private final boolean enabled;
+
+    private final double cellSize;
+
+    private final int rows;
+
+    private final int columns;
+
+    private final Timer rebuildTimer;
+
+    private final Timer searchTimer;
+
+    private volatile Grid grid = new Grid();
+
+    public EventLocationIndex(EventRepository eventRepository, ApplicationProperties applicationProperties, MeterRegistry registry) {
+        this.eventRepository = eventRepository;
+        this.enabled = applicationProperties.getEvents().getNearby().isInMemoryIndex();
+        this.cellSize = applicationProperties.getEvents().getNearby().getCellSizeDegrees();
+        this.rows = (int) Math.ceil(180 / cellSize);
+        this.columns = (int) Math.ceil(360 / cellSize);
+        this.rebuildTimer =
+            Timer
+                .builder(REBUILD_METER_NAME)
+                .description("Time taken to rebuild the event location index from the database.")
+                .register(registry);
+        this.searchTimer =
+            Timer.builder(SEARCH_METER_NAME).description("Time taken to search the events near a location.").register(registry);
+        Gauge
+            .builder(EVENTS_METER_NAME, this, index -> index.grid.cellOf.size())
+            .description("Number of events held in the event location index.")
+            .baseUnit("events")
+            .register(registry);
+    }
+
+    /**
+     * Load the locations of all the events from the database.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        Map<Long, Cell.Builder> builders = new HashMap<>();
+        Grid rebuilt = new Grid();
+        for (Object[] location : eventRepository.findLocations()) {
+            long eventId = (Long) location[0];
+            double latitude = (Double) location[1];
+            double longitude = (Double) location[2];
+            long creatorId = location[3] == null ? NO_CREATOR : (Long) location[3];
+            long key = key(latitude, longitude);
+            builders.computeIfAbsent(key, cell -> new Cell.Builder()).add(eventId, latitude, longitude, creatorId);
+            rebuilt.cellOf.put(eventId, key);
+        }
+        builders.forEach((key, builder) -> rebuilt.cells.put(key, builder.build()));
+        grid = rebuilt;
+        long elapsed = System.nanoTime() - start;
+        rebuildTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        log.debug(
+            "Rebuilt the event location index with {} events in {} cells in {} ms",
+            rebuilt.cellOf.size(),
+            rebuilt.cells.size(),
+            TimeUnit.NANOSECONDS.toMillis(elapsed)
+        );
+    }
+
+    /**
+     * Update the index with the location of an event once the transaction saving it has committed.
+     *
+     * @param event the event that was created or updated.
+     */
+    public void refresh(Event event) {
+        if (!enabled || event.getId() == null) {
+            return;
+        }
+        long eventId = event.getId();
+        Double latitude = event.getLatitude();
+        Double longitude = event.getLongitude();
+        long creatorId = event.getCreatedBy() == null || event.getCreatedBy().getId() == null ? NO_CREATOR : event.getCreatedBy().getId();
+        if (latitude == null || longitude == null || latitude.isNaN() || longitude.isNaN()) {
+            TransactionUtils.afterCommit(() -> delete(eventId));
+        } else {
+            TransactionUtils.afterCommit(() -> put(eventId, latitude, longitude, creatorId));
+        }
+    }
+
+    /**
+     * Remove an event from the index once the transaction deleting it has committed.
+     *
+     * @param eventId the id of the event that was deleted.
+     */
+    public void remove(Long eventId) {
+        if (enabled && eventId != null) {
+            TransactionUtils.afterCommit(() -> delete(eventId));
+        }
+    }
+
+    synchronized void put(long eventId, double latitude, double longitude, long creatorId) {
+        Grid current = grid;
+        long key = key(latitude, longitude);
+        Long previousKey = current.cellOf.put(eventId, key);
+        if (previousKey != null && previousKey != key) {
+            current.cells.computeIfPresent(previousKey, (cell, events) -> events.without(eventId));
+        }
+        current.cells.compute(key, (cell, events) -> (events == null ? Cell.EMPTY : events).with(eventId, latitude, longitude, creatorId));
+    }
+
+    synchronized void delete(long eventId) {
+        Grid current = grid;
+        Long key = current.cellOf.remove(eventId);
+        if (key != null) {
+            current.cells.computeIfPresent(key, (cell, events) -> events.without(eventId));
+        }
+    }
+
+    /**
+     * @return whether searches are served by this index.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Search the events within a radius of a location.
+     *
+     * @param latitude the latitude of the location, in degrees.
+     * @param longitude the longitude of the location, in degrees.
+     * @param radiusKm the radius of the search, in kilometers.
+     * @param limit the maximum number of events.
+     * @return the nearest events within the radius, nearest first, ties going to the lower id.
+     */
+    public List<Hit> search(double latitude, double longitude, double radiusKm, int limit) {
+        return search(latitude, longitude, radiusKm, limit, creatorId -> false);
+    }
+
+    /**
+     * Search the events within a radius of a location, leaving out those of some creators. The creators are only
+     * checked for the events that would rank within the limit, so that a search still returns {@code limit} events
+     * when there are as many the user may see.
+     *
+     * @param latitude the latitude of the location, in degrees.
+     * @param longitude the longitude of the location, in degrees.
+     * @param radiusKm the radius of the search, in kilometers.
+     * @param limit the maximum number of events.
+     * @param hiddenCreator whether the events of the creator of the given id are left out.
+     * @return the nearest events within the radius, nearest first, ties going to the lower id.
+     */
+    public List<Hit> search(double latitude, double longitude, double radiusKm, int limit, LongPredicate hiddenCreator) {
+        long start = System.nanoTime();
+        Grid current = grid;
+        // the farthest events first, so that the head is the one to drop
+        PriorityQueue<Hit> nearest = new PriorityQueue<>(Math.min(limit, 1024) + 1, NEAREST_FIRST.reversed());
+        BoundingBox box = BoundingBox.of(latitude, longitude, radiusKm);
+        int firstColumn = 0;
+        int columnCount = columns;
+        if (!box.isAllLongitudes() && box.getLongitudeSpan() + 2 * cellSize < 360) {
+            firstColumn = column(box.getMinLongitude());
+            columnCount = Math.floorMod(column(box.getMaxLongitude()) - firstColumn, columns) + 1;
+        }
+        int lastRow = row(box.getMaxLatitude());
+        for (int row = row(box.getMinLatitude()); row <= lastRow; row++) {
+            for (int i = 0; i < columnCount; i++) {
+                Cell cell = current.cells.get((long) row * columns + (firstColumn + i) % columns);
+                if (cell == null) {
+                    continue;
+                }
+                for (int event = 0; event < cell.eventIds.length; event++) {
+                    double distance = distanceKm(latitude, longitude, cell.latitudes[event], cell.longitudes[event]);
+                    if (distance > radiusKm) {
+                        continue;
+                    }
+                    Hit hit = new Hit(cell.eventIds[event], distance);
+                    if (!nearest.isEmpty() && nearest.size() >= limit && NEAREST_FIRST.compare(hit, nearest.peek()) >= 0) {
+                        continue;
+                    }
+                    long creatorId = cell.creatorIds[event];
+                    if (creatorId != NO_CREATOR && hiddenCreator.test(creatorId)) {
+                        continue;
+                    }
+                    nearest.add(hit);
+                    if (nearest.size() > limit) {
+                        nearest.poll();
+                    }
+                }
+            }
+        }
+        List<Hit> hits = new ArrayList<>(nearest);
+        hits.sort(NEAREST_FIRST);
+        searchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return hits;
+    }
+
+    /**
+     * The great-circle distance between two locations, by the haversine formula.
+     */
+    public static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double sinLatitude = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+        double sinLongitude = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double cosLatitudes = Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2));
+        double a = sinLatitude * sinLatitude + cosLatitudes * sinLongitude * sinLongitude;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private long key(double latitude, double longitude) {
+        return (long) row(latitude) * columns + column(longitude);
+    }
+
+    private int row(double latitude) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((latitude + 90) / cellSize)));
+    }
+
+    private int column(double longitude) {
+        return Math.min(columns - 1, (int) Math.floor(((longitude + 180) % 360 + 360) % 360 / cellSize));
+    }
+
+    /**
+     * The smallest latitude/longitude box holding a circle on the globe.
+     * <p>
+     * The latitude range is the radius in both directions. Unless the circle holds a pole, its widest longitude span is
+     * where the meridians tangent to it meet it, which is wider than the radius away from the equator. The longitude
+     * range wraps around when it crosses the antimeridian, in which case the minimum is greater than the maximum.
+     */
+    public static final class BoundingBox {
+
+        private final double minLatitude;
+
+        private final double maxLatitude;
+
+        private final double minLongitude;
+
+        private final double maxLongitude;
+
+        private final double longitudeSpan;
+
+        private BoundingBox(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude, double longitudeSpan) {
+            this.minLatitude = minLatitude;
+            this.maxLatitude = maxLatitude;
+            this.minLongitude = minLongitude;
+            this.maxLongitude = maxLongitude;
+            this.longitudeSpan = longitudeSpan;
+        }
+
+        /**
+         * @param latitude the latitude of the center, in degrees.
+         * @param longitude the longitude of the center, in degrees.
+         * @param radiusKm the radius, in kilometers.
+         * @return the box holding the circle.
+         */
+        public static BoundingBox of(double latitude, double longitude, double radiusKm) {
+            double angle = radiusKm / EARTH_RADIUS_KM;
+            double minLatitude = latitude - Math.toDegrees(angle);
+            double maxLatitude = latitude + Math.toDegrees(angle);
+            if (minLatitude <= -90 || maxLatitude >= 90) {
+                return new BoundingBox(Math.max(minLatitude, -90), Math.min(maxLatitude, 90), -180, 180, 360);
+            }
+            double halfSpan = Math.toDegrees(Math.asin(Math.min(1, Math.sin(angle) / Math.cos(Math.toRadians(latitude)))));
+            if (halfSpan >= 180) {
+                return new BoundingBox(minLatitude, maxLatitude, -180, 180, 360);
+            }
+            double minLongitude = normalize(longitude - halfSpan);
+            double maxLongitude = normalize(longitude + halfSpan);
+            return new BoundingBox(minLatitude, maxLatitude, minLongitude, maxLongitude, 2 * halfSpan);
+        }
+
+        private static double normalize(double longitude) {
+            return longitude < -180 ? longitude + 360 : longitude > 180 ? longitude - 360 : longitude;
+        }
+
+        public double getMinLatitude() {
+            return minLatitude;
+        }
+
+        public double getMaxLatitude() {
+            return maxLatitude;
+        }
+
+        public double getMinLongitude() {
+            return minLongitude;
+        }
+
+        public double getMaxLongitude() {
+            return maxLongitude;
+        }
+
+        /**
+         * @return the width of the longitude range, in degrees.
+         */
+        public double getLongitudeSpan() {
+            return longitudeSpan;
+        }
+
+        /**
+         * @return whether the box covers every longitude, as it does around the poles.
+         */
+        public boolean isAllLongitudes() {
+            return longitudeSpan >= 360;
+        }
+
+        /**
+         * @return whether the longitude range crosses the antimeridian.
+         */
+        public boolean isWrapping() {
+            return minLongitude > maxLongitude;
+        }
+    }
+
+    /**
+     * An event found by a search.
+     */
+    public static final class Hit {
+
+        private final long eventId;
+
+        private final double distanceKm;
+
+        Hit(long eventId, double distanceKm) {
+            this.eventId = eventId;
+            this.distanceKm = distanceKm;
+        }
+
+        public long getEventId() {
+            return eventId;
+        }
+
+        public double getDistanceKm() {
+            return distanceKm;
+        }
+    }
+
+    /**
+     * The cells of the index, and the cell of every event so that updates find where it was.
+     */
+    private static final class Grid {
+
+        final Map<Long, Cell> cells = new ConcurrentHashMap<>();
+
+        final Map<Long, Long> cellOf = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * The events of a cell, immutable.
+     */
+    private static final class Cell {
+
+        static final Cell EMPTY = new Cell(new long[0], new double[0], new double[0], new long[0]);
+
+        final long[] eventIds;
+
+        final double[] latitudes;
+
+        final double[] longitudes;
+
+        final long[] creatorIds;
+
+        Cell(long[] eventIds, double[] latitudes, double[] longitudes, long[] creatorIds) {
+            this.eventIds = eventIds;
+            this.latitudes = latitudes;
+            this.longitudes = longitudes;
+            this.creatorIds = creatorIds;
+        }
+
+        Cell with(long eventId, double latitude, double longitude, long creatorId) {
+            Cell cell = without(eventId);
+            if (cell == null) {
+                cell = EMPTY;
+            }
+            int size = cell.eventIds.length;
+            long[] ids = Arrays.copyOf(cell.eventIds, size + 1);
+            double[] lats = Arrays.copyOf(cell.latitudes, size + 1);
+            double[] lons = Arrays.copyOf(cell.longitudes, size + 1);
+            long[] creators = Arrays.copyOf(cell.creatorIds, size + 1);
+            ids[size] = eventId;
+            lats[size] = latitude;
+            lons[size] = longitude;
+            creators[size] = creatorId;
+            return new Cell(ids, lats, lons, creators);
+        }
+
+        /**
+         * @return the cell without the event, or {@code null} if that leaves it empty, which removes it from the map.
+         */
+        Cell without(long eventId) {
+            int index = -1;
+            for (int i = 0; i < eventIds.length; i++) {
+                if (eventIds[i] == eventId) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return eventIds.length == 0 ? null : this;
+            }
+            if (eventIds.length == 1) {
+                return null;
+            }
+            return new Cell(remove(eventIds, index), remove(latitudes, index), remove(longitudes, index), remove(creatorIds, index));
+        }
+
+        private static long[] remove(long[] values, int index) {
+            long[] result = new long[values.length - 1];
+            System.arraycopy(values, 0, result, 0, index);
+            System.arraycopy(values, index + 1, result, index, result.length - index);
+            return result;
+        }
+
+        private static double[] remove(double[] values, int index) {
+            double[] result = new double[values.length - 1];
+            System.arraycopy(values, 0, result, 0, index);
+            System.arraycopy(values, index + 1, result, index, result.length - index);
+            return result;
+        }
+
+        /**
+         * Growable arrays for the rebuild.
+         */
+        static final class Builder {
+
+            private long[] eventIds = new long[4];
+
+            private double[] latitudes = new double[4];
+
+            private double[] longitudes = new double[4];
+
+            private long[] creatorIds = new long[4];
+
+            private int size;
+
+            void add(long eventId, double latitude, double longitude, long creatorId) {
+                if (size == eventIds.length) {
+                    eventIds = Arrays.copyOf(eventIds, size * 2);
+                    latitudes = Arrays.copyOf(latitudes, size * 2);
+                    longitudes = Arrays.copyOf(longitudes, size * 2);
+                    creatorIds = Arrays.copyOf(creatorIds, size * 2);
+                }
+                eventIds[size] = eventId;
+                latitudes[size] = latitude;
+                longitudes[size] = longitude;
+                creatorIds[size++] = creatorId;
+            }
+
+            Cell build() {
+                return new Cell(
+                    Arrays.copyOf(eventIds, size),
+                    Arrays.copyOf(latitudes, size),
+                    Arrays.copyOf(longitudes, size),
+                    Arrays.copyOf(creatorIds, size)
+                );
+            }
+        }
+    }
+}
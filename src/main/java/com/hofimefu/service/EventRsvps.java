@@ -0,0 +1,166 @@
+package com.hofimefu.service;
+
+import com.hofimefu.domain.Event;
+import com.hofimefu.domain.EvetUser;
+import com.hofimefu.repository.EventRepository;
+import com.hofimefu.repository.EventWaitlistRepository;
+import com.hofimefu.repository.EvetUserRepository;
+import com.hofimefu.repository.UserRepository;
+import com.hofimefu.service.dto.EventRsvpDTO;
+import java.util.List;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Answers of users to events: joining up to the capacity of an {@link Event}, waiting in line once it is full, and
+ * leaving.
+ * <p>
+ * An attendee is a user of an {@link EvetUser} of the event, and each join adds one such EvetUser, so no join ever
+ * rewrites the users of another. Seats are only taken by the conditional updates of the attendee counter of
+ * {@link EventRepository}, which serialize on the event row, so the counter never goes over the capacity. A user
+ * turned down is put on the waitlist; whenever a seat frees up, the head of the waitlist gets it, in the transaction
+ * freeing it. Joins made while anyone is waiting go to the waitlist too, so nobody jumps the line.
+ */
+@Service
+@Transactional
+public class EventRsvps {
+
+    private final Logger log = LoggerFactory.getLogger(EventRsvps.class);
+
+    private final EventRepository eventRepository;
+
+    private final EvetUserRepository evetUserRepository;
+
+    private final EventWaitlistRepository eventWaitlistRepository;
+
+    private final UserRepository userRepository;
+
+    public EventRsvps(
+        EventRepository eventRepository,
+        EvetUserRepository evetUserRepository,
+        EventWaitlistRepository eventWaitlistRepository,
+        UserRepository userRepository
+    ) {
+        this.eventRepository = eventRepository;
+        this.evetUserRepository = evetUserRepository;
+        this.eventWaitlistRepository = eventWaitlistRepository;
+        this.userRepository = userRepository;
+    }
+
+    /**
+     * Have a user join an event, or wait for a seat if it is full. Joining again changes nothing.
+     *
+     * @param eventId the id of the event.
+     * @param userId the id of the user.
+     * @return where the user stands with the event, empty if there is no such event.
+     */
+    public Optional<EventRsvpDTO> join(Long eventId, Long userId) {
+        if (!eventRepository.existsById(eventId)) {
+            return Optional.empty();
+        }
+        EventRsvpDTO current = find(eventId, userId);
+        if (current.getStatus() != EventRsvpDTO.Status.NONE) {
+            return Optional.of(current);
+        }
+        if (eventRepository.admit(eventId) > 0) {
+            // the event row is now locked: an earlier join of the same user has either committed, or not taken a seat
+            if (evetUserRepository.existsByEvent_IdAndUsers_Id(eventId, userId)) {
+                eventRepository.addAttendees(eventId, -1);
+            } else {
+                attend(eventId, userId);
+            }
+            return Optional.of(new EventRsvpDTO(eventId, EventRsvpDTO.Status.GOING, null));
+        }
+        eventWaitlistRepository.add(eventId, userId);
+        // a seat freed by a transaction that could not see the new entry yet is given now
+        promote(eventId);
+        return Optional.of(find(eventId, userId));
+    }
+
+    /**
+     * @param eventId the id of the event.
+     * @param userId the id of the user.
+     * @return where the user stands with the event, empty if there is no such event.
+     */
+    @Transactional(readOnly = true)
+    public Optional<EventRsvpDTO> findOne(Long eventId, Long userId) {
+        if (!eventRepository.existsById(eventId)) {
+            return Optional.empty();
+        }
+        return Optional.of(find(eventId, userId));
+    }
+
+    /**
+     * Have a user leave an event, or its waitlist. A seat freed up goes to the head of the waitlist.
+     *
+     * @param eventId the id of the event.
+     * @param userId the id of the user.
+     * @return whether there is such an event.
+     */
+    public boolean leave(Long eventId, Long userId) {
+        if (!eventRepository.existsById(eventId)) {
+            return false;
+        }
+        if (eventWaitlistRepository.remove(eventId, userId)) {
+            return true;
+        }
+        List<Long> evetUserIds = evetUserRepository.findIdsByEventIdAndUserId(eventId, userId);
+        if (evetUserIds.isEmpty()) {
+            return true;
+        }
+        int left = evetUserRepository.removeUser(evetUserIds, userId);
+        evetUserRepository.deleteEmpty(evetUserIds);
+        if (left > 0) {
+            eventRepository.addAttendees(eventId, -left);
+            promote(eventId);
+        }
+        return true;
+    }
+
+    /**
+     * Give the free seats of an event to the head of its waitlist, one at a time.
+     *
+     * @param eventId the id of the event.
+     * @return the number of users admitted.
+     */
+    public int promote(Long eventId) {
+        int promoted = 0;
+        while (eventRepository.admitFromWaitlist(eventId) > 0) {
+            Optional<Long> userId = eventWaitlistRepository.pollFirst(eventId);
+            if (userId.isEmpty()) {
+                // the remaining entries are being taken off by other transactions
+                eventRepository.addAttendees(eventId, -1);
+                break;
+            }
+            if (evetUserRepository.existsByEvent_IdAndUsers_Id(eventId, userId.get())) {
+                eventRepository.addAttendees(eventId, -1);
+            } else {
+                attend(eventId, userId.get());
+                promoted++;
+            }
+        }
+        if (promoted > 0) {
+            log.debug("Admitted {} users of the waitlist of Event : {}", promoted, eventId);
+        }
+        return promoted;
+    }
+
+    private EventRsvpDTO find(Long eventId, Long userId) {
+        if (evetUserRepository.existsByEvent_IdAndUsers_Id(eventId, userId)) {
+            return new EventRsvpDTO(eventId, EventRsvpDTO.Status.GOING, null);
+        }
+        return eventWaitlistRepository
+            .findPosition(eventId, userId)
+            .map(position -> new EventRsvpDTO(eventId, EventRsvpDTO.Status.WAITLISTED, position))
+            .orElseGet(() -> new EventRsvpDTO(eventId, EventRsvpDTO.Status.NONE, null));
+    }
+
+    private void attend(Long eventId, Long userId) {
+        evetUserRepository.save(
+            new EvetUser().event(eventRepository.getReferenceById(eventId)).addUser(userRepository.getReferenceById(userId))
+        );
+    }
+}
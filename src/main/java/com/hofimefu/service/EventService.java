@@ -1,8 +1,14 @@
 package com.hofimefu.service;
 
 import com.hofimefu.domain.Event;
+import com.hofimefu.service.dto.EventRsvpDTO;
+import com.hofimefu.service.dto.EventSummaryDTO;
+import com.hofimefu.service.dto.NearbyEventDTO;
+import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Optional;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 
 /**
  * Service Interface for managing {@link Event}.
@@ -39,6 +45,62 @@ public interface EventService {
      */
     List<Event> findAll();
 
+    /**
+     * Get a page of the upcoming events, in {@code (planned, id)} order.
+     *
+     * @param afterPlanned when the last event of the previous page is planned, or {@code null} for the first page.
+     * @param afterId the id of the last event of the previous page, or {@code null} for the first page.
+     * @param limit the maximum number of events to return.
+     * @return the list of events, from now on for the first page.
+     */
+    List<EventSummaryDTO> findUpcoming(ZonedDateTime afterPlanned, Long afterId, int limit);
+
+    /**
+     * Get the events within a radius of a location, nearest first.
+     *
+     * @param latitude the latitude of the location, in degrees.
+     * @param longitude the longitude of the location, in degrees.
+     * @param radiusKm the radius, in kilometers.
+     * @param limit the maximum number of events.
+     * @return the list of events, with their distance.
+     */
+    List<NearbyEventDTO> findNearby(double latitude, double longitude, double radiusKm, int limit);
+
+    /**
+     * Get the events within a radius of a location, nearest first, from the database.
+     *
+     * @param latitude the latitude of the location, in degrees.
+     * @param longitude the longitude of the location, in degrees.
+     * @param radiusKm the radius, in kilometers.
+     * @param pageable the pagination information, its sort is ignored.
+     * @return the page of events, with their distance.
+     */
+    Page<NearbyEventDTO> findNearby(double latitude, double longitude, double radiusKm, Pageable pageable);
+
+    /**
+     * Have the current user join an event, or its waitlist if it is full.
+     *
+     * @param id the id of the event.
+     * @return where the current user stands with the event, empty if there is no such event.
+     */
+    Optional<EventRsvpDTO> rsvp(Long id);
+
+    /**
+     * Get where the current user stands with an event.
+     *
+     * @param id the id of the event.
+     * @return the answer of the current user, empty if there is no such event.
+     */
+    Optional<EventRsvpDTO> findRsvp(Long id);
+
+    /**
+     * Have the current user leave an event, or its waitlist.
+     *
+     * @param id the id of the event.
+     * @return whether there is such an event.
+     */
+    boolean cancelRsvp(Long id);
+
     /**
      * Get the "id" event.
      *
@@ -0,0 +1,539 @@
+package com.hofimefu.service;
+
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.domain.Friend;
+import com.hofimefu.repository.FriendRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * In-memory index of the {@link Friend} graph, in compressed sparse row form.
+ * <p>
+ * The users having friends are held in a sorted {@code long[]}; the friends of the user at index {@code i} are the
+ * sorted slice {@code [offsets[i], offsets[i + 1])} of a single {@code long[]} holding both directions of every
+ * friendship. A lookup is therefore two binary searches over primitive arrays and allocates nothing.
+ * <p>
+ * Like {@link RecentGlobalChatCache}, writers copy the arrays into a new immutable snapshot and publish it through a
+ * volatile field, so readers never lock. Committed changes are queued, and whoever applies the queue applies all of it
+ * with a single copy of the arrays, so a burst of changes does not copy the graph once per change; the committing
+ * thread returns once its change is applied, or left to the thread replacing the graph. Blocked friendships and pending
+ * requests are not part of the graph.
+ * <p>
+ * The state of a changed friendship is read in the transaction changing it, so two transactions changing the same
+ * friendship may have their changes applied in the opposite order to their commits. The graph is rebuilt from the
+ * database every night to repair such drifts.
+ */
+@Service
+public class FriendGraph {
+
+    public static final String EDGES_METER_NAME = "friend.graph.edges";
+    public static final String MEMORY_METER_NAME = "friend.graph.memory";
+    public static final String REBUILD_METER_NAME = "friend.graph.rebuild";
+
+    /** Above this ratio between the two rows, intersecting by binary search beats merging. */
+    private static final int GALLOP_RATIO = 16;
+
+    private final Logger log = LoggerFactory.getLogger(FriendGraph.class);
+
+    private final FriendRepository friendRepository;
+
+    private final ApplicationProperties.FriendGraph.Rebuild properties;
+
+    private final Timer rebuildTimer;
+
+    /** The committed changes not applied yet: whether each changed pair of users are friends. */
+    private final Map<Pair, Boolean> pending = new ConcurrentHashMap<>();
+
+    /** Held by whoever replaces the graph. */
+    private final ReentrantLock updateLock = new ReentrantLock();
+
+    private volatile Csr csr = Csr.EMPTY;
+
+    public FriendGraph(FriendRepository friendRepository, ApplicationProperties applicationProperties, MeterRegistry registry) {
+        this.friendRepository = friendRepository;
+        this.properties = applicationProperties.getFriendGraph().getRebuild();
+        this.rebuildTimer =
+            Timer.builder(REBUILD_METER_NAME).description("Time taken to rebuild the friend graph from the database.").register(registry);
+        Gauge
+            .builder(EDGES_METER_NAME, this, graph -> graph.csr.neighbors.length / 2)
+            .description("Number of friendships held in the friend graph.")
+            .baseUnit("friendships")
+            .register(registry);
+        Gauge
+            .builder(MEMORY_METER_NAME, this, graph -> graph.csr.sizeInBytes())
+            .description("Memory held by the arrays of the friend graph.")
+            .baseUnit("bytes")
+            .register(registry);
+    }
+
+    /**
+     * Rebuild the graph, to repair the changes applied out of order.
+     * <p>
+     * This is scheduled to get fired every night, at 03:45 (am) by default, before the jobs walking the graph.
+     */
+    @Scheduled(cron = "${application.friend-graph.rebuild.cron:0 45 3 * * ?}")
+    public void scheduledRun() {
+        if (properties.isEnabled()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Load the whole graph from the database.
+     * <p>
+     * The changes committed while it loads are queued, and applied on top of the new graph.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        updateLock.lock();
+        try {
+            long start = System.nanoTime();
+            List<Object[]> pairs = friendRepository.findFriendshipPairs();
+            long[] sources = new long[pairs.size() * 2];
+            long[] targets = new long[pairs.size() * 2];
+            int count = 0;
+            for (Object[] pair : pairs) {
+                long user1 = (Long) pair[0];
+                long user2 = (Long) pair[1];
+                if (user1 != user2) {
+                    sources[count] = user1;
+                    targets[count++] = user2;
+                    sources[count] = user2;
+                    targets[count++] = user1;
+                }
+            }
+            csr = Csr.of(sources, targets, count);
+            long elapsed = System.nanoTime() - start;
+            rebuildTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            log.debug(
+                "Rebuilt the friend graph with {} friendships in {} ms",
+                csr.neighbors.length / 2,
+                TimeUnit.NANOSECONDS.toMillis(elapsed)
+            );
+        } finally {
+            updateLock.unlock();
+        }
+        applyPending();
+    }
+
+    /**
+     * Update the graph with the current state of a friendship once the transaction changing it has committed.
+     * <p>
+     * The state is read in the current transaction, after its changes are flushed, so that blocked statuses
+     * are accounted for exactly like on {@link #rebuild()}.
+     *
+     * @param friend the friendship that was created, updated or deleted, with its users as they were changed.
+     */
+    public void refresh(Friend friend) {
+        if (friend.getUser1() == null || friend.getUser2() == null) {
+            return;
+        }
+        refresh(friend.getUser1().getId(), friend.getUser2().getId());
+    }
+
+    /**
+     * Update the graph with the current state of the friendship between two users once the transaction has committed.
+     *
+     * @param user1 the id of a user.
+     * @param user2 the id of the other user.
+     */
+    public void refresh(Long user1, Long user2) {
+        if (user1 == null || user2 == null || user1.equals(user2)) {
+            return;
+        }
+        boolean friends = friendRepository.existsFriendship(Math.min(user1, user2), Math.max(user1, user2));
+        TransactionUtils.afterCommit(() -> set(user1, user2, friends));
+    }
+
+    /**
+     * Add friendships created in the current transaction once it has committed, with a single copy of the graph.
+     * <p>
+     * Unlike {@link #refresh(Friend)}, they are not read back, so they must all be friendships that count as such.
+     *
+     * @param friendships the friendships that were created.
+     */
+    public void addAll(Collection<Friend> friendships) {
+        long[] sources = new long[friendships.size()];
+        long[] targets = new long[friendships.size()];
+        int count = 0;
+        for (Friend friend : friendships) {
+            sources[count] = friend.getUser1().getId();
+            targets[count++] = friend.getUser2().getId();
+        }
+        int arcs = count;
+        TransactionUtils.afterCommit(() -> add(sources, targets, arcs));
+    }
+
+    void add(long[] sources, long[] targets, int count) {
+        for (int i = 0; i < count; i++) {
+            if (sources[i] != targets[i]) {
+                pending.put(Pair.of(sources[i], targets[i]), true);
+            }
+        }
+        applyPending();
+    }
+
+    void set(long user1, long user2, boolean friends) {
+        pending.put(Pair.of(user1, user2), friends);
+        applyPending();
+    }
+
+    /**
+     * Apply the queued changes, unless another thread is replacing the graph: that thread applies them once done.
+     */
+    private void applyPending() {
+        // a change queued while the holder was releasing the lock is seen by the check of the next round
+        while (!pending.isEmpty() && updateLock.tryLock()) {
+            try {
+                Map<Pair, Boolean> changes = new HashMap<>();
+                for (Map.Entry<Pair, Boolean> change : pending.entrySet()) {
+                    if (pending.remove(change.getKey(), change.getValue())) {
+                        changes.put(change.getKey(), change.getValue());
+                    }
+                }
+                csr = csr.withChanges(changes);
+            } finally {
+                updateLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return the current graph, immutable, for the jobs that walk all of it.
+     */
+    Csr snapshot() {
+        return csr;
+    }
+
+    /**
+     * @param userId the id of a user.
+     * @return the number of friends of the user.
+     */
+    public int degree(long userId) {
+        Csr current = csr;
+        int node = Arrays.binarySearch(current.nodes, userId);
+        return node < 0 ? 0 : current.offsets[node + 1] - current.offsets[node];
+    }
+
+    /**
+     * @param user1 the id of a user.
+     * @param user2 the id of the other user.
+     * @return whether the users are friends.
+     */
+    public boolean areFriends(long user1, long user2) {
+        return csr.contains(user1, user2);
+    }
+
+    /**
+     * @param userId the id of a user.
+     * @return the ids of the friends of the user, in ascending order.
+     */
+    public long[] friendIds(long userId) {
+        Csr current = csr;
+        int node = Arrays.binarySearch(current.nodes, userId);
+        return node < 0 ? new long[0] : Arrays.copyOfRange(current.neighbors, current.offsets[node], current.offsets[node + 1]);
+    }
+
+    /**
+     * Intersect the friends of two users, without allocating.
+     * <p>
+     * The two sorted rows are merged, or when one is much shorter than the other, its ids are binary searched in the
+     * longer one, so that a user with few friends costs little whoever the other user is.
+     *
+     * @param user1 the id of a user.
+     * @param user2 the id of the other user.
+     * @param offset the number of mutual friends to skip.
+     * @param page receives the ids of the mutual friends following the skipped ones, in ascending order, up to its length.
+     * @return the number of mutual friends.
+     */
+    public int mutualFriends(long user1, long user2, int offset, long[] page) {
+        Csr current = csr;
+        int node1 = Arrays.binarySearch(current.nodes, user1);
+        int node2 = Arrays.binarySearch(current.nodes, user2);
+        if (node1 < 0 || node2 < 0) {
+            return 0;
+        }
+        int from1 = current.offsets[node1];
+        int to1 = current.offsets[node1 + 1];
+        int from2 = current.offsets[node2];
+        int to2 = current.offsets[node2 + 1];
+        if (to1 - from1 > to2 - from2) {
+            int from = from1;
+            int to = to1;
+            from1 = from2;
+            to1 = to2;
+            from2 = from;
+            to2 = to;
+        }
+        long[] neighbors = current.neighbors;
+        int count = 0;
+        if ((long) (to1 - from1) * GALLOP_RATIO < to2 - from2) {
+            int low = from2;
+            for (int i = from1; i < to1 && low < to2; i++) {
+                int found = Arrays.binarySearch(neighbors, low, to2, neighbors[i]);
+                if (found >= 0) {
+                    count = collect(neighbors[i], count, offset, page);
+                    low = found + 1;
+                } else {
+                    low = -found - 1;
+                }
+            }
+            return count;
+        }
+        int i = from1;
+        int j = from2;
+        while (i < to1 && j < to2) {
+            long id1 = neighbors[i];
+            long id2 = neighbors[j];
+            if (id1 < id2) {
+                i++;
+            } else if (id1 > id2) {
+                j++;
+            } else {
+                count = collect(id1, count, offset, page);
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    private static int collect(long id, int count, int offset, long[] page) {
+        if (count >= offset && count - offset < page.length) {
+            page[count - offset] = id;
+        }
+        return count + 1;
+    }
+
+    static final class Csr {
+
+        static final Csr EMPTY = new Csr(new long[0], new int[] { 0 }, new long[0]);
+
+        /** The ids of the users having friends, ascending. */
+        final long[] nodes;
+
+        /** The friends of {@code nodes[i]} are {@code neighbors[offsets[i]]} to {@code neighbors[offsets[i + 1] - 1]}. */
+        final int[] offsets;
+
+        final long[] neighbors;
+
+        Csr(long[] nodes, int[] offsets, long[] neighbors) {
+            this.nodes = nodes;
+            this.offsets = offsets;
+            this.neighbors = neighbors;
+        }
+
+        /**
+         * Build the rows from unordered arcs, dropping duplicates.
+         */
+        static Csr of(long[] sources, long[] targets, int count) {
+            long[] nodes = Arrays.copyOf(sources, count);
+            Arrays.sort(nodes);
+            int distinct = 0;
+            for (int i = 0; i < count; i++) {
+                if (i == 0 || nodes[i] != nodes[i - 1]) {
+                    nodes[distinct++] = nodes[i];
+                }
+            }
+            nodes = Arrays.copyOf(nodes, distinct);
+            int[] offsets = new int[distinct + 1];
+            for (int i = 0; i < count; i++) {
+                offsets[Arrays.binarySearch(nodes, sources[i]) + 1]++;
+            }
+            for (int i = 0; i < distinct; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            long[] neighbors = new long[count];
+            int[] cursors = Arrays.copyOf(offsets, distinct);
+            for (int i = 0; i < count; i++) {
+                neighbors[cursors[Arrays.binarySearch(nodes, sources[i])]++] = targets[i];
+            }
+            // sort every row and compact the duplicates away
+            int size = 0;
+            for (int node = 0; node < distinct; node++) {
+                int from = offsets[node];
+                int to = offsets[node + 1];
+                Arrays.sort(neighbors, from, to);
+                offsets[node] = size;
+                for (int i = from; i < to; i++) {
+                    if (i == from || neighbors[i] != neighbors[i - 1]) {
+                        neighbors[size++] = neighbors[i];
+                    }
+                }
+            }
+            offsets[distinct] = size;
+            return new Csr(nodes, offsets, size == count ? neighbors : Arrays.copyOf(neighbors, size));
+        }
+
+        /**
+         * Set whether pairs of users are friends, in both directions, with a single copy of the rows.
+         */
+        Csr withChanges(Map<Pair, Boolean> changes) {
+            if (changes.size() == 1) {
+                // the common case: patching the rows in place costs less than sorting them again
+                Map.Entry<Pair, Boolean> change = changes.entrySet().iterator().next();
+                return withChange(change.getKey().lower, change.getKey().higher, change.getValue());
+            }
+            boolean[] removed = new boolean[neighbors.length];
+            int removedCount = 0;
+            long[] addedSources = new long[changes.size() * 2];
+            long[] addedTargets = new long[changes.size() * 2];
+            int added = 0;
+            for (Map.Entry<Pair, Boolean> change : changes.entrySet()) {
+                long lower = change.getKey().lower;
+                long higher = change.getKey().higher;
+                boolean friends = contains(lower, higher);
+                if (change.getValue() && !friends) {
+                    addedSources[added] = lower;
+                    addedTargets[added++] = higher;
+                    addedSources[added] = higher;
+                    addedTargets[added++] = lower;
+                } else if (!change.getValue() && friends) {
+                    removed[position(lower, higher)] = true;
+                    removed[position(higher, lower)] = true;
+                    removedCount += 2;
+                }
+            }
+            if (added == 0 && removedCount == 0) {
+                return this;
+            }
+            long[] sources = Arrays.copyOf(addedSources, neighbors.length - removedCount + added);
+            long[] targets = Arrays.copyOf(addedTargets, sources.length);
+            int count = added;
+            for (int node = 0; node < nodes.length; node++) {
+                for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+                    if (!removed[i]) {
+                        sources[count] = nodes[node];
+                        targets[count++] = neighbors[i];
+                    }
+                }
+            }
+            return of(sources, targets, count);
+        }
+
+        private Csr withChange(long user1, long user2, boolean friends) {
+            if (contains(user1, user2) == friends) {
+                return this;
+            }
+            return friends ? withArc(user1, user2).withArc(user2, user1) : withoutArc(user1, user2).withoutArc(user2, user1);
+        }
+
+        private int position(long source, long target) {
+            int node = Arrays.binarySearch(nodes, source);
+            return Arrays.binarySearch(neighbors, offsets[node], offsets[node + 1], target);
+        }
+
+        boolean contains(long source, long target) {
+            int node = Arrays.binarySearch(nodes, source);
+            return node >= 0 && Arrays.binarySearch(neighbors, offsets[node], offsets[node + 1], target) >= 0;
+        }
+
+        Csr withArc(long source, long target) {
+            long[] updatedNodes = nodes;
+            int[] updatedOffsets;
+            int node = Arrays.binarySearch(nodes, source);
+            if (node < 0) {
+                // add an empty row for the source
+                node = -node - 1;
+                updatedNodes = new long[nodes.length + 1];
+                System.arraycopy(nodes, 0, updatedNodes, 0, node);
+                updatedNodes[node] = source;
+                System.arraycopy(nodes, node, updatedNodes, node + 1, nodes.length - node);
+                updatedOffsets = new int[offsets.length + 1];
+                System.arraycopy(offsets, 0, updatedOffsets, 0, node + 1);
+                System.arraycopy(offsets, node, updatedOffsets, node + 1, offsets.length - node);
+            } else {
+                updatedOffsets = offsets.clone();
+            }
+            int position = -Arrays.binarySearch(neighbors, updatedOffsets[node], updatedOffsets[node + 1], target) - 1;
+            long[] updatedNeighbors = new long[neighbors.length + 1];
+            System.arraycopy(neighbors, 0, updatedNeighbors, 0, position);
+            updatedNeighbors[position] = target;
+            System.arraycopy(neighbors, position, updatedNeighbors, position + 1, neighbors.length - position);
+            for (int i = node + 1; i < updatedOffsets.length; i++) {
+                updatedOffsets[i]++;
+            }
+            return new Csr(updatedNodes, updatedOffsets, updatedNeighbors);
+        }
+
+        Csr withoutArc(long source, long target) {
+            int node = Arrays.binarySearch(nodes, source);
+            int position = Arrays.binarySearch(neighbors, offsets[node], offsets[node + 1], target);
+            long[] updatedNeighbors = new long[neighbors.length - 1];
+            System.arraycopy(neighbors, 0, updatedNeighbors, 0, position);
+            System.arraycopy(neighbors, position + 1, updatedNeighbors, position, neighbors.length - position - 1);
+            if (offsets[node + 1] - offsets[node] > 1) {
+                int[] updatedOffsets = offsets.clone();
+                for (int i = node + 1; i < updatedOffsets.length; i++) {
+                    updatedOffsets[i]--;
+                }
+                return new Csr(nodes, updatedOffsets, updatedNeighbors);
+            }
+            // drop the row, now empty
+            long[] updatedNodes = new long[nodes.length - 1];
+            System.arraycopy(nodes, 0, updatedNodes, 0, node);
+            System.arraycopy(nodes, node + 1, updatedNodes, node, nodes.length - node - 1);
+            int[] updatedOffsets = new int[offsets.length - 1];
+            System.arraycopy(offsets, 0, updatedOffsets, 0, node + 1);
+            for (int i = node + 1; i < updatedOffsets.length; i++) {
+                updatedOffsets[i] = offsets[i + 1] - 1;
+            }
+            return new Csr(updatedNodes, updatedOffsets, updatedNeighbors);
+        }
+
+        long sizeInBytes() {
+            return (long) nodes.length * Long.BYTES + (long) offsets.length * Integer.BYTES + (long) neighbors.length * Long.BYTES;
+        }
+    }
+
+    /**
+     * A pair of users, lower id first.
+     */
+    static final class Pair {
+
+        final long lower;
+
+        final long higher;
+
+        private Pair(long lower, long higher) {
+            this.lower = lower;
+            this.higher = higher;
+        }
+
+        static Pair of(long user1, long user2) {
+            return new Pair(Math.min(user1, user2), Math.max(user1, user2));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Pair)) {
+                return false;
+            }
+            Pair other = (Pair) o;
+            return lower == other.lower && higher == other.higher;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(lower) * 31 + Long.hashCode(higher);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.hofimefu.service;
+
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.service.dto.FriendGraphReportDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Offline analytics of the friend graph: degree distribution, connected components and clustering coefficients.
+ * <p>
+ * The job walks the immutable snapshot of {@link FriendGraph}, so it neither reads the {@code friend} table nor blocks
+ * the graph's writers. The arcs are first resolved to row indices, then the components are found with a lock-free
+ * union-find and the triangles of every user are counted by intersecting sorted rows, both split over a dedicated
+ * {@link ForkJoinPool}. The last report is kept in memory for the admin endpoint.
+ */
+@Service
+public class FriendGraphAnalytics {
+
+    public static final String RUN_METER_NAME = "friend.graph.analytics";
+
+    /** Users per task, below which a task is not split any further. */
+    private static final int THRESHOLD = 1024;
+
+    private final Logger log = LoggerFactory.getLogger(FriendGraphAnalytics.class);
+
+    private final FriendGraph friendGraph;
+
+    private final ApplicationProperties.FriendGraph.Analytics properties;
+
+    private final Timer runTimer;
+
+    private volatile FriendGraphReportDTO lastReport;
+
+    public FriendGraphAnalytics(FriendGraph friendGraph, ApplicationProperties applicationProperties, MeterRegistry registry) {
+        this.friendGraph = friendGraph;
+        this.properties = applicationProperties.getFriendGraph().getAnalytics();
+        this.runTimer = Timer.builder(RUN_METER_NAME).description("Time taken to compute the friend graph analytics.").register(registry);
+    }
+
+    /**
+     * Compute the analytics.
+     * <p>
+     * This is scheduled to get fired every night, at 04:00 (am) by default.
+     */
+    @Scheduled(cron = "${application.friend-graph.analytics.cron:0 0 4 * * ?}")
+    public void scheduledRun() {
+        if (properties.isEnabled()) {
+            run();
+        }
+    }
+
+    /**
+     * @return the report of the last run, if any.
+     */
+    public Optional<FriendGraphReportDTO> findLastReport() {
+        return Optional.ofNullable(lastReport);
+    }
+
+    /**
+     * Compute the analytics of the current friend graph, one run at a time.
+     *
+     * @return the report, which is kept as the last one.
+     */
+    public synchronized FriendGraphReportDTO run() {
+        int parallelism = properties.getParallelism() > 0 ? properties.getParallelism() : Runtime.getRuntime().availableProcessors();
+        List<MemoryPoolMXBean> heapPools = ManagementFactory
+            .getMemoryPoolMXBeans()
+            .stream()
+            .filter(memoryPool -> memoryPool.getType() == MemoryType.HEAP && memoryPool.isValid())
+            .collect(Collectors.toList());
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long start = System.nanoTime();
+
+        FriendGraph.Csr csr = friendGraph.snapshot();
+        FriendGraphReportDTO report = new FriendGraphReportDTO();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            int users = csr.nodes.length;
+            int[] targets = new int[csr.neighbors.length];
+            pool.invoke(new ResolveTargets(csr, targets, 0, users));
+
+            AtomicIntegerArray parents = new AtomicIntegerArray(users);
+            for (int node = 0; node < users; node++) {
+                parents.set(node, node);
+            }
+            pool.invoke(new Union(csr.offsets, targets, parents, 0, users));
+            int[] componentSizes = new int[users];
+            int components = 0;
+            int largestComponent = 0;
+            for (int node = 0; node < users; node++) {
+                int root = find(parents, node);
+                if (componentSizes[root]++ == 0) {
+                    components++;
+                }
+                largestComponent = Math.max(largestComponent, componentSizes[root]);
+            }
+
+            Clustering clustering = pool.invoke(new CountTriangles(csr.offsets, targets, 0, users));
+
+            SortedMap<Integer, Long> degreeDistribution = new TreeMap<>();
+            int maxDegree = 0;
+            for (int node = 0; node < users; node++) {
+                int degree = csr.offsets[node + 1] - csr.offsets[node];
+                degreeDistribution.merge(degree, 1L, Long::sum);
+                maxDegree = Math.max(maxDegree, degree);
+            }
+
+            report.setUsers(users);
+            report.setFriendships(csr.neighbors.length / 2);
+            report.setDegreeDistribution(degreeDistribution);
+            report.setMaxDegree(maxDegree);
+            report.setMeanDegree(users == 0 ? 0 : (double) csr.neighbors.length / users);
+            report.setComponents(components);
+            report.setLargestComponent(largestComponent);
+            // every triangle is counted once by each of its users
+            report.setTriangles(clustering.triangles / 3);
+            report.setAverageClustering(users == 0 ? 0 : clustering.localCoefficients / users);
+            report.setTransitivity(clustering.wedges == 0 ? 0 : (double) clustering.triangles / clustering.wedges);
+        } finally {
+            pool.shutdown();
+        }
+
+        long elapsed = System.nanoTime() - start;
+        runTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        report.setComputedAt(Instant.now());
+        report.setParallelism(parallelism);
+        report.setDurationMillis(TimeUnit.NANOSECONDS.toMillis(elapsed));
+        report.setGraphBytes(csr.sizeInBytes());
+        report.setPeakHeapBytes(heapPools.stream().mapToLong(memoryPool -> memoryPool.getPeakUsage().getUsed()).sum());
+        lastReport = report;
+        log.info("Computed the friend graph analytics: {}", report);
+        return report;
+    }
+
+    private static int find(AtomicIntegerArray parents, int node) {
+        while (true) {
+            int parent = parents.get(node);
+            if (parent == node) {
+                return node;
+            }
+            int grandParent = parents.get(parent);
+            if (grandParent != parent) {
+                // path halving, lost races only leave a longer path
+                parents.compareAndSet(node, parent, grandParent);
+            }
+            node = parent;
+        }
+    }
+
+    /**
+     * Resolve the user ids of the arcs of a range of rows to the indices of their rows.
+     */
+    private static final class ResolveTargets extends RecursiveAction {
+
+        private final FriendGraph.Csr csr;
+
+        private final int[] targets;
+
+        private final int from;
+
+        private final int to;
+
+        ResolveTargets(FriendGraph.Csr csr, int[] targets, int from, int to) {
+            this.csr = csr;
+            this.targets = targets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ResolveTargets(csr, targets, from, middle), new ResolveTargets(csr, targets, middle, to));
+                return;
+            }
+            for (int arc = csr.offsets[from]; arc < csr.offsets[to]; arc++) {
+                targets[arc] = Arrays.binarySearch(csr.nodes, csr.neighbors[arc]);
+            }
+        }
+    }
+
+    /**
+     * Union the rows of a range with their friends, linking the root of greater index under the other one so that
+     * concurrent unions cannot make a cycle.
+     */
+    private static final class Union extends RecursiveAction {
+
+        private final int[] offsets;
+
+        private final int[] targets;
+
+        private final AtomicIntegerArray parents;
+
+        private final int from;
+
+        private final int to;
+
+        Union(int[] offsets, int[] targets, AtomicIntegerArray parents, int from, int to) {
+            this.offsets = offsets;
+            this.targets = targets;
+            this.parents = parents;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Union(offsets, targets, parents, from, middle), new Union(offsets, targets, parents, middle, to));
+                return;
+            }
+            for (int node = from; node < to; node++) {
+                for (int arc = offsets[node]; arc < offsets[node + 1]; arc++) {
+                    // both directions are stored, one is enough
+                    if (targets[arc] > node) {
+                        union(node, targets[arc]);
+                    }
+                }
+            }
+        }
+
+        private void union(int node, int other) {
+            while (true) {
+                int root = find(parents, node);
+                int otherRoot = find(parents, other);
+                if (root == otherRoot) {
+                    return;
+                }
+                int child = Math.max(root, otherRoot);
+                if (parents.compareAndSet(child, child, Math.min(root, otherRoot))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sums of the triangles, connected triples and local clustering coefficients of a range of rows.
+     */
+    private static final class Clustering {
+
+        long triangles;
+
+        long wedges;
+
+        double localCoefficients;
+
+        Clustering add(Clustering other) {
+            triangles += other.triangles;
+            wedges += other.wedges;
+            localCoefficients += other.localCoefficients;
+            return this;
+        }
+    }
+
+    /**
+     * Count the triangles of every row of a range: the friendships between its friends, as the sum over its friends
+     * of the friends they have in common with it, halved. Rows are sorted, so every intersection is a merge.
+     */
+    private static final class CountTriangles extends RecursiveTask<Clustering> {
+
+        private final int[] offsets;
+
+        private final int[] targets;
+
+        private final int from;
+
+        private final int to;
+
+        CountTriangles(int[] offsets, int[] targets, int from, int to) {
+            this.offsets = offsets;
+            this.targets = targets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Clustering compute() {
+            if (to - from > THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                CountTriangles left = new CountTriangles(offsets, targets, from, middle);
+                left.fork();
+                Clustering right = new CountTriangles(offsets, targets, middle, to).compute();
+                return left.join().add(right);
+            }
+            Clustering clustering = new Clustering();
+            for (int node = from; node < to; node++) {
+                long degree = offsets[node + 1] - offsets[node];
+                if (degree < 2) {
+                    continue;
+                }
+                long common = 0;
+                for (int arc = offsets[node]; arc < offsets[node + 1]; arc++) {
+                    int friend = targets[arc];
+                    common += intersection(offsets[node], offsets[node + 1], offsets[friend], offsets[friend + 1]);
+                }
+                long triangles = common / 2;
+                long wedges = degree * (degree - 1) / 2;
+                clustering.triangles += triangles;
+                clustering.wedges += wedges;
+                clustering.localCoefficients += (double) triangles / wedges;
+            }
+            return clustering;
+        }
+
+        private int intersection(int from1, int to1, int from2, int to2) {
+            int count = 0;
+            while (from1 < to1 && from2 < to2) {
+                if (targets[from1] < targets[from2]) {
+                    from1++;
+                } else if (targets[from1] > targets[from2]) {
+                    from2++;
+                } else {
+                    count++;
+                    from1++;
+                    from2++;
+                }
+            }
+            return count;
+        }
+    }
+}
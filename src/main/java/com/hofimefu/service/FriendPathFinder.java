@@ -0,0 +1,297 @@
+package com.hofimefu.service;
+
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.service.dto.FriendPathDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.springframework.stereotype.Service;
+
+/**
+ * Degrees of separation: shortest paths between users in the snapshot of {@link FriendGraph}.
+ * <p>
+ * The search is a breadth-first search from both users at once, expanding one whole level of the side with the fewer
+ * friends to scan at a time, so that it only explores about the square root of what a one-sided search would. The
+ * visited users of each side and the user they were reached from are kept in primitive open-addressing maps. A search
+ * gives up beyond the maximum depth, or once it has scanned the work budget worth of friends.
+ */
+@Service
+public class FriendPathFinder {
+
+    public static final String SEARCH_METER_NAME = "friend.graph.path";
+
+    private final FriendGraph friendGraph;
+
+    private final ApplicationProperties.FriendGraph.Path properties;
+
+    private final Map<FriendPathDTO.Outcome, Timer> searchTimers = new EnumMap<>(FriendPathDTO.Outcome.class);
+
+    public FriendPathFinder(FriendGraph friendGraph, ApplicationProperties applicationProperties, MeterRegistry registry) {
+        this.friendGraph = friendGraph;
+        this.properties = applicationProperties.getFriendGraph().getPath();
+        for (FriendPathDTO.Outcome outcome : FriendPathDTO.Outcome.values()) {
+            searchTimers.put(
+                outcome,
+                Timer
+                    .builder(SEARCH_METER_NAME)
+                    .description("Time taken to search for the shortest path between two users.")
+                    .tag("outcome", outcome.name().toLowerCase())
+                    .register(registry)
+            );
+        }
+    }
+
+    /**
+     * Search for a shortest path between two users, within the configured depth and work budget.
+     *
+     * @param from the id of the first user.
+     * @param to the id of the last user.
+     * @return how the search ended, with the path if one was found.
+     */
+    public Search find(long from, long to) {
+        long start = System.nanoTime();
+        Search search = search(friendGraph.snapshot(), from, to, properties.getMaxDepth(), properties.getWorkBudget());
+        searchTimers.get(search.getOutcome()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return search;
+    }
+
+    static Search search(FriendGraph.Csr csr, long from, long to, int maxDepth, int workBudget) {
+        if (from == to) {
+            return new Search(FriendPathDTO.Outcome.FOUND, new long[] { from }, 0);
+        }
+        ParentMap forward = new ParentMap();
+        ParentMap backward = new ParentMap();
+        forward.put(from, from);
+        backward.put(to, to);
+        Frontier forwardFrontier = new Frontier(from);
+        Frontier backwardFrontier = new Frontier(to);
+        int scanned = 0;
+        for (int depth = 0; depth < maxDepth && forwardFrontier.size > 0 && backwardFrontier.size > 0; depth++) {
+            boolean expandForward = forwardFrontier.arcs(csr) <= backwardFrontier.arcs(csr);
+            Frontier frontier = expandForward ? forwardFrontier : backwardFrontier;
+            ParentMap visited = expandForward ? forward : backward;
+            ParentMap other = expandForward ? backward : forward;
+            Frontier next = new Frontier();
+            for (int i = 0; i < frontier.size; i++) {
+                long user = frontier.users[i];
+                int node = Arrays.binarySearch(csr.nodes, user);
+                if (node < 0) {
+                    continue;
+                }
+                for (int arc = csr.offsets[node]; arc < csr.offsets[node + 1]; arc++) {
+                    if (++scanned > workBudget) {
+                        return new Search(FriendPathDTO.Outcome.BUDGET_EXCEEDED, null, workBudget);
+                    }
+                    long friend = csr.neighbors[arc];
+                    if (visited.contains(friend)) {
+                        continue;
+                    }
+                    visited.put(friend, user);
+                    if (other.contains(friend)) {
+                        // a whole level is expanded at a time, so the first meeting is on a shortest path
+                        return new Search(FriendPathDTO.Outcome.FOUND, path(forward, backward, friend), scanned);
+                    }
+                    next.add(friend);
+                }
+            }
+            if (expandForward) {
+                forwardFrontier = next;
+            } else {
+                backwardFrontier = next;
+            }
+        }
+        return new Search(FriendPathDTO.Outcome.NOT_FOUND, null, scanned);
+    }
+
+    private static long[] path(ParentMap forward, ParentMap backward, long meeting) {
+        int forwardLength = 0;
+        for (long user = meeting; forward.get(user) != user; user = forward.get(user)) {
+            forwardLength++;
+        }
+        int backwardLength = 0;
+        for (long user = meeting; backward.get(user) != user; user = backward.get(user)) {
+            backwardLength++;
+        }
+        long[] path = new long[forwardLength + backwardLength + 1];
+        long user = meeting;
+        for (int i = forwardLength; i > 0; i--) {
+            path[i] = user;
+            user = forward.get(user);
+        }
+        path[0] = user;
+        user = meeting;
+        for (int i = forwardLength + 1; i < path.length; i++) {
+            user = backward.get(user);
+            path[i] = user;
+        }
+        return path;
+    }
+
+    /**
+     * How a search ended.
+     */
+    public static final class Search {
+
+        private final FriendPathDTO.Outcome outcome;
+
+        private final long[] path;
+
+        private final int scanned;
+
+        Search(FriendPathDTO.Outcome outcome, long[] path, int scanned) {
+            this.outcome = outcome;
+            this.path = path;
+            this.scanned = scanned;
+        }
+
+        public FriendPathDTO.Outcome getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * @return the ids of the users of the path, from the first user to the last one, or {@code null} if none was found.
+         */
+        public long[] getPath() {
+            return path;
+        }
+
+        /**
+         * @return the number of friends the search scanned.
+         */
+        public int getScanned() {
+            return scanned;
+        }
+    }
+
+    /**
+     * The users reached at the last level of one side of the search.
+     */
+    private static final class Frontier {
+
+        long[] users;
+
+        int size;
+
+        Frontier() {
+            users = new long[16];
+        }
+
+        Frontier(long user) {
+            users = new long[] { user };
+            size = 1;
+        }
+
+        void add(long user) {
+            if (size == users.length) {
+                users = Arrays.copyOf(users, size * 2);
+            }
+            users[size++] = user;
+        }
+
+        /**
+         * @return the number of friends to scan to expand this level.
+         */
+        long arcs(FriendGraph.Csr csr) {
+            long arcs = 0;
+            for (int i = 0; i < size; i++) {
+                int node = Arrays.binarySearch(csr.nodes, users[i]);
+                if (node >= 0) {
+                    arcs += csr.offsets[node + 1] - csr.offsets[node];
+                }
+            }
+            return arcs;
+        }
+    }
+
+    /**
+     * A map from the ids of the visited users to the ids of the users they were reached from, with linear probing over
+     * primitive arrays.
+     */
+    static final class ParentMap {
+
+        /** No user has this id, it marks the free slots. */
+        private static final long FREE = Long.MIN_VALUE;
+
+        private long[] keys;
+
+        private long[] values;
+
+        private int size;
+
+        ParentMap() {
+            keys = new long[64];
+            values = new long[64];
+            Arrays.fill(keys, FREE);
+        }
+
+        boolean contains(long key) {
+            return keys[slot(keys, key)] == key;
+        }
+
+        /**
+         * @return the value of the key, which must be present.
+         */
+        long get(long key) {
+            return values[slot(keys, key)];
+        }
+
+        void put(long key, long value) {
+            if (2 * (size + 1) > keys.length) {
+                grow();
+            }
+            int slot = slot(keys, key);
+            if (keys[slot] == FREE) {
+                keys[slot] = key;
+                size++;
+            }
+            values[slot] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void grow() {
+            long[] previousKeys = keys;
+            long[] previousValues = values;
+            keys = new long[previousKeys.length * 2];
+            values = new long[previousValues.length * 2];
+            Arrays.fill(keys, FREE);
+            for (int i = 0; i < previousKeys.length; i++) {
+                if (previousKeys[i] != FREE) {
+                    int slot = slot(keys, previousKeys[i]);
+                    keys[slot] = previousKeys[i];
+                    values[slot] = previousValues[i];
+                }
+            }
+        }
+
+        /**
+         * @return the slot holding the key, or the free slot where it belongs.
+         */
+        private static int slot(long[] keys, long key) {
+            int mask = keys.length - 1;
+            int slot = (int) mix(key) & mask;
+            while (keys[slot] != key && keys[slot] != FREE) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * The finalizer of MurmurHash3, so that consecutive ids spread over the table.
+         */
+        private static long mix(long key) {
+            long hash = key;
+            hash ^= hash >>> 33;
+            hash *= 0xFF51AFD7ED558CCDL;
+            hash ^= hash >>> 33;
+            hash *= 0xC4CEB93E1A85EC53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
@@ -1,8 +1,15 @@
 package com.hofimefu.service;
 
 import com.hofimefu.domain.Friend;
+import com.hofimefu.service.dto.FriendDTO;
+import com.hofimefu.service.dto.FriendPathDTO;
+import com.hofimefu.service.dto.FriendRequestResultDTO;
+import com.hofimefu.service.dto.FriendSuggestionDTO;
+import com.hofimefu.service.dto.UserDTO;
 import java.util.List;
 import java.util.Optional;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 
 /**
  * Service Interface for managing {@link Friend}.
@@ -16,6 +23,14 @@ public interface FriendService {
      */
     Friend save(Friend friend);
 
+    /**
+     * Request the friendship of the current user with each of the given users, in one transaction.
+     *
+     * @param userIds the ids of the users.
+     * @return the outcome of every request, in the order of the ids.
+     */
+    List<FriendRequestResultDTO> requestFriends(List<Long> userIds);
+
     /**
      * Updates a friend.
      *
@@ -35,9 +50,59 @@ public interface FriendService {
     /**
      * Get all the friends.
      *
-     * @return the list of entities.
+     * @param pageable the pagination information.
+     * @return the page of friends, with their status and users.
+     */
+    Page<FriendDTO> findAll(Pageable pageable);
+
+    /**
+     * Get the friendships of the current user, whichever side of the pair the user is on.
+     *
+     * @param pageable the pagination information.
+     * @return the page of friendships, with their status.
+     */
+    Page<FriendDTO> findAllOfCurrentUser(Pageable pageable);
+
+    /**
+     * Get the mutual friends of the current user and another user, in id order.
+     *
+     * @param userId the id of the other user.
+     * @param pageable the pagination information.
+     * @return the page of mutual friends, with their total number.
+     */
+    Page<UserDTO> findMutualFriends(Long userId, Pageable pageable);
+
+    /**
+     * Get the pending friend requests sent to the current user, newest first.
+     *
+     * @param pageable the pagination information, its sort is ignored.
+     * @return the page of requests, with the number of pending requests of the current user.
+     */
+    Page<FriendDTO> findPendingRequests(Pageable pageable);
+
+    /**
+     * Get the number of pending friend requests sent to the current user.
+     *
+     * @return the number of requests.
+     */
+    int countPendingRequests();
+
+    /**
+     * Get the precomputed friend suggestions of the current user, best first, without the users blocked since.
+     *
+     * @param limit the maximum number of suggestions.
+     * @return the list of suggestions.
+     */
+    List<FriendSuggestionDTO> findSuggestions(int limit);
+
+    /**
+     * Get a shortest chain of friendships between two users.
+     *
+     * @param from the id of the first user.
+     * @param to the id of the last user.
+     * @return the path, or why none was found.
      */
-    List<Friend> findAll();
+    FriendPathDTO findPath(Long from, Long to);
 
     /**
      * Get the "id" friend.
@@ -0,0 +1,593 @@
+package com.hofimefu.service;
+
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.domain.FriendSuggestion;
+import com.hofimefu.repository.ClusterLockRepository;
+import com.hofimefu.repository.FriendRepository;
+import com.hofimefu.repository.FriendSuggestionRepository;
+import com.hofimefu.repository.UserSchoolRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Pipeline precomputing the friend suggestions ("people you may know") of every user.
+ * <p>
+ * The candidates of a user are the friends of its friends and the members of its schools, scored as
+ * {@code mutualFriendWeight * mutualFriends + sharedSchoolWeight * sharedSchools}; its friends and the users it has
+ * blocked or been blocked by, or has a pending request with, are excluded. The friends come from the snapshot of
+ * {@link FriendGraph}, so only the memberships and the blocked and pending pairs are read from the database, once per
+ * run. Every user of the run is a row of primitive counters indexed like the sorted ids of the run, and only its best
+ * candidates are kept, in a bounded heap.
+ * <p>
+ * Users are split over a dedicated {@link ForkJoinPool}, whose workers only compute: the calling thread takes the
+ * chunks they hand over through a bounded queue, and the suggestions of every chunk of users replace the previous ones
+ * in their own transaction, so a run holds a single connection for its writes whatever its parallelism. A full run
+ * happens every night; in between, the users whose friendships or schools changed are recomputed together with their
+ * friends, whose friends of friends changed too.
+ * <p>
+ * The scheduled runs of every instance take the same cluster lock, in a transaction open for the whole run and so
+ * holding a second connection: an instance finding it taken skips its run, and an incremental run keeps its changed
+ * users for the next one.
+ */
+@Service
+public class FriendSuggestions {
+
+    public static final String RUN_METER_NAME = "friend.suggestions.run";
+    public static final String PENDING_METER_NAME = "friend.suggestions.pending";
+
+    /** Users per task, below which a task is not split any further, and per transaction. */
+    private static final int CHUNK_SIZE = 1000;
+
+    private static final String LOCK_NAME = "friend-suggestions-run";
+
+    private final Logger log = LoggerFactory.getLogger(FriendSuggestions.class);
+
+    private final FriendGraph friendGraph;
+
+    private final FriendRepository friendRepository;
+
+    private final UserSchoolRepository userSchoolRepository;
+
+    private final FriendSuggestionRepository friendSuggestionRepository;
+
+    private final ClusterLockRepository clusterLockRepository;
+
+    /** Holds the cluster lock for the whole of a scheduled run. */
+    private final TransactionTemplate lockTransactionTemplate;
+
+    /** Writes in transactions of their own, committed while the lock is held. */
+    private final TransactionTemplate transactionTemplate;
+
+    private final ApplicationProperties.FriendGraph.Suggestions properties;
+
+    private final Timer fullRunTimer;
+
+    private final Timer incrementalRunTimer;
+
+    /** The users whose friendships or schools changed since they were last computed. */
+    private final Set<Long> changedUsers = ConcurrentHashMap.newKeySet();
+
+    public FriendSuggestions(
+        FriendGraph friendGraph,
+        FriendRepository friendRepository,
+        UserSchoolRepository userSchoolRepository,
+        FriendSuggestionRepository friendSuggestionRepository,
+        ClusterLockRepository clusterLockRepository,
+        PlatformTransactionManager transactionManager,
+        ApplicationProperties applicationProperties,
+        MeterRegistry registry
+    ) {
+        this.friendGraph = friendGraph;
+        this.friendRepository = friendRepository;
+        this.userSchoolRepository = userSchoolRepository;
+        this.friendSuggestionRepository = friendSuggestionRepository;
+        this.clusterLockRepository = clusterLockRepository;
+        this.lockTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.properties = applicationProperties.getFriendGraph().getSuggestions();
+        this.fullRunTimer =
+            Timer.builder(RUN_METER_NAME).description("Time taken to compute friend suggestions.").tag("mode", "full").register(registry);
+        this.incrementalRunTimer =
+            Timer
+                .builder(RUN_METER_NAME)
+                .description("Time taken to compute friend suggestions.")
+                .tag("mode", "incremental")
+                .register(registry);
+        Gauge
+            .builder(PENDING_METER_NAME, changedUsers, Set::size)
+            .description("Number of users whose friend suggestions wait for the next incremental run.")
+            .baseUnit("users")
+            .register(registry);
+    }
+
+    /**
+     * Compute the suggestions of every user.
+     * <p>
+     * This is scheduled to get fired every night, at 04:30 (am) by default.
+     */
+    @Scheduled(cron = "${application.friend-graph.suggestions.cron:0 30 4 * * ?}")
+    public void scheduledRun() {
+        if (properties.isEnabled()) {
+            Integer users = lockTransactionTemplate.execute(status -> clusterLockRepository.tryLock(LOCK_NAME) ? runAll() : null);
+            if (users == null) {
+                log.debug("The friend suggestions are being computed by another instance");
+            }
+        }
+    }
+
+    /**
+     * Recompute the suggestions of the users that changed, shortly after they did.
+     */
+    @Scheduled(fixedDelayString = "${application.friend-graph.suggestions.incremental-delay:PT1M}")
+    public void scheduledIncrementalRun() {
+        if (properties.isEnabled() && !changedUsers.isEmpty()) {
+            Integer users = lockTransactionTemplate.execute(status -> clusterLockRepository.tryLock(LOCK_NAME) ? runIncremental() : null);
+            if (users == null) {
+                log.debug("The friend suggestions are being computed by another instance, changed users left to the next run");
+            }
+        }
+    }
+
+    /**
+     * Mark users for the next incremental run once the current transaction has committed.
+     *
+     * @param userIds the ids of the users whose friendships or schools changed, {@code null} ones are ignored.
+     */
+    public void markChanged(Long... userIds) {
+        List<Long> ids = Stream.of(userIds).filter(Objects::nonNull).collect(Collectors.toList());
+        if (!ids.isEmpty()) {
+            TransactionUtils.afterCommit(() -> changedUsers.addAll(ids));
+        }
+    }
+
+    /**
+     * Compute the suggestions of every user having friends or schools, and delete those of the other users.
+     *
+     * @return the number of users computed.
+     */
+    public synchronized int runAll() {
+        long start = System.nanoTime();
+        Instant computed = Instant.now();
+        // changes committed from now on may be missed by the snapshot, they are left to the next incremental run
+        changedUsers.clear();
+        FriendGraph.Csr graph = friendGraph.snapshot();
+        List<Object[]> memberships = userSchoolRepository.findMembershipPairs();
+        long[] users = union(graph.nodes, memberships);
+        compute(graph, memberships, users, users, computed);
+        int deleted = transactionTemplate.execute(status -> friendSuggestionRepository.deleteComputedBefore(computed));
+        long elapsed = System.nanoTime() - start;
+        fullRunTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        log.info(
+            "Computed the friend suggestions of {} users in {} ms, deleted {} stale ones",
+            users.length,
+            TimeUnit.NANOSECONDS.toMillis(elapsed),
+            deleted
+        );
+        return users.length;
+    }
+
+    /**
+     * Recompute the suggestions of the users marked as changed and of their friends.
+     *
+     * @return the number of users computed.
+     */
+    public synchronized int runIncremental() {
+        if (changedUsers.isEmpty()) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        Instant computed = Instant.now();
+        List<Long> changed = new ArrayList<>(changedUsers);
+        changedUsers.removeAll(changed);
+        FriendGraph.Csr graph = friendGraph.snapshot();
+        LongStream.Builder expanded = LongStream.builder();
+        for (Long userId : changed) {
+            expanded.add(userId);
+            int node = Arrays.binarySearch(graph.nodes, userId);
+            if (node >= 0) {
+                for (int arc = graph.offsets[node]; arc < graph.offsets[node + 1]; arc++) {
+                    expanded.add(graph.neighbors[arc]);
+                }
+            }
+        }
+        long[] users = expanded.build().sorted().distinct().toArray();
+        List<Object[]> memberships = new ArrayList<>();
+        for (int from = 0; from < users.length; from += CHUNK_SIZE) {
+            List<Long> chunk = LongStream
+                .of(users)
+                .skip(from)
+                .limit(CHUNK_SIZE)
+                .boxed()
+                .collect(Collectors.toList());
+            memberships.addAll(userSchoolRepository.findMembershipPairsOfSchoolsOf(chunk));
+        }
+        compute(graph, memberships, union(graph.nodes, memberships), users, computed);
+        long elapsed = System.nanoTime() - start;
+        incrementalRunTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        log.debug("Recomputed the friend suggestions of {} users in {} ms", users.length, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        return users.length;
+    }
+
+    /**
+     * @param universe every user that can be a candidate, sorted.
+     * @param users the users to compute, sorted.
+     */
+    private void compute(FriendGraph.Csr graph, List<Object[]> memberships, long[] universe, long[] users, Instant computed) {
+        int parallelism = properties.getParallelism() > 0 ? properties.getParallelism() : Runtime.getRuntime().availableProcessors();
+        Context context = new Context(
+            graph,
+            rows(memberships, 0, false),
+            rows(memberships, 1, false),
+            rows(excludedPairs(), 0, true),
+            universe,
+            properties
+        );
+        ThreadLocal<Scratch> scratches = ThreadLocal.withInitial(() -> new Scratch(context.universe.length, properties.getSize()));
+        // the workers wait for the writes once this many chunks are computed ahead of them
+        BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(2 * parallelism);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            ForkJoinTask<Void> task = pool.submit(new ComputeChunk(context, scratches, chunks, users, 0, users.length));
+            while (true) {
+                Chunk chunk = chunks.poll(100, TimeUnit.MILLISECONDS);
+                if (chunk != null) {
+                    write(chunk, computed);
+                } else if (task.isDone() && chunks.isEmpty()) {
+                    break;
+                }
+            }
+            task.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while computing friend suggestions", e);
+        } finally {
+            // also releases the workers waiting for a write that failed
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Write the suggestions of a chunk of users, replacing their previous ones.
+     */
+    private void write(Chunk chunk, Instant computed) {
+        transactionTemplate.executeWithoutResult(status ->
+            friendSuggestionRepository.replaceSuggestions(chunk.userIds, chunk.suggestions, computed)
+        );
+    }
+
+    /**
+     * @return the sorted distinct ids of the nodes of the graph and of the members of the schools.
+     */
+    private static long[] union(long[] nodes, List<Object[]> memberships) {
+        return LongStream
+            .concat(LongStream.of(nodes), memberships.stream().mapToLong(pair -> (Long) pair[0]))
+            .sorted()
+            .distinct()
+            .toArray();
+    }
+
+    /**
+     * @return the pairs of users that are not friends but must not be suggested to each other.
+     */
+    private List<Object[]> excludedPairs() {
+        List<Object[]> pairs = new ArrayList<>(friendRepository.findBlockedPairs());
+        pairs.addAll(friendRepository.findPendingPairs());
+        return pairs;
+    }
+
+    /**
+     * Build rows from {@code (id, id)} pairs, keyed by the id at the given index of the pairs.
+     */
+    private static FriendGraph.Csr rows(List<Object[]> pairs, int source, boolean symmetric) {
+        long[] sources = new long[pairs.size() * (symmetric ? 2 : 1)];
+        long[] targets = new long[sources.length];
+        int count = 0;
+        for (Object[] pair : pairs) {
+            sources[count] = (Long) pair[source];
+            targets[count++] = (Long) pair[1 - source];
+            if (symmetric) {
+                sources[count] = (Long) pair[1 - source];
+                targets[count++] = (Long) pair[source];
+            }
+        }
+        return FriendGraph.Csr.of(sources, targets, count);
+    }
+
+    /**
+     * What every task of a run reads, immutable.
+     */
+    private static final class Context {
+
+        final FriendGraph.Csr graph;
+
+        /** The schools of every user having some. */
+        final FriendGraph.Csr userSchools;
+
+        /** The members of every school. */
+        final FriendGraph.Csr schoolMembers;
+
+        /** Both directions of every blocked or pending pair. */
+        final FriendGraph.Csr excluded;
+
+        /** Every user that can be a candidate, sorted: the index of a user there is its row in the counters. */
+        final long[] universe;
+
+        final int size;
+
+        final int mutualFriendWeight;
+
+        final int sharedSchoolWeight;
+
+        final int maxSchoolMembers;
+
+        Context(
+            FriendGraph.Csr graph,
+            FriendGraph.Csr userSchools,
+            FriendGraph.Csr schoolMembers,
+            FriendGraph.Csr excluded,
+            long[] universe,
+            ApplicationProperties.FriendGraph.Suggestions properties
+        ) {
+            this.graph = graph;
+            this.userSchools = userSchools;
+            this.schoolMembers = schoolMembers;
+            this.excluded = excluded;
+            this.universe = universe;
+            this.size = properties.getSize();
+            this.mutualFriendWeight = properties.getMutualFriendWeight();
+            this.sharedSchoolWeight = properties.getSharedSchoolWeight();
+            this.maxSchoolMembers = properties.getMaxSchoolMembers();
+        }
+    }
+
+    /**
+     * The counters of a worker thread, reused from one user to the next: only the touched ones are reset.
+     */
+    private static final class Scratch {
+
+        final int[] mutualFriends;
+
+        final int[] sharedSchools;
+
+        int[] touched = new int[64];
+
+        int touchedCount;
+
+        /** The best candidates so far, as a min-heap whose root is the worst of them. */
+        final int[] heap;
+
+        int heapSize;
+
+        Scratch(int universeSize, int size) {
+            this.mutualFriends = new int[universeSize];
+            this.sharedSchools = new int[universeSize];
+            this.heap = new int[size];
+        }
+
+        void touch(int candidate) {
+            if (mutualFriends[candidate] == 0 && sharedSchools[candidate] == 0) {
+                if (touchedCount == touched.length) {
+                    touched = Arrays.copyOf(touched, touchedCount * 2);
+                }
+                touched[touchedCount++] = candidate;
+            }
+        }
+    }
+
+    /**
+     * The suggestions computed for a chunk of users, to be written together.
+     */
+    private static final class Chunk {
+
+        final List<Long> userIds;
+
+        final List<FriendSuggestion> suggestions;
+
+        Chunk(List<Long> userIds, List<FriendSuggestion> suggestions) {
+            this.userIds = userIds;
+            this.suggestions = suggestions;
+        }
+    }
+
+    /**
+     * Compute the suggestions of a range of users, and hand them over by chunk.
+     */
+    private final class ComputeChunk extends RecursiveAction {
+
+        private final Context context;
+
+        private final ThreadLocal<Scratch> scratches;
+
+        private final BlockingQueue<Chunk> chunks;
+
+        private final long[] users;
+
+        private final int from;
+
+        private final int to;
+
+        ComputeChunk(Context context, ThreadLocal<Scratch> scratches, BlockingQueue<Chunk> chunks, long[] users, int from, int to) {
+            this.context = context;
+            this.scratches = scratches;
+            this.chunks = chunks;
+            this.users = users;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                    new ComputeChunk(context, scratches, chunks, users, from, middle),
+                    new ComputeChunk(context, scratches, chunks, users, middle, to)
+                );
+                return;
+            }
+            Scratch scratch = scratches.get();
+            List<FriendSuggestion> suggestions = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                suggest(users[i], scratch, suggestions);
+            }
+            List<Long> userIds = LongStream
+                .of(users)
+                .skip(from)
+                .limit(to - from)
+                .boxed()
+                .collect(Collectors.toList());
+            try {
+                chunks.put(new Chunk(userIds, suggestions));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Friend suggestions run aborted");
+            }
+        }
+
+        private void suggest(long user, Scratch scratch, List<FriendSuggestion> suggestions) {
+            FriendGraph.Csr graph = context.graph;
+            long[] universe = context.universe;
+            int node = Arrays.binarySearch(graph.nodes, user);
+            if (node >= 0) {
+                for (int arc = graph.offsets[node]; arc < graph.offsets[node + 1]; arc++) {
+                    int friend = Arrays.binarySearch(graph.nodes, graph.neighbors[arc]);
+                    for (int other = graph.offsets[friend]; other < graph.offsets[friend + 1]; other++) {
+                        if (graph.neighbors[other] != user) {
+                            int candidate = Arrays.binarySearch(universe, graph.neighbors[other]);
+                            scratch.touch(candidate);
+                            scratch.mutualFriends[candidate]++;
+                        }
+                    }
+                }
+            }
+            FriendGraph.Csr userSchools = context.userSchools;
+            FriendGraph.Csr schoolMembers = context.schoolMembers;
+            int member = Arrays.binarySearch(userSchools.nodes, user);
+            if (member >= 0) {
+                for (int arc = userSchools.offsets[member]; arc < userSchools.offsets[member + 1]; arc++) {
+                    int school = Arrays.binarySearch(schoolMembers.nodes, userSchools.neighbors[arc]);
+                    if (schoolMembers.offsets[school + 1] - schoolMembers.offsets[school] > context.maxSchoolMembers) {
+                        continue;
+                    }
+                    for (int other = schoolMembers.offsets[school]; other < schoolMembers.offsets[school + 1]; other++) {
+                        if (schoolMembers.neighbors[other] != user) {
+                            int candidate = Arrays.binarySearch(universe, schoolMembers.neighbors[other]);
+                            scratch.touch(candidate);
+                            scratch.sharedSchools[candidate]++;
+                        }
+                    }
+                }
+            }
+
+            for (int i = 0; i < scratch.touchedCount; i++) {
+                int candidate = scratch.touched[i];
+                long candidateId = universe[candidate];
+                if (score(scratch, candidate) > 0 && !graph.contains(user, candidateId) && !context.excluded.contains(user, candidateId)) {
+                    offer(scratch, candidate);
+                }
+            }
+            // pop the worst first, so that the best ends up first
+            int count = scratch.heapSize;
+            int[] best = new int[count];
+            for (int i = count - 1; i >= 0; i--) {
+                best[i] = scratch.heap[0];
+                scratch.heap[0] = scratch.heap[--scratch.heapSize];
+                siftDown(scratch, 0);
+            }
+            for (int rank = 0; rank < count; rank++) {
+                int candidate = best[rank];
+                suggestions.add(
+                    new FriendSuggestion(
+                        user,
+                        rank,
+                        universe[candidate],
+                        scratch.mutualFriends[candidate],
+                        scratch.sharedSchools[candidate],
+                        score(scratch, candidate)
+                    )
+                );
+            }
+
+            for (int i = 0; i < scratch.touchedCount; i++) {
+                scratch.mutualFriends[scratch.touched[i]] = 0;
+                scratch.sharedSchools[scratch.touched[i]] = 0;
+            }
+            scratch.touchedCount = 0;
+        }
+
+        private int score(Scratch scratch, int candidate) {
+            int mutualFriends = scratch.mutualFriends[candidate];
+            return context.mutualFriendWeight * mutualFriends + context.sharedSchoolWeight * scratch.sharedSchools[candidate];
+        }
+
+        /**
+         * @return whether the first candidate ranks below the second: a lower score, or the same score and a higher id.
+         */
+        private boolean worse(Scratch scratch, int candidate, int other) {
+            int score = score(scratch, candidate);
+            int otherScore = score(scratch, other);
+            return score < otherScore || (score == otherScore && candidate > other);
+        }
+
+        private void offer(Scratch scratch, int candidate) {
+            int[] heap = scratch.heap;
+            if (scratch.heapSize < heap.length) {
+                int position = scratch.heapSize++;
+                while (position > 0 && worse(scratch, candidate, heap[(position - 1) >>> 1])) {
+                    heap[position] = heap[(position - 1) >>> 1];
+                    position = (position - 1) >>> 1;
+                }
+                heap[position] = candidate;
+            } else if (heap.length > 0 && worse(scratch, heap[0], candidate)) {
+                heap[0] = candidate;
+                siftDown(scratch, 0);
+            }
+        }
+
+        private void siftDown(Scratch scratch, int position) {
+            int[] heap = scratch.heap;
+            int candidate = heap[position];
+            while (true) {
+                int child = 2 * position + 1;
+                if (child >= scratch.heapSize) {
+                    break;
+                }
+                if (child + 1 < scratch.heapSize && worse(scratch, heap[child + 1], heap[child])) {
+                    child++;
+                }
+                if (!worse(scratch, heap[child], candidate)) {
+                    break;
+                }
+                heap[position] = heap[child];
+                position = child;
+            }
+            heap[position] = candidate;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.hofimefu.service;
+
+public class FriendshipExistsException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public FriendshipExistsException() {
+        super("The users already have a friendship!");
+    }
+}
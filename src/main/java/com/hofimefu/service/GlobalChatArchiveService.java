@@ -0,0 +1,241 @@
+package com.hofimefu.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.repository.ClusterLockRepository;
+import com.hofimefu.repository.GlobalChatPartitionRepository;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Service maintaining the monthly partitions of {@link com.hofimefu.domain.GlobalChat} and archiving the old ones.
+ * <p>
+ * Every night the partitions of the coming months are created, and the partitions older than the retention are
+ * detached, exported to a gzipped NDJSON file named {@code global-chat-YYYY-MM.ndjson.gz} and dropped. A partition is
+ * only dropped once its file is complete, so an export that failed is retried on the next run.
+ * <p>
+ * Every instance runs the job: each change of the partitions takes a cluster lock and checks again, once it holds it,
+ * that the change is still to be made, so that only one instance makes it.
+ */
+@Service
+public class GlobalChatArchiveService {
+
+    private static final String ARCHIVE_PREFIX = "global-chat-";
+
+    private static final String ARCHIVE_SUFFIX = ".ndjson.gz";
+
+    private static final String LOCK_NAME = "global-chat-partitions";
+
+    private final Logger log = LoggerFactory.getLogger(GlobalChatArchiveService.class);
+
+    private final GlobalChatPartitionRepository globalChatPartitionRepository;
+
+    private final ClusterLockRepository clusterLockRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    private final ApplicationProperties.Chat.Archive properties;
+
+    public GlobalChatArchiveService(
+        GlobalChatPartitionRepository globalChatPartitionRepository,
+        ClusterLockRepository clusterLockRepository,
+        PlatformTransactionManager transactionManager,
+        ObjectMapper objectMapper,
+        ApplicationProperties applicationProperties
+    ) {
+        this.globalChatPartitionRepository = globalChatPartitionRepository;
+        this.clusterLockRepository = clusterLockRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.properties = applicationProperties.getChat().getArchive();
+    }
+
+    /**
+     * Create the upcoming partitions, then archive the expired ones.
+     * <p>
+     * This is scheduled to get fired every night, at 03:30 (am) by default.
+     */
+    @Scheduled(cron = "${application.chat.archive.cron:0 30 3 * * ?}")
+    public void maintainPartitions() {
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        createPartitions(current);
+        if (properties.isEnabled()) {
+            archivePartitions(current.minusMonths(properties.getRetentionMonths()));
+        }
+    }
+
+    void createPartitions(YearMonth current) {
+        Set<String> attached = new HashSet<>(globalChatPartitionRepository.findAttachedPartitions());
+        for (int i = 0; i <= properties.getMonthsAhead(); i++) {
+            YearMonth month = current.plusMonths(i);
+            String partition = GlobalChatPartitionRepository.partitionName(month);
+            if (!attached.contains(partition)) {
+                transactionTemplate.executeWithoutResult(status -> {
+                    if (lock() && !globalChatPartitionRepository.findAttachedPartitions().contains(partition)) {
+                        log.info("Creating the global chat partition of {}", month);
+                        globalChatPartitionRepository.createPartition(month);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Archive every partition of a month before the given one, including those detached by a previous failed run.
+     */
+    void archivePartitions(YearMonth oldestKept) {
+        List<String> expired = new ArrayList<>(globalChatPartitionRepository.findDetachedPartitions());
+        for (String partition : globalChatPartitionRepository.findAttachedPartitions()) {
+            if (GlobalChatPartitionRepository.partitionMonth(partition).isBefore(oldestKept)) {
+                transactionTemplate.executeWithoutResult(status -> {
+                    if (lock() && globalChatPartitionRepository.findAttachedPartitions().contains(partition)) {
+                        log.info("Detaching the global chat partition {}", partition);
+                        globalChatPartitionRepository.detachPartition(partition);
+                    }
+                });
+                expired.add(partition);
+            }
+        }
+        for (String partition : expired) {
+            try {
+                archivePartition(partition);
+            } catch (RuntimeException e) {
+                log.error("Could not archive the global chat partition {}, it is kept detached", partition, e);
+            }
+        }
+    }
+
+    private void archivePartition(String partition) {
+        YearMonth month = GlobalChatPartitionRepository.partitionMonth(partition);
+        Path archive = archivePath(month);
+        // the lock is held from the export to the drop, so that only one instance writes the file
+        Long rows = transactionTemplate.execute(status -> {
+            if (!lock() || !globalChatPartitionRepository.findDetachedPartitions().contains(partition)) {
+                return null;
+            }
+            long exported = writeArchive(partition, archive);
+            globalChatPartitionRepository.dropPartition(partition);
+            return exported;
+        });
+        if (rows != null) {
+            log.info("Archived {} global chat messages of {} to {}", rows, month, archive);
+        }
+    }
+
+    private long writeArchive(String partition, Path archive) {
+        Path temporary = archive.resolveSibling(archive.getFileName() + ".tmp");
+        long rows;
+        try {
+            Files.createDirectories(archive.getParent());
+            try (
+                Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(temporary)), StandardCharsets.UTF_8)
+                )
+            ) {
+                rows = export(partition, writer);
+            }
+            Files.move(temporary, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return rows;
+    }
+
+    /**
+     * Take the cluster lock of the partitions for the rest of the current transaction.
+     *
+     * @return whether it was taken; if not, another instance is changing the partitions.
+     */
+    private boolean lock() {
+        if (clusterLockRepository.tryLock(LOCK_NAME)) {
+            return true;
+        }
+        log.debug("The global chat partitions are being maintained by another instance");
+        return false;
+    }
+
+    private long export(String partition, Writer writer) {
+        long[] rows = { 0 };
+        globalChatPartitionRepository.streamPartition(
+            partition,
+            row -> {
+                try {
+                    writer.write(objectMapper.writeValueAsString(row));
+                    writer.write('\n');
+                    rows[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        );
+        return rows[0];
+    }
+
+    /**
+     * @return the months archived so far, oldest first.
+     */
+    public List<YearMonth> findArchivedMonths() {
+        Path directory = Paths.get(properties.getDirectory());
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .map(file -> file.getFileName().toString())
+                .filter(name -> name.startsWith(ARCHIVE_PREFIX) && name.endsWith(ARCHIVE_SUFFIX))
+                .map(name -> parseMonth(name.substring(ARCHIVE_PREFIX.length(), name.length() - ARCHIVE_SUFFIX.length())))
+                .flatMap(Optional::stream)
+                .sorted()
+                .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param month the archived month.
+     * @return the gzipped NDJSON file of the month, if it has been archived.
+     */
+    public Optional<Path> findArchive(YearMonth month) {
+        return Optional.of(archivePath(month)).filter(Files::isRegularFile);
+    }
+
+    private Path archivePath(YearMonth month) {
+        return Paths.get(properties.getDirectory(), ARCHIVE_PREFIX + month + ARCHIVE_SUFFIX);
+    }
+
+    private static Optional<YearMonth> parseMonth(String month) {
+        try {
+            return Optional.of(YearMonth.parse(month));
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.hofimefu.service;
+
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.domain.GlobalChat;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * In-process hub pushing new {@link GlobalChat} messages to live subscribers.
+ * <p>
+ * Every subscriber owns a bounded queue drained on a small executor of its own, so slow clients never hold the
+ * threads of the rest of the application. A subscriber whose queue overflows, or whose send blocks longer than the
+ * send timeout, is dropped: it would otherwise keep a sender thread from every other subscriber. So is a subscriber
+ * whose drain the executor rejects, as nothing would drain its queue until the next message is published. The
+ * messages a dropped subscriber was still to be sent are counted, by the reason it was dropped.
+ * <p>
+ * Messages whose author and subscriber have blocked each other are skipped when sent, on the sender threads, so that
+ * the rare checks going to the database never hold the thread publishing.
+ */
+@Service
+public class GlobalChatBroadcaster {
+
+    public static final String SUBSCRIBERS_METER_NAME = "chat.broadcast.subscribers";
+    public static final String QUEUE_DEPTH_METER_NAME = "chat.broadcast.queue-depth";
+    public static final String DROPPED_METER_NAME = "chat.broadcast.dropped";
+    public static final String DISCARDED_METER_NAME = "chat.broadcast.discarded";
+
+    private final Logger log = LoggerFactory.getLogger(GlobalChatBroadcaster.class);
+
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+    private final Executor executor;
+
+    private final ScheduledExecutorService watchdog;
+
+    private final BlockedFriendships blockedFriendships;
+
+    private final ApplicationProperties.Chat.Broadcast properties;
+
+    private final MeterRegistry registry;
+
+    @Autowired
+    public GlobalChatBroadcaster(
+        BlockedFriendships blockedFriendships,
+        ApplicationProperties applicationProperties,
+        MeterRegistry registry
+    ) {
+        this(senderExecutor(applicationProperties.getChat().getBroadcast()), true, blockedFriendships, applicationProperties, registry);
+    }
+
+    GlobalChatBroadcaster(
+        Executor executor,
+        BlockedFriendships blockedFriendships,
+        ApplicationProperties applicationProperties,
+        MeterRegistry registry
+    ) {
+        this(executor, false, blockedFriendships, applicationProperties, registry);
+    }
+
+    private GlobalChatBroadcaster(
+        Executor executor,
+        boolean watched,
+        BlockedFriendships blockedFriendships,
+        ApplicationProperties applicationProperties,
+        MeterRegistry registry
+    ) {
+        this.executor = executor;
+        this.blockedFriendships = blockedFriendships;
+        this.properties = applicationProperties.getChat().getBroadcast();
+        this.registry = registry;
+        if (watched) {
+            long period = Math.max(properties.getSendTimeout().toMillis() / 2, 1);
+            this.watchdog = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("chat-broadcast-watchdog-"));
+            this.watchdog.scheduleWithFixedDelay(() -> expireStalledSends(System.nanoTime()), period, period, TimeUnit.MILLISECONDS);
+        } else {
+            this.watchdog = null;
+        }
+        Gauge
+            .builder(SUBSCRIBERS_METER_NAME, subscriptions, Set::size)
+            .description("Number of clients subscribed to the global chat stream.")
+            .register(registry);
+        Gauge
+            .builder(QUEUE_DEPTH_METER_NAME, this, GlobalChatBroadcaster::getQueueDepth)
+            .description("Messages waiting to be sent to global chat subscribers.")
+            .baseUnit("messages")
+            .register(registry);
+    }
+
+    private static ExecutorService senderExecutor(ApplicationProperties.Chat.Broadcast properties) {
+        return new ThreadPoolExecutor(
+            properties.getThreads(),
+            properties.getThreads(),
+            0L,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(properties.getExecutorQueueCapacity()),
+            daemonThreadFactory("chat-broadcast-")
+        );
+    }
+
+    private static CustomizableThreadFactory daemonThreadFactory(String threadNamePrefix) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(threadNamePrefix);
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdownNow();
+        }
+        subscriptions.forEach(Subscription::close);
+    }
+
+    /**
+     * Register a subscriber for messages published from now on.
+     *
+     * @param userId the id of the subscribing user, who is not sent the messages of the users they blocked or were blocked by.
+     * @param sink receives the messages, one at a time; throwing ends the subscription.
+     * @param onDropped run once if the subscriber is dropped for falling behind, to release the client.
+     * @return the subscription, to be closed when the client goes away.
+     */
+    public Subscription subscribe(Long userId, Consumer<GlobalChat> sink, Runnable onDropped) {
+        Subscription subscription = new Subscription(userId, sink, onDropped, properties.getQueueCapacity());
+        subscriptions.add(subscription);
+        log.debug("New global chat subscriber, {} connected", subscriptions.size());
+        return subscription;
+    }
+
+    /**
+     * Publish a message to every subscriber.
+     *
+     * @param globalChat the message to publish.
+     */
+    public void publish(GlobalChat globalChat) {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(globalChat);
+        }
+    }
+
+    /**
+     * Drop the subscribers whose send has been blocked for longer than the send timeout.
+     *
+     * @param nowNanos the current {@link System#nanoTime()}.
+     */
+    void expireStalledSends(long nowNanos) {
+        long timeoutNanos = properties.getSendTimeout().toNanos();
+        for (Subscription subscription : subscriptions) {
+            Thread sender = subscription.sender;
+            if (sender != null && nowNanos - subscription.sendStartedNanos > timeoutNanos) {
+                subscription.drop("timeout", 0);
+                sender.interrupt();
+            }
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Subscription subscription : subscriptions) {
+            depth += subscription.queue.size();
+        }
+        return depth;
+    }
+
+    public final class Subscription {
+
+        private final Long userId;
+
+        private final Consumer<GlobalChat> sink;
+
+        private final Runnable onDropped;
+
+        private final ArrayBlockingQueue<GlobalChat> queue;
+
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private volatile Thread sender;
+
+        private volatile long sendStartedNanos;
+
+        private Subscription(Long userId, Consumer<GlobalChat> sink, Runnable onDropped, int queueCapacity) {
+            this.userId = userId;
+            this.sink = sink;
+            this.onDropped = onDropped;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        }
+
+        private void offer(GlobalChat globalChat) {
+            if (!queue.offer(globalChat)) {
+                // the message that did not fit is discarded too
+                drop("overflow", 1);
+                return;
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (closed.get() || !draining.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // every sender is busy with a backlog, or stopped
+                draining.set(false);
+                drop("rejected", 0);
+            }
+        }
+
+        private void drain() {
+            try {
+                GlobalChat globalChat;
+                while (!closed.get() && (globalChat = queue.poll()) != null) {
+                    if (globalChat.getUser() != null && blockedFriendships.isBlocked(userId, globalChat.getUser().getId())) {
+                        continue;
+                    }
+                    sendStartedNanos = System.nanoTime();
+                    sender = Thread.currentThread();
+                    try {
+                        sink.accept(globalChat);
+                    } finally {
+                        sender = null;
+                    }
+                }
+            } catch (RuntimeException e) {
+                log.debug("Dropping global chat subscriber: {}", e.getMessage());
+                close();
+            } finally {
+                // the watchdog may have interrupted this thread after the send returned
+                Thread.interrupted();
+                draining.set(false);
+            }
+            // a message offered while the flag was still set would otherwise wait for the next publish
+            if (!queue.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+
+        /**
+         * @param unqueued the messages discarded on top of those queued.
+         */
+        private void drop(String reason, int unqueued) {
+            int queued = closeQueue();
+            if (queued < 0) {
+                return;
+            }
+            log.debug("Dropping global chat subscriber: {}", reason);
+            Counter
+                .builder(DROPPED_METER_NAME)
+                .description("Global chat subscribers dropped because they fell behind.")
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+            Counter
+                .builder(DISCARDED_METER_NAME)
+                .description("Global chat messages never sent to the subscribers dropped because they fell behind.")
+                .baseUnit("messages")
+                .tag("reason", reason)
+                .register(registry)
+                .increment(queued + unqueued);
+            onDropped.run();
+        }
+
+        /**
+         * End the subscription.
+         *
+         * @return whether it was still open.
+         */
+        public boolean close() {
+            return closeQueue() >= 0;
+        }
+
+        /**
+         * @return the number of messages discarded from the queue, {@code -1} if the subscription was already closed.
+         */
+        private int closeQueue() {
+            if (!closed.compareAndSet(false, true)) {
+                return -1;
+            }
+            if (subscriptions.remove(this)) {
+                log.debug("Global chat subscriber left, {} connected", subscriptions.size());
+            }
+            int discarded = 0;
+            while (queue.poll() != null) {
+                discarded++;
+            }
+            return discarded;
+        }
+    }
+}
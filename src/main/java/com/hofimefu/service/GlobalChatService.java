@@ -1,15 +1,19 @@
 package com.hofimefu.service;
 
 import com.hofimefu.domain.GlobalChat;
+import com.hofimefu.domain.User;
+import com.hofimefu.service.dto.GlobalChatDTO;
 import java.util.List;
 import java.util.Optional;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 
 /**
  * Service Interface for managing {@link GlobalChat}.
  */
 public interface GlobalChatService {
     /**
-     * Save a globalChat.
+     * Save a globalChat, storing the login and display name of its user on it.
      *
      * @param globalChat the entity to save.
      * @return the persisted entity.
@@ -33,11 +37,45 @@ public interface GlobalChatService {
     Optional<GlobalChat> partialUpdate(GlobalChat globalChat);
 
     /**
-     * Get all the globalChats.
+     * Get all the globalChats, in id order, with the author snapshot stored on them.
      *
-     * @return the list of entities.
+     * @return the list of entries.
      */
-    List<GlobalChat> findAll();
+    List<GlobalChatDTO> findAll();
+
+    /**
+     * Get a page of the globalChat timeline, newest first, in {@code (created, id)} order.
+     *
+     * @param before the id of the last entry of the previous page, or {@code null} for the first page.
+     * @param limit the maximum number of entries to return.
+     * @return the list of entries, empty if the {@code before} entry does not exist.
+     */
+    List<GlobalChatDTO> findTimeline(Long before, int limit);
+
+    /**
+     * Get the globalChats created after the given one, in id order.
+     *
+     * @param after the id of the newest globalChat already known.
+     * @param limit the maximum number of entries to return.
+     * @return the list of entries.
+     */
+    List<GlobalChatDTO> findAfter(Long after, int limit);
+
+    /**
+     * Get the id of the newest globalChat, only if it is known without querying the database.
+     *
+     * @return the id, {@code 0} if there is no globalChat, or empty if it is not known.
+     */
+    Optional<Long> findNewestIdInMemory();
+
+    /**
+     * Search the globalChats by message text, best match first.
+     *
+     * @param query the words to search for.
+     * @param pageable the pagination information, its sort is ignored.
+     * @return the page of globalChats, with their author snapshot.
+     */
+    Page<GlobalChatDTO> search(String query, Pageable pageable);
 
     /**
      * Get the "id" globalChat.
@@ -47,6 +85,14 @@ public interface GlobalChatService {
      */
     Optional<GlobalChat> findOne(Long id);
 
+    /**
+     * Rewrite the author snapshot of the globalChats of a user, after the user changed their login or name.
+     *
+     * @param user the updated user.
+     * @param previousLogin the login of the user before the change.
+     */
+    void refreshAuthor(User user, String previousLogin);
+
     /**
      * Delete the "id" globalChat.
      *
@@ -0,0 +1,279 @@
+package com.hofimefu.service;
+
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.domain.GlobalChat;
+import com.hofimefu.domain.User;
+import com.hofimefu.repository.GlobalChatRepository;
+import com.hofimefu.repository.UserRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Write-behind pipeline grouping {@link GlobalChat} inserts into batched transactions.
+ * <p>
+ * Callers queue their message and wait on a future; a single flusher thread takes up to {@code batch-size} messages,
+ * waiting at most {@code max-linger} for a batch to fill, and inserts them in one transaction so that Hibernate
+ * sends them as one JDBC batch. Every future is completed once its batch has committed, and the callback given with
+ * its message is run before, on the thread that committed it, even when the caller has stopped waiting.
+ * <p>
+ * Once the flusher has stopped, or died, messages are inserted by their callers, so that no future is left pending.
+ * Every insert runs in a transaction of its own, so that a failing one never marks the transaction of its caller for
+ * rollback.
+ */
+@Service
+public class GlobalChatWriteBehind {
+
+    public static final String BATCH_SIZE_METER_NAME = "chat.write-behind.batch-size";
+    public static final String COMMIT_METER_NAME = "chat.write-behind.commit";
+    public static final String QUEUE_SIZE_METER_NAME = "chat.write-behind.queue-size";
+
+    private final Logger log = LoggerFactory.getLogger(GlobalChatWriteBehind.class);
+
+    private final GlobalChatRepository globalChatRepository;
+
+    private final UserRepository userRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ApplicationProperties.Chat.WriteBehind properties;
+
+    private final BlockingQueue<PendingWrite> queue;
+
+    private final DistributionSummary batchSizeSummary;
+
+    private final Timer commitTimer;
+
+    private volatile boolean running;
+
+    /** Whether the flusher takes messages off the queue, cleared before it takes them off for the last time. */
+    private volatile boolean flushing;
+
+    private Thread flusher;
+
+    public GlobalChatWriteBehind(
+        GlobalChatRepository globalChatRepository,
+        UserRepository userRepository,
+        PlatformTransactionManager transactionManager,
+        ApplicationProperties applicationProperties,
+        MeterRegistry registry
+    ) {
+        this.globalChatRepository = globalChatRepository;
+        this.userRepository = userRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.properties = applicationProperties.getChat().getWriteBehind();
+        this.queue = new LinkedBlockingQueue<>(properties.getQueueCapacity());
+        this.batchSizeSummary =
+            DistributionSummary
+                .builder(BATCH_SIZE_METER_NAME)
+                .description("Number of global chat messages inserted per write-behind transaction.")
+                .baseUnit("messages")
+                .register(registry);
+        this.commitTimer =
+            Timer.builder(COMMIT_METER_NAME).description("Time taken to insert and commit a write-behind batch.").register(registry);
+        Gauge
+            .builder(QUEUE_SIZE_METER_NAME, queue, BlockingQueue::size)
+            .description("Global chat messages waiting to be written.")
+            .baseUnit("messages")
+            .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        running = true;
+        flushing = true;
+        flusher = new Thread(this::run, "hofimefu-chat-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("Started the global chat write-behind, batches of {} within {}", properties.getBatchSize(), properties.getMaxLinger());
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        running = false;
+        flusher.interrupt();
+        flusher.join(TimeUnit.SECONDS.toMillis(10));
+        // flush what is still queued so that no caller is left waiting
+        List<PendingWrite> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            flush(remaining);
+        }
+    }
+
+    public boolean isEnabled() {
+        return running;
+    }
+
+    /**
+     * Queue a new message for insertion.
+     * <p>
+     * When the queue is full, or the flusher is not running, the message is inserted by the calling thread instead.
+     *
+     * @param globalChat the message to insert.
+     * @param onCommitted receives the persisted message once its transaction has committed, whether or not the caller
+     * still waits for it.
+     * @return the future of the persisted message, completed once its transaction has committed, or failed with a
+     * {@link java.util.concurrent.TimeoutException} once {@code max-wait} has elapsed; the message may still be
+     * inserted by its batch then.
+     */
+    public CompletableFuture<GlobalChat> submit(GlobalChat globalChat, Consumer<GlobalChat> onCommitted) {
+        PendingWrite write = new PendingWrite(globalChat, onCommitted);
+        if (!flushing || !queue.offer(write)) {
+            flush(Collections.singletonList(write));
+        } else if (!flushing && queue.remove(write)) {
+            // the flusher stopped in the meantime, and nobody else took the message off the queue
+            flush(Collections.singletonList(write));
+        }
+        return write.future.orTimeout(properties.getMaxWait().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void run() {
+        List<PendingWrite> batch = new ArrayList<>(properties.getBatchSize());
+        try {
+            while (running) {
+                try {
+                    PendingWrite first = queue.poll(1, TimeUnit.SECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    long deadline = System.nanoTime() + properties.getMaxLinger().toNanos();
+                    while (batch.size() < properties.getBatchSize()) {
+                        long remaining = deadline - System.nanoTime();
+                        PendingWrite next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                    batch = new ArrayList<>(properties.getBatchSize());
+                }
+            }
+        } finally {
+            flushing = false;
+            if (running) {
+                log.error("The global chat write-behind stopped unexpectedly, messages are now inserted by their callers");
+            }
+            // the batch being written when the flusher died, and the messages nobody takes off the queue any more
+            batch.forEach(write -> write.future.completeExceptionally(new IllegalStateException("The global chat write-behind stopped")));
+            List<PendingWrite> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            if (!remaining.isEmpty()) {
+                flush(remaining);
+            }
+        }
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        List<GlobalChat> entities = new ArrayList<>(batch.size());
+        batch.forEach(write -> entities.add(write.globalChat));
+        List<GlobalChat> saved;
+        try {
+            saved = commitTimer.recordCallable(() -> transactionTemplate.execute(status -> saveWithAuthors(entities)));
+        } catch (Exception e) {
+            log.warn("Write-behind batch of {} global chat messages failed, retrying one by one: {}", batch.size(), e.getMessage());
+            batch.forEach(this::flushOne);
+            return;
+        }
+        batchSizeSummary.record(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).committed(saved.get(i));
+        }
+    }
+
+    private void flushOne(PendingWrite write) {
+        try {
+            // drop the id assigned by the rolled back batch
+            write.globalChat.setId(null);
+            write.committed(
+                transactionTemplate.execute(status -> {
+                    snapshotAuthors(Collections.singletonList(write.globalChat));
+                    return globalChatRepository.save(write.globalChat);
+                })
+            );
+        } catch (RuntimeException e) {
+            write.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Insert the messages with their author snapshots, with one extra statement for the whole batch.
+     */
+    private List<GlobalChat> saveWithAuthors(List<GlobalChat> entities) {
+        snapshotAuthors(entities);
+        return globalChatRepository.saveAll(entities);
+    }
+
+    /**
+     * Load the authors of the messages with one query, as the callers waiting on their futures hold no connection.
+     */
+    private void snapshotAuthors(List<GlobalChat> entities) {
+        Set<Long> userIds = new HashSet<>();
+        entities
+            .stream()
+            .filter(globalChat -> globalChat.getUser() != null)
+            .forEach(globalChat -> userIds.add(globalChat.getUser().getId()));
+        Map<Long, User> authors = userIds.isEmpty()
+            ? Collections.emptyMap()
+            : userRepository.findAllById(userIds).stream().collect(Collectors.toMap(User::getId, Function.identity()));
+        entities.forEach(globalChat -> globalChat.author(globalChat.getUser() == null ? null : authors.get(globalChat.getUser().getId())));
+    }
+
+    private final class PendingWrite {
+
+        private final GlobalChat globalChat;
+
+        private final Consumer<GlobalChat> onCommitted;
+
+        private final CompletableFuture<GlobalChat> future = new CompletableFuture<>();
+
+        private PendingWrite(GlobalChat globalChat, Consumer<GlobalChat> onCommitted) {
+            this.globalChat = globalChat;
+            this.onCommitted = onCommitted;
+        }
+
+        private void committed(GlobalChat saved) {
+            try {
+                onCommitted.accept(saved);
+            } catch (RuntimeException e) {
+                log.warn("Failed to announce the global chat message {}: {}", saved.getId(), e.getMessage());
+            }
+            future.complete(saved);
+        }
+    }
+}
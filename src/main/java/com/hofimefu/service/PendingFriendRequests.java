@@ -0,0 +1,168 @@
+package com.hofimefu.service;
+
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.domain.FriendStatus;
+import com.hofimefu.domain.User;
+import com.hofimefu.domain.enumeration.FriendshipStatus;
+import com.hofimefu.repository.ClusterLockRepository;
+import com.hofimefu.repository.FriendRequestCounterRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Keeps the counter of pending friend requests of every user in line with the {@link FriendStatus}es.
+ * <p>
+ * A user's counter is the number of {@link FriendshipStatus#PENDING} statuses it is the recipient of, so that the
+ * badge shown on every app open is a primary key lookup instead of a count. Every change of such a status must go
+ * through here, in the transaction making it. A nightly job sets the counters that drifted anyway, e.g. through
+ * senders deleted with their statuses, back to the count of the statuses.
+ */
+@Service
+public class PendingFriendRequests {
+
+    public static final String REPAIRED_METER_NAME = "friend.requests.counters.repaired";
+
+    private static final String LOCK_NAME = "friend-request-counters-reconcile";
+
+    private final Logger log = LoggerFactory.getLogger(PendingFriendRequests.class);
+
+    private final FriendRequestCounterRepository friendRequestCounterRepository;
+
+    private final ClusterLockRepository clusterLockRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ApplicationProperties.FriendRequests.Counters properties;
+
+    private final Counter repairedCounter;
+
+    public PendingFriendRequests(
+        FriendRequestCounterRepository friendRequestCounterRepository,
+        ClusterLockRepository clusterLockRepository,
+        PlatformTransactionManager transactionManager,
+        ApplicationProperties applicationProperties,
+        MeterRegistry registry
+    ) {
+        this.friendRequestCounterRepository = friendRequestCounterRepository;
+        this.clusterLockRepository = clusterLockRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = applicationProperties.getFriendRequests().getCounters();
+        this.repairedCounter =
+            Counter
+                .builder(REPAIRED_METER_NAME)
+                .description("Number of pending friend request counters that had drifted and were repaired.")
+                .register(registry);
+    }
+
+    /**
+     * Account for a status that was created, updated or deleted.
+     *
+     * @param previous the status and recipient before the change, {@code null} if the status was created.
+     * @param current the status and recipient after the change, {@code null} if the status was deleted.
+     */
+    public void changed(Snapshot previous, Snapshot current) {
+        changed(previous == null ? List.of() : List.of(previous), current == null ? List.of() : List.of(current));
+    }
+
+    /**
+     * Account for statuses that were created, updated or deleted, with one batch of counter updates.
+     *
+     * @param previous the statuses and recipients before the changes, of the statuses that existed.
+     * @param current the statuses and recipients after the changes, of the statuses that still exist.
+     */
+    public void changed(Collection<Snapshot> previous, Collection<Snapshot> current) {
+        Map<Long, Integer> deltas = new HashMap<>();
+        for (Snapshot snapshot : previous) {
+            if (snapshot.pendingRecipientId() != null) {
+                deltas.merge(snapshot.pendingRecipientId(), -1, Integer::sum);
+            }
+        }
+        for (Snapshot snapshot : current) {
+            if (snapshot.pendingRecipientId() != null) {
+                deltas.merge(snapshot.pendingRecipientId(), 1, Integer::sum);
+            }
+        }
+        deltas.values().removeIf(delta -> delta == 0);
+        if (!deltas.isEmpty()) {
+            friendRequestCounterRepository.add(deltas);
+        }
+    }
+
+    /**
+     * @param login the login of a user.
+     * @return the number of pending friend requests sent to the user.
+     */
+    public int count(String login) {
+        return friendRequestCounterRepository.findPendingByLogin(login);
+    }
+
+    /**
+     * Repair the counters.
+     * <p>
+     * This is scheduled to get fired every night, at 05:15 (am) by default.
+     */
+    @Scheduled(cron = "${application.friend-requests.counters.cron:0 15 5 * * ?}")
+    public void scheduledRun() {
+        if (properties.isEnabled()) {
+            reconcile();
+        }
+    }
+
+    /**
+     * Set every counter that drifted from the statuses it counts back to their number. Only one instance repairs the
+     * counters at a time, the others skip the run.
+     *
+     * @return the number of repaired counters.
+     */
+    public int reconcile() {
+        Integer result = transactionTemplate.execute(status ->
+            clusterLockRepository.tryLock(LOCK_NAME) ? friendRequestCounterRepository.reconcile() : null
+        );
+        if (result == null) {
+            log.debug("The pending friend request counters are being repaired by another instance");
+            return 0;
+        }
+        int repaired = result;
+        repairedCounter.increment(repaired);
+        if (repaired > 0) {
+            log.warn("Repaired {} pending friend request counters", repaired);
+        } else {
+            log.debug("No pending friend request counter to repair");
+        }
+        return repaired;
+    }
+
+    /**
+     * What the counters depend on in a status, copied before the status changes.
+     */
+    public static final class Snapshot {
+
+        private final FriendshipStatus status;
+
+        private final Long recipientId;
+
+        private Snapshot(FriendshipStatus status, Long recipientId) {
+            this.status = status;
+            this.recipientId = recipientId;
+        }
+
+        public static Snapshot of(FriendStatus friendStatus) {
+            User recipient = friendStatus.getRecipient();
+            return new Snapshot(friendStatus.getStatus(), recipient == null ? null : recipient.getId());
+        }
+
+        Long pendingRecipientId() {
+            return status == FriendshipStatus.PENDING ? recipientId : null;
+        }
+    }
+}
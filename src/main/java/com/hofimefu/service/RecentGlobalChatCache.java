@@ -0,0 +1,312 @@
+package com.hofimefu.service;
+
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.domain.GlobalChat;
+import com.hofimefu.repository.GlobalChatRepository;
+import com.hofimefu.service.dto.GlobalChatDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+/**
+ * Fixed-capacity cache of the most recent {@link GlobalChat} messages, in timeline {@code (created, id)} order.
+ * Messages are held as {@link GlobalChatDTO}, which carries everything the timeline shows.
+ * <p>
+ * The cache always holds the newest end of the timeline: once full, every insert evicts the oldest entry.
+ * Writers copy the entries into a new immutable snapshot and publish it through a volatile field, so readers never
+ * lock and always see a consistent view. A lookup the cache cannot answer exactly returns an empty {@link Optional}
+ * and the caller goes to the database.
+ */
+@Service
+public class RecentGlobalChatCache {
+
+    public static final String REQUESTS_METER_NAME = "chat.cache.requests";
+    public static final String SIZE_METER_NAME = "chat.cache.size";
+
+    private static final Comparator<GlobalChatDTO> TIMELINE_ORDER = Comparator
+        .comparing(GlobalChatDTO::getCreated)
+        .thenComparing(GlobalChatDTO::getId);
+
+    private final Logger log = LoggerFactory.getLogger(RecentGlobalChatCache.class);
+
+    private final GlobalChatRepository globalChatRepository;
+
+    private final ApplicationProperties applicationProperties;
+
+    private final Counter hitCounter;
+
+    private final Counter missCounter;
+
+    private volatile Snapshot snapshot = Snapshot.COLD;
+
+    public RecentGlobalChatCache(
+        GlobalChatRepository globalChatRepository,
+        ApplicationProperties applicationProperties,
+        MeterRegistry registry
+    ) {
+        this.globalChatRepository = globalChatRepository;
+        this.applicationProperties = applicationProperties;
+        this.hitCounter = requestsCounterForResultBuilder("hit").register(registry);
+        this.missCounter = requestsCounterForResultBuilder("miss").register(registry);
+        Gauge
+            .builder(SIZE_METER_NAME, this, cache -> cache.snapshot.entries.length)
+            .description("Number of global chat messages held in memory.")
+            .baseUnit("messages")
+            .register(registry);
+    }
+
+    private Counter.Builder requestsCounterForResultBuilder(String result) {
+        return Counter
+            .builder(REQUESTS_METER_NAME)
+            .description("Global chat reads answered from memory (hit) or sent to the database (miss).")
+            .tag("result", result);
+    }
+
+    /**
+     * Load the newest messages, so that the cache can answer reads.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void warm() {
+        if (!applicationProperties.getChat().getCache().isEnabled()) {
+            return;
+        }
+        int capacity = applicationProperties.getChat().getCache().getCapacity();
+        List<GlobalChatDTO> latest = globalChatRepository
+            .findLatest(PageRequest.of(0, capacity))
+            .stream()
+            .map(GlobalChatDTO::new)
+            .collect(Collectors.toCollection(ArrayList::new));
+        latest.sort(TIMELINE_ORDER);
+        Set<Long> held = new HashSet<>();
+        latest.forEach(globalChat -> held.add(globalChat.getId()));
+        // the window holds at most capacity messages, so the newest id outside of it is among the capacity + 1 newest ids
+        long floorId = globalChatRepository
+            .findLatestIds(PageRequest.of(0, capacity + 1))
+            .stream()
+            .filter(id -> !held.contains(id))
+            .findFirst()
+            .orElse(0L);
+        boolean complete = latest.size() < capacity;
+        snapshot = new Snapshot(latest.toArray(new GlobalChatDTO[0]), floorId, complete, true);
+        log.debug("Warmed the global chat cache with {} messages", latest.size());
+    }
+
+    /**
+     * Get the newest messages, newest first.
+     *
+     * @param limit the maximum number of messages.
+     * @return the messages, or empty if the cache cannot answer.
+     */
+    public Optional<List<GlobalChatDTO>> latest(int limit) {
+        Snapshot current = snapshot;
+        GlobalChatDTO[] entries = current.entries;
+        if (!current.warm || (entries.length < limit && !current.complete)) {
+            return miss();
+        }
+        return hit(newestFirst(entries, Math.max(0, entries.length - limit), entries.length));
+    }
+
+    /**
+     * Get the messages older than the given one in timeline order, newest first.
+     *
+     * @param id the id of the message to start after.
+     * @param limit the maximum number of messages.
+     * @return the messages, or empty if the cache cannot answer.
+     */
+    public Optional<List<GlobalChatDTO>> before(long id, int limit) {
+        Snapshot current = snapshot;
+        GlobalChatDTO[] entries = current.entries;
+        int index = current.warm ? indexOf(entries, id) : -1;
+        if (index < 0 || (index < limit && !current.complete)) {
+            return miss();
+        }
+        return hit(newestFirst(entries, Math.max(0, index - limit), index));
+    }
+
+    /**
+     * Get the messages with an id greater than the given one, in id order.
+     *
+     * @param id the id to start after.
+     * @param limit the maximum number of messages.
+     * @return the messages, or empty if the cache cannot answer.
+     */
+    public Optional<List<GlobalChatDTO>> after(long id, int limit) {
+        Snapshot current = snapshot;
+        if (!current.warm || id < current.floorId) {
+            return miss();
+        }
+        List<GlobalChatDTO> result = new ArrayList<>();
+        for (GlobalChatDTO globalChat : current.entries) {
+            if (globalChat.getId() > id) {
+                result.add(globalChat);
+            }
+        }
+        result.sort(Comparator.comparing(GlobalChatDTO::getId));
+        return hit(result.size() > limit ? result.subList(0, limit) : result);
+    }
+
+    /**
+     * Get the greatest message id.
+     *
+     * @return the id, {@code 0} if there is no message, or empty if the cache cannot answer.
+     */
+    public OptionalLong newestId() {
+        Snapshot current = snapshot;
+        if (!current.warm) {
+            missCounter.increment();
+            return OptionalLong.empty();
+        }
+        long newest = current.floorId;
+        for (GlobalChatDTO globalChat : current.entries) {
+            newest = Math.max(newest, globalChat.getId());
+        }
+        hitCounter.increment();
+        return OptionalLong.of(newest);
+    }
+
+    /**
+     * Write a created or updated message through to the cache.
+     *
+     * @param globalChat the persisted message.
+     */
+    public synchronized void put(GlobalChatDTO globalChat) {
+        Snapshot current = snapshot;
+        if (!current.warm) {
+            return;
+        }
+        GlobalChatDTO[] entries = without(current.entries, globalChat.getId());
+        long floorId = current.floorId;
+        boolean complete = current.complete;
+        boolean belowWindow = !complete && (entries.length == 0 || TIMELINE_ORDER.compare(globalChat, entries[0]) < 0);
+        if (globalChat.getCreated() == null || belowWindow) {
+            // not part of the window: only remember that the cache no longer holds every id above the floor
+            snapshot = new Snapshot(entries, Math.max(floorId, globalChat.getId()), complete, true);
+            return;
+        }
+        int insertion = -Arrays.binarySearch(entries, globalChat, TIMELINE_ORDER) - 1;
+        GlobalChatDTO[] updated = new GlobalChatDTO[entries.length + 1];
+        System.arraycopy(entries, 0, updated, 0, insertion);
+        updated[insertion] = globalChat;
+        System.arraycopy(entries, insertion, updated, insertion + 1, entries.length - insertion);
+        if (updated.length > applicationProperties.getChat().getCache().getCapacity()) {
+            floorId = Math.max(floorId, updated[0].getId());
+            complete = false;
+            updated = Arrays.copyOfRange(updated, 1, updated.length);
+        }
+        snapshot = new Snapshot(updated, floorId, complete, true);
+    }
+
+    /**
+     * Write the new author snapshot of a user through to the cached messages of that user.
+     *
+     * @param previousLogin the login of the user before the change, which their cached messages carry.
+     * @param login the new login of the user.
+     * @param name the new display name of the user.
+     */
+    public synchronized void updateAuthor(String previousLogin, String login, String name) {
+        Snapshot current = snapshot;
+        if (!current.warm) {
+            return;
+        }
+        GlobalChatDTO[] entries = current.entries.clone();
+        boolean changed = false;
+        for (int i = 0; i < entries.length; i++) {
+            GlobalChatDTO entry = entries[i];
+            if (entry.getAuthorLogin() != null && entry.getAuthorLogin().equals(previousLogin)) {
+                entries[i] = new GlobalChatDTO(entry.getId(), entry.getMessage(), entry.getCreated(), login, name);
+                changed = true;
+            }
+        }
+        if (changed) {
+            snapshot = new Snapshot(entries, current.floorId, current.complete, true);
+        }
+    }
+
+    /**
+     * Remove a deleted message from the cache.
+     *
+     * @param id the id of the deleted message.
+     */
+    public synchronized void remove(Long id) {
+        Snapshot current = snapshot;
+        if (current.warm) {
+            snapshot = new Snapshot(without(current.entries, id), current.floorId, current.complete, true);
+        }
+    }
+
+    private Optional<List<GlobalChatDTO>> hit(List<GlobalChatDTO> result) {
+        hitCounter.increment();
+        return Optional.of(result);
+    }
+
+    private Optional<List<GlobalChatDTO>> miss() {
+        missCounter.increment();
+        return Optional.empty();
+    }
+
+    private static List<GlobalChatDTO> newestFirst(GlobalChatDTO[] entries, int from, int to) {
+        List<GlobalChatDTO> result = new ArrayList<>(to - from);
+        for (int i = to - 1; i >= from; i--) {
+            result.add(entries[i]);
+        }
+        return result;
+    }
+
+    private static int indexOf(GlobalChatDTO[] entries, long id) {
+        for (int i = entries.length - 1; i >= 0; i--) {
+            if (entries[i].getId() == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static GlobalChatDTO[] without(GlobalChatDTO[] entries, long id) {
+        int index = indexOf(entries, id);
+        if (index < 0) {
+            return entries;
+        }
+        GlobalChatDTO[] result = new GlobalChatDTO[entries.length - 1];
+        System.arraycopy(entries, 0, result, 0, index);
+        System.arraycopy(entries, index + 1, result, index, entries.length - index - 1);
+        return result;
+    }
+
+    private static final class Snapshot {
+
+        static final Snapshot COLD = new Snapshot(new GlobalChatDTO[0], Long.MAX_VALUE, false, false);
+
+        /** The newest messages of the timeline, oldest first. */
+        final GlobalChatDTO[] entries;
+
+        /** Every message with a greater id is in {@link #entries}. */
+        final long floorId;
+
+        /** Whether {@link #entries} holds the whole timeline. */
+        final boolean complete;
+
+        final boolean warm;
+
+        Snapshot(GlobalChatDTO[] entries, long floorId, boolean complete, boolean warm) {
+            this.entries = entries;
+            this.floorId = floorId;
+            this.complete = complete;
+            this.warm = warm;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.hofimefu.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Utility class for the in-memory side effects of transactional writes.
+ */
+public final class TransactionUtils {
+
+    private TransactionUtils() {}
+
+    /**
+     * Run an action once the current transaction is committed, so that the side effects of a rolled back write never
+     * show; right away if there is no transaction.
+     *
+     * @param action the action to run.
+     */
+    public static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(
+            new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            }
+        );
+    }
+}
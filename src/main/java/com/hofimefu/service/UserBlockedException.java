@@ -0,0 +1,10 @@
+package com.hofimefu.service;
+
+public class UserBlockedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UserBlockedException() {
+        super("User is blocked!");
+    }
+}
@@ -2,6 +2,7 @@ package com.hofimefu.service;
 
 import com.hofimefu.config.Constants;
 import com.hofimefu.domain.Authority;
+import com.hofimefu.domain.GlobalChat;
 import com.hofimefu.domain.User;
 import com.hofimefu.repository.AuthorityRepository;
 import com.hofimefu.repository.UserRepository;
@@ -38,10 +39,18 @@ public class UserService {
 
     private final AuthorityRepository authorityRepository;
 
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, AuthorityRepository authorityRepository) {
+    private final GlobalChatService globalChatService;
+
+    public UserService(
+        UserRepository userRepository,
+        PasswordEncoder passwordEncoder,
+        AuthorityRepository authorityRepository,
+        GlobalChatService globalChatService
+    ) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.authorityRepository = authorityRepository;
+        this.globalChatService = globalChatService;
     }
 
     public Optional<User> activateRegistration(String key) {
@@ -177,6 +186,8 @@ public class UserService {
             .filter(Optional::isPresent)
             .map(Optional::get)
             .map(user -> {
+                String login = user.getLogin();
+                String name = GlobalChat.displayName(user);
                 user.setLogin(userDTO.getLogin().toLowerCase());
                 user.setFirstName(userDTO.getFirstName());
                 user.setLastName(userDTO.getLastName());
@@ -195,6 +206,7 @@ public class UserService {
                     .filter(Optional::isPresent)
                     .map(Optional::get)
                     .forEach(managedAuthorities::add);
+                refreshAuthor(user, login, name);
                 log.debug("Changed Information for User: {}", user);
                 return user;
             })
@@ -224,6 +236,8 @@ public class UserService {
             .getCurrentUserLogin()
             .flatMap(userRepository::findOneByLogin)
             .ifPresent(user -> {
+                String login = user.getLogin();
+                String name = GlobalChat.displayName(user);
                 user.setFirstName(firstName);
                 user.setLastName(lastName);
                 if (email != null) {
@@ -231,6 +245,7 @@ public class UserService {
                 }
                 user.setLangKey(langKey);
                 user.setImageUrl(imageUrl);
+                refreshAuthor(user, login, name);
                 log.debug("Changed Information for User: {}", user);
             });
     }
@@ -294,4 +309,13 @@ public class UserService {
     public List<String> getAuthorities() {
         return authorityRepository.findAll().stream().map(Authority::getName).collect(Collectors.toList());
     }
+
+    /**
+     * Rewrite the author snapshot stored on the messages of the user when their login or display name changed.
+     */
+    private void refreshAuthor(User user, String previousLogin, String previousName) {
+        if (!user.getLogin().equals(previousLogin) || !Objects.equals(GlobalChat.displayName(user), previousName)) {
+            globalChatService.refreshAuthor(user, previousLogin);
+        }
+    }
 }
@@ -0,0 +1,72 @@
+package com.hofimefu.service.dto;
+
+/**
+ * A DTO representing the answer of a user to an event.
+ */
+public class EventRsvpDTO {
+
+    /**
+     * Where a user stands with an event.
+     */
+    public enum Status {
+        /** The user is one of the attendees. */
+        GOING,
+        /** The event is full, the user is on its waitlist and will be admitted when a seat frees up. */
+        WAITLISTED,
+        /** The user neither attends nor waits. */
+        NONE,
+    }
+
+    private Long eventId;
+
+    private Status status;
+
+    private Integer waitlistPosition;
+
+    public EventRsvpDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public EventRsvpDTO(Long eventId, Status status, Integer waitlistPosition) {
+        this.eventId = eventId;
+        this.status = status;
+        this.waitlistPosition = waitlistPosition;
+    }
+
+    public Long getEventId() {
+        return eventId;
+    }
+
+    public void setEventId(Long eventId) {
+        this.eventId = eventId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    /**
+     * @return the position of the user on the waitlist, starting from 1, if {@link Status#WAITLISTED}.
+     */
+    public Integer getWaitlistPosition() {
+        return waitlistPosition;
+    }
+
+    public void setWaitlistPosition(Integer waitlistPosition) {
+        this.waitlistPosition = waitlistPosition;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "EventRsvpDTO{" +
+            "eventId=" + eventId +
+            ", status=" + status +
+            ", waitlistPosition=" + waitlistPosition +
+            "}";
+    }
+}
@@ -0,0 +1,108 @@
+package com.hofimefu.service.dto;
+
+import com.hofimefu.repository.EventRepository;
+import java.time.ZonedDateTime;
+
+/**
+ * A DTO representing an event in a list, with the number of its attendees but neither them nor its creator.
+ */
+public class EventSummaryDTO {
+
+    private Long id;
+
+    private String header;
+
+    private Double latitude;
+
+    private Double longitude;
+
+    private ZonedDateTime planned;
+
+    private Integer capacity;
+
+    private Integer attendeeCount;
+
+    public EventSummaryDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public EventSummaryDTO(EventRepository.EventSummary event) {
+        this.id = event.getId();
+        this.header = event.getHeader();
+        this.latitude = event.getLatitude();
+        this.longitude = event.getLongitude();
+        this.planned = event.getPlanned();
+        this.capacity = event.getCapacity();
+        this.attendeeCount = event.getAttendeeCount();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getHeader() {
+        return header;
+    }
+
+    public void setHeader(String header) {
+        this.header = header;
+    }
+
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(Double latitude) {
+        this.latitude = latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(Double longitude) {
+        this.longitude = longitude;
+    }
+
+    public ZonedDateTime getPlanned() {
+        return planned;
+    }
+
+    public void setPlanned(ZonedDateTime planned) {
+        this.planned = planned;
+    }
+
+    public Integer getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(Integer capacity) {
+        this.capacity = capacity;
+    }
+
+    public Integer getAttendeeCount() {
+        return attendeeCount;
+    }
+
+    public void setAttendeeCount(Integer attendeeCount) {
+        this.attendeeCount = attendeeCount;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "EventSummaryDTO{" +
+            "id=" + id +
+            ", header='" + header + '\'' +
+            ", latitude=" + latitude +
+            ", longitude=" + longitude +
+            ", planned='" + planned + '\'' +
+            ", capacity=" + capacity +
+            ", attendeeCount=" + attendeeCount +
+            "}";
+    }
+}
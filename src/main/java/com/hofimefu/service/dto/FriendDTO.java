@@ -0,0 +1,94 @@
+package com.hofimefu.service.dto;
+
+import com.hofimefu.domain.enumeration.FriendshipStatus;
+import com.hofimefu.repository.FriendRepository;
+
+/**
+ * A DTO representing a friendship, with its status and the public attributes of its users.
+ */
+public class FriendDTO {
+
+    private Long id;
+
+    private Long statusId;
+
+    private FriendshipStatus status;
+
+    private UserDTO user1;
+
+    private UserDTO user2;
+
+    public FriendDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public FriendDTO(FriendRepository.FriendshipEntry entry) {
+        this.id = entry.getId();
+        this.statusId = entry.getStatusId();
+        this.status = entry.getFriendshipStatus();
+        this.user1 = user(entry.getUser1Id(), entry.getUser1Login());
+        this.user2 = user(entry.getUser2Id(), entry.getUser2Login());
+    }
+
+    private static UserDTO user(Long id, String login) {
+        if (id == null) {
+            return null;
+        }
+        UserDTO user = new UserDTO();
+        user.setId(id);
+        user.setLogin(login);
+        return user;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getStatusId() {
+        return statusId;
+    }
+
+    public void setStatusId(Long statusId) {
+        this.statusId = statusId;
+    }
+
+    public FriendshipStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(FriendshipStatus status) {
+        this.status = status;
+    }
+
+    public UserDTO getUser1() {
+        return user1;
+    }
+
+    public void setUser1(UserDTO user1) {
+        this.user1 = user1;
+    }
+
+    public UserDTO getUser2() {
+        return user2;
+    }
+
+    public void setUser2(UserDTO user2) {
+        this.user2 = user2;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "FriendDTO{" +
+            "id=" + id +
+            ", statusId=" + statusId +
+            ", status='" + status + '\'' +
+            ", user1=" + user1 +
+            ", user2=" + user2 +
+            "}";
+    }
+}
@@ -0,0 +1,201 @@
+package com.hofimefu.service.dto;
+
+import java.time.Instant;
+import java.util.SortedMap;
+
+/**
+ * A DTO representing the metrics of the friend graph computed by {@link com.hofimefu.service.FriendGraphAnalytics}.
+ * <p>
+ * Only the users having at least one friend are part of the graph.
+ */
+public class FriendGraphReportDTO {
+
+    private Instant computedAt;
+
+    private int users;
+
+    private long friendships;
+
+    private SortedMap<Integer, Long> degreeDistribution;
+
+    private int maxDegree;
+
+    private double meanDegree;
+
+    private int components;
+
+    private int largestComponent;
+
+    private long triangles;
+
+    private double averageClustering;
+
+    private double transitivity;
+
+    private int parallelism;
+
+    private long durationMillis;
+
+    private long graphBytes;
+
+    private long peakHeapBytes;
+
+    public Instant getComputedAt() {
+        return computedAt;
+    }
+
+    public void setComputedAt(Instant computedAt) {
+        this.computedAt = computedAt;
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public void setUsers(int users) {
+        this.users = users;
+    }
+
+    public long getFriendships() {
+        return friendships;
+    }
+
+    public void setFriendships(long friendships) {
+        this.friendships = friendships;
+    }
+
+    /**
+     * @return the number of users by number of friends, for the numbers that users have.
+     */
+    public SortedMap<Integer, Long> getDegreeDistribution() {
+        return degreeDistribution;
+    }
+
+    public void setDegreeDistribution(SortedMap<Integer, Long> degreeDistribution) {
+        this.degreeDistribution = degreeDistribution;
+    }
+
+    public int getMaxDegree() {
+        return maxDegree;
+    }
+
+    public void setMaxDegree(int maxDegree) {
+        this.maxDegree = maxDegree;
+    }
+
+    public double getMeanDegree() {
+        return meanDegree;
+    }
+
+    public void setMeanDegree(double meanDegree) {
+        this.meanDegree = meanDegree;
+    }
+
+    public int getComponents() {
+        return components;
+    }
+
+    public void setComponents(int components) {
+        this.components = components;
+    }
+
+    /**
+     * @return the number of users of the largest connected component.
+     */
+    public int getLargestComponent() {
+        return largestComponent;
+    }
+
+    public void setLargestComponent(int largestComponent) {
+        this.largestComponent = largestComponent;
+    }
+
+    public long getTriangles() {
+        return triangles;
+    }
+
+    public void setTriangles(long triangles) {
+        this.triangles = triangles;
+    }
+
+    /**
+     * @return the mean of the local clustering coefficients of the users, counting those with less than two friends as 0.
+     */
+    public double getAverageClustering() {
+        return averageClustering;
+    }
+
+    public void setAverageClustering(double averageClustering) {
+        this.averageClustering = averageClustering;
+    }
+
+    /**
+     * @return the global clustering coefficient: the share of the pairs of friends of a user that are friends too.
+     */
+    public double getTransitivity() {
+        return transitivity;
+    }
+
+    public void setTransitivity(double transitivity) {
+        this.transitivity = transitivity;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * @return the memory held by the snapshot of the graph the job walked.
+     */
+    public long getGraphBytes() {
+        return graphBytes;
+    }
+
+    public void setGraphBytes(long graphBytes) {
+        this.graphBytes = graphBytes;
+    }
+
+    /**
+     * @return the peak heap usage of the JVM while the job ran, the job included.
+     */
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    public void setPeakHeapBytes(long peakHeapBytes) {
+        this.peakHeapBytes = peakHeapBytes;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "FriendGraphReportDTO{" +
+            "computedAt='" + computedAt + '\'' +
+            ", users=" + users +
+            ", friendships=" + friendships +
+            ", maxDegree=" + maxDegree +
+            ", meanDegree=" + meanDegree +
+            ", components=" + components +
+            ", largestComponent=" + largestComponent +
+            ", triangles=" + triangles +
+            ", averageClustering=" + averageClustering +
+            ", transitivity=" + transitivity +
+            ", parallelism=" + parallelism +
+            ", durationMillis=" + durationMillis +
+            ", graphBytes=" + graphBytes +
+            ", peakHeapBytes=" + peakHeapBytes +
+            "}";
+    }
+}
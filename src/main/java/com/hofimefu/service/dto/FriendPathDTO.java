@@ -0,0 +1,77 @@
+package com.hofimefu.service.dto;
+
+import java.util.List;
+
+/**
+ * A DTO representing the shortest chain of friendships between two users.
+ */
+public class FriendPathDTO {
+
+    /**
+     * How a search for a path ended.
+     */
+    public enum Outcome {
+        /** A shortest path was found. */
+        FOUND,
+        /** The users are not connected within the maximum depth. */
+        NOT_FOUND,
+        /** The search scanned as many friends as it may before it could settle. */
+        BUDGET_EXCEEDED,
+    }
+
+    private Outcome outcome;
+
+    private Integer degrees;
+
+    private List<UserDTO> users;
+
+    public FriendPathDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public FriendPathDTO(Outcome outcome, Integer degrees, List<UserDTO> users) {
+        this.outcome = outcome;
+        this.degrees = degrees;
+        this.users = users;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    public void setOutcome(Outcome outcome) {
+        this.outcome = outcome;
+    }
+
+    /**
+     * @return the number of friendships between the users, if a path was found.
+     */
+    public Integer getDegrees() {
+        return degrees;
+    }
+
+    public void setDegrees(Integer degrees) {
+        this.degrees = degrees;
+    }
+
+    /**
+     * @return the users of the path, from the first one to the last one, empty if no path was found.
+     */
+    public List<UserDTO> getUsers() {
+        return users;
+    }
+
+    public void setUsers(List<UserDTO> users) {
+        this.users = users;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "FriendPathDTO{" +
+            "outcome='" + outcome + '\'' +
+            ", degrees=" + degrees +
+            ", users=" + users +
+            "}";
+    }
+}
@@ -0,0 +1,80 @@
+package com.hofimefu.service.dto;
+
+/**
+ * A DTO representing the outcome of one friend request of a batch.
+ */
+public class FriendRequestResultDTO {
+
+    /**
+     * What became of a friend request.
+     */
+    public enum Outcome {
+        /** The friend request was created, pending until the user accepts it. */
+        CREATED,
+        /** The user had already requested the friendship of the current user, which is now accepted. */
+        ACCEPTED,
+        /** The users already have a friendship or a pending request, which is left as is. */
+        EXISTS,
+        /** The friendship of the users is blocked. */
+        BLOCKED,
+        /** The user is the current user. */
+        SELF,
+        /** The user was already requested earlier in the batch. */
+        DUPLICATE,
+        /** There is no such user. */
+        NOT_FOUND,
+    }
+
+    private Long userId;
+
+    private Outcome outcome;
+
+    private Long friendId;
+
+    public FriendRequestResultDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public FriendRequestResultDTO(Long userId, Outcome outcome, Long friendId) {
+        this.userId = userId;
+        this.outcome = outcome;
+        this.friendId = friendId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    public void setOutcome(Outcome outcome) {
+        this.outcome = outcome;
+    }
+
+    /**
+     * @return the id of the created, accepted or existing friendship, if any.
+     */
+    public Long getFriendId() {
+        return friendId;
+    }
+
+    public void setFriendId(Long friendId) {
+        this.friendId = friendId;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "FriendRequestResultDTO{" +
+            "userId=" + userId +
+            ", outcome='" + outcome + '\'' +
+            ", friendId=" + friendId +
+            "}";
+    }
+}
@@ -0,0 +1,71 @@
+package com.hofimefu.service.dto;
+
+import com.hofimefu.domain.FriendSuggestion;
+
+/**
+ * A DTO representing a user suggested as a friend, with what the current user has in common with it.
+ */
+public class FriendSuggestionDTO {
+
+    private Long userId;
+
+    private String login;
+
+    private int mutualFriends;
+
+    private int sharedSchools;
+
+    public FriendSuggestionDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public FriendSuggestionDTO(FriendSuggestion suggestion) {
+        this.userId = suggestion.getSuggestedUserId();
+        this.login = suggestion.getSuggestedLogin();
+        this.mutualFriends = suggestion.getMutualFriends();
+        this.sharedSchools = suggestion.getSharedSchools();
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public void setLogin(String login) {
+        this.login = login;
+    }
+
+    public int getMutualFriends() {
+        return mutualFriends;
+    }
+
+    public void setMutualFriends(int mutualFriends) {
+        this.mutualFriends = mutualFriends;
+    }
+
+    public int getSharedSchools() {
+        return sharedSchools;
+    }
+
+    public void setSharedSchools(int sharedSchools) {
+        this.sharedSchools = sharedSchools;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "FriendSuggestionDTO{" +
+            "userId=" + userId +
+            ", login='" + login + '\'' +
+            ", mutualFriends=" + mutualFriends +
+            ", sharedSchools=" + sharedSchools +
+            "}";
+    }
+}
@@ -0,0 +1,99 @@
+package com.hofimefu.service.dto;
+
+import com.hofimefu.domain.GlobalChat;
+import com.hofimefu.repository.GlobalChatRepository;
+import java.time.ZonedDateTime;
+
+/**
+ * A DTO representing a message of the global chat timeline, with the author snapshot stored on the message.
+ */
+public class GlobalChatDTO {
+
+    private Long id;
+
+    private String message;
+
+    private ZonedDateTime created;
+
+    private String authorLogin;
+
+    private String authorName;
+
+    public GlobalChatDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public GlobalChatDTO(Long id, String message, ZonedDateTime created, String authorLogin, String authorName) {
+        this.id = id;
+        this.message = message;
+        this.created = created;
+        this.authorLogin = authorLogin;
+        this.authorName = authorName;
+    }
+
+    public GlobalChatDTO(GlobalChatRepository.TimelineEntry entry) {
+        this(entry.getId(), entry.getMessage(), entry.getCreated(), entry.getAuthorLogin(), entry.getAuthorName());
+    }
+
+    public GlobalChatDTO(GlobalChat globalChat) {
+        this(
+            globalChat.getId(),
+            globalChat.getMessage(),
+            globalChat.getCreated(),
+            globalChat.getAuthorLogin(),
+            globalChat.getAuthorName()
+        );
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public ZonedDateTime getCreated() {
+        return created;
+    }
+
+    public void setCreated(ZonedDateTime created) {
+        this.created = created;
+    }
+
+    public String getAuthorLogin() {
+        return authorLogin;
+    }
+
+    public void setAuthorLogin(String authorLogin) {
+        this.authorLogin = authorLogin;
+    }
+
+    public String getAuthorName() {
+        return authorName;
+    }
+
+    public void setAuthorName(String authorName) {
+        this.authorName = authorName;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "GlobalChatDTO{" +
+            "id=" + id +
+            ", message='" + message + '\'' +
+            ", created='" + created + '\'' +
+            ", authorLogin='" + authorLogin + '\'' +
+            ", authorName='" + authorName + '\'' +
+            "}";
+    }
+}
@@ -1,12 +1,30 @@
 package com.hofimefu.service.impl;
 
 import com.hofimefu.domain.Event;
+import com.hofimefu.domain.User;
 import com.hofimefu.repository.EventRepository;
+import com.hofimefu.repository.UserRepository;
+import com.hofimefu.security.SecurityUtils;
+import com.hofimefu.service.BlockedFriendships;
+import com.hofimefu.service.EventLocationIndex;
+import com.hofimefu.service.EventRsvps;
 import com.hofimefu.service.EventService;
+import com.hofimefu.service.dto.EventRsvpDTO;
+import com.hofimefu.service.dto.EventSummaryDTO;
+import com.hofimefu.service.dto.NearbyEventDTO;
+import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -21,20 +39,46 @@ public class EventServiceImpl implements EventService {
 
     private final EventRepository eventRepository;
 
-    public EventServiceImpl(EventRepository eventRepository) {
+    private final EventLocationIndex eventLocationIndex;
+
+    private final EventRsvps eventRsvps;
+
+    private final UserRepository userRepository;
+
+    private final BlockedFriendships blockedFriendships;
+
+    public EventServiceImpl(
+        EventRepository eventRepository,
+        EventLocationIndex eventLocationIndex,
+        EventRsvps eventRsvps,
+        UserRepository userRepository,
+        BlockedFriendships blockedFriendships
+    ) {
         this.eventRepository = eventRepository;
+        this.eventLocationIndex = eventLocationIndex;
+        this.eventRsvps = eventRsvps;
+        this.userRepository = userRepository;
+        this.blockedFriendships = blockedFriendships;
     }
 
     @Override
     public Event save(Event event) {
         log.debug("Request to save Event : {}", event);
-        return eventRepository.save(event);
+        Event result = eventRepository.save(event);
+        eventLocationIndex.refresh(result);
+        return result;
     }
 
     @Override
     public Event update(Event event) {
         log.debug("Request to save Event : {}", event);
-        return eventRepository.save(event);
+        // the counter is not updatable from the entity: keep the stored one, loaded by the merge anyway
+        eventRepository.findById(event.getId()).ifPresent(existingEvent -> event.setAttendeeCount(existingEvent.getAttendeeCount()));
+        Event result = eventRepository.save(event);
+        eventLocationIndex.refresh(result);
+        // the capacity may have grown
+        eventRsvps.promote(result.getId());
+        return result;
     }
 
     @Override
@@ -62,10 +106,18 @@ public class EventServiceImpl implements EventService {
                 if (event.getPlanned() != null) {
                     existingEvent.setPlanned(event.getPlanned());
                 }
+                if (event.getCapacity() != null) {
+                    existingEvent.setCapacity(event.getCapacity());
+                }
 
                 return existingEvent;
             })
-            .map(eventRepository::save);
+            .map(eventRepository::save)
+            .map(result -> {
+                eventLocationIndex.refresh(result);
+                eventRsvps.promote(result.getId());
+                return result;
+            });
     }
 
     @Override
@@ -75,6 +127,113 @@ public class EventServiceImpl implements EventService {
         return eventRepository.findAll();
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public List<EventSummaryDTO> findUpcoming(ZonedDateTime afterPlanned, Long afterId, int limit) {
+        log.debug("Request to get the upcoming Events after : {}, {}, limit : {}", afterPlanned, afterId, limit);
+        PageRequest page = PageRequest.of(0, limit);
+        List<EventRepository.EventSummary> events = afterPlanned == null || afterId == null
+            ? eventRepository.findUpcoming(ZonedDateTime.now(), page)
+            : eventRepository.findUpcomingAfter(afterPlanned, afterId, page);
+        return events.stream().map(EventSummaryDTO::new).collect(Collectors.toList());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<NearbyEventDTO> findNearby(double latitude, double longitude, double radiusKm, int limit) {
+        log.debug("Request to get the Events within {} km of {}, {}", radiusKm, latitude, longitude);
+        if (!eventLocationIndex.isEnabled()) {
+            return findNearby(latitude, longitude, radiusKm, PageRequest.of(0, limit)).getContent();
+        }
+        Long userId = findCurrentUserId().orElse(null);
+        // the events of blocked creators are left out while ranking, so that they do not take the place of others
+        List<EventLocationIndex.Hit> hits = eventLocationIndex.search(
+            latitude,
+            longitude,
+            radiusKm,
+            limit,
+            creatorId -> blockedFriendships.isBlocked(userId, creatorId)
+        );
+        // only the events of the result are loaded, in one query and without their creator; the index gives their order
+        Map<Long, EventRepository.EventSummary> events = findSummaries(
+            hits.stream().map(EventLocationIndex.Hit::getEventId).collect(Collectors.toList())
+        );
+        return hits
+            .stream()
+            .filter(hit -> events.containsKey(hit.getEventId()))
+            .map(hit -> new NearbyEventDTO(events.get(hit.getEventId()), hit.getDistanceKm()))
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<NearbyEventDTO> findNearby(double latitude, double longitude, double radiusKm, Pageable pageable) {
+        log.debug("Request to get a page of the Events within {} km of {}, {}", radiusKm, latitude, longitude);
+        EventLocationIndex.BoundingBox box = EventLocationIndex.BoundingBox.of(latitude, longitude, radiusKm);
+        // a range crossing the antimeridian is split in two, otherwise the second range is empty
+        double minLongitude = box.isWrapping() ? -180 : box.getMinLongitude();
+        double otherMinLongitude = box.isWrapping() ? box.getMinLongitude() : 1;
+        double otherMaxLongitude = box.isWrapping() ? 180 : 0;
+        // the events of blocked creators are left out by the query, so that the pages and the total agree
+        Page<Long> ids = eventRepository
+            .findNearbyIds(
+                latitude,
+                longitude,
+                radiusKm,
+                box.getMinLatitude(),
+                box.getMaxLatitude(),
+                minLongitude,
+                box.getMaxLongitude(),
+                otherMinLongitude,
+                otherMaxLongitude,
+                findCurrentUserId().orElse(0L),
+                PageRequest.of(pageable.getPageNumber(), pageable.getPageSize())
+            )
+            .map(Number::longValue);
+        Map<Long, EventRepository.EventSummary> events = findSummaries(ids.getContent());
+        List<NearbyEventDTO> content = ids
+            .stream()
+            .map(events::get)
+            .filter(Objects::nonNull)
+            .map(event ->
+                new NearbyEventDTO(event, EventLocationIndex.distanceKm(latitude, longitude, event.getLatitude(), event.getLongitude()))
+            )
+            .collect(Collectors.toList());
+        return new PageImpl<>(content, ids.getPageable(), ids.getTotalElements());
+    }
+
+    /**
+     * @return the events of the given ids by id, those deleted in the meantime being left out.
+     */
+    private Map<Long, EventRepository.EventSummary> findSummaries(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        return eventRepository
+            .findSummariesByIdIn(ids)
+            .stream()
+            .collect(Collectors.toMap(EventRepository.EventSummary::getId, Function.identity()));
+    }
+
+    @Override
+    public Optional<EventRsvpDTO> rsvp(Long id) {
+        log.debug("Request to RSVP to Event : {}", id);
+        return eventRsvps.join(id, currentUserId());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<EventRsvpDTO> findRsvp(Long id) {
+        log.debug("Request to get the RSVP to Event : {}", id);
+        return eventRsvps.findOne(id, currentUserId());
+    }
+
+    @Override
+    public boolean cancelRsvp(Long id) {
+        log.debug("Request to cancel the RSVP to Event : {}", id);
+        return eventRsvps.leave(id, currentUserId());
+    }
+
     @Override
     @Transactional(readOnly = true)
     public Optional<Event> findOne(Long id) {
@@ -86,5 +245,14 @@ public class EventServiceImpl implements EventService {
     public void delete(Long id) {
         log.debug("Request to delete Event : {}", id);
         eventRepository.deleteById(id);
+        eventLocationIndex.remove(id);
+    }
+
+    private Long currentUserId() {
+        return findCurrentUserId().orElseThrow(() -> new IllegalStateException("Current user login not found"));
+    }
+
+    private Optional<Long> findCurrentUserId() {
+        return SecurityUtils.getCurrentUserLogin().flatMap(userRepository::findOneByLogin).map(User::getId);
     }
 }
@@ -1,10 +1,18 @@
 package com.hofimefu.service.impl;
 
 import com.hofimefu.domain.EvetUser;
+import com.hofimefu.domain.User;
 import com.hofimefu.repository.EvetUserRepository;
+import com.hofimefu.repository.UserRepository;
+import com.hofimefu.security.SecurityUtils;
+import com.hofimefu.service.BlockedFriendships;
+import com.hofimefu.service.EventAttendees;
 import com.hofimefu.service.EvetUserService;
+import com.hofimefu.service.UserBlockedException;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
@@ -23,20 +31,42 @@ public class EvetUserServiceImpl implements EvetUserService {
 
     private final EvetUserRepository evetUserRepository;
 
-    public EvetUserServiceImpl(EvetUserRepository evetUserRepository) {
+    private final EventAttendees eventAttendees;
+
+    private final BlockedFriendships blockedFriendships;
+
+    private final UserRepository userRepository;
+
+    public EvetUserServiceImpl(
+        EvetUserRepository evetUserRepository,
+        EventAttendees eventAttendees,
+        BlockedFriendships blockedFriendships,
+        UserRepository userRepository
+    ) {
         this.evetUserRepository = evetUserRepository;
+        this.eventAttendees = eventAttendees;
+        this.blockedFriendships = blockedFriendships;
+        this.userRepository = userRepository;
     }
 
     @Override
     public EvetUser save(EvetUser evetUser) {
         log.debug("Request to save EvetUser : {}", evetUser);
-        return evetUserRepository.save(evetUser);
+        checkInvitedUsers(evetUser);
+        EventAttendees.Snapshot previous = eventAttendees.snapshot(evetUser.getId());
+        EvetUser result = evetUserRepository.save(evetUser);
+        eventAttendees.changed(previous, EventAttendees.Snapshot.of(result));
+        return result;
     }
 
     @Override
     public EvetUser update(EvetUser evetUser) {
         log.debug("Request to save EvetUser : {}", evetUser);
-        return evetUserRepository.save(evetUser);
+        checkInvitedUsers(evetUser);
+        EventAttendees.Snapshot previous = eventAttendees.snapshot(evetUser.getId());
+        EvetUser result = evetUserRepository.save(evetUser);
+        eventAttendees.changed(previous, EventAttendees.Snapshot.of(result));
+        return result;
     }
 
     @Override
@@ -72,6 +102,30 @@ public class EvetUserServiceImpl implements EvetUserService {
     @Override
     public void delete(Long id) {
         log.debug("Request to delete EvetUser : {}", id);
+        EventAttendees.Snapshot previous = eventAttendees.snapshot(id);
         evetUserRepository.deleteById(id);
+        eventAttendees.changed(previous, null);
+    }
+
+    /**
+     * Refuse to add to an EvetUser a user who has blocked the current user, or was blocked by them.
+     *
+     * @throws UserBlockedException if one of the users added is blocked.
+     */
+    private void checkInvitedUsers(EvetUser evetUser) {
+        if (evetUser.getUsers() == null || evetUser.getUsers().isEmpty()) {
+            return;
+        }
+        Optional<Long> currentUserId = SecurityUtils.getCurrentUserLogin().flatMap(userRepository::findOneByLogin).map(User::getId);
+        if (currentUserId.isEmpty()) {
+            return;
+        }
+        // the users already there stay, whatever happened since they were added
+        Set<Long> previous = evetUser.getId() == null ? Set.of() : new HashSet<>(evetUserRepository.findUserIds(evetUser.getId()));
+        for (User user : evetUser.getUsers()) {
+            if (!previous.contains(user.getId()) && blockedFriendships.isBlocked(currentUserId.get(), user.getId())) {
+                throw new UserBlockedException();
+            }
+        }
     }
 }
@@ -1,12 +1,46 @@
 package com.hofimefu.service.impl;
 
 import com.hofimefu.domain.Friend;
+import com.hofimefu.domain.FriendStatus;
+import com.hofimefu.domain.User;
+import com.hofimefu.domain.enumeration.FriendshipStatus;
+import com.hofimefu.repository.FriendPairRepository;
 import com.hofimefu.repository.FriendRepository;
+import com.hofimefu.repository.FriendStatusRepository;
+import com.hofimefu.repository.FriendSuggestionRepository;
+import com.hofimefu.repository.UserRepository;
+import com.hofimefu.security.SecurityUtils;
+import com.hofimefu.service.BlockedFriendships;
+import com.hofimefu.service.FriendGraph;
+import com.hofimefu.service.FriendPathFinder;
 import com.hofimefu.service.FriendService;
+import com.hofimefu.service.FriendSuggestions;
+import com.hofimefu.service.FriendshipExistsException;
+import com.hofimefu.service.PendingFriendRequests;
+import com.hofimefu.service.dto.FriendDTO;
+import com.hofimefu.service.dto.FriendPathDTO;
+import com.hofimefu.service.dto.FriendRequestResultDTO;
+import com.hofimefu.service.dto.FriendSuggestionDTO;
+import com.hofimefu.service.dto.UserDTO;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.hibernate.exception.ConstraintViolationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -21,20 +55,170 @@ public class FriendServiceImpl implements FriendService {
 
     private final FriendRepository friendRepository;
 
-    public FriendServiceImpl(FriendRepository friendRepository) {
+    private final FriendPairRepository friendPairRepository;
+
+    private final FriendGraph friendGraph;
+
+    private final BlockedFriendships blockedFriendships;
+
+    private final UserRepository userRepository;
+
+    private final FriendStatusRepository friendStatusRepository;
+
+    private final FriendSuggestions friendSuggestions;
+
+    private final FriendSuggestionRepository friendSuggestionRepository;
+
+    private final FriendPathFinder friendPathFinder;
+
+    private final PendingFriendRequests pendingFriendRequests;
+
+    public FriendServiceImpl(
+        FriendRepository friendRepository,
+        FriendPairRepository friendPairRepository,
+        FriendGraph friendGraph,
+        BlockedFriendships blockedFriendships,
+        UserRepository userRepository,
+        FriendStatusRepository friendStatusRepository,
+        FriendSuggestions friendSuggestions,
+        FriendSuggestionRepository friendSuggestionRepository,
+        FriendPathFinder friendPathFinder,
+        PendingFriendRequests pendingFriendRequests
+    ) {
         this.friendRepository = friendRepository;
+        this.friendPairRepository = friendPairRepository;
+        this.friendGraph = friendGraph;
+        this.blockedFriendships = blockedFriendships;
+        this.userRepository = userRepository;
+        this.friendStatusRepository = friendStatusRepository;
+        this.friendSuggestions = friendSuggestions;
+        this.friendSuggestionRepository = friendSuggestionRepository;
+        this.friendPathFinder = friendPathFinder;
+        this.pendingFriendRequests = pendingFriendRequests;
     }
 
     @Override
     public Friend save(Friend friend) {
         log.debug("Request to save Friend : {}", friend);
-        return friendRepository.save(friend);
+        Friend result = saveAndFlush(canonical(friend));
+        refresh(result);
+        return result;
+    }
+
+    @Override
+    public List<FriendRequestResultDTO> requestFriends(List<Long> userIds) {
+        log.debug("Request to request the friendship of Users : {}", userIds);
+        Long currentUserId = SecurityUtils
+            .getCurrentUserLogin()
+            .flatMap(userRepository::findOneByLogin)
+            .map(User::getId)
+            .orElseThrow(() -> new IllegalStateException("Current user login not found"));
+        // the users that exist and their friendship with the current user, if any
+        Map<Long, Object[]> targets = new HashMap<>();
+        Set<Long> ids = userIds.stream().filter(Objects::nonNull).collect(Collectors.toSet());
+        if (!ids.isEmpty()) {
+            for (Object[] target : friendRepository.findFriendshipsWith(currentUserId, ids)) {
+                targets.put((Long) target[0], target);
+            }
+        }
+
+        ZonedDateTime now = ZonedDateTime.now();
+        List<FriendRequestResultDTO> results = new ArrayList<>(userIds.size());
+        List<FriendRequestResultDTO> createdResults = new ArrayList<>();
+        List<Friend> created = new ArrayList<>();
+        List<Long> acceptedStatusIds = new ArrayList<>();
+        List<Friend> accepted = new ArrayList<>();
+        Set<Long> requested = new HashSet<>();
+        for (Long userId : userIds) {
+            Object[] target = targets.get(userId);
+            FriendRequestResultDTO result = new FriendRequestResultDTO(userId, null, null);
+            if (!requested.add(userId)) {
+                result.setOutcome(FriendRequestResultDTO.Outcome.DUPLICATE);
+            } else if (target == null) {
+                result.setOutcome(FriendRequestResultDTO.Outcome.NOT_FOUND);
+            } else if (userId.equals(currentUserId)) {
+                result.setOutcome(FriendRequestResultDTO.Outcome.SELF);
+            } else if (target[1] != null) {
+                answerExisting(currentUserId, target, result, acceptedStatusIds, accepted);
+            } else {
+                FriendStatus status = new FriendStatus()
+                    .status(FriendshipStatus.PENDING)
+                    .recipient(userRepository.getReferenceById(userId))
+                    .created(now)
+                    .lastChanged(now);
+                Friend friend = new Friend()
+                    .user1(userRepository.getReferenceById(currentUserId))
+                    .user2(userRepository.getReferenceById(userId))
+                    .status(status);
+                created.add(canonical(friend));
+                createdResults.add(result);
+                result.setOutcome(FriendRequestResultDTO.Outcome.CREATED);
+            }
+            results.add(result);
+        }
+
+        // the rows are inserted in JDBC batches, skipping the pairs requested by concurrent transactions since the check
+        List<FriendStatus> createdStatuses = created.stream().map(Friend::getStatus).collect(Collectors.toList());
+        friendStatusRepository.saveAllAndFlush(createdStatuses);
+        if (!created.isEmpty()) {
+            friendPairRepository.insertAbsent(created);
+            Map<Long, Object[]> inserted = new HashMap<>();
+            List<Long> createdUserIds = createdResults.stream().map(FriendRequestResultDTO::getUserId).collect(Collectors.toList());
+            for (Object[] target : friendRepository.findFriendshipsWith(currentUserId, createdUserIds)) {
+                inserted.put((Long) target[0], target);
+            }
+            List<FriendStatus> skippedStatuses = new ArrayList<>();
+            for (int i = 0; i < created.size(); i++) {
+                FriendRequestResultDTO result = createdResults.get(i);
+                FriendStatus status = created.get(i).getStatus();
+                Object[] target = inserted.get(result.getUserId());
+                if (status.getId().equals(target[2])) {
+                    result.setFriendId((Long) target[1]);
+                } else {
+                    // the pair was taken first, the request is answered as if it had been checked afterwards
+                    skippedStatuses.add(status);
+                    answerExisting(currentUserId, target, result, acceptedStatusIds, accepted);
+                }
+            }
+            createdStatuses.removeAll(skippedStatuses);
+            friendStatusRepository.deleteAll(skippedStatuses);
+        }
+        List<PendingFriendRequests.Snapshot> acceptedRequests = new ArrayList<>();
+        List<PendingFriendRequests.Snapshot> acceptedFriendships = new ArrayList<>();
+        for (FriendStatus status : friendStatusRepository.findAllById(acceptedStatusIds)) {
+            acceptedRequests.add(PendingFriendRequests.Snapshot.of(status));
+            status.status(FriendshipStatus.ACTIVE).lastChanged(now);
+            acceptedFriendships.add(PendingFriendRequests.Snapshot.of(status));
+        }
+        acceptedFriendships.addAll(createdStatuses.stream().map(PendingFriendRequests.Snapshot::of).collect(Collectors.toList()));
+        pendingFriendRequests.changed(acceptedRequests, acceptedFriendships);
+        friendGraph.addAll(accepted);
+        if (!created.isEmpty() || !accepted.isEmpty()) {
+            List<Long> changedUserIds = results
+                .stream()
+                .filter(result ->
+                    result.getOutcome() == FriendRequestResultDTO.Outcome.CREATED ||
+                    result.getOutcome() == FriendRequestResultDTO.Outcome.ACCEPTED
+                )
+                .map(FriendRequestResultDTO::getUserId)
+                .collect(Collectors.toList());
+            changedUserIds.add(currentUserId);
+            friendSuggestions.markChanged(changedUserIds.toArray(new Long[0]));
+        }
+        return results;
     }
 
     @Override
     public Friend update(Friend friend) {
         log.debug("Request to save Friend : {}", friend);
-        return friendRepository.save(friend);
+        // the users may change, in which case the previous pair is no longer friends
+        Optional<Friend> previous = friendRepository
+            .findById(friend.getId())
+            .map(existingFriend -> new Friend().user1(existingFriend.getUser1()).user2(existingFriend.getUser2()));
+        Friend result = saveAndFlush(canonical(friend));
+        previous.ifPresent(this::refresh);
+        refresh(result);
+        return result;
     }
 
     @Override
@@ -51,9 +235,98 @@ public class FriendServiceImpl implements FriendService {
 
     @Override
     @Transactional(readOnly = true)
-    public List<Friend> findAll() {
+    public Page<FriendDTO> findAll(Pageable pageable) {
         log.debug("Request to get all Friends");
-        return friendRepository.findAll();
+        return friendRepository.findAllEntries(pageable).map(FriendDTO::new);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<FriendDTO> findAllOfCurrentUser(Pageable pageable) {
+        log.debug("Request to get the Friends of the current user");
+        return friendRepository.findAllOfCurrentUser(pageable).map(FriendDTO::new);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<UserDTO> findMutualFriends(Long userId, Pageable pageable) {
+        log.debug("Request to get the mutual Friends of the current user and User : {}", userId);
+        Optional<Long> currentUserId = SecurityUtils.getCurrentUserLogin().flatMap(userRepository::findOneByLogin).map(User::getId);
+        if (currentUserId.isEmpty()) {
+            return Page.empty(pageable);
+        }
+        // the intersection comes from the friend graph, only the users of the page are loaded
+        long[] page = new long[pageable.getPageSize()];
+        int total = friendGraph.mutualFriends(currentUserId.get(), userId, (int) pageable.getOffset(), page);
+        int size = (int) Math.max(0, Math.min(total - pageable.getOffset(), page.length));
+        List<Long> ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ids.add(page[i]);
+        }
+        List<UserDTO> users = userRepository
+            .findAllById(ids)
+            .stream()
+            .sorted(Comparator.comparing(User::getId))
+            .map(UserDTO::new)
+            .collect(Collectors.toList());
+        return new PageImpl<>(users, pageable, total);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<FriendDTO> findPendingRequests(Pageable pageable) {
+        log.debug("Request to get the pending friend requests of the current user");
+        // the order is the one of the (recipient, status, created) index, the total is the counter
+        Pageable unsorted = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize());
+        List<FriendDTO> content = friendRepository
+            .findPendingRequestsOfCurrentUser(unsorted)
+            .stream()
+            .map(FriendDTO::new)
+            .collect(Collectors.toList());
+        return new PageImpl<>(content, unsorted, countPendingRequests());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public int countPendingRequests() {
+        log.debug("Request to count the pending friend requests of the current user");
+        return SecurityUtils.getCurrentUserLogin().map(pendingFriendRequests::count).orElse(0);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<FriendSuggestionDTO> findSuggestions(int limit) {
+        log.debug("Request to get the friend suggestions of the current user");
+        return SecurityUtils
+            .getCurrentUserLogin()
+            .map(login -> friendSuggestionRepository.findByUserLogin(login, limit))
+            .orElseGet(List::of)
+            .stream()
+            // a block made since the suggestions were computed
+            .filter(suggestion -> !blockedFriendships.isBlocked(suggestion.getUserId(), suggestion.getSuggestedUserId()))
+            .map(FriendSuggestionDTO::new)
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public FriendPathDTO findPath(Long from, Long to) {
+        log.debug("Request to get the shortest path of Friends from User : {} to User : {}", from, to);
+        FriendPathFinder.Search search = friendPathFinder.find(from, to);
+        if (search.getOutcome() != FriendPathDTO.Outcome.FOUND) {
+            return new FriendPathDTO(search.getOutcome(), null, List.of());
+        }
+        long[] path = search.getPath();
+        List<Long> ids = new ArrayList<>(path.length);
+        for (long id : path) {
+            ids.add(id);
+        }
+        Map<Long, UserDTO> users = userRepository.findAllById(ids).stream().collect(Collectors.toMap(User::getId, UserDTO::new));
+        return new FriendPathDTO(
+            FriendPathDTO.Outcome.FOUND,
+            path.length - 1,
+            ids.stream().map(users::get).filter(Objects::nonNull).collect(Collectors.toList())
+        );
     }
 
     @Override
@@ -66,6 +339,86 @@ public class FriendServiceImpl implements FriendService {
     @Override
     public void delete(Long id) {
         log.debug("Request to delete Friend : {}", id);
-        friendRepository.deleteById(id);
+        friendRepository
+            .findById(id)
+            .ifPresent(friend -> {
+                friendRepository.delete(friend);
+                // a withdrawn or declined request leaves nothing behind
+                FriendStatus status = friend.getStatus();
+                if (status != null && status.getStatus() == FriendshipStatus.PENDING) {
+                    friendStatusRepository.delete(status);
+                    pendingFriendRequests.changed(PendingFriendRequests.Snapshot.of(status), null);
+                }
+                refresh(friend);
+            });
+    }
+
+    /**
+     * Answer a request of the current user to a user it has a friendship with.
+     */
+    private void answerExisting(
+        Long currentUserId,
+        Object[] target,
+        FriendRequestResultDTO result,
+        List<Long> acceptedStatusIds,
+        List<Friend> accepted
+    ) {
+        result.setFriendId((Long) target[1]);
+        if (target[3] == FriendshipStatus.BLOCKED) {
+            result.setOutcome(FriendRequestResultDTO.Outcome.BLOCKED);
+        } else if (target[3] == FriendshipStatus.PENDING && currentUserId.equals(target[4])) {
+            // the other user asked first, asking back accepts
+            acceptedStatusIds.add((Long) target[2]);
+            Friend friend = new Friend()
+                .user1(userRepository.getReferenceById(currentUserId))
+                .user2(userRepository.getReferenceById((Long) target[0]));
+            accepted.add(canonical(friend));
+            result.setOutcome(FriendRequestResultDTO.Outcome.ACCEPTED);
+        } else {
+            result.setOutcome(FriendRequestResultDTO.Outcome.EXISTS);
+        }
+    }
+
+    /**
+     * Write a friendship right away, so that a pair taken by a concurrent transaction since it was checked is reported
+     * here rather than on commit.
+     *
+     * @throws FriendshipExistsException if the users of the friendship already have another one.
+     */
+    private Friend saveAndFlush(Friend friend) {
+        try {
+            return friendRepository.saveAndFlush(friend);
+        } catch (DataIntegrityViolationException e) {
+            if (
+                e.getCause() instanceof ConstraintViolationException &&
+                FriendRepository.PAIR_INDEX_NAME.equals(((ConstraintViolationException) e.getCause()).getConstraintName())
+            ) {
+                throw new FriendshipExistsException();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Keep the friend graph, the blocked friendships and the suggestions in line with a friendship that changed.
+     */
+    private void refresh(Friend friend) {
+        friendGraph.refresh(friend);
+        blockedFriendships.refresh(friend);
+        if (friend.getUser1() != null && friend.getUser2() != null) {
+            friendSuggestions.markChanged(friend.getUser1().getId(), friend.getUser2().getId());
+        }
+    }
+
+    /**
+     * Put the lower user id of the pair first, which is how friendships are stored.
+     */
+    private static Friend canonical(Friend friend) {
+        User user1 = friend.getUser1();
+        User user2 = friend.getUser2();
+        if (user1 != null && user2 != null && user1.getId() != null && user2.getId() != null && user1.getId() > user2.getId()) {
+            friend.user1(user2).user2(user1);
+        }
+        return friend;
     }
 }
@@ -1,8 +1,13 @@
 package com.hofimefu.service.impl;
 
 import com.hofimefu.domain.FriendStatus;
+import com.hofimefu.repository.FriendRepository;
 import com.hofimefu.repository.FriendStatusRepository;
+import com.hofimefu.service.BlockedFriendships;
+import com.hofimefu.service.FriendGraph;
 import com.hofimefu.service.FriendStatusService;
+import com.hofimefu.service.FriendSuggestions;
+import com.hofimefu.service.PendingFriendRequests;
 import java.util.List;
 import java.util.Optional;
 import org.slf4j.Logger;
@@ -21,20 +26,51 @@ public class FriendStatusServiceImpl implements FriendStatusService {
 
     private final FriendStatusRepository friendStatusRepository;
 
-    public FriendStatusServiceImpl(FriendStatusRepository friendStatusRepository) {
+    private final FriendRepository friendRepository;
+
+    private final FriendGraph friendGraph;
+
+    private final BlockedFriendships blockedFriendships;
+
+    private final FriendSuggestions friendSuggestions;
+
+    private final PendingFriendRequests pendingFriendRequests;
+
+    public FriendStatusServiceImpl(
+        FriendStatusRepository friendStatusRepository,
+        FriendRepository friendRepository,
+        FriendGraph friendGraph,
+        BlockedFriendships blockedFriendships,
+        FriendSuggestions friendSuggestions,
+        PendingFriendRequests pendingFriendRequests
+    ) {
         this.friendStatusRepository = friendStatusRepository;
+        this.friendRepository = friendRepository;
+        this.friendGraph = friendGraph;
+        this.blockedFriendships = blockedFriendships;
+        this.friendSuggestions = friendSuggestions;
+        this.pendingFriendRequests = pendingFriendRequests;
     }
 
     @Override
     public FriendStatus save(FriendStatus friendStatus) {
         log.debug("Request to save FriendStatus : {}", friendStatus);
-        return friendStatusRepository.save(friendStatus);
+        FriendStatus result = friendStatusRepository.save(friendStatus);
+        pendingFriendRequests.changed(null, PendingFriendRequests.Snapshot.of(result));
+        return result;
     }
 
     @Override
     public FriendStatus update(FriendStatus friendStatus) {
         log.debug("Request to save FriendStatus : {}", friendStatus);
-        return friendStatusRepository.save(friendStatus);
+        PendingFriendRequests.Snapshot previous = friendStatusRepository
+            .findById(friendStatus.getId())
+            .map(PendingFriendRequests.Snapshot::of)
+            .orElse(null);
+        FriendStatus result = friendStatusRepository.save(friendStatus);
+        pendingFriendRequests.changed(previous, PendingFriendRequests.Snapshot.of(result));
+        refreshFriendship(result);
+        return result;
     }
 
     @Override
@@ -44,6 +80,7 @@ public class FriendStatusServiceImpl implements FriendStatusService {
         return friendStatusRepository
             .findById(friendStatus.getId())
             .map(existingFriendStatus -> {
+                PendingFriendRequests.Snapshot previous = PendingFriendRequests.Snapshot.of(existingFriendStatus);
                 if (friendStatus.getCreated() != null) {
                     existingFriendStatus.setCreated(friendStatus.getCreated());
                 }
@@ -54,9 +91,26 @@ public class FriendStatusServiceImpl implements FriendStatusService {
                     existingFriendStatus.setStatus(friendStatus.getStatus());
                 }
 
-                return existingFriendStatus;
-            })
-            .map(friendStatusRepository::save);
+                FriendStatus result = friendStatusRepository.save(existingFriendStatus);
+                pendingFriendRequests.changed(previous, PendingFriendRequests.Snapshot.of(result));
+                refreshFriendship(result);
+                return result;
+            });
+    }
+
+    /**
+     * A blocked or pending friendship is not part of the friend graph, and joins it once active.
+     */
+    private void refreshFriendship(FriendStatus friendStatus) {
+        friendRepository
+            .findOneByStatusId(friendStatus.getId())
+            .ifPresent(friend -> {
+                friendGraph.refresh(friend);
+                blockedFriendships.refresh(friend);
+                if (friend.getUser1() != null && friend.getUser2() != null) {
+                    friendSuggestions.markChanged(friend.getUser1().getId(), friend.getUser2().getId());
+                }
+            });
     }
 
     @Override
@@ -76,6 +130,11 @@ public class FriendStatusServiceImpl implements FriendStatusService {
     @Override
     public void delete(Long id) {
         log.debug("Request to delete FriendStatus : {}", id);
-        friendStatusRepository.deleteById(id);
+        friendStatusRepository
+            .findById(id)
+            .ifPresent(friendStatus -> {
+                friendStatusRepository.delete(friendStatus);
+                pendingFriendRequests.changed(PendingFriendRequests.Snapshot.of(friendStatus), null);
+            });
     }
 }
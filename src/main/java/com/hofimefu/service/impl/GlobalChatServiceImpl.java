@@ -1,14 +1,35 @@
 package com.hofimefu.service.impl;
 
 import com.hofimefu.domain.GlobalChat;
+import com.hofimefu.domain.User;
 import com.hofimefu.repository.GlobalChatRepository;
+import com.hofimefu.repository.UserRepository;
+import com.hofimefu.service.GlobalChatBroadcaster;
 import com.hofimefu.service.GlobalChatService;
+import com.hofimefu.service.GlobalChatWriteBehind;
+import com.hofimefu.service.RecentGlobalChatCache;
+import com.hofimefu.service.TransactionUtils;
+import com.hofimefu.service.dto.GlobalChatDTO;
+import java.time.ZonedDateTime;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 /**
  * Service Implementation for managing {@link GlobalChat}.
@@ -21,20 +42,84 @@ public class GlobalChatServiceImpl implements GlobalChatService {
 
     private final GlobalChatRepository globalChatRepository;
 
-    public GlobalChatServiceImpl(GlobalChatRepository globalChatRepository) {
+    private final GlobalChatBroadcaster globalChatBroadcaster;
+
+    private final RecentGlobalChatCache recentGlobalChatCache;
+
+    private final GlobalChatWriteBehind globalChatWriteBehind;
+
+    private final UserRepository userRepository;
+
+    public GlobalChatServiceImpl(
+        GlobalChatRepository globalChatRepository,
+        GlobalChatBroadcaster globalChatBroadcaster,
+        RecentGlobalChatCache recentGlobalChatCache,
+        GlobalChatWriteBehind globalChatWriteBehind,
+        UserRepository userRepository
+    ) {
         this.globalChatRepository = globalChatRepository;
+        this.userRepository = userRepository;
+        this.globalChatBroadcaster = globalChatBroadcaster;
+        this.recentGlobalChatCache = recentGlobalChatCache;
+        this.globalChatWriteBehind = globalChatWriteBehind;
     }
 
     @Override
     public GlobalChat save(GlobalChat globalChat) {
         log.debug("Request to save GlobalChat : {}", globalChat);
-        return globalChatRepository.save(globalChat);
+        if (globalChat.getCreated() == null) {
+            globalChat.setCreated(ZonedDateTime.now());
+        }
+        // a caller's own transaction must keep its rollback semantics, so only standalone saves are written behind;
+        // the transaction started here has not borrowed a connection yet while it waits for the batch, which is why
+        // the write-behind takes the author snapshot itself
+        boolean writeBehind = globalChatWriteBehind.isEnabled() && TransactionAspectSupport.currentTransactionStatus().isNewTransaction();
+        if (writeBehind) {
+            return saveBehind(globalChat);
+        }
+        GlobalChat result = saveWithAuthor(globalChat);
+        TransactionUtils.afterCommit(() -> announce(result));
+        return result;
+    }
+
+    /**
+     * Wait for the write-behind to commit the message in its next batch. The message is announced by the write-behind
+     * once committed, as the batch may commit after the wait has timed out.
+     */
+    private GlobalChat saveBehind(GlobalChat globalChat) {
+        try {
+            return globalChatWriteBehind.submit(globalChat, this::announce).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Add a committed new message to the recent messages and push it to the subscribers.
+     */
+    private void announce(GlobalChat globalChat) {
+        recentGlobalChatCache.put(new GlobalChatDTO(globalChat));
+        globalChatBroadcaster.publish(globalChat);
+    }
+
+    private GlobalChat saveWithAuthor(GlobalChat globalChat) {
+        User user = globalChat.getUser() == null ? null : userRepository.findById(globalChat.getUser().getId()).orElse(null);
+        return globalChatRepository.save(globalChat.author(user));
     }
 
     @Override
     public GlobalChat update(GlobalChat globalChat) {
         log.debug("Request to save GlobalChat : {}", globalChat);
-        return globalChatRepository.save(globalChat);
+        if (globalChat.getCreated() == null) {
+            // created is the partition key and cannot be cleared
+            globalChatRepository.findCreatedById(globalChat.getId()).ifPresent(globalChat::setCreated);
+        }
+        GlobalChat result = saveWithAuthor(globalChat);
+        TransactionUtils.afterCommit(() -> recentGlobalChatCache.put(new GlobalChatDTO(result)));
+        return result;
     }
 
     @Override
@@ -53,14 +138,77 @@ public class GlobalChatServiceImpl implements GlobalChatService {
 
                 return existingGlobalChat;
             })
-            .map(globalChatRepository::save);
+            .map(this::saveWithAuthor)
+            .map(result -> {
+                TransactionUtils.afterCommit(() -> recentGlobalChatCache.put(new GlobalChatDTO(result)));
+                return result;
+            });
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<GlobalChat> findAll() {
+    public List<GlobalChatDTO> findAll() {
         log.debug("Request to get all GlobalChats");
-        return globalChatRepository.findAll();
+        return toDTOs(globalChatRepository.findAllEntries());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<GlobalChatDTO> findTimeline(Long before, int limit) {
+        log.debug("Request to get GlobalChat timeline before : {}, limit : {}", before, limit);
+        PageRequest page = PageRequest.of(0, limit);
+        if (before == null) {
+            return recentGlobalChatCache.latest(limit).orElseGet(() -> toDTOs(globalChatRepository.findLatest(page)));
+        }
+        return recentGlobalChatCache
+            .before(before, limit)
+            .orElseGet(() ->
+                globalChatRepository
+                    .findCreatedById(before)
+                    .map(created -> toDTOs(globalChatRepository.findBefore(created, before, page)))
+                    .orElse(Collections.emptyList())
+            );
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<GlobalChatDTO> findAfter(Long after, int limit) {
+        log.debug("Request to get GlobalChats after : {}, limit : {}", after, limit);
+        return recentGlobalChatCache
+            .after(after, limit)
+            .orElseGet(() -> toDTOs(globalChatRepository.findAfter(after, PageRequest.of(0, limit))));
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Optional<Long> findNewestIdInMemory() {
+        // no transaction of its own, so that answering from memory never borrows a connection
+        OptionalLong newestId = recentGlobalChatCache.newestId();
+        return newestId.isPresent() ? Optional.of(newestId.getAsLong()) : Optional.empty();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<GlobalChatDTO> search(String query, Pageable pageable) {
+        log.debug("Request to search GlobalChats for : {}", query);
+        Page<Long> ids = globalChatRepository
+            .searchIds(query, PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()))
+            .map(Number::longValue);
+        if (ids.isEmpty()) {
+            return new PageImpl<>(Collections.emptyList(), ids.getPageable(), ids.getTotalElements());
+        }
+        // only the matches of the page are loaded, in one query and without their author; the search gives their order
+        Map<Long, GlobalChatRepository.TimelineEntry> entries = globalChatRepository
+            .findEntriesByIdIn(ids.getContent())
+            .stream()
+            .collect(Collectors.toMap(GlobalChatRepository.TimelineEntry::getId, Function.identity()));
+        List<GlobalChatDTO> content = ids
+            .stream()
+            .map(entries::get)
+            .filter(Objects::nonNull)
+            .map(GlobalChatDTO::new)
+            .collect(Collectors.toList());
+        return new PageImpl<>(content, ids.getPageable(), ids.getTotalElements());
     }
 
     @Override
@@ -70,9 +218,25 @@ public class GlobalChatServiceImpl implements GlobalChatService {
         return globalChatRepository.findById(id);
     }
 
+    @Override
+    public void refreshAuthor(User user, String previousLogin) {
+        log.debug("Request to refresh the GlobalChat author snapshot of User : {}", user.getLogin());
+        String login = user.getLogin();
+        String name = GlobalChat.displayName(user);
+        int updated = globalChatRepository.updateAuthor(user.getId(), login, name);
+        if (updated > 0) {
+            TransactionUtils.afterCommit(() -> recentGlobalChatCache.updateAuthor(previousLogin, login, name));
+        }
+    }
+
     @Override
     public void delete(Long id) {
         log.debug("Request to delete GlobalChat : {}", id);
         globalChatRepository.deleteById(id);
+        TransactionUtils.afterCommit(() -> recentGlobalChatCache.remove(id));
+    }
+
+    private static List<GlobalChatDTO> toDTOs(List<GlobalChatRepository.TimelineEntry> entries) {
+        return entries.stream().map(GlobalChatDTO::new).collect(Collectors.toList());
     }
 }
@@ -1,7 +1,9 @@
 package com.hofimefu.service.impl;
 
+import com.hofimefu.domain.User;
 import com.hofimefu.domain.UserSchool;
 import com.hofimefu.repository.UserSchoolRepository;
+import com.hofimefu.service.FriendSuggestions;
 import com.hofimefu.service.UserSchoolService;
 import java.util.List;
 import java.util.Optional;
@@ -21,20 +23,29 @@ public class UserSchoolServiceImpl implements UserSchoolService {
 
     private final UserSchoolRepository userSchoolRepository;
 
-    public UserSchoolServiceImpl(UserSchoolRepository userSchoolRepository) {
+    private final FriendSuggestions friendSuggestions;
+
+    public UserSchoolServiceImpl(UserSchoolRepository userSchoolRepository, FriendSuggestions friendSuggestions) {
         this.userSchoolRepository = userSchoolRepository;
+        this.friendSuggestions = friendSuggestions;
     }
 
     @Override
     public UserSchool save(UserSchool userSchool) {
         log.debug("Request to save UserSchool : {}", userSchool);
-        return userSchoolRepository.save(userSchool);
+        UserSchool result = userSchoolRepository.save(userSchool);
+        friendSuggestions.markChanged(userId(result));
+        return result;
     }
 
     @Override
     public UserSchool update(UserSchool userSchool) {
         log.debug("Request to save UserSchool : {}", userSchool);
-        return userSchoolRepository.save(userSchool);
+        // the membership may move to another user, whose schools change too
+        Long previousUserId = userSchoolRepository.findById(userSchool.getId()).map(UserSchoolServiceImpl::userId).orElse(null);
+        UserSchool result = userSchoolRepository.save(userSchool);
+        friendSuggestions.markChanged(previousUserId, userId(result));
+        return result;
     }
 
     @Override
@@ -70,6 +81,16 @@ public class UserSchoolServiceImpl implements UserSchoolService {
     @Override
     public void delete(Long id) {
         log.debug("Request to delete UserSchool : {}", id);
-        userSchoolRepository.deleteById(id);
+        userSchoolRepository
+            .findById(id)
+            .ifPresent(userSchool -> {
+                userSchoolRepository.delete(userSchool);
+                friendSuggestions.markChanged(userId(userSchool));
+            });
+    }
+
+    private static Long userId(UserSchool userSchool) {
+        User user = userSchool.getUser();
+        return user == null ? null : user.getId();
     }
 }
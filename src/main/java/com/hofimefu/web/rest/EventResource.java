@@ -1,11 +1,18 @@
 package com.hofimefu.web.rest;
 
+import com.hofimefu.config.ApplicationProperties;
 import com.hofimefu.domain.Event;
 import com.hofimefu.repository.EventRepository;
 import com.hofimefu.service.EventService;
+import com.hofimefu.service.dto.EventRsvpDTO;
+import com.hofimefu.service.dto.EventSummaryDTO;
+import com.hofimefu.service.dto.NearbyEventDTO;
 import com.hofimefu.web.rest.errors.BadRequestAlertException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -14,9 +21,14 @@ import javax.validation.constraints.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import tech.jhipster.web.util.HeaderUtil;
+import tech.jhipster.web.util.PaginationUtil;
 import tech.jhipster.web.util.ResponseUtil;
 
 /**
@@ -30,6 +42,12 @@ public class EventResource {
 
     private static final String ENTITY_NAME = "event";
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final int DEFAULT_UPCOMING_LIMIT = 20;
+
+    private static final int MAX_UPCOMING_LIMIT = 100;
+
     @Value("${jhipster.clientApp.name}")
     private String applicationName;
 
@@ -37,9 +55,12 @@ public class EventResource {
 
     private final EventRepository eventRepository;
 
-    public EventResource(EventService eventService, EventRepository eventRepository) {
+    private final ApplicationProperties.Events.Nearby nearbyProperties;
+
+    public EventResource(EventService eventService, EventRepository eventRepository, ApplicationProperties applicationProperties) {
         this.eventService = eventService;
         this.eventRepository = eventRepository;
+        this.nearbyProperties = applicationProperties.getEvents().getNearby();
     }
 
     /**
@@ -141,6 +162,156 @@ public class EventResource {
         return eventService.findAll();
     }
 
+    /**
+     * {@code GET  /events/upcoming} : get a keyset page of the upcoming events, in {@code (planned, id)} order.
+     * <p>
+     * The first page starts now. When the page is full, the cursor to pass as {@code after} for the next page is sent in
+     * the {@code X-Next-Cursor} header.
+     *
+     * @param after the {@code planned,id} cursor of the last event of the previous page, {@code planned} being an ISO-8601
+     * date-time.
+     * @param limit the maximum number of events in the page.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of events in body,
+     * or with status {@code 400 (Bad Request)} if the cursor is malformed.
+     */
+    @GetMapping("/events/upcoming")
+    public ResponseEntity<List<EventSummaryDTO>> getUpcomingEvents(
+        @RequestParam(value = "after", required = false) String after,
+        @RequestParam(value = "limit", required = false) Integer limit
+    ) {
+        log.debug("REST request to get a page of the upcoming Events after : {}, limit : {}", after, limit);
+        ZonedDateTime afterPlanned = null;
+        Long afterId = null;
+        if (after != null) {
+            int separator = after.lastIndexOf(',');
+            try {
+                afterPlanned = ZonedDateTime.parse(after.substring(0, Math.max(separator, 0)).trim());
+                afterId = Long.valueOf(after.substring(separator + 1).trim());
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new BadRequestAlertException("The cursor must be planned,id", ENTITY_NAME, "cursorinvalid");
+            }
+        }
+        int pageSize = limit == null ? DEFAULT_UPCOMING_LIMIT : Math.max(1, Math.min(limit, MAX_UPCOMING_LIMIT));
+        List<EventSummaryDTO> page = eventService.findUpcoming(afterPlanned, afterId, pageSize);
+        HttpHeaders headers = new HttpHeaders();
+        if (page.size() == pageSize) {
+            EventSummaryDTO last = page.get(page.size() - 1);
+            headers.add(NEXT_CURSOR_HEADER, DateTimeFormatter.ISO_INSTANT.format(last.getPlanned()) + "," + last.getId());
+        }
+        return ResponseEntity.ok().headers(headers).body(page);
+    }
+
+    /**
+     * {@code GET  /events/nearby} : get the events within a radius of a location, nearest first.
+     *
+     * @param lat the latitude of the location, in degrees.
+     * @param lon the longitude of the location, in degrees.
+     * @param radiusKm the radius, in kilometers, at most the configured maximum.
+     * @param limit the maximum number of events, at most the configured maximum.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of events, with their distance, in body,
+     * or with status {@code 400 (Bad Request)} if the location, the radius or the limit is out of range.
+     */
+    @GetMapping("/events/nearby")
+    public ResponseEntity<List<NearbyEventDTO>> getNearbyEvents(
+        @RequestParam double lat,
+        @RequestParam double lon,
+        @RequestParam(defaultValue = "10") double radiusKm,
+        @RequestParam(defaultValue = "20") int limit
+    ) {
+        log.debug("REST request to get the Events within {} km of {}, {}", radiusKm, lat, lon);
+        checkNearbyArea(lat, lon, radiusKm);
+        if (limit < 1 || limit > nearbyProperties.getMaxLimit()) {
+            throw new BadRequestAlertException(
+                "The limit must be between 1 and " + nearbyProperties.getMaxLimit(),
+                ENTITY_NAME,
+                "limitinvalid"
+            );
+        }
+        return ResponseEntity.ok(eventService.findNearby(lat, lon, radiusKm, limit));
+    }
+
+    /**
+     * {@code GET  /events/nearby/paged} : get a page of the events within a radius of a location, nearest first, searched
+     * in the database.
+     *
+     * @param lat the latitude of the location, in degrees.
+     * @param lon the longitude of the location, in degrees.
+     * @param radiusKm the radius, in kilometers, at most the configured maximum.
+     * @param pageable the pagination information, its sort is ignored.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of events, with their distance, in body,
+     * or with status {@code 400 (Bad Request)} if the location or the radius is out of range.
+     */
+    @GetMapping("/events/nearby/paged")
+    public ResponseEntity<List<NearbyEventDTO>> getNearbyEventsPage(
+        @RequestParam double lat,
+        @RequestParam double lon,
+        @RequestParam(defaultValue = "10") double radiusKm,
+        @org.springdoc.api.annotations.ParameterObject Pageable pageable
+    ) {
+        log.debug("REST request to get a page of the Events within {} km of {}, {}", radiusKm, lat, lon);
+        checkNearbyArea(lat, lon, radiusKm);
+        Page<NearbyEventDTO> page = eventService.findNearby(lat, lon, radiusKm, pageable);
+        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
+        return ResponseEntity.ok().headers(headers).body(page.getContent());
+    }
+
+    private void checkNearbyArea(double lat, double lon, double radiusKm) {
+        if (!(lat >= -90 && lat <= 90) || !(lon >= -180 && lon <= 180)) {
+            throw new BadRequestAlertException("The location is out of range", ENTITY_NAME, "locationinvalid");
+        }
+        if (!(radiusKm > 0 && radiusKm <= nearbyProperties.getMaxRadiusKm())) {
+            throw new BadRequestAlertException(
+                "The radius must be positive and at most " + nearbyProperties.getMaxRadiusKm() + " km",
+                ENTITY_NAME,
+                "radiusinvalid"
+            );
+        }
+    }
+
+    /**
+     * {@code POST  /events/:id/rsvp} : the current user joins the "id" event, or its waitlist if the event is full.
+     * <p>
+     * Answering again changes nothing.
+     *
+     * @param id the id of the event.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body where the current user stands with
+     * the event, or with status {@code 404 (Not Found)}.
+     */
+    @PostMapping("/events/{id}/rsvp")
+    public ResponseEntity<EventRsvpDTO> rsvpEvent(@PathVariable Long id) {
+        log.debug("REST request to RSVP to Event : {}", id);
+        return ResponseUtil.wrapOrNotFound(eventService.rsvp(id));
+    }
+
+    /**
+     * {@code GET  /events/:id/rsvp} : get where the current user stands with the "id" event.
+     *
+     * @param id the id of the event.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the answer of the current user, or
+     * with status {@code 404 (Not Found)}.
+     */
+    @GetMapping("/events/{id}/rsvp")
+    public ResponseEntity<EventRsvpDTO> getEventRsvp(@PathVariable Long id) {
+        log.debug("REST request to get the RSVP to Event : {}", id);
+        return ResponseUtil.wrapOrNotFound(eventService.findRsvp(id));
+    }
+
+    /**
+     * {@code DELETE  /events/:id/rsvp} : the current user leaves the "id" event, or its waitlist. The seat freed up
+     * goes to the first user of the waitlist.
+     *
+     * @param id the id of the event.
+     * @return the {@link ResponseEntity} with status {@code 204 (NO_CONTENT)}, or with status {@code 404 (Not Found)}.
+     */
+    @DeleteMapping("/events/{id}/rsvp")
+    public ResponseEntity<Void> cancelEventRsvp(@PathVariable Long id) {
+        log.debug("REST request to cancel the RSVP to Event : {}", id);
+        if (!eventService.cancelRsvp(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.noContent().build();
+    }
+
     /**
      * {@code GET  /events/:id} : get the "id" event.
      *
@@ -0,0 +1,52 @@
+package com.hofimefu.web.rest;
+
+import com.hofimefu.security.AuthoritiesConstants;
+import com.hofimefu.service.FriendGraphAnalytics;
+import com.hofimefu.service.dto.FriendGraphReportDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import tech.jhipster.web.util.ResponseUtil;
+
+/**
+ * REST controller for the analytics of the friend graph.
+ */
+@RestController
+@RequestMapping("/api/admin")
+public class FriendGraphAnalyticsResource {
+
+    private final Logger log = LoggerFactory.getLogger(FriendGraphAnalyticsResource.class);
+
+    private final FriendGraphAnalytics friendGraphAnalytics;
+
+    public FriendGraphAnalyticsResource(FriendGraphAnalytics friendGraphAnalytics) {
+        this.friendGraphAnalytics = friendGraphAnalytics;
+    }
+
+    /**
+     * {@code GET  /admin/friend-graph/analytics} : get the report of the last analytics run.
+     *
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the report,
+     * or with status {@code 404 (Not Found)} if the analytics have not run yet.
+     */
+    @GetMapping("/friend-graph/analytics")
+    @PreAuthorize("hasAuthority(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public ResponseEntity<FriendGraphReportDTO> getFriendGraphAnalytics() {
+        log.debug("REST request to get the last friend graph analytics");
+        return ResponseUtil.wrapOrNotFound(friendGraphAnalytics.findLastReport());
+    }
+
+    /**
+     * {@code POST  /admin/friend-graph/analytics} : run the analytics now, waiting for any run in progress.
+     *
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the report.
+     */
+    @PostMapping("/friend-graph/analytics")
+    @PreAuthorize("hasAuthority(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public ResponseEntity<FriendGraphReportDTO> runFriendGraphAnalytics() {
+        log.debug("REST request to run the friend graph analytics");
+        return ResponseEntity.ok(friendGraphAnalytics.run());
+    }
+}
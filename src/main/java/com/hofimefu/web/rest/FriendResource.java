@@ -3,6 +3,11 @@ package com.hofimefu.web.rest;
 import com.hofimefu.domain.Friend;
 import com.hofimefu.repository.FriendRepository;
 import com.hofimefu.service.FriendService;
+import com.hofimefu.service.dto.FriendDTO;
+import com.hofimefu.service.dto.FriendPathDTO;
+import com.hofimefu.service.dto.FriendRequestResultDTO;
+import com.hofimefu.service.dto.FriendSuggestionDTO;
+import com.hofimefu.service.dto.UserDTO;
 import com.hofimefu.web.rest.errors.BadRequestAlertException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -12,9 +17,14 @@ import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import tech.jhipster.web.util.HeaderUtil;
+import tech.jhipster.web.util.PaginationUtil;
 import tech.jhipster.web.util.ResponseUtil;
 
 /**
@@ -28,6 +38,8 @@ public class FriendResource {
 
     private static final String ENTITY_NAME = "friend";
 
+    private static final int MAX_BATCH_SIZE = 100;
+
     @Value("${jhipster.clientApp.name}")
     private String applicationName;
 
@@ -44,7 +56,8 @@ public class FriendResource {
      * {@code POST  /friends} : Create a new friend.
      *
      * @param friend the friend to create.
-     * @return the {@link ResponseEntity} with status {@code 201 (Created)} and with body the new friend, or with status {@code 400 (Bad Request)} if the friend has already an ID.
+     * @return the {@link ResponseEntity} with status {@code 201 (Created)} and with body the new friend, or with status {@code 400 (Bad Request)} if the friend has already an ID
+     * or if its users cannot be paired, or with status {@code 409 (Conflict)} if its users got a friendship concurrently.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PostMapping("/friends")
@@ -53,6 +66,7 @@ public class FriendResource {
         if (friend.getId() != null) {
             throw new BadRequestAlertException("A new friend cannot already have an ID", ENTITY_NAME, "idexists");
         }
+        checkPair(friend);
         Friend result = friendService.save(friend);
         return ResponseEntity
             .created(new URI("/api/friends/" + result.getId()))
@@ -60,6 +74,24 @@ public class FriendResource {
             .body(result);
     }
 
+    /**
+     * {@code POST  /friends/_batch} : Request the friendship of the current user with a batch of users, in one transaction.
+     * <p>
+     * New requests are pending until their recipient accepts them, by requesting the friendship back.
+     *
+     * @param userIds the ids of the users, at most {@value #MAX_BATCH_SIZE}.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the outcome of every request, in the order of the ids,
+     * or with status {@code 400 (Bad Request)} if there are too many users.
+     */
+    @PostMapping("/friends/_batch")
+    public ResponseEntity<List<FriendRequestResultDTO>> createFriends(@RequestBody List<Long> userIds) {
+        log.debug("REST request to save a batch of Friends with Users : {}", userIds);
+        if (userIds.size() > MAX_BATCH_SIZE) {
+            throw new BadRequestAlertException("A batch cannot have more than " + MAX_BATCH_SIZE + " users", ENTITY_NAME, "batchtoolarge");
+        }
+        return ResponseEntity.ok(friendService.requestFriends(userIds));
+    }
+
     /**
      * {@code PUT  /friends/:id} : Updates an existing friend.
      *
@@ -67,6 +99,7 @@ public class FriendResource {
      * @param friend the friend to update.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated friend,
      * or with status {@code 400 (Bad Request)} if the friend is not valid,
+     * or with status {@code 409 (Conflict)} if its users got another friendship concurrently,
      * or with status {@code 500 (Internal Server Error)} if the friend couldn't be updated.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
@@ -84,6 +117,7 @@ public class FriendResource {
         if (!friendRepository.existsById(id)) {
             throw new BadRequestAlertException("Entity not found", ENTITY_NAME, "idnotfound");
         }
+        checkPair(friend);
 
         Friend result = friendService.update(friend);
         return ResponseEntity
@@ -131,12 +165,107 @@ public class FriendResource {
     /**
      * {@code GET  /friends} : get all the friends.
      *
+     * @param pageable the pagination information.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of friends in body.
      */
     @GetMapping("/friends")
-    public List<Friend> getAllFriends() {
-        log.debug("REST request to get all Friends");
-        return friendService.findAll();
+    public ResponseEntity<List<FriendDTO>> getAllFriends(@org.springdoc.api.annotations.ParameterObject Pageable pageable) {
+        log.debug("REST request to get a page of Friends");
+        Page<FriendDTO> page = friendService.findAll(pageable);
+        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
+        return ResponseEntity.ok().headers(headers).body(page.getContent());
+    }
+
+    /**
+     * {@code GET  /friends/mine} : get the friendships of the current user, whichever side of the pair the user is on.
+     *
+     * @param pageable the pagination information.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of friends, with their status, in body.
+     */
+    @GetMapping("/friends/mine")
+    public ResponseEntity<List<FriendDTO>> getMyFriends(@org.springdoc.api.annotations.ParameterObject Pageable pageable) {
+        log.debug("REST request to get a page of the current user's Friends");
+        Page<FriendDTO> page = friendService.findAllOfCurrentUser(pageable);
+        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
+        return ResponseEntity.ok().headers(headers).body(page.getContent());
+    }
+
+    /**
+     * {@code GET  /friends/requests} : get the pending friend requests sent to the current user, newest first.
+     * <p>
+     * Requests are accepted by requesting the friendship back, and declined by deleting them.
+     *
+     * @param pageable the pagination information, its sort is ignored.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of requests in body.
+     */
+    @GetMapping("/friends/requests")
+    public ResponseEntity<List<FriendDTO>> getPendingFriendRequests(@org.springdoc.api.annotations.ParameterObject Pageable pageable) {
+        log.debug("REST request to get a page of the current user's pending friend requests");
+        Page<FriendDTO> page = friendService.findPendingRequests(pageable);
+        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
+        return ResponseEntity.ok().headers(headers).body(page.getContent());
+    }
+
+    /**
+     * {@code GET  /friends/requests/count} : get the number of pending friend requests sent to the current user.
+     *
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the number of requests in body.
+     */
+    @GetMapping("/friends/requests/count")
+    public ResponseEntity<Integer> countPendingFriendRequests() {
+        log.debug("REST request to count the current user's pending friend requests");
+        return ResponseEntity.ok(friendService.countPendingRequests());
+    }
+
+    /**
+     * {@code GET  /friends/suggestions} : get the users the current user may know, best first.
+     * <p>
+     * Suggestions are precomputed, and refreshed shortly after the friendships or the schools of the user change.
+     *
+     * @param limit the maximum number of suggestions.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of suggestions in body,
+     * or with status {@code 400 (Bad Request)} if the limit is not positive.
+     */
+    @GetMapping("/friends/suggestions")
+    public ResponseEntity<List<FriendSuggestionDTO>> getFriendSuggestions(@RequestParam(defaultValue = "10") int limit) {
+        log.debug("REST request to get the friend suggestions of the current user");
+        if (limit < 1) {
+            throw new BadRequestAlertException("The limit must be positive", ENTITY_NAME, "limitinvalid");
+        }
+        return ResponseEntity.ok(friendService.findSuggestions(limit));
+    }
+
+    /**
+     * {@code GET  /friends/path} : get a shortest chain of friendships between two users.
+     *
+     * @param from the id of the first user.
+     * @param to the id of the last user.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the path, or why none was found:
+     * the users are not connected within the maximum depth, or the search exceeded its work budget.
+     */
+    @GetMapping("/friends/path")
+    public ResponseEntity<FriendPathDTO> getFriendPath(@RequestParam Long from, @RequestParam Long to) {
+        log.debug("REST request to get the shortest path of Friends from User : {} to User : {}", from, to);
+        return ResponseEntity.ok(friendService.findPath(from, to));
+    }
+
+    /**
+     * {@code GET  /friends/:userId/mutual} : get the mutual friends of the current user and the "userId" user.
+     *
+     * @param userId the id of the other user.
+     * @param pageable the pagination information, sorting is ignored: mutual friends come in id order.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)}, the page of mutual friends in body and their number
+     * in the {@code X-Total-Count} header.
+     */
+    @GetMapping("/friends/{userId}/mutual")
+    public ResponseEntity<List<UserDTO>> getMutualFriends(
+        @PathVariable Long userId,
+        @org.springdoc.api.annotations.ParameterObject Pageable pageable
+    ) {
+        log.debug("REST request to get the mutual Friends with User : {}", userId);
+        Page<UserDTO> page = friendService.findMutualFriends(userId, pageable);
+        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
+        return ResponseEntity.ok().headers(headers).body(page.getContent());
     }
 
     /**
@@ -167,4 +296,25 @@ public class FriendResource {
             .headers(HeaderUtil.createEntityDeletionAlert(applicationName, true, ENTITY_NAME, id.toString()))
             .build();
     }
+
+    /**
+     * A pair of users has a single friendship, and a user cannot be paired with themselves.
+     */
+    private void checkPair(Friend friend) {
+        if (friend.getUser1() == null || friend.getUser2() == null) {
+            return;
+        }
+        Long user1 = friend.getUser1().getId();
+        Long user2 = friend.getUser2().getId();
+        if (user1 == null || user2 == null) {
+            return;
+        }
+        if (user1.equals(user2)) {
+            throw new BadRequestAlertException("A user cannot be their own friend", ENTITY_NAME, "pairinvalid");
+        }
+        Optional<Friend> existing = friendRepository.findOneByUser1IdAndUser2Id(Math.min(user1, user2), Math.max(user1, user2));
+        if (existing.isPresent() && !existing.get().getId().equals(friend.getId())) {
+            throw new BadRequestAlertException("The users already have a friendship", ENTITY_NAME, "pairexists");
+        }
+    }
 }
@@ -0,0 +1,81 @@
+package com.hofimefu.web.rest;
+
+import com.hofimefu.security.AuthoritiesConstants;
+import com.hofimefu.service.GlobalChatArchiveService;
+import com.hofimefu.web.rest.errors.BadRequestAlertException;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import tech.jhipster.web.util.ResponseUtil;
+
+/**
+ * REST controller for reading the archived months of {@link com.hofimefu.domain.GlobalChat}.
+ */
+@RestController
+@RequestMapping("/api/admin")
+public class GlobalChatArchiveResource {
+
+    static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private static final String ENTITY_NAME = "globalChatArchive";
+
+    private final Logger log = LoggerFactory.getLogger(GlobalChatArchiveResource.class);
+
+    private final GlobalChatArchiveService globalChatArchiveService;
+
+    public GlobalChatArchiveResource(GlobalChatArchiveService globalChatArchiveService) {
+        this.globalChatArchiveService = globalChatArchiveService;
+    }
+
+    /**
+     * {@code GET  /admin/global-chat-archives} : get the archived months.
+     *
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of months, as {@code YYYY-MM}, in body.
+     */
+    @GetMapping("/global-chat-archives")
+    @PreAuthorize("hasAuthority(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public List<String> getAllGlobalChatArchives() {
+        log.debug("REST request to get all GlobalChat archives");
+        return globalChatArchiveService.findArchivedMonths().stream().map(YearMonth::toString).collect(Collectors.toList());
+    }
+
+    /**
+     * {@code GET  /admin/global-chat-archives/:month} : stream the globalChats archived for the "month".
+     * <p>
+     * The archive is sent as is: gzipped NDJSON, one globalChat per line in {@code (created, id)} order.
+     *
+     * @param month the archived month, as {@code YYYY-MM}.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the archive in body,
+     * or with status {@code 400 (Bad Request)} if the month is not valid,
+     * or with status {@code 404 (Not Found)} if the month is not archived.
+     */
+    @GetMapping("/global-chat-archives/{month}")
+    @PreAuthorize("hasAuthority(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public ResponseEntity<Resource> getGlobalChatArchive(@PathVariable String month) {
+        log.debug("REST request to get GlobalChat archive : {}", month);
+        YearMonth yearMonth;
+        try {
+            yearMonth = YearMonth.parse(month);
+        } catch (DateTimeParseException e) {
+            throw new BadRequestAlertException("Invalid month", ENTITY_NAME, "monthinvalid");
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(NDJSON);
+        headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        headers.setContentDisposition(ContentDisposition.attachment().filename("global-chat-" + yearMonth + ".ndjson").build());
+        Optional<Resource> archive = globalChatArchiveService.findArchive(yearMonth).map(FileSystemResource::new);
+        return ResponseUtil.wrapOrNotFound(archive, headers);
+    }
+}
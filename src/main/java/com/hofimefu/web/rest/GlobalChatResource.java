@@ -1,9 +1,17 @@
 package com.hofimefu.web.rest;
 
+import com.hofimefu.config.ApplicationProperties;
 import com.hofimefu.domain.GlobalChat;
+import com.hofimefu.domain.User;
 import com.hofimefu.repository.GlobalChatRepository;
+import com.hofimefu.repository.UserRepository;
+import com.hofimefu.security.SecurityUtils;
+import com.hofimefu.service.GlobalChatBroadcaster;
 import com.hofimefu.service.GlobalChatService;
+import com.hofimefu.service.dto.GlobalChatDTO;
 import com.hofimefu.web.rest.errors.BadRequestAlertException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
@@ -12,9 +20,17 @@ import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import tech.jhipster.web.util.HeaderUtil;
+import tech.jhipster.web.util.PaginationUtil;
 import tech.jhipster.web.util.ResponseUtil;
 
 /**
@@ -28,6 +44,12 @@ public class GlobalChatResource {
 
     private static final String ENTITY_NAME = "globalChat";
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final int DEFAULT_TIMELINE_LIMIT = 50;
+
+    private static final int MAX_TIMELINE_LIMIT = 200;
+
     @Value("${jhipster.clientApp.name}")
     private String applicationName;
 
@@ -35,9 +57,24 @@ public class GlobalChatResource {
 
     private final GlobalChatRepository globalChatRepository;
 
-    public GlobalChatResource(GlobalChatService globalChatService, GlobalChatRepository globalChatRepository) {
+    private final GlobalChatBroadcaster globalChatBroadcaster;
+
+    private final UserRepository userRepository;
+
+    private final ApplicationProperties applicationProperties;
+
+    public GlobalChatResource(
+        GlobalChatService globalChatService,
+        GlobalChatRepository globalChatRepository,
+        GlobalChatBroadcaster globalChatBroadcaster,
+        UserRepository userRepository,
+        ApplicationProperties applicationProperties
+    ) {
         this.globalChatService = globalChatService;
         this.globalChatRepository = globalChatRepository;
+        this.globalChatBroadcaster = globalChatBroadcaster;
+        this.userRepository = userRepository;
+        this.applicationProperties = applicationProperties;
     }
 
     /**
@@ -132,13 +169,122 @@ public class GlobalChatResource {
 
     /**
      * {@code GET  /global-chats} : get all the globalChats.
+     * <p>
+     * When {@code before} or {@code limit} is given, a single keyset page of the timeline is returned instead, newest first,
+     * and the id to pass as {@code before} for the next page is sent in the {@code X-Next-Cursor} header.
+     * <p>
+     * When {@code since} is given, only the globalChats with a greater id are returned, in id order, with an {@code ETag}
+     * naming the last of them: a client sending it back in {@code If-None-Match} gets a {@code 304 (Not Modified)} as long as
+     * nothing newer was created.
      *
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of globalChats in body.
+     * @param before the id of the last globalChat of the previous page.
+     * @param since the id of the newest globalChat already known.
+     * @param limit the maximum number of globalChats in the page.
+     * @param ifNoneMatch the entity tags known by the client.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of globalChats in body,
+     * or with status {@code 304 (Not Modified)} if there is no globalChat newer than the given entity tag,
+     * or with status {@code 400 (Bad Request)} if both {@code before} and {@code since} are given.
      */
     @GetMapping("/global-chats")
-    public List<GlobalChat> getAllGlobalChats() {
-        log.debug("REST request to get all GlobalChats");
-        return globalChatService.findAll();
+    public ResponseEntity<List<GlobalChatDTO>> getAllGlobalChats(
+        @RequestParam(value = "before", required = false) Long before,
+        @RequestParam(value = "since", required = false) Long since,
+        @RequestParam(value = "limit", required = false) Integer limit,
+        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) List<String> ifNoneMatch
+    ) {
+        if (since != null) {
+            if (before != null) {
+                throw new BadRequestAlertException("Cannot page both before and since", ENTITY_NAME, "cursorinvalid");
+            }
+            return getGlobalChatsSince(since, limit, ifNoneMatch);
+        }
+        if (before == null && limit == null) {
+            log.debug("REST request to get all GlobalChats");
+            return ResponseEntity.ok(globalChatService.findAll());
+        }
+        log.debug("REST request to get a page of GlobalChats before : {}, limit : {}", before, limit);
+        int pageSize = pageSize(limit);
+        List<GlobalChatDTO> page = globalChatService.findTimeline(before, pageSize);
+        HttpHeaders headers = new HttpHeaders();
+        if (page.size() == pageSize) {
+            headers.add(NEXT_CURSOR_HEADER, page.get(page.size() - 1).getId().toString());
+        }
+        return ResponseEntity.ok().headers(headers).body(page);
+    }
+
+    private ResponseEntity<List<GlobalChatDTO>> getGlobalChatsSince(Long since, Integer limit, List<String> ifNoneMatch) {
+        log.debug("REST request to get GlobalChats since : {}, limit : {}", since, limit);
+        if (ifNoneMatch != null) {
+            // answer an up to date client from memory, without any query
+            Optional<String> newestETag = globalChatService.findNewestIdInMemory().map(GlobalChatResource::eTag);
+            if (newestETag.isPresent() && ifNoneMatch.stream().map(String::trim).anyMatch(newestETag.get()::equals)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(newestETag.get()).build();
+            }
+        }
+        List<GlobalChatDTO> page = globalChatService.findAfter(since, pageSize(limit));
+        long last = page.isEmpty() ? since : page.get(page.size() - 1).getId();
+        // a matching If-None-Match still turns this into a 304 without body
+        return ResponseEntity.ok().eTag(eTag(last)).body(page);
+    }
+
+    private static int pageSize(Integer limit) {
+        return limit == null ? DEFAULT_TIMELINE_LIMIT : Math.max(1, Math.min(limit, MAX_TIMELINE_LIMIT));
+    }
+
+    private static String eTag(long id) {
+        return "\"" + id + "\"";
+    }
+
+    /**
+     * {@code GET  /global-chats/_search?q=:query} : search the globalChats by message text, best match first.
+     *
+     * @param query the words to search for.
+     * @param pageable the pagination information.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the page of matching globalChats in body.
+     */
+    @GetMapping("/global-chats/_search")
+    public ResponseEntity<List<GlobalChatDTO>> searchGlobalChats(
+        @RequestParam("q") String query,
+        @org.springdoc.api.annotations.ParameterObject Pageable pageable
+    ) {
+        log.debug("REST request to search GlobalChats for : {}", query);
+        Page<GlobalChatDTO> page = globalChatService.search(query, pageable);
+        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
+        return ResponseEntity.ok().headers(headers).body(page.getContent());
+    }
+
+    /**
+     * {@code GET  /global-chats/stream} : stream the new globalChats as Server-Sent Events.
+     *
+     * @return the {@link SseEmitter} sending a {@code globalChat} event for every globalChat created from now on.
+     */
+    @GetMapping(value = "/global-chats/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamGlobalChats() {
+        log.debug("REST request to stream GlobalChats");
+        SseEmitter emitter = new SseEmitter(applicationProperties.getChat().getBroadcast().getEmitterTimeout().toMillis());
+        Long userId = SecurityUtils.getCurrentUserLogin().flatMap(userRepository::findOneByLogin).map(User::getId).orElse(null);
+        GlobalChatBroadcaster.Subscription subscription = globalChatBroadcaster.subscribe(
+            userId,
+            globalChat -> {
+                try {
+                    emitter.send(
+                        SseEmitter
+                            .event()
+                            .id(globalChat.getId().toString())
+                            .name(ENTITY_NAME)
+                            .data(new GlobalChatDTO(globalChat), MediaType.APPLICATION_JSON)
+                    );
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            },
+            // ends the response of a client dropped for falling behind, so that it reconnects
+            emitter::complete
+        );
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(e -> subscription.close());
+        return emitter;
     }
 
     /**
@@ -0,0 +1,129 @@
+package gatling.simulations;
+
+import static io.gatling.javaapi.core.CoreDsl.*;
+import static io.gatling.javaapi.http.HttpDsl.*;
+
+import io.gatling.javaapi.core.ChainBuilder;
+import io.gatling.javaapi.core.ScenarioBuilder;
+import io.gatling.javaapi.core.Simulation;
+import io.gatling.javaapi.http.HttpProtocolBuilder;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Throughput and latency benchmark of the GlobalChat endpoints.
+ * <p>
+ * Writers post messages while readers page through the timeline and poll for new messages the way a client does,
+ * with {@code since} and {@code If-None-Match}. Every virtual user signs in once, then loops for the duration.
+ * <p>
+ * Options, as system properties: {@code baseURL}, {@code writers}, {@code readers}, {@code ramp} and {@code duration}
+ * (both in seconds), {@code username} and {@code password}.
+ */
+public class GlobalChatGatlingTest extends Simulation {
+
+    private static final String MESSAGE_BODY = "{\"message\":\"Benchmark message %d-%d\"}";
+
+    String baseURL = Optional.ofNullable(System.getProperty("baseURL")).orElse("http://localhost:8080");
+
+    int writers = Integer.getInteger("writers", 50);
+
+    int readers = Integer.getInteger("readers", 200);
+
+    Duration ramp = Duration.ofSeconds(Integer.getInteger("ramp", 10));
+
+    Duration duration = Duration.ofSeconds(Integer.getInteger("duration", 60));
+
+    String credentials = String.format(
+        "{\"username\":\"%s\", \"password\":\"%s\"}",
+        System.getProperty("username", "admin"),
+        System.getProperty("password", "admin")
+    );
+
+    HttpProtocolBuilder httpConf = http
+        .baseUrl(baseURL)
+        .acceptHeader("*/*")
+        .acceptEncodingHeader("gzip, deflate")
+        .connectionHeader("keep-alive");
+
+    Map<String, String> headers_http_authentication = Map.of("Content-Type", "application/json", "Accept", "application/json");
+
+    Map<String, String> headers_http_authenticated = Map.of("Accept", "application/json", "Authorization", "#{access_token}");
+
+    ChainBuilder authenticate = exec(
+        http("Authentication")
+            .post("/api/authenticate")
+            .headers(headers_http_authentication)
+            .body(StringBody(credentials))
+            .asJson()
+            .check(header("Authorization").saveAs("access_token"))
+    )
+        .exitHereIfFailed();
+
+    ScenarioBuilder write = scenario("Post globalChats")
+        .exec(authenticate)
+        .during(duration, "counter")
+        .on(
+            exec(
+                http("Create new globalChat")
+                    .post("/api/global-chats")
+                    .headers(headers_http_authenticated)
+                    .body(StringBody(session -> String.format(MESSAGE_BODY, session.userId(), session.getInt("counter"))))
+                    .asJson()
+                    .check(status().is(201))
+            )
+                .pause(Duration.ofMillis(100), Duration.ofMillis(500))
+        );
+
+    ScenarioBuilder read = scenario("Read globalChats")
+        .exec(authenticate)
+        .exec(
+            http("Get globalChat timeline")
+                .get("/api/global-chats?limit=20")
+                .headers(headers_http_authenticated)
+                .check(status().is(200))
+                .check(jsonPath("$[0].id").optional().saveAs("since"))
+                .check(header("X-Next-Cursor").optional().saveAs("before"))
+        )
+        .doIf(session -> session.contains("before"))
+        .then(
+            exec(
+                http("Get globalChat timeline page")
+                    .get("/api/global-chats?limit=20&before=#{before}")
+                    .headers(headers_http_authenticated)
+                    .check(status().is(200))
+            )
+        )
+        .exec(session -> session.contains("since") ? session : session.set("since", 0))
+        .exec(
+            http("Get globalChats since")
+                .get("/api/global-chats?since=#{since}")
+                .headers(headers_http_authenticated)
+                .check(status().is(200))
+                .check(header("ETag").saveAs("etag"))
+        )
+        .during(duration)
+        .on(
+            // the ETag names the newest globalChat, which is where the next poll starts
+            exec(
+                http("Poll globalChats since")
+                    .get("/api/global-chats?since=#{since}")
+                    .headers(headers_http_authenticated)
+                    .header("If-None-Match", "#{etag}")
+                    .check(status().in(200, 304))
+                    .check(header("ETag").saveAs("etag"))
+                    .check(headerRegex("ETag", "\"(\\d+)\"").saveAs("since"))
+            )
+                .pause(Duration.ofMillis(500), Duration.ofSeconds(1))
+        );
+
+    {
+        setUp(
+            write.injectOpen(rampUsers(writers).during(ramp)),
+            read.injectOpen(rampUsers(readers).during(ramp))
+        )
+            .protocols(httpConf)
+            // failed requests would skew the latencies, so such a run must not be compared
+            .assertions(global().failedRequests().percent().lt(1.0));
+    }
+}
@@ -0,0 +1,89 @@
+package com.hofimefu.security.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.security.AuthoritiesConstants;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.Collections;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+class RateLimitFilterTest {
+
+    private MeterRegistry meterRegistry;
+
+    private RateLimitFilter rateLimitFilter;
+
+    @BeforeEach
+    public void setup() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getRateLimit().getGlobalChats().setCapacity(1);
+        applicationProperties.getRateLimit().getGlobalChats().setRefillPeriod(Duration.ofSeconds(5));
+        meterRegistry = new SimpleMeterRegistry();
+
+        rateLimitFilter = new RateLimitFilter(new RateLimiter(applicationProperties, meterRegistry), applicationProperties);
+        SecurityContextHolder
+            .getContext()
+            .setAuthentication(
+                new UsernamePasswordAuthenticationToken(
+                    "test-user",
+                    "test-password",
+                    Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.USER))
+                )
+            );
+    }
+
+    @AfterEach
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void testRateLimitFilterRejectsWithRetryAfter() throws Exception {
+        MockHttpServletResponse first = doFilter("POST", "/api/global-chats");
+        MockHttpServletResponse second = doFilter("POST", "/api/global-chats");
+
+        assertThat(first.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(second.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS.value());
+        assertThat(second.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("5");
+        assertThat(
+            meterRegistry.get(RateLimiter.REJECTED_METER_NAME).tag("route", RateLimitFilter.GLOBAL_CHATS_ROUTE).counter().count()
+        )
+            .isEqualTo(1);
+    }
+
+    @Test
+    void testRateLimitFilterIgnoresReads() throws Exception {
+        doFilter("POST", "/api/global-chats");
+
+        assertThat(doFilter("GET", "/api/global-chats").getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(doFilter("PUT", "/api/global-chats/1").getStatus()).isEqualTo(HttpStatus.OK.value());
+    }
+
+    @Test
+    void testRateLimitFilterIgnoresAnonymousRequests() throws Exception {
+        SecurityContextHolder.clearContext();
+
+        assertThat(doFilter("POST", "/api/global-chats").getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(doFilter("POST", "/api/global-chats").getStatus()).isEqualTo(HttpStatus.OK.value());
+    }
+
+    private MockHttpServletResponse doFilter(String method, String uri) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        rateLimitFilter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+}
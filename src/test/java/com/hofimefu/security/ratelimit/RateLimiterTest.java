@@ -0,0 +1,78 @@
+package com.hofimefu.security.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.hofimefu.config.ApplicationProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RateLimiterTest {
+
+    private static final ApplicationProperties.RateLimit.Limit LIMIT = new ApplicationProperties.RateLimit.Limit(3, Duration.ofSeconds(1));
+
+    private long now;
+
+    private MeterRegistry meterRegistry;
+
+    private RateLimiter rateLimiter;
+
+    @BeforeEach
+    public void setup() {
+        now = TimeUnit.DAYS.toNanos(1);
+        meterRegistry = new SimpleMeterRegistry();
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getRateLimit().setIdleTimeout(Duration.ofMinutes(1));
+
+        rateLimiter = new RateLimiter(applicationProperties, meterRegistry, () -> now);
+    }
+
+    @Test
+    void testBurstUpToCapacityThenReject() {
+        assertThat(rateLimiter.acquire("route", "user", LIMIT)).isZero();
+        assertThat(rateLimiter.acquire("route", "user", LIMIT)).isZero();
+        assertThat(rateLimiter.acquire("route", "user", LIMIT)).isZero();
+
+        assertThat(rateLimiter.acquire("route", "user", LIMIT)).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+        assertThat(meterRegistry.get(RateLimiter.REJECTED_METER_NAME).tag("route", "route").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testTokensAreRefilledOverTime() {
+        for (int i = 0; i < 3; i++) {
+            rateLimiter.acquire("route", "user", LIMIT);
+        }
+        now += TimeUnit.MILLISECONDS.toNanos(400);
+        assertThat(rateLimiter.acquire("route", "user", LIMIT)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(600));
+
+        now += TimeUnit.MILLISECONDS.toNanos(600);
+        assertThat(rateLimiter.acquire("route", "user", LIMIT)).isZero();
+        assertThat(rateLimiter.acquire("route", "user", LIMIT)).isPositive();
+    }
+
+    @Test
+    void testBucketsAreKeyedByRouteAndLogin() {
+        for (int i = 0; i < 3; i++) {
+            rateLimiter.acquire("route", "user", LIMIT);
+        }
+
+        assertThat(rateLimiter.acquire("route", "other", LIMIT)).isZero();
+        assertThat(rateLimiter.acquire("other-route", "user", LIMIT)).isZero();
+        assertThat(meterRegistry.get(RateLimiter.BUCKETS_METER_NAME).gauge().value()).isEqualTo(3);
+    }
+
+    @Test
+    void testIdleBucketsAreEvicted() {
+        rateLimiter.acquire("route", "idle", LIMIT);
+        now += TimeUnit.SECONDS.toNanos(50);
+        rateLimiter.acquire("route", "active", LIMIT);
+        now += TimeUnit.SECONDS.toNanos(30);
+
+        rateLimiter.evictIdleBuckets();
+
+        assertThat(rateLimiter.getBucketCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,115 @@
+package com.hofimefu.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.hofimefu.repository.FriendRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BlockedFriendshipsTest {
+
+    private FriendRepository friendRepository;
+
+    private MeterRegistry meterRegistry;
+
+    private BlockedFriendships blockedFriendships;
+
+    @BeforeEach
+    public void setup() {
+        friendRepository = mock(FriendRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+
+        blockedFriendships = new BlockedFriendships(friendRepository, meterRegistry);
+    }
+
+    @Test
+    void testLookupsGoToTheDatabaseUntilBuilt() {
+        when(friendRepository.existsBlocked(1L, 2L)).thenReturn(true);
+
+        assertThat(blockedFriendships.isBlocked(2L, 1L)).isTrue();
+        assertThat(blockedFriendships.isBlocked(1L, 1L)).isFalse();
+        verify(friendRepository).existsBlocked(1L, 2L);
+    }
+
+    @Test
+    void testOnlyPossiblePositivesGoToTheDatabase() {
+        rebuildWith(pair(1, 2), pair(3, 7));
+        when(friendRepository.existsBlocked(1L, 2L)).thenReturn(true);
+        when(friendRepository.existsBlocked(3L, 7L)).thenReturn(true);
+
+        assertThat(blockedFriendships.isBlocked(2L, 1L)).isTrue();
+        assertThat(blockedFriendships.isBlocked(3L, 7L)).isTrue();
+        int blocked = 0;
+        for (long user = 10; user < 1010; user++) {
+            if (blockedFriendships.isBlocked(user, user + 1)) {
+                blocked++;
+            }
+        }
+
+        assertThat(blocked).isZero();
+        double database = meterRegistry.get(BlockedFriendships.LOOKUPS_METER_NAME).tag("source", "database").counter().count();
+        double filter = meterRegistry.get(BlockedFriendships.LOOKUPS_METER_NAME).tag("source", "filter").counter().count();
+        assertThat(database + filter).isEqualTo(1002);
+        // the filter is far from full, so false positives are rare
+        assertThat(database).isLessThan(12);
+        assertThat(meterRegistry.get(BlockedFriendships.REBUILD_METER_NAME).timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testFalsePositiveRateWhenFull() {
+        BlockedFriendships.Filter filter = BlockedFriendships.Filter.withCapacity(10000);
+        for (long user = 0; user < 10000; user++) {
+            filter.add(user, user + 100000);
+        }
+        int falsePositives = 0;
+        for (long user = 0; user < 100000; user++) {
+            assertThat(filter.mightContain(user % 10000, user % 10000 + 100000)).isTrue();
+            if (filter.mightContain(user, user + 200000)) {
+                falsePositives++;
+            }
+        }
+
+        assertThat(falsePositives / 100000.0).isLessThan(BlockedFriendships.FALSE_POSITIVE_RATE * 1.5);
+    }
+
+    @Test
+    void testBlocksAreAddedAndUnblocksRebuildOnceSaturated() {
+        rebuildWith();
+        when(friendRepository.existsBlocked(4L, 5L)).thenReturn(true);
+
+        blockedFriendships.set(4, 5, true);
+        assertThat(blockedFriendships.isBlocked(5L, 4L)).isTrue();
+
+        // unblocking leaves the bits set, the database has the last word
+        when(friendRepository.existsBlocked(4L, 5L)).thenReturn(false);
+        blockedFriendships.set(4, 5, false);
+        assertThat(blockedFriendships.isBlocked(4L, 5L)).isFalse();
+        verify(friendRepository, times(2)).existsBlocked(4L, 5L);
+
+        blockedFriendships.rebuildIfSaturated();
+        verify(friendRepository, times(1)).findBlockedPairs();
+        for (int i = 0; i < BlockedFriendships.MIN_CAPACITY; i++) {
+            blockedFriendships.set(4, 5, false);
+        }
+        blockedFriendships.rebuildIfSaturated();
+        verify(friendRepository, times(2)).findBlockedPairs();
+        assertThat(blockedFriendships.isBlocked(4L, 5L)).isFalse();
+        verify(friendRepository, times(2)).existsBlocked(4L, 5L);
+    }
+
+    private void rebuildWith(Object[]... pairs) {
+        when(friendRepository.findBlockedPairs()).thenReturn(List.of(pairs));
+        blockedFriendships.rebuild();
+    }
+
+    private static Object[] pair(long user1, long user2) {
+        return new Object[] { user1, user2 };
+    }
+}
@@ -0,0 +1,164 @@
+package com.hofimefu.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.repository.EventRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class EventLocationIndexTest {
+
+    private EventRepository eventRepository;
+
+    private MeterRegistry meterRegistry;
+
+    private EventLocationIndex eventLocationIndex;
+
+    @BeforeEach
+    public void setup() {
+        eventRepository = mock(EventRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+
+        eventLocationIndex = new EventLocationIndex(eventRepository, new ApplicationProperties(), meterRegistry);
+    }
+
+    @Test
+    void testDistanceIsTheGreatCircleDistance() {
+        // Paris to London
+        assertThat(EventLocationIndex.distanceKm(48.8566, 2.3522, 51.5074, -0.1278)).isCloseTo(343.5, within(1.0));
+        assertThat(EventLocationIndex.distanceKm(0, 0, 0, 180)).isCloseTo(Math.PI * EventLocationIndex.EARTH_RADIUS_KM, within(1e-6));
+        assertThat(EventLocationIndex.distanceKm(10, 20, 10, 20)).isZero();
+    }
+
+    @Test
+    void testSearchMatchesAScanOfAllEvents() {
+        Random random = new Random(42);
+        List<Object[]> locations = new ArrayList<>();
+        for (long id = 1; id <= 5000; id++) {
+            locations.add(location(id, 45 + random.nextDouble() * 10, 5 + random.nextDouble() * 10));
+        }
+        rebuildWith(locations);
+
+        for (int i = 0; i < 100; i++) {
+            double latitude = 45 + random.nextDouble() * 10;
+            double longitude = 5 + random.nextDouble() * 10;
+            double radiusKm = 1 + random.nextDouble() * 100;
+
+            List<EventLocationIndex.Hit> hits = eventLocationIndex.search(latitude, longitude, radiusKm, 30);
+
+            List<Long> expected = locations
+                .stream()
+                .filter(location -> distance(latitude, longitude, location) <= radiusKm)
+                .sorted(
+                    Comparator
+                        .<Object[]>comparingDouble(location -> distance(latitude, longitude, location))
+                        .thenComparing(location -> (Long) location[0])
+                )
+                .limit(30)
+                .map(location -> (Long) location[0])
+                .collect(Collectors.toList());
+            assertThat(hits).extracting(EventLocationIndex.Hit::getEventId).containsExactlyElementsOf(expected);
+        }
+        assertThat(meterRegistry.get(EventLocationIndex.EVENTS_METER_NAME).gauge().value()).isEqualTo(5000);
+        assertThat(meterRegistry.get(EventLocationIndex.SEARCH_METER_NAME).timer().count()).isEqualTo(100);
+    }
+
+    @Test
+    void testSearchCrossesTheAntimeridianAndThePoles() {
+        rebuildWith(List.<Object[]>of(location(1, 0, 179.9), location(2, 0, -179.9), location(3, 89.9, 0), location(4, 0, 0)));
+
+        assertThat(eventLocationIndex.search(0, 180, 50, 10)).extracting(EventLocationIndex.Hit::getEventId).containsExactly(1L, 2L);
+        assertThat(eventLocationIndex.search(0, -179.95, 50, 10)).extracting(EventLocationIndex.Hit::getEventId).containsExactly(2L, 1L);
+        // on the other side of the pole
+        assertThat(eventLocationIndex.search(89.9, 180, 50, 10)).extracting(EventLocationIndex.Hit::getEventId).containsExactly(3L);
+    }
+
+    @Test
+    void testPutMovesAndDeleteRemovesEvents() {
+        rebuildWith(List.<Object[]>of(location(1, 48.8566, 2.3522)));
+
+        eventLocationIndex.put(2, 48.86, 2.35, 7);
+        assertThat(eventLocationIndex.search(48.8566, 2.3522, 5, 10))
+            .extracting(EventLocationIndex.Hit::getEventId)
+            .containsExactly(1L, 2L);
+
+        // moved to London
+        eventLocationIndex.put(1, 51.5074, -0.1278, 7);
+        assertThat(eventLocationIndex.search(48.8566, 2.3522, 5, 10)).extracting(EventLocationIndex.Hit::getEventId).containsExactly(2L);
+        assertThat(eventLocationIndex.search(51.5, -0.12, 5, 10)).extracting(EventLocationIndex.Hit::getEventId).containsExactly(1L);
+
+        eventLocationIndex.delete(2);
+        eventLocationIndex.delete(3);
+        assertThat(eventLocationIndex.search(48.8566, 2.3522, 5, 10)).isEmpty();
+        assertThat(meterRegistry.get(EventLocationIndex.EVENTS_METER_NAME).gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void testSearchKeepsTheNearestEvents() {
+        rebuildWith(List.<Object[]>of(location(1, 0, 0.03), location(2, 0, 0.01), location(3, 0, 0.02), location(4, 0, -0.01)));
+
+        List<EventLocationIndex.Hit> hits = eventLocationIndex.search(0, 0, 10, 3);
+
+        // ties go to the lower id
+        assertThat(hits).extracting(EventLocationIndex.Hit::getEventId).containsExactly(2L, 4L, 3L);
+        assertThat(hits.get(0).getDistanceKm()).isCloseTo(1.112, within(0.001));
+    }
+
+    @Test
+    void testSearchLeavesOutTheEventsOfHiddenCreators() {
+        rebuildWith(
+            List.<Object[]>of(
+                location(1, 0, 0.01, 7L),
+                location(2, 0, 0.02, 8L),
+                location(3, 0, 0.03, 7L),
+                location(4, 0, 0.04, null),
+                location(5, 0, 0.05, 9L)
+            )
+        );
+        List<Long> checked = new ArrayList<>();
+
+        List<EventLocationIndex.Hit> hits = eventLocationIndex.search(
+            0,
+            0,
+            10,
+            2,
+            creatorId -> {
+                checked.add(creatorId);
+                return creatorId == 7;
+            }
+        );
+
+        // the limit is still reached
+        assertThat(hits).extracting(EventLocationIndex.Hit::getEventId).containsExactly(2L, 4L);
+        // the events without a creator and those ranking beyond the limit are not checked
+        assertThat(checked).doesNotContain(9L).hasSizeLessThanOrEqualTo(3);
+    }
+
+    private void rebuildWith(List<Object[]> locations) {
+        when(eventRepository.findLocations()).thenReturn(locations);
+        eventLocationIndex.rebuild();
+    }
+
+    private static double distance(double latitude, double longitude, Object[] location) {
+        return EventLocationIndex.distanceKm(latitude, longitude, (Double) location[1], (Double) location[2]);
+    }
+
+    private static Object[] location(long id, double latitude, double longitude) {
+        return location(id, latitude, longitude, null);
+    }
+
+    private static Object[] location(long id, double latitude, double longitude, Long creatorId) {
+        return new Object[] { id, latitude, longitude, creatorId };
+    }
+}
@@ -0,0 +1,194 @@
+package com.hofimefu.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.hofimefu.IntegrationTest;
+import com.hofimefu.domain.Event;
+import com.hofimefu.domain.User;
+import com.hofimefu.repository.EventRepository;
+import com.hofimefu.repository.UserRepository;
+import com.hofimefu.service.dto.EventRsvpDTO;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Integration tests of {@link EventRsvps} under concurrent answers, each in its own committed transaction.
+ */
+@IntegrationTest
+// the tests share a single connection otherwise, which would run the transactions one after the other
+@TestPropertySource(properties = "spring.datasource.hikari.maximum-pool-size=16")
+class EventRsvpsIT {
+
+    private static final int CAPACITY = 5;
+
+    private static final int USERS = 40;
+
+    @Autowired
+    private EventRsvps eventRsvps;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Event event;
+
+    private List<Long> userIds;
+
+    @BeforeEach
+    public void init() {
+        event = eventRepository.saveAndFlush(new Event().header("popular").capacity(CAPACITY));
+        userIds = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            User user = new User();
+            user.setLogin("rsvp" + RandomStringUtils.randomAlphabetic(8).toLowerCase());
+            user.setPassword(RandomStringUtils.randomAlphanumeric(60));
+            user.setActivated(true);
+            user.setEmail(user.getLogin() + "@localhost");
+            userIds.add(userRepository.saveAndFlush(user).getId());
+        }
+    }
+
+    @AfterEach
+    public void cleanup() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            jdbcTemplate.update(
+                "delete from rel_evet_user__user r using evet_user eu where r.evet_user_id = eu.id and eu.event_id = ?",
+                event.getId()
+            );
+            jdbcTemplate.update("delete from evet_user where event_id = ?", event.getId());
+            eventRepository.deleteById(event.getId());
+            userRepository.deleteAllById(userIds);
+        });
+    }
+
+    @Test
+    void concurrentJoinsNeverOverbook() throws Exception {
+        List<EventRsvpDTO> answers = concurrently(userIds, userId -> eventRsvps.join(event.getId(), userId).orElseThrow());
+
+        assertThat(answers).filteredOn(answer -> answer.getStatus() == EventRsvpDTO.Status.GOING).hasSize(CAPACITY);
+        assertThat(answers).filteredOn(answer -> answer.getStatus() == EventRsvpDTO.Status.WAITLISTED).hasSize(USERS - CAPACITY);
+        // every other user got a distinct place in line
+        assertThat(userIds)
+            .map(userId -> eventRsvps.findOne(event.getId(), userId).orElseThrow().getWaitlistPosition())
+            .filteredOn(position -> position != null)
+            .containsExactlyInAnyOrderElementsOf(positions(USERS - CAPACITY));
+        assertThatAttendanceIsConsistent(CAPACITY, USERS - CAPACITY);
+    }
+
+    @Test
+    void concurrentLeavesPromoteTheWaitlistInOrder() throws Exception {
+        concurrently(userIds, userId -> eventRsvps.join(event.getId(), userId).orElseThrow());
+        Map<Long, EventRsvpDTO> before = userIds
+            .stream()
+            .collect(Collectors.toMap(userId -> userId, userId -> eventRsvps.findOne(event.getId(), userId).orElseThrow()));
+        List<Long> going = userIds
+            .stream()
+            .filter(userId -> before.get(userId).getStatus() == EventRsvpDTO.Status.GOING)
+            .collect(Collectors.toList());
+        List<Long> waitlist = userIds
+            .stream()
+            .filter(userId -> before.get(userId).getStatus() == EventRsvpDTO.Status.WAITLISTED)
+            .sorted(Comparator.comparing(userId -> before.get(userId).getWaitlistPosition()))
+            .collect(Collectors.toList());
+
+        // the attendees and every other user in line leave at once
+        List<Long> leaving = new ArrayList<>(going);
+        for (int i = 0; i < waitlist.size(); i += 2) {
+            leaving.add(waitlist.get(i));
+        }
+        concurrently(leaving, userId -> eventRsvps.leave(event.getId(), userId));
+
+        List<Long> remaining = waitlist.stream().filter(userId -> !leaving.contains(userId)).collect(Collectors.toList());
+        for (int i = 0; i < remaining.size(); i++) {
+            EventRsvpDTO answer = eventRsvps.findOne(event.getId(), remaining.get(i)).orElseThrow();
+            if (i < CAPACITY) {
+                assertThat(answer.getStatus()).isEqualTo(EventRsvpDTO.Status.GOING);
+            } else {
+                assertThat(answer.getStatus()).isEqualTo(EventRsvpDTO.Status.WAITLISTED);
+                assertThat(answer.getWaitlistPosition()).isEqualTo(i - CAPACITY + 1);
+            }
+        }
+        assertThatAttendanceIsConsistent(CAPACITY, remaining.size() - CAPACITY);
+    }
+
+    private void assertThatAttendanceIsConsistent(int attendees, int waiting) {
+        Integer attendeeCount = jdbcTemplate.queryForObject("select attendee_count from event where id = ?", Integer.class, event.getId());
+        Integer rows = jdbcTemplate.queryForObject(
+            "select count(*) from evet_user eu join rel_evet_user__user r on r.evet_user_id = eu.id where eu.event_id = ?",
+            Integer.class,
+            event.getId()
+        );
+        Integer waitlisted = jdbcTemplate.queryForObject(
+            "select count(*) from event_waitlist where event_id = ?",
+            Integer.class,
+            event.getId()
+        );
+        assertThat(attendeeCount).isEqualTo(attendees);
+        assertThat(rows).isEqualTo(attendees);
+        assertThat(waitlisted).isEqualTo(waiting);
+    }
+
+    private static List<Integer> positions(int count) {
+        List<Integer> positions = new ArrayList<>();
+        for (int position = 1; position <= count; position++) {
+            positions.add(position);
+        }
+        return positions;
+    }
+
+    /**
+     * Run an action for every user at once, each on its own thread.
+     */
+    private static <T> List<T> concurrently(List<Long> userIds, UserAction<T> action) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(userIds.size());
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<T>> futures = new ArrayList<>();
+            for (Long userId : userIds) {
+                Callable<T> task = () -> {
+                    start.await();
+                    return action.run(userId);
+                };
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @FunctionalInterface
+    private interface UserAction<T> {
+        T run(Long userId);
+    }
+}
@@ -0,0 +1,149 @@
+package com.hofimefu.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.repository.FriendRepository;
+import com.hofimefu.service.dto.FriendGraphReportDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class FriendGraphAnalyticsTest {
+
+    private FriendRepository friendRepository;
+
+    private MeterRegistry meterRegistry;
+
+    private FriendGraph friendGraph;
+
+    private FriendGraphAnalytics friendGraphAnalytics;
+
+    @BeforeEach
+    public void setup() {
+        friendRepository = mock(FriendRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getFriendGraph().getAnalytics().setParallelism(4);
+
+        friendGraph = new FriendGraph(friendRepository, applicationProperties, meterRegistry);
+        friendGraphAnalytics = new FriendGraphAnalytics(friendGraph, applicationProperties, meterRegistry);
+    }
+
+    @Test
+    void testReportOfASmallGraph() {
+        // a triangle with a tail, and a separate pair
+        rebuildWith(List.of(pair(1, 2), pair(2, 3), pair(1, 3), pair(3, 4), pair(5, 6)));
+        assertThat(friendGraphAnalytics.findLastReport()).isEmpty();
+
+        FriendGraphReportDTO report = friendGraphAnalytics.run();
+
+        assertThat(report.getUsers()).isEqualTo(6);
+        assertThat(report.getFriendships()).isEqualTo(5);
+        assertThat(report.getDegreeDistribution()).containsExactly(Map.entry(1, 3L), Map.entry(2, 2L), Map.entry(3, 1L));
+        assertThat(report.getMaxDegree()).isEqualTo(3);
+        assertThat(report.getMeanDegree()).isCloseTo(10.0 / 6, within(1e-9));
+        assertThat(report.getComponents()).isEqualTo(2);
+        assertThat(report.getLargestComponent()).isEqualTo(4);
+        assertThat(report.getTriangles()).isEqualTo(1);
+        assertThat(report.getAverageClustering()).isCloseTo(7.0 / 18, within(1e-9));
+        assertThat(report.getTransitivity()).isCloseTo(0.6, within(1e-9));
+        assertThat(report.getParallelism()).isEqualTo(4);
+        assertThat(report.getGraphBytes()).isPositive();
+        assertThat(report.getPeakHeapBytes()).isPositive();
+        assertThat(friendGraphAnalytics.findLastReport()).containsSame(report);
+        assertThat(meterRegistry.get(FriendGraphAnalytics.RUN_METER_NAME).timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testReportOfAnEmptyGraph() {
+        rebuildWith(List.of());
+
+        FriendGraphReportDTO report = friendGraphAnalytics.run();
+
+        assertThat(report.getUsers()).isZero();
+        assertThat(report.getComponents()).isZero();
+        assertThat(report.getAverageClustering()).isZero();
+        assertThat(report.getTransitivity()).isZero();
+    }
+
+    @Test
+    void testParallelRunMatchesASequentialComputation() {
+        Random random = new Random(42);
+        Map<Long, Set<Long>> adjacency = new HashMap<>();
+        List<Object[]> pairs = new ArrayList<>();
+        for (int i = 0; i < 30000; i++) {
+            // clusters of close ids, so that there are triangles and several components
+            long user1 = 1 + random.nextInt(10000);
+            long user2 = Math.max(1, user1 + random.nextInt(20) - 10);
+            if (user1 != user2 && adjacency.computeIfAbsent(user1, id -> new HashSet<>()).add(user2)) {
+                adjacency.computeIfAbsent(user2, id -> new HashSet<>()).add(user1);
+                pairs.add(pair(user1, user2));
+            }
+        }
+        rebuildWith(pairs);
+
+        FriendGraphReportDTO report = friendGraphAnalytics.run();
+
+        long triangles = 0;
+        long wedges = 0;
+        for (Map.Entry<Long, Set<Long>> entry : adjacency.entrySet()) {
+            for (Long friend : entry.getValue()) {
+                for (Long other : entry.getValue()) {
+                    if (friend < other && adjacency.get(friend).contains(other)) {
+                        triangles++;
+                    }
+                }
+            }
+            long degree = entry.getValue().size();
+            wedges += degree * (degree - 1) / 2;
+        }
+        int components = 0;
+        int largestComponent = 0;
+        Set<Long> visited = new HashSet<>();
+        for (Long user : adjacency.keySet()) {
+            if (visited.add(user)) {
+                components++;
+                int size = 0;
+                Deque<Long> queue = new ArrayDeque<>(List.of(user));
+                while (!queue.isEmpty()) {
+                    size++;
+                    for (Long friend : adjacency.get(queue.poll())) {
+                        if (visited.add(friend)) {
+                            queue.add(friend);
+                        }
+                    }
+                }
+                largestComponent = Math.max(largestComponent, size);
+            }
+        }
+        assertThat(report.getUsers()).isEqualTo(adjacency.size());
+        assertThat(report.getFriendships()).isEqualTo(pairs.size());
+        assertThat(report.getTriangles()).isEqualTo(triangles / 3);
+        assertThat(report.getTransitivity()).isCloseTo((double) triangles / wedges, within(1e-9));
+        assertThat(report.getComponents()).isEqualTo(components);
+        assertThat(report.getLargestComponent()).isEqualTo(largestComponent);
+    }
+
+    private void rebuildWith(List<Object[]> pairs) {
+        when(friendRepository.findFriendshipPairs()).thenReturn(pairs);
+        friendGraph.rebuild();
+    }
+
+    private static Object[] pair(long user1, long user2) {
+        return new Object[] { user1, user2 };
+    }
+}
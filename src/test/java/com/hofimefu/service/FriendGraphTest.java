@@ -0,0 +1,209 @@
+package com.hofimefu.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.repository.FriendRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class FriendGraphTest {
+
+    private FriendRepository friendRepository;
+
+    private MeterRegistry meterRegistry;
+
+    private ApplicationProperties applicationProperties;
+
+    private FriendGraph friendGraph;
+
+    @BeforeEach
+    public void setup() {
+        friendRepository = mock(FriendRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        applicationProperties = new ApplicationProperties();
+
+        friendGraph = new FriendGraph(friendRepository, applicationProperties, meterRegistry);
+    }
+
+    @Test
+    void testRebuildDropsDuplicatesAndSelfFriendships() {
+        rebuildWith(pair(1, 2), pair(2, 1), pair(1, 3), pair(3, 3), pair(1, 2));
+
+        assertThat(friendGraph.friendIds(1)).containsExactly(2L, 3L);
+        assertThat(friendGraph.friendIds(2)).containsExactly(1L);
+        assertThat(friendGraph.friendIds(3)).containsExactly(1L);
+        assertThat(friendGraph.degree(1)).isEqualTo(2);
+        assertThat(friendGraph.degree(4)).isZero();
+        assertThat(friendGraph.areFriends(2, 3)).isFalse();
+        assertThat(meterRegistry.get(FriendGraph.EDGES_METER_NAME).gauge().value()).isEqualTo(2);
+        assertThat(meterRegistry.get(FriendGraph.MEMORY_METER_NAME).gauge().value()).isEqualTo(3 * 8 + 4 * 4 + 4 * 8);
+        assertThat(meterRegistry.get(FriendGraph.REBUILD_METER_NAME).timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testSetAddsAndRemovesBothDirections() {
+        rebuildWith(pair(10, 20));
+
+        friendGraph.set(5, 20, true);
+        friendGraph.set(20, 30, true);
+        assertThat(friendGraph.friendIds(20)).containsExactly(5L, 10L, 30L);
+        assertThat(friendGraph.areFriends(30, 20)).isTrue();
+
+        friendGraph.set(10, 20, false);
+        assertThat(friendGraph.friendIds(10)).isEmpty();
+        assertThat(friendGraph.friendIds(20)).containsExactly(5L, 30L);
+        assertThat(friendGraph.areFriends(10, 20)).isFalse();
+    }
+
+    @Test
+    void testAddMergesArcsIntoTheRows() {
+        rebuildWith(pair(1, 2), pair(2, 3));
+
+        friendGraph.add(new long[] { 4, 1, 1, 3, 2, 1 }, new long[] { 1, 4, 3, 1, 1, 2 }, 6);
+
+        assertThat(friendGraph.friendIds(1)).containsExactly(2L, 3L, 4L);
+        assertThat(friendGraph.friendIds(2)).containsExactly(1L, 3L);
+        assertThat(friendGraph.friendIds(3)).containsExactly(1L, 2L);
+        assertThat(friendGraph.friendIds(4)).containsExactly(1L);
+        assertThat(meterRegistry.get(FriendGraph.EDGES_METER_NAME).gauge().value()).isEqualTo(4);
+    }
+
+    @Test
+    void testUpdatesMatchAFullRebuild() {
+        Random random = new Random(42);
+        Map<Long, TreeSet<Long>> expected = new HashMap<>();
+        rebuildWith();
+        for (int i = 0; i < 2000; i++) {
+            long user1 = 1 + random.nextInt(40);
+            long user2 = 1 + random.nextInt(40);
+            if (user1 == user2) {
+                continue;
+            }
+            boolean friends = random.nextInt(3) > 0;
+            friendGraph.set(user1, user2, friends);
+            if (friends) {
+                expected.computeIfAbsent(user1, id -> new TreeSet<>()).add(user2);
+                expected.computeIfAbsent(user2, id -> new TreeSet<>()).add(user1);
+            } else {
+                expected.getOrDefault(user1, new TreeSet<>()).remove(user2);
+                expected.getOrDefault(user2, new TreeSet<>()).remove(user1);
+            }
+        }
+        long[] incremental = new long[41];
+        for (long user = 1; user <= 40; user++) {
+            assertThat(friendGraph.friendIds(user))
+                .containsExactly(expected.getOrDefault(user, new TreeSet<>()).stream().mapToLong(Long::longValue).toArray());
+            incremental[(int) user] = friendGraph.degree(user);
+        }
+
+        List<Object[]> pairs = new ArrayList<>();
+        expected.forEach((user, friends) -> friends.forEach(friend -> pairs.add(new Object[] { user, friend })));
+        when(friendRepository.findFriendshipPairs()).thenReturn(pairs);
+        friendGraph.rebuild();
+        for (long user = 1; user <= 40; user++) {
+            assertThat(friendGraph.degree(user)).isEqualTo(incremental[(int) user]);
+        }
+    }
+
+    @Test
+    void testChangesCommittedDuringARebuildAreAppliedOnTopOfIt() {
+        rebuildWith(pair(1, 2), pair(2, 3));
+        when(friendRepository.findFriendshipPairs())
+            .thenAnswer(invocation -> {
+                // committed by other threads while the graph loads: they are queued, not applied
+                Thread committer = new Thread(() -> {
+                    friendGraph.set(1, 2, false);
+                    friendGraph.set(3, 4, true);
+                    friendGraph.set(5, 1, true);
+                    friendGraph.set(6, 7, true);
+                    friendGraph.set(7, 6, false);
+                    friendGraph.set(8, 9, false);
+                });
+                committer.start();
+                committer.join();
+                assertThat(friendGraph.areFriends(3, 4)).isFalse();
+                return List.of(pair(1, 2), pair(2, 3));
+            });
+
+        friendGraph.rebuild();
+
+        assertThat(friendGraph.friendIds(1)).containsExactly(5L);
+        assertThat(friendGraph.friendIds(2)).containsExactly(3L);
+        assertThat(friendGraph.friendIds(3)).containsExactly(2L, 4L);
+        assertThat(friendGraph.friendIds(5)).containsExactly(1L);
+        assertThat(friendGraph.friendIds(6)).isEmpty();
+        assertThat(friendGraph.friendIds(8)).isEmpty();
+        assertThat(meterRegistry.get(FriendGraph.EDGES_METER_NAME).gauge().value()).isEqualTo(3);
+    }
+
+    @Test
+    void testScheduledRunRepairsChangesAppliedOutOfOrder() {
+        rebuildWith(pair(1, 2));
+        // the removal committed first, but its update came last
+        friendGraph.set(1, 3, true);
+        friendGraph.set(1, 3, false);
+        when(friendRepository.findFriendshipPairs()).thenReturn(List.of(pair(1, 2), pair(1, 3)));
+
+        applicationProperties.getFriendGraph().getRebuild().setEnabled(false);
+        friendGraph.scheduledRun();
+        assertThat(friendGraph.areFriends(1, 3)).isFalse();
+
+        applicationProperties.getFriendGraph().getRebuild().setEnabled(true);
+        friendGraph.scheduledRun();
+        assertThat(friendGraph.friendIds(1)).containsExactly(2L, 3L);
+        assertThat(meterRegistry.get(FriendGraph.REBUILD_METER_NAME).timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    void testMutualFriendsArePagedInIdOrder() {
+        rebuildWith(pair(1, 3), pair(1, 4), pair(1, 5), pair(1, 6), pair(2, 6), pair(2, 4), pair(2, 3), pair(2, 7));
+        long[] page = new long[2];
+
+        assertThat(friendGraph.mutualFriends(1, 2, 0, page)).isEqualTo(3);
+        assertThat(page).containsExactly(3L, 4L);
+        assertThat(friendGraph.mutualFriends(2, 1, 2, page)).isEqualTo(3);
+        assertThat(page[0]).isEqualTo(6L);
+        assertThat(friendGraph.mutualFriends(1, 8, 0, page)).isZero();
+    }
+
+    @Test
+    void testMutualFriendsOfUnevenUsers() {
+        List<Object[]> pairs = new ArrayList<>();
+        for (long friend = 100; friend < 5100; friend++) {
+            pairs.add(pair(1, friend));
+        }
+        pairs.add(pair(2, 99));
+        pairs.add(pair(2, 100));
+        pairs.add(pair(2, 2500));
+        pairs.add(pair(2, 9000));
+        when(friendRepository.findFriendshipPairs()).thenReturn(pairs);
+        friendGraph.rebuild();
+        long[] page = new long[10];
+
+        assertThat(friendGraph.mutualFriends(1, 2, 0, page)).isEqualTo(2);
+        assertThat(page[0]).isEqualTo(100L);
+        assertThat(page[1]).isEqualTo(2500L);
+        assertThat(friendGraph.mutualFriends(2, 1, 1, page)).isEqualTo(2);
+        assertThat(page[0]).isEqualTo(2500L);
+    }
+
+    private void rebuildWith(Object[]... pairs) {
+        when(friendRepository.findFriendshipPairs()).thenReturn(List.of(pairs));
+        friendGraph.rebuild();
+    }
+
+    private static Object[] pair(long user1, long user2) {
+        return new Object[] { user1, user2 };
+    }
+}
@@ -0,0 +1,178 @@
+package com.hofimefu.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.repository.FriendRepository;
+import com.hofimefu.service.dto.FriendPathDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class FriendPathFinderTest {
+
+    private FriendRepository friendRepository;
+
+    private MeterRegistry meterRegistry;
+
+    private ApplicationProperties applicationProperties;
+
+    private FriendGraph friendGraph;
+
+    private FriendPathFinder friendPathFinder;
+
+    @BeforeEach
+    public void setup() {
+        friendRepository = mock(FriendRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        applicationProperties = new ApplicationProperties();
+
+        friendGraph = new FriendGraph(friendRepository, applicationProperties, meterRegistry);
+        friendPathFinder = new FriendPathFinder(friendGraph, applicationProperties, meterRegistry);
+    }
+
+    @Test
+    void testShortestPathIsFound() {
+        // a long way round 1-2-3-4-5-6 and a shortcut 1-7-6
+        rebuildWith(List.of(pair(1, 2), pair(2, 3), pair(3, 4), pair(4, 5), pair(5, 6), pair(1, 7), pair(7, 6), pair(8, 9)));
+
+        FriendPathFinder.Search search = friendPathFinder.find(1, 6);
+
+        assertThat(search.getOutcome()).isEqualTo(FriendPathDTO.Outcome.FOUND);
+        assertThat(search.getPath()).containsExactly(1, 7, 6);
+        assertThat(friendPathFinder.find(4, 4).getPath()).containsExactly(4);
+        assertThat(friendPathFinder.find(2, 4).getPath()).containsExactly(2, 3, 4);
+        assertThat(meterRegistry.get(FriendPathFinder.SEARCH_METER_NAME).tag("outcome", "found").timer().count()).isEqualTo(3);
+    }
+
+    @Test
+    void testUnconnectedUsersHaveNoPath() {
+        rebuildWith(List.of(pair(1, 2), pair(8, 9)));
+
+        assertThat(friendPathFinder.find(1, 9).getOutcome()).isEqualTo(FriendPathDTO.Outcome.NOT_FOUND);
+        assertThat(friendPathFinder.find(1, 100).getOutcome()).isEqualTo(FriendPathDTO.Outcome.NOT_FOUND);
+        assertThat(friendPathFinder.find(100, 1).getPath()).isNull();
+    }
+
+    @Test
+    void testSearchStopsAtTheMaximumDepth() {
+        rebuildWith(List.of(pair(1, 2), pair(2, 3), pair(3, 4), pair(4, 5)));
+        applicationProperties.getFriendGraph().getPath().setMaxDepth(3);
+
+        assertThat(friendPathFinder.find(1, 4).getPath()).containsExactly(1, 2, 3, 4);
+        assertThat(friendPathFinder.find(1, 5).getOutcome()).isEqualTo(FriendPathDTO.Outcome.NOT_FOUND);
+    }
+
+    @Test
+    void testSearchStopsAtTheWorkBudget() {
+        // two unconnected stars, whose centers have too many friends to scan
+        List<Object[]> pairs = new ArrayList<>();
+        for (long user = 1; user < 1000; user++) {
+            pairs.add(pair(0, user));
+            pairs.add(pair(1000, 1000 + user));
+        }
+        rebuildWith(pairs);
+        applicationProperties.getFriendGraph().getPath().setWorkBudget(100);
+
+        FriendPathFinder.Search search = friendPathFinder.find(1, 1001);
+
+        assertThat(search.getOutcome()).isEqualTo(FriendPathDTO.Outcome.BUDGET_EXCEEDED);
+        assertThat(search.getScanned()).isEqualTo(100);
+        assertThat(search.getPath()).isNull();
+    }
+
+    @Test
+    void testPathsMatchAOneSidedSearch() {
+        Random random = new Random(42);
+        Map<Long, Set<Long>> adjacency = new HashMap<>();
+        List<Object[]> pairs = new ArrayList<>();
+        for (int i = 0; i < 6000; i++) {
+            long user1 = 1 + random.nextInt(3000);
+            long user2 = 1 + random.nextInt(3000);
+            if (user1 != user2 && adjacency.computeIfAbsent(user1, id -> new HashSet<>()).add(user2)) {
+                adjacency.computeIfAbsent(user2, id -> new HashSet<>()).add(user1);
+                pairs.add(pair(user1, user2));
+            }
+        }
+        rebuildWith(pairs);
+        applicationProperties.getFriendGraph().getPath().setMaxDepth(20);
+        applicationProperties.getFriendGraph().getPath().setWorkBudget(Integer.MAX_VALUE);
+
+        for (int i = 0; i < 200; i++) {
+            long from = 1 + random.nextInt(3000);
+            long to = 1 + random.nextInt(3000);
+            int expected = distance(adjacency, from, to);
+
+            FriendPathFinder.Search search = friendPathFinder.find(from, to);
+
+            if (expected < 0) {
+                assertThat(search.getOutcome()).isEqualTo(FriendPathDTO.Outcome.NOT_FOUND);
+                continue;
+            }
+            long[] path = search.getPath();
+            assertThat(path).hasSize(expected + 1);
+            assertThat(path[0]).isEqualTo(from);
+            assertThat(path[path.length - 1]).isEqualTo(to);
+            for (int step = 1; step < path.length; step++) {
+                assertThat(adjacency.get(path[step - 1])).contains(path[step]);
+            }
+        }
+    }
+
+    @Test
+    void testParentMapGrows() {
+        FriendPathFinder.ParentMap map = new FriendPathFinder.ParentMap();
+        for (long key = 0; key < 10000; key++) {
+            map.put(key * 64, -key);
+        }
+        map.put(0, 7);
+
+        assertThat(map.size()).isEqualTo(10000);
+        assertThat(map.get(0)).isEqualTo(7);
+        assertThat(map.get(64 * 9999)).isEqualTo(-9999);
+        assertThat(map.contains(64 * 10000)).isFalse();
+        assertThat(map.contains(1)).isFalse();
+    }
+
+    private static int distance(Map<Long, Set<Long>> adjacency, long from, long to) {
+        if (from == to) {
+            return 0;
+        }
+        Map<Long, Integer> distances = new HashMap<>(Map.of(from, 0));
+        Deque<Long> queue = new ArrayDeque<>(List.of(from));
+        while (!queue.isEmpty()) {
+            long user = queue.poll();
+            for (Long friend : adjacency.getOrDefault(user, Set.of())) {
+                if (!distances.containsKey(friend)) {
+                    distances.put(friend, distances.get(user) + 1);
+                    if (friend == to) {
+                        return distances.get(friend);
+                    }
+                    queue.add(friend);
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void rebuildWith(List<Object[]> pairs) {
+        when(friendRepository.findFriendshipPairs()).thenReturn(pairs);
+        friendGraph.rebuild();
+    }
+
+    private static Object[] pair(long user1, long user2) {
+        return new Object[] { user1, user2 };
+    }
+}
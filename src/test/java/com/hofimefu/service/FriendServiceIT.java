@@ -0,0 +1,217 @@
+package com.hofimefu.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.hofimefu.IntegrationTest;
+import com.hofimefu.domain.Friend;
+import com.hofimefu.domain.User;
+import com.hofimefu.repository.UserRepository;
+import com.hofimefu.service.dto.FriendRequestResultDTO;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Integration tests of {@link FriendService} under concurrent writes of the same pair of users, each in its own
+ * committed transaction.
+ */
+@IntegrationTest
+// the tests share a single connection otherwise, which would run the transactions one after the other
+@TestPropertySource(properties = "spring.datasource.hikari.maximum-pool-size=4")
+class FriendServiceIT {
+
+    @Autowired
+    private FriendService friendService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private User user1;
+
+    private User user2;
+
+    private ExecutorService executor;
+
+    private CountDownLatch release;
+
+    @BeforeEach
+    public void init() {
+        user1 = userRepository.saveAndFlush(newUser());
+        user2 = userRepository.saveAndFlush(newUser());
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        executor.shutdownNow();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Object[] ids = { user1.getId(), user2.getId() };
+            jdbcTemplate.update("delete from friend where user1_id in (?, ?)", ids);
+            jdbcTemplate.update("delete from friend_status where recipient_id in (?, ?)", ids);
+            jdbcTemplate.update("delete from friend_request_counter where user_id in (?, ?)", ids);
+            jdbcTemplate.update(
+                "delete from friend_suggestion where user_id in (?, ?) or suggested_user_id in (?, ?)",
+                ids[0],
+                ids[1],
+                ids[0],
+                ids[1]
+            );
+            userRepository.deleteAllById(List.of(user1.getId(), user2.getId()));
+        });
+    }
+
+    @Test
+    void concurrentRequestsOfTheSamePairCreateOneFriendship() throws Exception {
+        Future<List<FriendRequestResultDTO>> first = holdingTheTransaction(
+            user1,
+            () -> friendService.requestFriends(List.of(user2.getId()))
+        );
+        List<FriendRequestResultDTO> second = racing(user1, () -> friendService.requestFriends(List.of(user2.getId())), first).get();
+
+        Long friendId = first.get().get(0).getFriendId();
+        assertThat(first.get().get(0).getOutcome()).isEqualTo(FriendRequestResultDTO.Outcome.CREATED);
+        assertThat(second.get(0).getOutcome()).isEqualTo(FriendRequestResultDTO.Outcome.EXISTS);
+        assertThat(second.get(0).getFriendId()).isEqualTo(friendId);
+        assertThatThePairHasOneFriendship("PENDING");
+    }
+
+    @Test
+    void concurrentRequestsOfEachOtherAreAccepted() throws Exception {
+        Future<List<FriendRequestResultDTO>> first = holdingTheTransaction(
+            user1,
+            () -> friendService.requestFriends(List.of(user2.getId()))
+        );
+        List<FriendRequestResultDTO> second = racing(user2, () -> friendService.requestFriends(List.of(user1.getId())), first).get();
+
+        assertThat(second.get(0).getOutcome()).isEqualTo(FriendRequestResultDTO.Outcome.ACCEPTED);
+        assertThat(second.get(0).getFriendId()).isEqualTo(first.get().get(0).getFriendId());
+        assertThatThePairHasOneFriendship("ACTIVE");
+    }
+
+    @Test
+    void concurrentSavesOfTheSamePairConflict() throws Exception {
+        Future<Friend> first = holdingTheTransaction(user1, () -> friendService.save(new Friend().user1(user1).user2(user2)));
+        Future<Friend> second = racing(user1, () -> friendService.save(new Friend().user1(user2).user2(user1)), first);
+
+        assertThat(first.get().getId()).isNotNull();
+        assertThatThrownBy(second::get).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(FriendshipExistsException.class);
+        Integer friendships = jdbcTemplate.queryForObject(
+            "select count(*) from friend where user1_id = ? and user2_id = ?",
+            Integer.class,
+            user1.getId(),
+            user2.getId()
+        );
+        assertThat(friendships).isEqualTo(1);
+    }
+
+    private void assertThatThePairHasOneFriendship(String status) {
+        List<String> statuses = jdbcTemplate.queryForList(
+            "select s.status from friend f join friend_status s on s.id = f.status_id where f.user1_id = ? and f.user2_id = ?",
+            String.class,
+            user1.getId(),
+            user2.getId()
+        );
+        Integer allStatuses = jdbcTemplate.queryForObject(
+            "select count(*) from friend_status where recipient_id in (?, ?)",
+            Integer.class,
+            user1.getId(),
+            user2.getId()
+        );
+        assertThat(statuses).containsExactly(status);
+        // the status of the skipped request is not left behind
+        assertThat(allStatuses).isEqualTo(1);
+    }
+
+    /**
+     * Run an action as a user in a transaction that commits only once {@link #racing} has another transaction waiting
+     * on it.
+     */
+    private <T> Future<T> holdingTheTransaction(User user, Callable<T> action) throws InterruptedException {
+        CountDownLatch written = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+        CountDownLatch commit = release;
+        Future<T> future = executor.submit(() ->
+            as(
+                user,
+                () ->
+                    new TransactionTemplate(transactionManager).execute(status -> {
+                        try {
+                            T result = action.call();
+                            written.countDown();
+                            commit.await();
+                            return result;
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                    })
+            )
+        );
+        assertThat(written.await(30, TimeUnit.SECONDS)).isTrue();
+        return future;
+    }
+
+    /**
+     * Run an action as a user while the transaction of {@link #holdingTheTransaction} is open, and let it commit once
+     * the action waits on its rows.
+     */
+    private <T> Future<T> racing(User user, Callable<T> action, Future<?> holder) throws Exception {
+        Future<T> future = executor.submit(() -> as(user, action));
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!isWaitingOnALock() && !future.isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(future.isDone()).as("the racing transaction waits on the holding one").isFalse();
+        release.countDown();
+        holder.get(30, TimeUnit.SECONDS);
+        return future;
+    }
+
+    private boolean isWaitingOnALock() {
+        Integer waiting = jdbcTemplate.queryForObject(
+            "select count(*) from pg_stat_activity where datname = current_database() and wait_event_type = 'Lock'",
+            Integer.class
+        );
+        return waiting != null && waiting > 0;
+    }
+
+    private static <T> T as(User user, Callable<T> action) throws Exception {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(user.getLogin(), null, List.of()));
+        try {
+            return action.call();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    private static User newUser() {
+        User user = new User();
+        user.setLogin("friend" + RandomStringUtils.randomAlphabetic(8).toLowerCase());
+        user.setPassword(RandomStringUtils.randomAlphanumeric(60));
+        user.setActivated(true);
+        user.setEmail(user.getLogin() + "@localhost");
+        return user;
+    }
+}
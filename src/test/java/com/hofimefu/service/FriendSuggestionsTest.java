@@ -0,0 +1,207 @@
+package com.hofimefu.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.domain.FriendSuggestion;
+import com.hofimefu.repository.ClusterLockRepository;
+import com.hofimefu.repository.FriendRepository;
+import com.hofimefu.repository.FriendSuggestionRepository;
+import com.hofimefu.repository.UserSchoolRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+class FriendSuggestionsTest {
+
+    private FriendRepository friendRepository;
+
+    private UserSchoolRepository userSchoolRepository;
+
+    private FriendSuggestionRepository friendSuggestionRepository;
+
+    private ClusterLockRepository clusterLockRepository;
+
+    private MeterRegistry meterRegistry;
+
+    private ApplicationProperties applicationProperties;
+
+    private FriendGraph friendGraph;
+
+    private FriendSuggestions friendSuggestions;
+
+    private List<Collection<Long>> replacedUsers;
+
+    private List<FriendSuggestion> written;
+
+    @BeforeEach
+    public void setup() {
+        friendRepository = mock(FriendRepository.class);
+        userSchoolRepository = mock(UserSchoolRepository.class);
+        friendSuggestionRepository = mock(FriendSuggestionRepository.class);
+        clusterLockRepository = mock(ClusterLockRepository.class);
+        when(clusterLockRepository.tryLock(anyString())).thenReturn(true);
+        meterRegistry = new SimpleMeterRegistry();
+        applicationProperties = new ApplicationProperties();
+        applicationProperties.getFriendGraph().getSuggestions().setSize(3);
+        applicationProperties.getFriendGraph().getSuggestions().setParallelism(2);
+
+        replacedUsers = new ArrayList<>();
+        written = new ArrayList<>();
+        doAnswer(invocation -> {
+                synchronized (this) {
+                    replacedUsers.add(new ArrayList<>(invocation.<Collection<Long>>getArgument(0)));
+                    written.addAll(invocation.getArgument(1));
+                }
+                return null;
+            })
+            .when(friendSuggestionRepository)
+            .replaceSuggestions(anyCollection(), any(), any());
+
+        friendGraph = new FriendGraph(friendRepository, applicationProperties, meterRegistry);
+        friendSuggestions =
+            new FriendSuggestions(
+                friendGraph,
+                friendRepository,
+                userSchoolRepository,
+                friendSuggestionRepository,
+                clusterLockRepository,
+                mock(PlatformTransactionManager.class),
+                applicationProperties,
+                meterRegistry
+            );
+    }
+
+    @Test
+    void testBestCandidatesAreKeptInRankOrder() {
+        // 4 has two friends in common with 1, 5 and 9 one, 8 one but is blocked, 7 only shares a school
+        rebuildWith(List.of(pair(1, 2), pair(1, 3), pair(2, 4), pair(3, 4), pair(2, 5), pair(2, 9), pair(3, 8)));
+        when(friendRepository.findBlockedPairs()).thenReturn(List.<Object[]>of(pair(1, 8)));
+        when(userSchoolRepository.findMembershipPairs()).thenReturn(List.of(pair(1, 100), pair(7, 100), pair(1, 101), pair(5, 101)));
+
+        int users = friendSuggestions.runAll();
+
+        assertThat(users).isEqualTo(8);
+        List<FriendSuggestion> suggestions = suggestionsOf(1);
+        assertThat(suggestions).extracting(FriendSuggestion::getSuggestedUserId).containsExactly(4L, 5L, 9L);
+        assertThat(suggestions).extracting(FriendSuggestion::getRank).containsExactly(0, 1, 2);
+        assertThat(suggestions).extracting(FriendSuggestion::getMutualFriends).containsExactly(2, 1, 1);
+        assertThat(suggestions).extracting(FriendSuggestion::getSharedSchools).containsExactly(0, 1, 0);
+        assertThat(suggestions).extracting(FriendSuggestion::getScore).containsExactly(4, 3, 2);
+        // 8 is not blocked with 4, which is suggested 8 through 3
+        assertThat(suggestionsOf(4)).extracting(FriendSuggestion::getSuggestedUserId).containsExactly(1L, 5L, 8L);
+        verify(friendSuggestionRepository).deleteComputedBefore(any(Instant.class));
+        assertThat(meterRegistry.get(FriendSuggestions.RUN_METER_NAME).tag("mode", "full").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testTiesGoToTheLowerId() {
+        rebuildWith(List.of(pair(1, 2), pair(2, 6), pair(2, 5), pair(2, 4), pair(2, 3)));
+
+        friendSuggestions.runAll();
+
+        assertThat(suggestionsOf(1)).extracting(FriendSuggestion::getSuggestedUserId).containsExactly(3L, 4L, 5L);
+    }
+
+    @Test
+    void testLargeSchoolsAreIgnored() {
+        applicationProperties.getFriendGraph().getSuggestions().setMaxSchoolMembers(2);
+        rebuildWith(List.of());
+        when(userSchoolRepository.findMembershipPairs())
+            .thenReturn(List.of(pair(1, 100), pair(2, 100), pair(3, 100), pair(1, 101), pair(4, 101)));
+
+        friendSuggestions.runAll();
+
+        assertThat(suggestionsOf(1)).extracting(FriendSuggestion::getSuggestedUserId).containsExactly(4L);
+        assertThat(suggestionsOf(2)).isEmpty();
+    }
+
+    @Test
+    void testIncrementalRunRecomputesTheChangedUsersAndTheirFriends() {
+        rebuildWith(List.of(pair(1, 2), pair(1, 3), pair(3, 4)));
+        when(userSchoolRepository.findMembershipPairsOfSchoolsOf(List.of(1L, 2L, 3L, 9L))).thenReturn(List.of(pair(9, 100), pair(2, 100)));
+
+        assertThat(friendSuggestions.runIncremental()).isZero();
+        friendSuggestions.markChanged(1L, null, 9L);
+        int users = friendSuggestions.runIncremental();
+
+        assertThat(users).isEqualTo(4);
+        assertThat(replacedUsers).containsExactly(List.of(1L, 2L, 3L, 9L));
+        assertThat(suggestionsOf(1)).extracting(FriendSuggestion::getSuggestedUserId).containsExactly(4L);
+        assertThat(suggestionsOf(9)).extracting(FriendSuggestion::getSuggestedUserId).containsExactly(2L);
+        assertThat(friendSuggestions.runIncremental()).isZero();
+        assertThat(meterRegistry.get(FriendSuggestions.RUN_METER_NAME).tag("mode", "incremental").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testScheduledRunsAreSkippedWhileAnotherInstanceHoldsTheLock() {
+        rebuildWith(List.of(pair(1, 2), pair(2, 3)));
+        when(clusterLockRepository.tryLock(anyString())).thenReturn(false);
+        friendSuggestions.markChanged(1L);
+
+        friendSuggestions.scheduledRun();
+        friendSuggestions.scheduledIncrementalRun();
+
+        verify(friendSuggestionRepository, never()).replaceSuggestions(anyCollection(), any(), any());
+        verify(friendSuggestionRepository, never()).deleteComputedBefore(any());
+
+        // the changed users wait for the instance to get the lock
+        when(clusterLockRepository.tryLock(anyString())).thenReturn(true);
+        friendSuggestions.scheduledIncrementalRun();
+
+        assertThat(replacedUsers).containsExactly(List.of(1L, 2L));
+    }
+
+    @Test
+    void testChunksAreWrittenFromTheCallingThread() {
+        List<Thread> writers = new ArrayList<>();
+        doAnswer(invocation -> {
+                synchronized (this) {
+                    writers.add(Thread.currentThread());
+                    replacedUsers.add(new ArrayList<>(invocation.<Collection<Long>>getArgument(0)));
+                }
+                return null;
+            })
+            .when(friendSuggestionRepository)
+            .replaceSuggestions(anyCollection(), any(), any());
+        List<Object[]> chain = new ArrayList<>();
+        for (long user = 1; user < 3500; user++) {
+            chain.add(pair(user, user + 1));
+        }
+        rebuildWith(chain);
+
+        int users = friendSuggestions.runAll();
+
+        assertThat(users).isEqualTo(3500);
+        assertThat(writers).hasSizeGreaterThan(1).containsOnly(Thread.currentThread());
+        assertThat(replacedUsers.stream().mapToInt(Collection::size).sum()).isEqualTo(3500);
+    }
+
+    private List<FriendSuggestion> suggestionsOf(long userId) {
+        return written.stream().filter(suggestion -> suggestion.getUserId() == userId).collect(Collectors.toList());
+    }
+
+    private void rebuildWith(List<Object[]> pairs) {
+        when(friendRepository.findFriendshipPairs()).thenReturn(pairs);
+        friendGraph.rebuild();
+    }
+
+    private static Object[] pair(long first, long second) {
+        return new Object[] { first, second };
+    }
+}
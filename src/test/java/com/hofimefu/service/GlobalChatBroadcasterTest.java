@@ -0,0 +1,202 @@
+package com.hofimefu.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.domain.GlobalChat;
+import com.hofimefu.domain.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class GlobalChatBroadcasterTest {
+
+    private static final Long SUBSCRIBER_ID = 2L;
+
+    private final Queue<Runnable> pendingTasks = new ArrayDeque<>();
+
+    private MeterRegistry meterRegistry;
+
+    private BlockedFriendships blockedFriendships;
+
+    private GlobalChatBroadcaster globalChatBroadcaster;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getChat().getBroadcast().setQueueCapacity(2);
+
+        blockedFriendships = mock(BlockedFriendships.class);
+
+        globalChatBroadcaster = new GlobalChatBroadcaster(pendingTasks::add, blockedFriendships, applicationProperties, meterRegistry);
+    }
+
+    @Test
+    void testPublishedMessagesReachEverySubscriber() {
+        List<GlobalChat> first = new ArrayList<>();
+        List<GlobalChat> second = new ArrayList<>();
+        globalChatBroadcaster.subscribe(SUBSCRIBER_ID, first::add, () -> {});
+        globalChatBroadcaster.subscribe(SUBSCRIBER_ID, second::add, () -> {});
+
+        globalChatBroadcaster.publish(new GlobalChat().id(1L));
+        runPendingTasks();
+
+        assertThat(first).extracting(GlobalChat::getId).containsExactly(1L);
+        assertThat(second).extracting(GlobalChat::getId).containsExactly(1L);
+        assertThat(meterRegistry.get(GlobalChatBroadcaster.SUBSCRIBERS_METER_NAME).gauge().value()).isEqualTo(2);
+    }
+
+    @Test
+    void testMessagesOfBlockedAuthorsAreSkipped() {
+        List<GlobalChat> received = new ArrayList<>();
+        globalChatBroadcaster.subscribe(SUBSCRIBER_ID, received::add, () -> {});
+        when(blockedFriendships.isBlocked(SUBSCRIBER_ID, 3L)).thenReturn(true);
+
+        globalChatBroadcaster.publish(new GlobalChat().id(1L).user(user(3L)));
+        globalChatBroadcaster.publish(new GlobalChat().id(2L).user(user(4L)));
+        runPendingTasks();
+
+        assertThat(received).extracting(GlobalChat::getId).containsExactly(2L);
+    }
+
+    @Test
+    void testSubscriberOverflowingItsQueueIsDropped() {
+        List<GlobalChat> received = new ArrayList<>();
+        AtomicInteger dropped = new AtomicInteger();
+        globalChatBroadcaster.subscribe(SUBSCRIBER_ID, received::add, dropped::incrementAndGet);
+
+        globalChatBroadcaster.publish(new GlobalChat().id(1L));
+        globalChatBroadcaster.publish(new GlobalChat().id(2L));
+        assertThat(meterRegistry.get(GlobalChatBroadcaster.QUEUE_DEPTH_METER_NAME).gauge().value()).isEqualTo(2);
+        globalChatBroadcaster.publish(new GlobalChat().id(3L));
+        runPendingTasks();
+
+        assertThat(received).isEmpty();
+        assertThat(dropped).hasValue(1);
+        assertThat(globalChatBroadcaster.getSubscriberCount()).isZero();
+        assertThat(meterRegistry.get(GlobalChatBroadcaster.DROPPED_METER_NAME).tag("reason", "overflow").counter().count()).isEqualTo(1);
+        // the two queued messages and the one that did not fit
+        assertThat(meterRegistry.get(GlobalChatBroadcaster.DISCARDED_METER_NAME).tag("reason", "overflow").counter().count())
+            .isEqualTo(3);
+        assertThat(meterRegistry.get(GlobalChatBroadcaster.QUEUE_DEPTH_METER_NAME).gauge().value()).isZero();
+    }
+
+    @Test
+    void testSubscriberStalledInASendIsDropped() throws Exception {
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        AtomicInteger dropped = new AtomicInteger();
+        globalChatBroadcaster.subscribe(
+            SUBSCRIBER_ID,
+            globalChat -> {
+                sending.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            },
+            dropped::incrementAndGet
+        );
+        globalChatBroadcaster.publish(new GlobalChat().id(1L));
+        Thread sender = new Thread(pendingTasks.poll());
+        sender.start();
+        assertThat(sending.await(5, TimeUnit.SECONDS)).isTrue();
+
+        List<GlobalChat> received = new ArrayList<>();
+        globalChatBroadcaster.subscribe(SUBSCRIBER_ID, received::add, () -> {});
+        globalChatBroadcaster.publish(new GlobalChat().id(2L));
+        runPendingTasks();
+
+        globalChatBroadcaster.expireStalledSends(System.nanoTime());
+        assertThat(dropped).hasValue(0);
+        globalChatBroadcaster.expireStalledSends(System.nanoTime() + Duration.ofSeconds(11).toNanos());
+
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        sender.join(5000);
+        assertThat(dropped).hasValue(1);
+        assertThat(globalChatBroadcaster.getSubscriberCount()).isEqualTo(1);
+        assertThat(received).extracting(GlobalChat::getId).containsExactly(2L);
+        assertThat(meterRegistry.get(GlobalChatBroadcaster.DROPPED_METER_NAME).tag("reason", "timeout").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testSubscriberWhoseDrainIsRejectedIsDropped() {
+        globalChatBroadcaster =
+            new GlobalChatBroadcaster(
+                task -> {
+                    throw new RejectedExecutionException("backlog full");
+                },
+                blockedFriendships,
+                new ApplicationProperties(),
+                meterRegistry
+            );
+        List<GlobalChat> received = new ArrayList<>();
+        AtomicInteger dropped = new AtomicInteger();
+        globalChatBroadcaster.subscribe(SUBSCRIBER_ID, received::add, dropped::incrementAndGet);
+
+        globalChatBroadcaster.publish(new GlobalChat().id(1L));
+
+        // not left waiting for a next message that may never come
+        assertThat(dropped).hasValue(1);
+        assertThat(globalChatBroadcaster.getSubscriberCount()).isZero();
+        assertThat(meterRegistry.get(GlobalChatBroadcaster.DROPPED_METER_NAME).tag("reason", "rejected").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(GlobalChatBroadcaster.DISCARDED_METER_NAME).tag("reason", "rejected").counter().count())
+            .isEqualTo(1);
+    }
+
+    @Test
+    void testFailingSubscriberIsRemoved() {
+        globalChatBroadcaster.subscribe(
+            SUBSCRIBER_ID,
+            globalChat -> {
+                throw new IllegalStateException("client gone");
+            },
+            () -> {}
+        );
+
+        globalChatBroadcaster.publish(new GlobalChat().id(1L));
+        runPendingTasks();
+
+        assertThat(globalChatBroadcaster.getSubscriberCount()).isZero();
+    }
+
+    @Test
+    void testClosedSubscriptionStopsReceiving() {
+        List<GlobalChat> received = new ArrayList<>();
+        GlobalChatBroadcaster.Subscription subscription = globalChatBroadcaster.subscribe(SUBSCRIBER_ID, received::add, () -> {});
+
+        subscription.close();
+        globalChatBroadcaster.publish(new GlobalChat().id(1L));
+        runPendingTasks();
+
+        assertThat(received).isEmpty();
+        assertThat(globalChatBroadcaster.getSubscriberCount()).isZero();
+    }
+
+    private void runPendingTasks() {
+        Runnable task;
+        while ((task = pendingTasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private static User user(Long id) {
+        User user = new User();
+        user.setId(id);
+        return user;
+    }
+}
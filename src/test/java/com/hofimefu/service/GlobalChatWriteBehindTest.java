@@ -0,0 +1,206 @@
+package com.hofimefu.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.domain.GlobalChat;
+import com.hofimefu.repository.GlobalChatRepository;
+import com.hofimefu.repository.UserRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+class GlobalChatWriteBehindTest {
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private GlobalChatRepository globalChatRepository;
+
+    private final List<GlobalChat> announced = new CopyOnWriteArrayList<>();
+
+    private MeterRegistry meterRegistry;
+
+    private PlatformTransactionManager transactionManager;
+
+    private ApplicationProperties applicationProperties;
+
+    private GlobalChatWriteBehind globalChatWriteBehind;
+
+    @BeforeEach
+    public void setup() {
+        globalChatRepository = mock(GlobalChatRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        transactionManager = mock(PlatformTransactionManager.class);
+        applicationProperties = new ApplicationProperties();
+        applicationProperties.getChat().getWriteBehind().setEnabled(true);
+        applicationProperties.getChat().getWriteBehind().setBatchSize(3);
+        applicationProperties.getChat().getWriteBehind().setMaxLinger(Duration.ofSeconds(5));
+
+        globalChatWriteBehind =
+            new GlobalChatWriteBehind(
+                globalChatRepository,
+                mock(UserRepository.class),
+                transactionManager,
+                applicationProperties,
+                meterRegistry
+            );
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        globalChatWriteBehind.stop();
+    }
+
+    @Test
+    void testMessagesAreInsertedAsOneBatch() throws Exception {
+        when(globalChatRepository.saveAll(anyList()))
+            .thenAnswer(invocation -> {
+                List<GlobalChat> batch = invocation.getArgument(0);
+                batch.forEach(globalChat -> globalChat.setId(sequence.incrementAndGet()));
+                return batch;
+            });
+        globalChatWriteBehind.start();
+
+        CompletableFuture<GlobalChat> first = globalChatWriteBehind.submit(new GlobalChat().message("first"), announced::add);
+        CompletableFuture<GlobalChat> second = globalChatWriteBehind.submit(new GlobalChat().message("second"), announced::add);
+        CompletableFuture<GlobalChat> third = globalChatWriteBehind.submit(new GlobalChat().message("third"), announced::add);
+
+        assertThat(first.get(5, TimeUnit.SECONDS).getId()).isEqualTo(1L);
+        assertThat(second.get(5, TimeUnit.SECONDS).getId()).isEqualTo(2L);
+        assertThat(third.get(5, TimeUnit.SECONDS).getId()).isEqualTo(3L);
+        assertThat(announced).extracting(GlobalChat::getId).containsExactly(1L, 2L, 3L);
+        DistributionSummary batchSize = meterRegistry.get(GlobalChatWriteBehind.BATCH_SIZE_METER_NAME).summary();
+        assertThat(batchSize.count()).isEqualTo(1);
+        assertThat(batchSize.totalAmount()).isEqualTo(3);
+        assertThat(meterRegistry.get(GlobalChatWriteBehind.COMMIT_METER_NAME).timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testFailedBatchIsRetriedOneByOne() throws Exception {
+        when(globalChatRepository.saveAll(anyList())).thenThrow(new IllegalStateException("batch failed"));
+        when(globalChatRepository.save(any(GlobalChat.class)))
+            .thenAnswer(invocation -> {
+                GlobalChat globalChat = invocation.getArgument(0);
+                if ("poison".equals(globalChat.getMessage())) {
+                    throw new IllegalArgumentException("poison");
+                }
+                return globalChat.id(sequence.incrementAndGet());
+            });
+        globalChatWriteBehind.start();
+
+        CompletableFuture<GlobalChat> good = globalChatWriteBehind.submit(new GlobalChat().message("good"), announced::add);
+        CompletableFuture<GlobalChat> poison = globalChatWriteBehind.submit(new GlobalChat().message("poison"), announced::add);
+        CompletableFuture<GlobalChat> other = globalChatWriteBehind.submit(new GlobalChat().message("other"), announced::add);
+
+        assertThat(good.get(5, TimeUnit.SECONDS).getId()).isNotNull();
+        assertThat(other.get(5, TimeUnit.SECONDS).getId()).isNotNull();
+        assertThat(poison).failsWithin(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void testMessageSubmittedAfterStopIsInsertedByTheCaller() throws Exception {
+        when(globalChatRepository.saveAll(anyList()))
+            .thenAnswer(invocation -> {
+                List<GlobalChat> batch = invocation.getArgument(0);
+                batch.forEach(globalChat -> globalChat.setId(sequence.incrementAndGet()));
+                return batch;
+            });
+        globalChatWriteBehind.start();
+        globalChatWriteBehind.stop();
+
+        CompletableFuture<GlobalChat> late = globalChatWriteBehind.submit(new GlobalChat().message("late"), announced::add);
+
+        assertThat(late).isCompleted();
+        assertThat(late.get().getId()).isEqualTo(1L);
+        // in a transaction of its own, which a failure would not mark the transaction of the caller for rollback
+        verify(transactionManager, atLeastOnce())
+            .getTransaction(argThat(definition -> definition.getPropagationBehavior() == TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+    }
+
+    @Test
+    void testMessageCommittedAfterTheCallerTimedOutIsAnnounced() throws Exception {
+        applicationProperties.getChat().getWriteBehind().setMaxWait(Duration.ofMillis(50));
+        applicationProperties.getChat().getWriteBehind().setMaxLinger(Duration.ZERO);
+        CountDownLatch commit = new CountDownLatch(1);
+        when(globalChatRepository.saveAll(anyList()))
+            .thenAnswer(invocation -> {
+                commit.await(5, TimeUnit.SECONDS);
+                List<GlobalChat> batch = invocation.getArgument(0);
+                batch.forEach(globalChat -> globalChat.setId(sequence.incrementAndGet()));
+                return batch;
+            });
+        globalChatWriteBehind.start();
+
+        CountDownLatch announcedLate = new CountDownLatch(1);
+        CompletableFuture<GlobalChat> slow = globalChatWriteBehind.submit(
+            new GlobalChat().message("slow"),
+            globalChat -> {
+                announced.add(globalChat);
+                announcedLate.countDown();
+            }
+        );
+        assertThatThrownBy(() -> slow.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(TimeoutException.class);
+        assertThat(announced).isEmpty();
+        commit.countDown();
+
+        // still pushed to the recent messages and the subscribers, though the caller has given up
+        assertThat(announcedLate.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(announced).extracting(GlobalChat::getId).containsExactly(1L);
+    }
+
+    @Test
+    void testNoMessageIsLeftPendingOnceTheFlusherDied() throws Exception {
+        when(globalChatRepository.saveAll(anyList()))
+            .thenThrow(new StackOverflowError("flusher killed"))
+            .thenAnswer(invocation -> {
+                List<GlobalChat> batch = invocation.getArgument(0);
+                batch.forEach(globalChat -> globalChat.setId(sequence.incrementAndGet()));
+                return batch;
+            });
+        globalChatWriteBehind.start();
+
+        CompletableFuture<GlobalChat> lost = globalChatWriteBehind.submit(new GlobalChat().message("lost"), announced::add);
+        assertThat(lost).failsWithin(Duration.ofSeconds(10));
+        CompletableFuture<GlobalChat> next = globalChatWriteBehind.submit(new GlobalChat().message("next"), announced::add);
+
+        assertThat(next.get(5, TimeUnit.SECONDS).getId()).isEqualTo(1L);
+        assertThat(announced).extracting(GlobalChat::getMessage).containsExactly("next");
+    }
+
+    @Test
+    void testDisabledWriteBehindDoesNotStart() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        GlobalChatWriteBehind disabled = new GlobalChatWriteBehind(
+            globalChatRepository,
+            mock(UserRepository.class),
+            mock(PlatformTransactionManager.class),
+            applicationProperties,
+            new SimpleMeterRegistry()
+        );
+
+        disabled.start();
+
+        assertThat(disabled.isEnabled()).isFalse();
+    }
+}
@@ -0,0 +1,194 @@
+package com.hofimefu.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.repository.GlobalChatRepository;
+import com.hofimefu.service.dto.GlobalChatDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+
+class RecentGlobalChatCacheTest {
+
+    private static final ZonedDateTime BASE = ZonedDateTime.of(2022, 10, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    private GlobalChatRepository globalChatRepository;
+
+    private ApplicationProperties applicationProperties;
+
+    private MeterRegistry meterRegistry;
+
+    private RecentGlobalChatCache recentGlobalChatCache;
+
+    @BeforeEach
+    public void setup() {
+        globalChatRepository = mock(GlobalChatRepository.class);
+        applicationProperties = new ApplicationProperties();
+        applicationProperties.getChat().getCache().setCapacity(3);
+        meterRegistry = new SimpleMeterRegistry();
+
+        recentGlobalChatCache = new RecentGlobalChatCache(globalChatRepository, applicationProperties, meterRegistry);
+    }
+
+    @Test
+    void testColdCacheMisses() {
+        assertThat(recentGlobalChatCache.latest(1)).isEmpty();
+        assertThat(recentGlobalChatCache.after(0L, 1)).isEmpty();
+
+        assertThat(meterRegistry.get(RecentGlobalChatCache.REQUESTS_METER_NAME).tag("result", "miss").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void testDisabledCacheStaysCold() {
+        applicationProperties.getChat().getCache().setEnabled(false);
+        warmWith(List.of(chat(1, 0)), List.of(1L));
+
+        assertThat(recentGlobalChatCache.latest(1)).isEmpty();
+    }
+
+    @Test
+    void testLatestIsServedFromTheWarmedWindow() {
+        warmWith(List.of(chat(3, 2), chat(2, 1)), List.of(3L, 2L));
+
+        assertThat(recentGlobalChatCache.latest(5)).hasValueSatisfying(page -> assertThat(ids(page)).containsExactly(3L, 2L));
+        assertThat(recentGlobalChatCache.latest(1)).hasValueSatisfying(page -> assertThat(ids(page)).containsExactly(3L));
+        assertThat(meterRegistry.get(RecentGlobalChatCache.REQUESTS_METER_NAME).tag("result", "hit").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void testPartialWindowOnlyAnswersWhatItHolds() {
+        warmWith(List.of(chat(4, 3), chat(3, 2), chat(2, 1)), List.of(4L, 3L, 2L, 1L));
+
+        assertThat(recentGlobalChatCache.latest(3)).isPresent();
+        assertThat(recentGlobalChatCache.latest(4)).isEmpty();
+        assertThat(recentGlobalChatCache.before(3L, 1)).hasValueSatisfying(page -> assertThat(ids(page)).containsExactly(2L));
+        assertThat(recentGlobalChatCache.before(3L, 2)).isEmpty();
+        assertThat(recentGlobalChatCache.after(1L, 10)).hasValueSatisfying(page -> assertThat(ids(page)).containsExactly(2L, 3L, 4L));
+        assertThat(recentGlobalChatCache.after(0L, 10)).isEmpty();
+    }
+
+    @Test
+    void testPutEvictsTheOldestEntry() {
+        warmWith(List.of(chat(2, 1)), List.of(2L));
+        recentGlobalChatCache.put(chat(3, 2));
+        recentGlobalChatCache.put(chat(4, 3));
+        recentGlobalChatCache.put(chat(5, 4));
+
+        assertThat(recentGlobalChatCache.latest(3)).hasValueSatisfying(page -> assertThat(ids(page)).containsExactly(5L, 4L, 3L));
+        assertThat(recentGlobalChatCache.latest(4)).isEmpty();
+        assertThat(recentGlobalChatCache.after(2L, 10)).isPresent();
+        assertThat(recentGlobalChatCache.after(1L, 10)).isEmpty();
+    }
+
+    @Test
+    void testPutKeepsTimelineOrderAndReplacesUpdatedEntries() {
+        warmWith(List.of(chat(2, 5), chat(1, 1)), List.of(2L, 1L));
+        recentGlobalChatCache.put(chat(3, 3));
+        recentGlobalChatCache.put(chat(1, 9, "edited"));
+
+        assertThat(recentGlobalChatCache.latest(3))
+            .hasValueSatisfying(page -> {
+                assertThat(ids(page)).containsExactly(1L, 2L, 3L);
+                assertThat(page.get(0).getMessage()).isEqualTo("edited");
+            });
+    }
+
+    @Test
+    void testNewestIdCoversIdsOutsideTheWindow() {
+        assertThat(recentGlobalChatCache.newestId()).isEmpty();
+
+        warmWith(List.of(chat(3, 2), chat(2, 1)), List.of(3L, 2L));
+        assertThat(recentGlobalChatCache.newestId()).hasValue(3L);
+
+        recentGlobalChatCache.put(chat(7, 0));
+        assertThat(recentGlobalChatCache.newestId()).hasValue(7L);
+        recentGlobalChatCache.remove(3L);
+        recentGlobalChatCache.remove(7L);
+        assertThat(recentGlobalChatCache.newestId()).hasValue(2L);
+    }
+
+    @Test
+    void testRemove() {
+        warmWith(List.of(chat(2, 1), chat(1, 0)), List.of(2L, 1L));
+        recentGlobalChatCache.remove(2L);
+
+        assertThat(recentGlobalChatCache.latest(2)).hasValueSatisfying(page -> assertThat(ids(page)).containsExactly(1L));
+        assertThat(recentGlobalChatCache.before(2L, 1)).isEmpty();
+    }
+
+    @Test
+    void testUpdateAuthorRewritesTheCachedMessagesOfTheUser() {
+        GlobalChatDTO other = new GlobalChatDTO(3L, "message 3", BASE.plusMinutes(2), "other", "Other");
+        warmWith(List.of(other, chat(2, 1), chat(1, 0)), List.of(3L, 2L, 1L));
+        recentGlobalChatCache.updateAuthor("user", "renamed", "Jane Doe");
+
+        assertThat(recentGlobalChatCache.latest(3))
+            .hasValueSatisfying(page -> {
+                assertThat(ids(page)).containsExactly(3L, 2L, 1L);
+                assertThat(page).extracting(GlobalChatDTO::getAuthorLogin).containsExactly("other", "renamed", "renamed");
+                assertThat(page).extracting(GlobalChatDTO::getAuthorName).containsExactly("Other", "Jane Doe", "Jane Doe");
+            });
+        // written in place, without reloading the window
+        verify(globalChatRepository, times(1)).findLatest(any(Pageable.class));
+    }
+
+    private void warmWith(List<GlobalChatDTO> latest, List<Long> latestIds) {
+        when(globalChatRepository.findLatest(any(Pageable.class)))
+            .thenReturn(latest.stream().map(RecentGlobalChatCacheTest::entry).collect(Collectors.toList()));
+        when(globalChatRepository.findLatestIds(any(Pageable.class))).thenReturn(latestIds);
+        recentGlobalChatCache.warm();
+    }
+
+    private static GlobalChatDTO chat(long id, int minutes) {
+        return chat(id, minutes, "message " + id);
+    }
+
+    private static GlobalChatDTO chat(long id, int minutes, String message) {
+        return new GlobalChatDTO(id, message, BASE.plusMinutes(minutes), "user", "User");
+    }
+
+    private static GlobalChatRepository.TimelineEntry entry(GlobalChatDTO globalChat) {
+        return new GlobalChatRepository.TimelineEntry() {
+            @Override
+            public Long getId() {
+                return globalChat.getId();
+            }
+
+            @Override
+            public String getMessage() {
+                return globalChat.getMessage();
+            }
+
+            @Override
+            public ZonedDateTime getCreated() {
+                return globalChat.getCreated();
+            }
+
+            @Override
+            public String getAuthorLogin() {
+                return globalChat.getAuthorLogin();
+            }
+
+            @Override
+            public String getAuthorName() {
+                return globalChat.getAuthorName();
+            }
+        };
+    }
+
+    private static List<Long> ids(List<GlobalChatDTO> page) {
+        return page.stream().map(GlobalChatDTO::getId).collect(Collectors.toList());
+    }
+}
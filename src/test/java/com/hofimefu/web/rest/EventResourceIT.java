@@ -2,27 +2,46 @@ package com.hofimefu.web.rest;
 
 import static com.hofimefu.web.rest.TestUtil.sameInstant;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.hasItem;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 import com.hofimefu.IntegrationTest;
 import com.hofimefu.domain.Event;
+import com.hofimefu.domain.Friend;
+import com.hofimefu.domain.FriendStatus;
+import com.hofimefu.domain.User;
+import com.hofimefu.domain.enumeration.FriendshipStatus;
 import com.hofimefu.repository.EventRepository;
+import com.hofimefu.repository.FriendRepository;
+import com.hofimefu.repository.FriendStatusRepository;
+import com.hofimefu.repository.UserRepository;
+import com.hofimefu.service.BlockedFriendships;
+import com.hofimefu.service.EventLocationIndex;
+import com.hofimefu.service.EventRsvps;
+import com.hofimefu.service.dto.EventRsvpDTO;
+import com.jayway.jsonpath.JsonPath;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.transaction.AfterTransaction;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -52,6 +71,9 @@ class EventResourceIT {
     private static final ZonedDateTime DEFAULT_PLANNED = ZonedDateTime.ofInstant(Instant.ofEpochMilli(0L), ZoneOffset.UTC);
     private static final ZonedDateTime UPDATED_PLANNED = ZonedDateTime.now(ZoneId.systemDefault()).withNano(0);
 
+    private static final Integer DEFAULT_CAPACITY = 0;
+    private static final Integer UPDATED_CAPACITY = 1;
+
     private static final String ENTITY_API_URL = "/api/events";
     private static final String ENTITY_API_URL_ID = ENTITY_API_URL + "/{id}";
 
@@ -61,6 +83,24 @@ class EventResourceIT {
     @Autowired
     private EventRepository eventRepository;
 
+    @Autowired
+    private EventLocationIndex eventLocationIndex;
+
+    @Autowired
+    private EventRsvps eventRsvps;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private FriendRepository friendRepository;
+
+    @Autowired
+    private FriendStatusRepository friendStatusRepository;
+
+    @Autowired
+    private BlockedFriendships blockedFriendships;
+
     @Autowired
     private EntityManager em;
 
@@ -82,7 +122,8 @@ class EventResourceIT {
             .header(DEFAULT_HEADER)
             .description(DEFAULT_DESCRIPTION)
             .created(DEFAULT_CREATED)
-            .planned(DEFAULT_PLANNED);
+            .planned(DEFAULT_PLANNED)
+            .capacity(DEFAULT_CAPACITY);
         return event;
     }
 
@@ -99,7 +140,8 @@ class EventResourceIT {
             .header(UPDATED_HEADER)
             .description(UPDATED_DESCRIPTION)
             .created(UPDATED_CREATED)
-            .planned(UPDATED_PLANNED);
+            .planned(UPDATED_PLANNED)
+            .capacity(UPDATED_CAPACITY);
         return event;
     }
 
@@ -127,6 +169,7 @@ class EventResourceIT {
         assertThat(testEvent.getDescription()).isEqualTo(DEFAULT_DESCRIPTION);
         assertThat(testEvent.getCreated()).isEqualTo(DEFAULT_CREATED);
         assertThat(testEvent.getPlanned()).isEqualTo(DEFAULT_PLANNED);
+        assertThat(testEvent.getCapacity()).isEqualTo(DEFAULT_CAPACITY);
     }
 
     @Test
@@ -164,7 +207,8 @@ class EventResourceIT {
             .andExpect(jsonPath("$.[*].header").value(hasItem(DEFAULT_HEADER)))
             .andExpect(jsonPath("$.[*].description").value(hasItem(DEFAULT_DESCRIPTION)))
             .andExpect(jsonPath("$.[*].created").value(hasItem(sameInstant(DEFAULT_CREATED))))
-            .andExpect(jsonPath("$.[*].planned").value(hasItem(sameInstant(DEFAULT_PLANNED))));
+            .andExpect(jsonPath("$.[*].planned").value(hasItem(sameInstant(DEFAULT_PLANNED))))
+            .andExpect(jsonPath("$.[*].capacity").value(hasItem(DEFAULT_CAPACITY)));
     }
 
     @Test
@@ -184,7 +228,8 @@ class EventResourceIT {
             .andExpect(jsonPath("$.header").value(DEFAULT_HEADER))
             .andExpect(jsonPath("$.description").value(DEFAULT_DESCRIPTION))
             .andExpect(jsonPath("$.created").value(sameInstant(DEFAULT_CREATED)))
-            .andExpect(jsonPath("$.planned").value(sameInstant(DEFAULT_PLANNED)));
+            .andExpect(jsonPath("$.planned").value(sameInstant(DEFAULT_PLANNED)))
+            .andExpect(jsonPath("$.capacity").value(DEFAULT_CAPACITY));
     }
 
     @Test
@@ -212,7 +257,8 @@ class EventResourceIT {
             .header(UPDATED_HEADER)
             .description(UPDATED_DESCRIPTION)
             .created(UPDATED_CREATED)
-            .planned(UPDATED_PLANNED);
+            .planned(UPDATED_PLANNED)
+            .capacity(UPDATED_CAPACITY);
 
         restEventMockMvc
             .perform(
@@ -232,6 +278,7 @@ class EventResourceIT {
         assertThat(testEvent.getDescription()).isEqualTo(UPDATED_DESCRIPTION);
         assertThat(testEvent.getCreated()).isEqualTo(UPDATED_CREATED);
         assertThat(testEvent.getPlanned()).isEqualTo(UPDATED_PLANNED);
+        assertThat(testEvent.getCapacity()).isEqualTo(UPDATED_CAPACITY);
     }
 
     @Test
@@ -322,6 +369,7 @@ class EventResourceIT {
         assertThat(testEvent.getDescription()).isEqualTo(DEFAULT_DESCRIPTION);
         assertThat(testEvent.getCreated()).isEqualTo(DEFAULT_CREATED);
         assertThat(testEvent.getPlanned()).isEqualTo(DEFAULT_PLANNED);
+        assertThat(testEvent.getCapacity()).isEqualTo(DEFAULT_CAPACITY);
     }
 
     @Test
@@ -342,7 +390,8 @@ class EventResourceIT {
             .header(UPDATED_HEADER)
             .description(UPDATED_DESCRIPTION)
             .created(UPDATED_CREATED)
-            .planned(UPDATED_PLANNED);
+            .planned(UPDATED_PLANNED)
+            .capacity(UPDATED_CAPACITY);
 
         restEventMockMvc
             .perform(
@@ -362,6 +411,7 @@ class EventResourceIT {
         assertThat(testEvent.getDescription()).isEqualTo(UPDATED_DESCRIPTION);
         assertThat(testEvent.getCreated()).isEqualTo(UPDATED_CREATED);
         assertThat(testEvent.getPlanned()).isEqualTo(UPDATED_PLANNED);
+        assertThat(testEvent.getCapacity()).isEqualTo(UPDATED_CAPACITY);
     }
 
     @Test
@@ -437,4 +487,342 @@ class EventResourceIT {
         List<Event> eventList = eventRepository.findAll();
         assertThat(eventList).hasSize(databaseSizeBeforeDelete - 1);
     }
+
+    @Test
+    @Transactional
+    void getUpcomingEvents() throws Exception {
+        ZonedDateTime tomorrow = ZonedDateTime.now(ZoneOffset.UTC).plusDays(1).withNano(0);
+        eventRepository.saveAndFlush(createEntity(em).planned(tomorrow.minusDays(2)));
+        Event first = eventRepository.saveAndFlush(createEntity(em).planned(tomorrow));
+        Event second = eventRepository.saveAndFlush(createEntity(em).planned(tomorrow));
+        Event third = eventRepository.saveAndFlush(createEntity(em).planned(tomorrow.plusHours(1)));
+        eventRepository.saveAndFlush(createEntity(em).planned(null));
+        em.createNativeQuery("update event set attendee_count = 3 where id = :id").setParameter("id", first.getId()).executeUpdate();
+
+        String cursor = restEventMockMvc
+            .perform(get(ENTITY_API_URL + "/upcoming?limit=2"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andExpect(jsonPath("$.[*].id").value(contains(first.getId().intValue(), second.getId().intValue())))
+            .andExpect(jsonPath("$.[0].header").value(DEFAULT_HEADER))
+            .andExpect(jsonPath("$.[*].attendeeCount").value(contains(3, 0)))
+            .andExpect(jsonPath("$.[0].createdBy").doesNotExist())
+            .andExpect(jsonPath("$.[0].evetUsers").doesNotExist())
+            .andExpect(header().string(EventResource.NEXT_CURSOR_HEADER, tomorrow.toInstant() + "," + second.getId()))
+            .andReturn()
+            .getResponse()
+            .getHeader(EventResource.NEXT_CURSOR_HEADER);
+
+        restEventMockMvc
+            .perform(get(ENTITY_API_URL + "/upcoming?limit=2&after={after}", cursor))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(contains(third.getId().intValue())))
+            .andExpect(header().doesNotExist(EventResource.NEXT_CURSOR_HEADER));
+        restEventMockMvc
+            .perform(get(ENTITY_API_URL + "/upcoming?after={after}", tomorrow.toOffsetDateTime() + "," + first.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(contains(second.getId().intValue(), third.getId().intValue())));
+        restEventMockMvc.perform(get(ENTITY_API_URL + "/upcoming?after=tomorrow")).andExpect(status().isBadRequest());
+        restEventMockMvc
+            .perform(get(ENTITY_API_URL + "/upcoming?after={after}", tomorrow.toInstant() + ",x"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    void capacityCannotBeNegativeInTheDatabase() {
+        eventRepository.saveAndFlush(event);
+
+        // past the validation of the entity
+        assertThatThrownBy(() ->
+                em.createNativeQuery("update event set capacity = -1 where id = :id").setParameter("id", event.getId()).executeUpdate()
+            )
+            .isInstanceOf(PersistenceException.class)
+            .hasStackTraceContaining("ck_event__capacity");
+    }
+
+    @Test
+    @Transactional
+    void upcomingEventsQueryUsesThePlannedIndex() {
+        seedEvents();
+        // the SQL Hibernate generates for the repository query, paged the way Spring Data pages it
+        String sql = em
+            .getEntityManagerFactory()
+            .unwrap(SessionFactoryImplementor.class)
+            .getQueryPlanCache()
+            .getHQLQueryPlan(EventRepository.UPCOMING_AFTER, false, Collections.emptyMap())
+            .getSqlStrings()[0];
+        ZonedDateTime now = ZonedDateTime.now();
+
+        @SuppressWarnings("unchecked")
+        List<String> plan = em
+            .createNativeQuery("explain " + sql + " limit 20")
+            .setParameter(1, now)
+            .setParameter(2, now)
+            .setParameter(3, 1L)
+            .getResultList();
+
+        assertThat(String.join("\n", plan)).contains("Index Scan using idx_event__planned_id").doesNotContain("Sort");
+    }
+
+    @Test
+    @Transactional
+    void getNearbyEvents() throws Exception {
+        // in the middle of the Pacific, away from the events of other tests
+        Event nearest = eventRepository.saveAndFlush(createEntity(em).latitude(-30.0).longitude(-140.0));
+        Event near = eventRepository.saveAndFlush(createEntity(em).latitude(-30.0).longitude(-140.1));
+        eventRepository.saveAndFlush(createEntity(em).latitude(-31.0).longitude(-140.0));
+        eventRepository.saveAndFlush(createEntity(em).latitude(null).longitude(null));
+        eventLocationIndex.rebuild();
+
+        restEventMockMvc
+            .perform(get(ENTITY_API_URL + "/nearby?lat=-30.001&lon=-140.0&radiusKm=50"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andExpect(jsonPath("$.[*].id").value(contains(nearest.getId().intValue(), near.getId().intValue())))
+            .andExpect(jsonPath("$.[0].header").value(DEFAULT_HEADER))
+            .andExpect(jsonPath("$.[0].distanceKm").value(closeTo(0.111, 0.001)))
+            .andExpect(jsonPath("$.[1].distanceKm").value(closeTo(9.63, 0.01)));
+        restEventMockMvc
+            .perform(get(ENTITY_API_URL + "/nearby?lat=-30.001&lon=-140.0&radiusKm=50&limit=1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(contains(nearest.getId().intValue())));
+        restEventMockMvc.perform(get(ENTITY_API_URL + "/nearby?lat=91&lon=0")).andExpect(status().isBadRequest());
+        restEventMockMvc.perform(get(ENTITY_API_URL + "/nearby?lat=0&lon=0&radiusKm=0")).andExpect(status().isBadRequest());
+        restEventMockMvc.perform(get(ENTITY_API_URL + "/nearby?lat=0&lon=0&radiusKm=1000")).andExpect(status().isBadRequest());
+        restEventMockMvc.perform(get(ENTITY_API_URL + "/nearby?lat=0&lon=0&limit=0")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    void getNearbyEventsPage() throws Exception {
+        // on both sides of the antimeridian
+        Event west = eventRepository.saveAndFlush(createEntity(em).latitude(-20.0).longitude(179.95));
+        Event east = eventRepository.saveAndFlush(createEntity(em).latitude(-20.0).longitude(-179.9));
+        Event farther = eventRepository.saveAndFlush(createEntity(em).latitude(-20.2).longitude(180.0));
+        eventRepository.saveAndFlush(createEntity(em).latitude(-21.0).longitude(180.0));
+
+        restEventMockMvc
+            .perform(get(ENTITY_API_URL + "/nearby/paged?lat=-20.0&lon=-179.99&radiusKm=50&size=2&sort=id,desc"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andExpect(header().string("X-Total-Count", "3"))
+            .andExpect(jsonPath("$.[*].id").value(contains(west.getId().intValue(), east.getId().intValue())))
+            .andExpect(jsonPath("$.[0].distanceKm").value(closeTo(6.27, 0.01)));
+        restEventMockMvc
+            .perform(get(ENTITY_API_URL + "/nearby/paged?lat=-20.0&lon=-179.99&radiusKm=50&page=1&size=2"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(contains(farther.getId().intValue())));
+        restEventMockMvc.perform(get(ENTITY_API_URL + "/nearby/paged?lat=0&lon=181")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    void nearbyEventsLeaveOutTheEventsOfBlockedUsers() throws Exception {
+        User current = userRepository.findOneByLogin("user").orElseThrow();
+        User blocked = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        FriendStatus status = friendStatusRepository.saveAndFlush(new FriendStatus().status(FriendshipStatus.BLOCKED));
+        friendRepository.saveAndFlush(new Friend().user1(current).user2(blocked).status(status));
+        blockedFriendships.rebuild();
+        // in the middle of the Atlantic, away from the events of other tests, the nearest one created by the blocked user
+        eventRepository.saveAndFlush(createEntity(em).latitude(40.0).longitude(-40.0).createdBy(blocked));
+        Event visible = eventRepository.saveAndFlush(createEntity(em).latitude(40.0).longitude(-40.1));
+        Event farther = eventRepository.saveAndFlush(createEntity(em).latitude(40.0).longitude(-40.2).createdBy(current));
+        eventLocationIndex.rebuild();
+
+        restEventMockMvc
+            .perform(get(ENTITY_API_URL + "/nearby?lat=40.0&lon=-40.0&radiusKm=50"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(contains(visible.getId().intValue(), farther.getId().intValue())));
+        // the limit is still reached
+        restEventMockMvc
+            .perform(get(ENTITY_API_URL + "/nearby?lat=40.0&lon=-40.0&radiusKm=50&limit=1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(contains(visible.getId().intValue())));
+        // every page leaves it out, and so does the total
+        restEventMockMvc
+            .perform(get(ENTITY_API_URL + "/nearby/paged?lat=40.0&lon=-40.0&radiusKm=50&size=1"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Total-Count", "2"))
+            .andExpect(jsonPath("$.[*].id").value(contains(visible.getId().intValue())));
+        restEventMockMvc
+            .perform(get(ENTITY_API_URL + "/nearby/paged?lat=40.0&lon=-40.0&radiusKm=50&page=1&size=1"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Total-Count", "2"))
+            .andExpect(jsonPath("$.[*].id").value(contains(farther.getId().intValue())));
+    }
+
+    @Test
+    @Transactional
+    void nearbyEventsQueryUsesTheLocationIndex() {
+        seedEvents();
+
+        // the repository query with its order, paged the way Spring Data pages a native query
+        @SuppressWarnings("unchecked")
+        List<String> plan = em
+            .createNativeQuery("explain " + EventRepository.NEARBY + " limit 20")
+            .setParameter("latitude", 48.85)
+            .setParameter("longitude", 2.35)
+            .setParameter("radiusKm", 10.0)
+            .setParameter("minLatitude", 48.76)
+            .setParameter("maxLatitude", 48.94)
+            .setParameter("minLongitude", 2.21)
+            .setParameter("maxLongitude", 2.49)
+            .setParameter("otherMinLongitude", 1.0)
+            .setParameter("otherMaxLongitude", 0.0)
+            .setParameter("userId", 1L)
+            .getResultList();
+
+        // only the events of the bounding box are sorted by distance
+        assertThat(String.join("\n", plan))
+            .contains("Limit")
+            .contains("Sort")
+            .contains("idx_event__latitude_longitude")
+            .doesNotContain("Seq Scan");
+    }
+
+    @Test
+    void eventLocationIndexFollowsCommittedEvents() throws Exception {
+        Event created = null;
+        try {
+            String body = restEventMockMvc
+                .perform(
+                    post(ENTITY_API_URL)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(TestUtil.convertObjectToJsonBytes(createEntity(em).latitude(-35.0).longitude(-145.0)))
+                )
+                .andExpect(status().isCreated())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+            created = eventRepository.findById(Long.valueOf(JsonPath.read(body, "$.id").toString())).orElseThrow();
+            assertThat(eventLocationIndex.search(-35.0, -145.0, 1, 10))
+                .extracting(EventLocationIndex.Hit::getEventId)
+                .containsExactly(created.getId());
+
+            // moving the event moves it in the index
+            restEventMockMvc
+                .perform(
+                    put(ENTITY_API_URL_ID, created.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(TestUtil.convertObjectToJsonBytes(createEntity(em).id(created.getId()).latitude(-36.0).longitude(-145.0)))
+                )
+                .andExpect(status().isOk());
+            assertThat(eventLocationIndex.search(-35.0, -145.0, 1, 10)).isEmpty();
+            assertThat(eventLocationIndex.search(-36.0, -145.0, 1, 10)).hasSize(1);
+
+            restEventMockMvc.perform(delete(ENTITY_API_URL_ID, created.getId())).andExpect(status().isNoContent());
+            created = null;
+            assertThat(eventLocationIndex.search(-36.0, -145.0, 1, 10)).isEmpty();
+        } finally {
+            if (created != null) {
+                eventRepository.deleteById(created.getId());
+            }
+            eventLocationIndex.rebuild();
+        }
+    }
+
+    @Test
+    @Transactional
+    void rsvpToAnEventWithSeats() throws Exception {
+        eventRepository.saveAndFlush(event.capacity(null));
+
+        restEventMockMvc
+            .perform(post(ENTITY_API_URL_ID + "/rsvp", event.getId()))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andExpect(jsonPath("$.eventId").value(event.getId().intValue()))
+            .andExpect(jsonPath("$.status").value("GOING"))
+            .andExpect(jsonPath("$.waitlistPosition").doesNotExist());
+        // answering again changes nothing
+        restEventMockMvc.perform(post(ENTITY_API_URL_ID + "/rsvp", event.getId())).andExpect(jsonPath("$.status").value("GOING"));
+        assertThat(attendeeCount(event)).isEqualTo(1);
+
+        restEventMockMvc.perform(delete(ENTITY_API_URL_ID + "/rsvp", event.getId())).andExpect(status().isNoContent());
+        restEventMockMvc.perform(get(ENTITY_API_URL_ID + "/rsvp", event.getId())).andExpect(jsonPath("$.status").value("NONE"));
+        assertThat(attendeeCount(event)).isZero();
+
+        restEventMockMvc.perform(post(ENTITY_API_URL_ID + "/rsvp", Long.MAX_VALUE)).andExpect(status().isNotFound());
+        restEventMockMvc.perform(get(ENTITY_API_URL_ID + "/rsvp", Long.MAX_VALUE)).andExpect(status().isNotFound());
+        restEventMockMvc.perform(delete(ENTITY_API_URL_ID + "/rsvp", Long.MAX_VALUE)).andExpect(status().isNotFound());
+    }
+
+    @Test
+    @Transactional
+    void rsvpToAFullEventWaitsForASeat() throws Exception {
+        eventRepository.saveAndFlush(event.capacity(1));
+        // the admin takes the only seat
+        eventRsvps.join(event.getId(), 1L);
+
+        restEventMockMvc
+            .perform(post(ENTITY_API_URL_ID + "/rsvp", event.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.status").value("WAITLISTED"))
+            .andExpect(jsonPath("$.waitlistPosition").value(1));
+        restEventMockMvc
+            .perform(get(ENTITY_API_URL_ID + "/rsvp", event.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.status").value("WAITLISTED"));
+        assertThat(attendeeCount(event)).isEqualTo(1);
+
+        // the admin leaves, its seat goes to the user
+        eventRsvps.leave(event.getId(), 1L);
+        restEventMockMvc.perform(get(ENTITY_API_URL_ID + "/rsvp", event.getId())).andExpect(jsonPath("$.status").value("GOING"));
+        assertThat(attendeeCount(event)).isEqualTo(1);
+
+        // the seat is free again, but the admin now has to wait in line
+        restEventMockMvc.perform(delete(ENTITY_API_URL_ID + "/rsvp", event.getId())).andExpect(status().isNoContent());
+        assertThat(attendeeCount(event)).isZero();
+        assertThat(eventRsvps.join(event.getId(), 1L).orElseThrow().getStatus()).isEqualTo(EventRsvpDTO.Status.GOING);
+    }
+
+    @Test
+    @Transactional
+    void raisingTheCapacityAdmitsTheWaitlist() throws Exception {
+        eventRepository.saveAndFlush(event.capacity(0));
+        restEventMockMvc.perform(post(ENTITY_API_URL_ID + "/rsvp", event.getId())).andExpect(jsonPath("$.status").value("WAITLISTED"));
+        assertThat(eventRsvps.join(event.getId(), 1L).orElseThrow().getWaitlistPosition()).isEqualTo(2);
+
+        restEventMockMvc
+            .perform(
+                patch(ENTITY_API_URL_ID, event.getId())
+                    .contentType("application/merge-patch+json")
+                    .content(TestUtil.convertObjectToJsonBytes(new Event().id(event.getId()).capacity(1)))
+            )
+            .andExpect(status().isOk());
+
+        // in arrival order
+        restEventMockMvc.perform(get(ENTITY_API_URL_ID + "/rsvp", event.getId())).andExpect(jsonPath("$.status").value("GOING"));
+        assertThat(eventRsvps.findOne(event.getId(), 1L).orElseThrow().getWaitlistPosition()).isEqualTo(1);
+        assertThat(attendeeCount(event)).isEqualTo(1);
+    }
+
+    private int attendeeCount(Event event) {
+        Object count = em
+            .createNativeQuery("select attendee_count from event where id = :id")
+            .setParameter("id", event.getId())
+            .getSingleResult();
+        return ((Number) count).intValue();
+    }
+
+    @AfterTransaction
+    public void rebuildEventLocationIndex() {
+        // events of rolled back tests must not linger in the index
+        eventLocationIndex.rebuild();
+    }
+
+    /**
+     * Fill the event table with events spread over time and around the globe, and refresh its statistics, so that the
+     * planner weighs the indexes as it would on a real database rather than scanning the few rows of the tests.
+     */
+    private void seedEvents() {
+        em
+            .createNativeQuery(
+                "insert into event (id, header, planned, latitude, longitude) " +
+                "select -g, 'seeded', now() + (g - 5000) * interval '1 hour', -80 + (g % 1601) * 0.1, -180 + (g * 37 % 3600) * 0.1 " +
+                "from generate_series(1, 20000) g"
+            )
+            .executeUpdate();
+        em.createNativeQuery("analyze event").executeUpdate();
+    }
 }
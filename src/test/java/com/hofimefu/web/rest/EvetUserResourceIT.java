@@ -7,12 +7,25 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 import com.hofimefu.IntegrationTest;
+import com.hofimefu.domain.Event;
 import com.hofimefu.domain.EvetUser;
+import com.hofimefu.domain.Friend;
+import com.hofimefu.domain.FriendStatus;
+import com.hofimefu.domain.User;
+import com.hofimefu.domain.enumeration.FriendshipStatus;
 import com.hofimefu.repository.EvetUserRepository;
+import com.hofimefu.service.BlockedFriendships;
+import com.hofimefu.service.EventAttendees;
 import com.hofimefu.service.EvetUserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
@@ -21,6 +34,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
@@ -54,6 +68,18 @@ class EvetUserResourceIT {
     @Mock
     private EvetUserService evetUserServiceMock;
 
+    @Autowired
+    private EventAttendees eventAttendees;
+
+    @Autowired
+    private BlockedFriendships blockedFriendships;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private DataSourceProperties dataSourceProperties;
+
     @Autowired
     private EntityManager em;
 
@@ -382,4 +408,226 @@ class EvetUserResourceIT {
         List<EvetUser> evetUserList = evetUserRepository.findAll();
         assertThat(evetUserList).hasSize(databaseSizeBeforeDelete - 1);
     }
+
+    @Test
+    @Transactional
+    void attendeeCountFollowsJoinsAndLeaves() throws Exception {
+        Event event = EventResourceIT.createEntity(em).capacity(null);
+        Event otherEvent = EventResourceIT.createEntity(em).capacity(null);
+        em.persist(event);
+        em.persist(otherEvent);
+        em.flush();
+
+        String location = restEvetUserMockMvc
+            .perform(
+                post(ENTITY_API_URL)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtil.convertObjectToJsonBytes(attendance(null, event.getId(), 1L, 2L)))
+            )
+            .andExpect(status().isCreated())
+            .andReturn()
+            .getResponse()
+            .getHeader("Location");
+        Long id = Long.valueOf(location.substring(location.lastIndexOf('/') + 1));
+        assertThat(attendeeCount(event)).isEqualTo(2);
+
+        // a user leaves
+        restEvetUserMockMvc
+            .perform(
+                put(ENTITY_API_URL_ID, id)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtil.convertObjectToJsonBytes(attendance(id, event.getId(), 2L)))
+            )
+            .andExpect(status().isOk());
+        assertThat(attendeeCount(event)).isEqualTo(1);
+
+        // both go to the other event
+        restEvetUserMockMvc
+            .perform(
+                put(ENTITY_API_URL_ID, id)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtil.convertObjectToJsonBytes(attendance(id, otherEvent.getId(), 1L, 2L)))
+            )
+            .andExpect(status().isOk());
+        assertThat(attendeeCount(event)).isZero();
+        assertThat(attendeeCount(otherEvent)).isEqualTo(2);
+
+        restEvetUserMockMvc.perform(delete(ENTITY_API_URL_ID, id).accept(MediaType.APPLICATION_JSON)).andExpect(status().isNoContent());
+        assertThat(attendeeCount(otherEvent)).isZero();
+    }
+
+    @Test
+    @Transactional
+    void attendeesBeyondTheCapacityAreRejected() throws Exception {
+        Event event = EventResourceIT.createEntity(em).capacity(1);
+        em.persist(event);
+        em.flush();
+
+        restEvetUserMockMvc
+            .perform(
+                post(ENTITY_API_URL)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtil.convertObjectToJsonBytes(attendance(null, event.getId(), 1L, 2L)))
+            )
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message").value("error.eventfull"));
+        assertThat(attendeeCount(event)).isZero();
+
+        String location = restEvetUserMockMvc
+            .perform(
+                post(ENTITY_API_URL)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtil.convertObjectToJsonBytes(attendance(null, event.getId(), 1L)))
+            )
+            .andExpect(status().isCreated())
+            .andReturn()
+            .getResponse()
+            .getHeader("Location");
+        Long id = Long.valueOf(location.substring(location.lastIndexOf('/') + 1));
+        assertThat(attendeeCount(event)).isEqualTo(1);
+
+        restEvetUserMockMvc
+            .perform(
+                put(ENTITY_API_URL_ID, id)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtil.convertObjectToJsonBytes(attendance(id, event.getId(), 1L, 2L)))
+            )
+            .andExpect(status().isBadRequest());
+        assertThat(attendeeCount(event)).isEqualTo(1);
+    }
+
+    @Test
+    @Transactional
+    void leavingACappedEventAdmitsTheWaitlist() throws Exception {
+        Event event = EventResourceIT.createEntity(em).capacity(1);
+        em.persist(event);
+        em.flush();
+        EvetUser attending = evetUserRepository.saveAndFlush(new EvetUser().event(event).users(Set.of(em.find(User.class, 1L))));
+        em.createNativeQuery("update event set attendee_count = 1 where id = :id").setParameter("id", event.getId()).executeUpdate();
+        em
+            .createNativeQuery("insert into event_waitlist (event_id, user_id, created) values (:eventId, 2, now())")
+            .setParameter("eventId", event.getId())
+            .executeUpdate();
+
+        restEvetUserMockMvc
+            .perform(delete(ENTITY_API_URL_ID, attending.getId()).accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isNoContent());
+
+        // the freed seat went to the head of the waitlist
+        assertThat(attendeeCount(event)).isEqualTo(1);
+        assertThat(evetUserRepository.existsByEvent_IdAndUsers_Id(event.getId(), 2L)).isTrue();
+        restEvetUserMockMvc
+            .perform(
+                post(ENTITY_API_URL)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtil.convertObjectToJsonBytes(attendance(null, event.getId(), 1L)))
+            )
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    void reconcileRepairsDriftedAttendeeCounts() {
+        Event event = EventResourceIT.createEntity(em);
+        Event otherEvent = EventResourceIT.createEntity(em);
+        em.persist(event);
+        em.persist(otherEvent);
+        em.flush();
+        // written around the service, so the counters are not kept up to date
+        evetUserRepository.saveAndFlush(new EvetUser().event(event).users(Set.of(em.find(User.class, 1L), em.find(User.class, 2L))));
+        em.createNativeQuery("update event set attendee_count = 7 where id = :id").setParameter("id", otherEvent.getId()).executeUpdate();
+        double repairedBefore = meterRegistry.get(EventAttendees.REPAIRED_METER_NAME).counter().count();
+
+        int repaired = eventAttendees.reconcile();
+
+        assertThat(repaired).isGreaterThanOrEqualTo(2);
+        assertThat(attendeeCount(event)).isEqualTo(2);
+        assertThat(attendeeCount(otherEvent)).isZero();
+        assertThat(meterRegistry.get(EventAttendees.REPAIRED_METER_NAME).counter().count()).isEqualTo(repairedBefore + repaired);
+        assertThat(eventAttendees.reconcile()).isZero();
+    }
+
+    @Test
+    @Transactional
+    void reconcileIsLeftToTheInstanceHoldingTheLock() throws Exception {
+        Event event = EventResourceIT.createEntity(em).capacity(null);
+        em.persist(event);
+        em.flush();
+        // a counter that drifted below the rows is not hidden
+        em.createNativeQuery("update event set attendee_count = -2 where id = :id").setParameter("id", event.getId()).executeUpdate();
+
+        try (
+            Connection otherInstance = DriverManager.getConnection(
+                dataSourceProperties.getUrl(),
+                dataSourceProperties.getUsername(),
+                dataSourceProperties.getPassword()
+            )
+        ) {
+            otherInstance.setAutoCommit(false);
+            try (Statement statement = otherInstance.createStatement()) {
+                statement.execute("select pg_advisory_xact_lock(hashtext('event-attendees-reconcile'))");
+            }
+
+            assertThat(eventAttendees.reconcile()).isZero();
+            assertThat(attendeeCount(event)).isEqualTo(-2);
+            otherInstance.rollback();
+        }
+
+        assertThat(eventAttendees.reconcile()).isPositive();
+        assertThat(attendeeCount(event)).isZero();
+    }
+
+    @Test
+    @Transactional
+    void usersBlockedByTheCurrentUserCannotBeAdded() throws Exception {
+        Event event = EventResourceIT.createEntity(em).capacity(null);
+        em.persist(event);
+        User blocked = UserResourceIT.createEntity(em);
+        em.persist(blocked);
+        FriendStatus status = new FriendStatus().status(FriendshipStatus.BLOCKED);
+        em.persist(status);
+        // the current user is "user", whose id is 2
+        em.persist(new Friend().user1(em.find(User.class, 2L)).user2(blocked).status(status));
+        EvetUser added = new EvetUser().event(event).users(new HashSet<>(Set.of(blocked)));
+        em.persist(added);
+        em.flush();
+        blockedFriendships.rebuild();
+
+        restEvetUserMockMvc
+            .perform(
+                post(ENTITY_API_URL)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtil.convertObjectToJsonBytes(attendance(null, event.getId(), 2L, blocked.getId())))
+            )
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message").value("error.userblocked"));
+
+        // a user added before the block is kept along with the users added next to them
+        restEvetUserMockMvc
+            .perform(
+                put(ENTITY_API_URL_ID, added.getId())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtil.convertObjectToJsonBytes(attendance(added.getId(), event.getId(), blocked.getId(), 1L)))
+            )
+            .andExpect(status().isOk());
+        assertThat(evetUserRepository.findUserIds(added.getId())).containsExactlyInAnyOrder(blocked.getId(), 1L);
+    }
+
+    private static EvetUser attendance(Long id, Long eventId, Long... userIds) {
+        Set<User> users = new HashSet<>();
+        for (Long userId : userIds) {
+            User user = new User();
+            user.setId(userId);
+            users.add(user);
+        }
+        return new EvetUser().id(id).event(new Event().id(eventId)).users(users);
+    }
+
+    private int attendeeCount(Event event) {
+        Object count = em
+            .createNativeQuery("select attendee_count from event where id = :id")
+            .setParameter("id", event.getId())
+            .getSingleResult();
+        return ((Number) count).intValue();
+    }
 }
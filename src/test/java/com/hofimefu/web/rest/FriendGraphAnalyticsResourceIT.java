@@ -0,0 +1,50 @@
+package com.hofimefu.web.rest;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import com.hofimefu.IntegrationTest;
+import com.hofimefu.security.AuthoritiesConstants;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+/**
+ * Integration tests for the {@link FriendGraphAnalyticsResource} REST controller.
+ */
+@IntegrationTest
+@AutoConfigureMockMvc
+@WithMockUser(authorities = AuthoritiesConstants.ADMIN)
+class FriendGraphAnalyticsResourceIT {
+
+    private static final String ENTITY_API_URL = "/api/admin/friend-graph/analytics";
+
+    @Autowired
+    private MockMvc restFriendGraphAnalyticsMockMvc;
+
+    @Test
+    void runAndGetFriendGraphAnalytics() throws Exception {
+        restFriendGraphAnalyticsMockMvc
+            .perform(post(ENTITY_API_URL))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andExpect(jsonPath("$.users").isNumber())
+            .andExpect(jsonPath("$.components").isNumber())
+            .andExpect(jsonPath("$.durationMillis").isNumber())
+            .andExpect(jsonPath("$.peakHeapBytes").isNumber());
+
+        restFriendGraphAnalyticsMockMvc
+            .perform(get(ENTITY_API_URL))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.computedAt").isNotEmpty());
+    }
+
+    @Test
+    @WithMockUser
+    void runFriendGraphAnalyticsAsUserIsForbidden() throws Exception {
+        restFriendGraphAnalyticsMockMvc.perform(post(ENTITY_API_URL)).andExpect(status().isForbidden());
+    }
+}
@@ -1,23 +1,42 @@
 package com.hofimefu.web.rest;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.hasItem;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 import com.hofimefu.IntegrationTest;
 import com.hofimefu.domain.Friend;
+import com.hofimefu.domain.FriendStatus;
+import com.hofimefu.domain.FriendSuggestion;
+import com.hofimefu.domain.User;
+import com.hofimefu.domain.enumeration.FriendshipStatus;
 import com.hofimefu.repository.FriendRepository;
+import com.hofimefu.repository.FriendStatusRepository;
+import com.hofimefu.repository.FriendSuggestionRepository;
+import com.hofimefu.repository.UserRepository;
+import com.hofimefu.service.BlockedFriendships;
+import com.hofimefu.service.FriendGraph;
+import com.hofimefu.service.PendingFriendRequests;
+import com.hofimefu.service.dto.FriendPathDTO;
+import com.jayway.jsonpath.JsonPath;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.transaction.AfterTransaction;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -38,6 +57,24 @@ class FriendResourceIT {
     @Autowired
     private FriendRepository friendRepository;
 
+    @Autowired
+    private FriendStatusRepository friendStatusRepository;
+
+    @Autowired
+    private FriendSuggestionRepository friendSuggestionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private FriendGraph friendGraph;
+
+    @Autowired
+    private BlockedFriendships blockedFriendships;
+
+    @Autowired
+    private PendingFriendRequests pendingFriendRequests;
+
     @Autowired
     private EntityManager em;
 
@@ -106,6 +143,77 @@ class FriendResourceIT {
         assertThat(friendList).hasSize(databaseSizeBeforeCreate);
     }
 
+    @Test
+    @Transactional
+    void createFriendsInABatch() throws Exception {
+        User current = userRepository.findOneByLogin("user").orElseThrow();
+        User admin = userRepository.findOneByLogin("admin").orElseThrow();
+        User blocked = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        FriendStatus blockedStatus = friendStatusRepository.saveAndFlush(new FriendStatus().status(FriendshipStatus.BLOCKED));
+        Friend blockedFriendship = friendRepository.saveAndFlush(friendship(current, blocked).status(blockedStatus));
+        Friend existing = friendRepository.saveAndFlush(friendship(admin, current));
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            userIds.add(userRepository.saveAndFlush(UserResourceIT.createEntity(em)).getId());
+        }
+        Long created = userIds.get(0);
+        userIds.addAll(List.of(blocked.getId(), admin.getId(), created, current.getId(), Long.MAX_VALUE));
+        int databaseSizeBeforeCreate = friendRepository.findAll().size();
+        em.clear();
+
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        statistics.setStatisticsEnabled(true);
+        try {
+            restFriendMockMvc
+                .perform(
+                    post(ENTITY_API_URL + "/_batch").contentType(MediaType.APPLICATION_JSON).content(TestUtil.convertObjectToJsonBytes(userIds))
+                )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(15))
+                .andExpect(jsonPath("$.[0].userId").value(created.intValue()))
+                .andExpect(jsonPath("$.[0].outcome").value("CREATED"))
+                .andExpect(jsonPath("$.[0].friendId").isNumber())
+                .andExpect(jsonPath("$.[10].outcome").value("BLOCKED"))
+                .andExpect(jsonPath("$.[10].friendId").value(blockedFriendship.getId().intValue()))
+                .andExpect(jsonPath("$.[11].outcome").value("EXISTS"))
+                .andExpect(jsonPath("$.[11].friendId").value(existing.getId().intValue()))
+                .andExpect(jsonPath("$.[12].outcome").value("DUPLICATE"))
+                .andExpect(jsonPath("$.[13].outcome").value("SELF"))
+                .andExpect(jsonPath("$.[14].outcome").value("NOT_FOUND"));
+            em.flush();
+
+            // the user lookups and the sequence aside, one check and a batch of inserts per table; the counters are
+            // a single JDBC batch, which Hibernate does not see
+            assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(6);
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+
+        List<Friend> friendList = friendRepository.findAll();
+        assertThat(friendList).hasSize(databaseSizeBeforeCreate + 10);
+        Friend friend = friendRepository.findOneByUser1IdAndUser2Id(current.getId(), created).orElseThrow();
+        assertThat(friend.getStatus().getStatus()).isEqualTo(FriendshipStatus.PENDING);
+        assertThat(friend.getStatus().getRecipient().getId()).isEqualTo(created);
+        User recipient = userRepository.findById(created).orElseThrow();
+        assertThat(pendingFriendRequests.count(recipient.getLogin())).isEqualTo(1);
+    }
+
+    @Test
+    @Transactional
+    void createTooLargeBatchOfFriends() throws Exception {
+        List<Long> userIds = new ArrayList<>();
+        for (long i = 0; i < 101; i++) {
+            userIds.add(i);
+        }
+
+        restFriendMockMvc
+            .perform(
+                post(ENTITY_API_URL + "/_batch").contentType(MediaType.APPLICATION_JSON).content(TestUtil.convertObjectToJsonBytes(userIds))
+            )
+            .andExpect(status().isBadRequest());
+    }
+
     @Test
     @Transactional
     void getAllFriends() throws Exception {
@@ -120,6 +228,42 @@ class FriendResourceIT {
             .andExpect(jsonPath("$.[*].id").value(hasItem(friend.getId().intValue())));
     }
 
+    @Test
+    @Transactional
+    void getAllFriendsInConstantStatements() throws Exception {
+        User admin = userRepository.findOneByLogin("admin").orElseThrow();
+        User user = userRepository.findOneByLogin("user").orElseThrow();
+        for (int i = 0; i < 3; i++) {
+            User other = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+            FriendStatus friendStatus = friendStatusRepository.saveAndFlush(new FriendStatus().status(FriendshipStatus.ACTIVE));
+            friendRepository.saveAndFlush(friendship(admin, other).status(friendStatus));
+            friendRepository.saveAndFlush(friendship(user, other));
+        }
+        em.clear();
+
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        statistics.setStatisticsEnabled(true);
+        try {
+            restFriendMockMvc
+                .perform(get(ENTITY_API_URL + "?page=0&size=4&sort=id,desc"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(jsonPath("$.length()").value(4))
+                .andExpect(jsonPath("$.[0].user1.login").value("user"))
+                .andExpect(jsonPath("$.[0].user2.id").isNumber())
+                .andExpect(jsonPath("$.[0].user2.email").doesNotExist())
+                .andExpect(jsonPath("$.[0].status").doesNotExist())
+                .andExpect(jsonPath("$.[1].status").value(FriendshipStatus.ACTIVE.toString()))
+                .andExpect(jsonPath("$.[1].user1.login").value("admin"));
+
+            // the page and its count, whatever the size of the page
+            assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+
     @Test
     @Transactional
     void getFriend() throws Exception {
@@ -349,4 +493,402 @@ class FriendResourceIT {
         List<Friend> friendList = friendRepository.findAll();
         assertThat(friendList).hasSize(databaseSizeBeforeDelete - 1);
     }
+
+    @Test
+    void friendGraphFollowsCommittedFriendships() throws Exception {
+        User user1 = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        User user2 = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        FriendStatus friendStatus = friendStatusRepository.saveAndFlush(new FriendStatus().status(FriendshipStatus.ACTIVE));
+        Friend friendship = new Friend().user1(idOnly(user1)).user2(idOnly(user2)).status(friendStatus);
+        Friend created = null;
+        try {
+            String body = restFriendMockMvc
+                .perform(
+                    post(ENTITY_API_URL).contentType(MediaType.APPLICATION_JSON).content(TestUtil.convertObjectToJsonBytes(friendship))
+                )
+                .andExpect(status().isCreated())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+            created = friendRepository.findById(Long.valueOf(JsonPath.read(body, "$.id").toString())).orElseThrow();
+            assertThat(friendGraph.areFriends(user1.getId(), user2.getId())).isTrue();
+            assertThat(friendGraph.areFriends(user2.getId(), user1.getId())).isTrue();
+            assertThat(blockedFriendships.isBlocked(user1.getId(), user2.getId())).isFalse();
+
+            // blocking the friendship takes it out of the graph
+            restFriendMockMvc
+                .perform(
+                    put("/api/friend-statuses/{id}", friendStatus.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(TestUtil.convertObjectToJsonBytes(friendStatus.status(FriendshipStatus.BLOCKED)))
+                )
+                .andExpect(status().isOk());
+            assertThat(friendGraph.areFriends(user1.getId(), user2.getId())).isFalse();
+            assertThat(blockedFriendships.isBlocked(user2.getId(), user1.getId())).isTrue();
+
+            friendStatusRepository.saveAndFlush(friendStatus.status(FriendshipStatus.ACTIVE));
+            friendGraph.rebuild();
+            assertThat(blockedFriendships.isBlocked(user1.getId(), user2.getId())).isFalse();
+            assertThat(friendGraph.degree(user1.getId())).isEqualTo(1);
+
+            restFriendMockMvc.perform(delete(ENTITY_API_URL_ID, created.getId())).andExpect(status().isNoContent());
+            created = null;
+            assertThat(friendGraph.degree(user1.getId())).isZero();
+        } finally {
+            if (created != null) {
+                friendRepository.deleteById(created.getId());
+            }
+            friendStatusRepository.deleteById(friendStatus.getId());
+            userRepository.deleteAll(List.of(user1, user2));
+            friendGraph.rebuild();
+        }
+    }
+
+    @Test
+    @Transactional
+    void getMutualFriends() throws Exception {
+        User current = userRepository.findOneByLogin("user").orElseThrow();
+        User other = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        User mutual1 = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        User mutual2 = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        User notMutual = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        friendRepository.saveAndFlush(friendship(current, mutual1));
+        friendRepository.saveAndFlush(friendship(mutual1, other));
+        friendRepository.saveAndFlush(friendship(mutual2, current));
+        friendRepository.saveAndFlush(friendship(other, mutual2));
+        friendRepository.saveAndFlush(friendship(current, notMutual));
+        friendGraph.rebuild();
+
+        restFriendMockMvc
+            .perform(get(ENTITY_API_URL + "/{userId}/mutual?page=0&size=1", other.getId()))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andExpect(header().string("X-Total-Count", "2"))
+            .andExpect(jsonPath("$.[*].login").value(contains(mutual1.getLogin())));
+        restFriendMockMvc
+            .perform(get(ENTITY_API_URL + "/{userId}/mutual?page=1&size=1", other.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].login").value(contains(mutual2.getLogin())));
+    }
+
+    @Test
+    @Transactional
+    void createFriendStoresPairLowerIdFirst() throws Exception {
+        User lower = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        User higher = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        Friend friendship = new Friend().user1(idOnly(higher)).user2(idOnly(lower));
+
+        restFriendMockMvc
+            .perform(post(ENTITY_API_URL).contentType(MediaType.APPLICATION_JSON).content(TestUtil.convertObjectToJsonBytes(friendship)))
+            .andExpect(status().isCreated())
+            .andExpect(jsonPath("$.user1.id").value(lower.getId().intValue()))
+            .andExpect(jsonPath("$.user2.id").value(higher.getId().intValue()));
+        assertThat(friendRepository.findOneByUser1IdAndUser2Id(lower.getId(), higher.getId())).isPresent();
+
+        // the pair already has its friendship, whichever way round it is given
+        Friend duplicate = new Friend().user1(idOnly(lower)).user2(idOnly(higher));
+        restFriendMockMvc
+            .perform(post(ENTITY_API_URL).contentType(MediaType.APPLICATION_JSON).content(TestUtil.convertObjectToJsonBytes(duplicate)))
+            .andExpect(status().isBadRequest());
+        Friend self = new Friend().user1(idOnly(lower)).user2(idOnly(lower));
+        restFriendMockMvc
+            .perform(post(ENTITY_API_URL).contentType(MediaType.APPLICATION_JSON).content(TestUtil.convertObjectToJsonBytes(self)))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    void getMyFriends() throws Exception {
+        User current = userRepository.findOneByLogin("user").orElseThrow();
+        User other1 = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        User other2 = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        User admin = userRepository.findOneByLogin("admin").orElseThrow();
+        FriendStatus blocked = friendStatusRepository.saveAndFlush(new FriendStatus().status(FriendshipStatus.BLOCKED));
+        Friend first = friendRepository.saveAndFlush(friendship(current, other1).status(blocked));
+        Friend second = friendRepository.saveAndFlush(friendship(admin, current));
+        friendRepository.saveAndFlush(friendship(other1, other2));
+        em.clear();
+
+        restFriendMockMvc
+            .perform(get(ENTITY_API_URL + "/mine?sort=id,asc"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andExpect(header().string("X-Total-Count", "2"))
+            .andExpect(jsonPath("$.[*].id").value(contains(first.getId().intValue(), second.getId().intValue())))
+            .andExpect(jsonPath("$.[0].status").value(FriendshipStatus.BLOCKED.toString()))
+            .andExpect(jsonPath("$.[0].user2.login").value(other1.getLogin()))
+            .andExpect(jsonPath("$.[0].user2.email").doesNotExist())
+            .andExpect(jsonPath("$.[1].user1.login").value("admin"));
+        restFriendMockMvc
+            .perform(get(ENTITY_API_URL + "/mine?page=1&size=1&sort=id,asc"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Total-Count", "2"))
+            .andExpect(jsonPath("$.[*].id").value(contains(second.getId().intValue())));
+    }
+
+    @Test
+    @Transactional
+    void getFriendSuggestions() throws Exception {
+        User current = userRepository.findOneByLogin("user").orElseThrow();
+        User admin = userRepository.findOneByLogin("admin").orElseThrow();
+        User other = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        friendSuggestionRepository.replaceSuggestions(
+            List.of(current.getId(), admin.getId()),
+            List.of(
+                new FriendSuggestion(current.getId(), 0, other.getId(), 3, 1, 7),
+                new FriendSuggestion(current.getId(), 1, admin.getId(), 1, 0, 2),
+                new FriendSuggestion(admin.getId(), 0, current.getId(), 1, 0, 2)
+            ),
+            Instant.now()
+        );
+
+        restFriendMockMvc
+            .perform(get(ENTITY_API_URL + "/suggestions"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andExpect(jsonPath("$.[*].userId").value(contains(other.getId().intValue(), admin.getId().intValue())))
+            .andExpect(jsonPath("$.[0].login").value(other.getLogin()))
+            .andExpect(jsonPath("$.[0].mutualFriends").value(3))
+            .andExpect(jsonPath("$.[0].sharedSchools").value(1));
+        restFriendMockMvc
+            .perform(get(ENTITY_API_URL + "/suggestions?limit=1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].login").value(contains(other.getLogin())));
+        restFriendMockMvc.perform(get(ENTITY_API_URL + "/suggestions?limit=0")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    void friendSuggestionsLeaveOutBlockedUsers() throws Exception {
+        User current = userRepository.findOneByLogin("user").orElseThrow();
+        User admin = userRepository.findOneByLogin("admin").orElseThrow();
+        User other = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        friendSuggestionRepository.replaceSuggestions(
+            List.of(current.getId()),
+            List.of(
+                new FriendSuggestion(current.getId(), 0, other.getId(), 3, 1, 7),
+                new FriendSuggestion(current.getId(), 1, admin.getId(), 1, 0, 2)
+            ),
+            Instant.now()
+        );
+        // blocked once the suggestions were computed
+        FriendStatus blocked = friendStatusRepository.saveAndFlush(new FriendStatus().status(FriendshipStatus.BLOCKED));
+        friendRepository.saveAndFlush(friendship(current, other).status(blocked));
+        blockedFriendships.rebuild();
+
+        restFriendMockMvc
+            .perform(get(ENTITY_API_URL + "/suggestions"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].userId").value(contains(admin.getId().intValue())));
+    }
+
+    @Test
+    @Transactional
+    void getFriendPath() throws Exception {
+        User current = userRepository.findOneByLogin("user").orElseThrow();
+        User middle = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        User far = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        User alone = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        friendRepository.saveAndFlush(friendship(current, middle));
+        friendRepository.saveAndFlush(friendship(middle, far));
+        friendGraph.rebuild();
+
+        restFriendMockMvc
+            .perform(get(ENTITY_API_URL + "/path?from={from}&to={to}", current.getId(), far.getId()))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andExpect(jsonPath("$.outcome").value(FriendPathDTO.Outcome.FOUND.toString()))
+            .andExpect(jsonPath("$.degrees").value(2))
+            .andExpect(jsonPath("$.users[*].login").value(contains("user", middle.getLogin(), far.getLogin())));
+        restFriendMockMvc
+            .perform(get(ENTITY_API_URL + "/path?from={from}&to={to}", current.getId(), alone.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.outcome").value(FriendPathDTO.Outcome.NOT_FOUND.toString()))
+            .andExpect(jsonPath("$.users").isEmpty());
+        restFriendMockMvc.perform(get(ENTITY_API_URL + "/path?from={from}", current.getId())).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    void getPendingFriendRequests() throws Exception {
+        User current = userRepository.findOneByLogin("user").orElseThrow();
+        User admin = userRepository.findOneByLogin("admin").orElseThrow();
+        User other = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        User sentTo = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        ZonedDateTime now = ZonedDateTime.now();
+        Friend older = pendingRequest(admin, current, now.minusDays(1));
+        Friend newer = pendingRequest(other, current, now);
+        pendingRequest(current, sentTo, now);
+
+        restFriendMockMvc
+            .perform(get(ENTITY_API_URL + "/requests?size=10&sort=id,asc"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andExpect(header().string("X-Total-Count", "2"))
+            .andExpect(jsonPath("$.[*].id").value(contains(newer.getId().intValue(), older.getId().intValue())))
+            .andExpect(jsonPath("$.[0].status").value(FriendshipStatus.PENDING.toString()));
+        restFriendMockMvc
+            .perform(get(ENTITY_API_URL + "/requests?page=1&size=1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(contains(older.getId().intValue())));
+        restFriendMockMvc.perform(get(ENTITY_API_URL + "/requests/count")).andExpect(status().isOk()).andExpect(content().string("2"));
+    }
+
+    @Test
+    @Transactional
+    void reconcileRepairsDriftedPendingFriendRequestCounters() {
+        User current = userRepository.findOneByLogin("user").orElseThrow();
+        User other = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        // written around the service, so the counters are not kept up to date
+        ZonedDateTime now = ZonedDateTime.now();
+        friendStatusRepository.saveAndFlush(
+            new FriendStatus().status(FriendshipStatus.PENDING).recipient(current).created(now).lastChanged(now)
+        );
+        em
+            .createNativeQuery("insert into friend_request_counter (user_id, pending) values (:userId, -1)")
+            .setParameter("userId", other.getId())
+            .executeUpdate();
+        int pendingBefore = pendingFriendRequests.count("user");
+
+        int repaired = pendingFriendRequests.reconcile();
+
+        assertThat(repaired).isGreaterThanOrEqualTo(2);
+        assertThat(pendingFriendRequests.count("user")).isEqualTo(pendingBefore + 1);
+        assertThat(pendingFriendRequests.count(other.getLogin())).isZero();
+        assertThat(pendingFriendRequests.reconcile()).isZero();
+    }
+
+    @Test
+    @Transactional
+    void acceptPendingFriendRequestInABatch() throws Exception {
+        User current = userRepository.findOneByLogin("user").orElseThrow();
+        User admin = userRepository.findOneByLogin("admin").orElseThrow();
+        Friend request = pendingRequest(admin, current, ZonedDateTime.now());
+        em.clear();
+
+        restFriendMockMvc
+            .perform(
+                post(ENTITY_API_URL + "/_batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtil.convertObjectToJsonBytes(List.of(admin.getId())))
+            )
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[0].outcome").value("ACCEPTED"))
+            .andExpect(jsonPath("$.[0].friendId").value(request.getId().intValue()));
+        em.flush();
+
+        assertThat(friendRepository.findById(request.getId()).orElseThrow().getStatus().getStatus()).isEqualTo(FriendshipStatus.ACTIVE);
+        assertThat(pendingFriendRequests.count("user")).isZero();
+        // asking again once friends changes nothing
+        restFriendMockMvc
+            .perform(
+                post(ENTITY_API_URL + "/_batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtil.convertObjectToJsonBytes(List.of(admin.getId())))
+            )
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[0].outcome").value("EXISTS"));
+    }
+
+    @Test
+    @Transactional
+    void pendingFriendRequestIsNotAcceptedByItsSender() throws Exception {
+        User current = userRepository.findOneByLogin("user").orElseThrow();
+        User other = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        Friend request = pendingRequest(current, other, ZonedDateTime.now());
+        em.clear();
+
+        restFriendMockMvc
+            .perform(
+                post(ENTITY_API_URL + "/_batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtil.convertObjectToJsonBytes(List.of(other.getId())))
+            )
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[0].outcome").value("EXISTS"));
+        em.flush();
+
+        assertThat(friendRepository.findById(request.getId()).orElseThrow().getStatus().getStatus()).isEqualTo(FriendshipStatus.PENDING);
+        assertThat(pendingFriendRequests.count(other.getLogin())).isEqualTo(1);
+    }
+
+    @Test
+    @Transactional
+    void declinePendingFriendRequest() throws Exception {
+        User current = userRepository.findOneByLogin("user").orElseThrow();
+        User admin = userRepository.findOneByLogin("admin").orElseThrow();
+        Friend request = pendingRequest(admin, current, ZonedDateTime.now());
+        Long statusId = request.getStatus().getId();
+        em.clear();
+
+        restFriendMockMvc.perform(delete(ENTITY_API_URL_ID, request.getId())).andExpect(status().isNoContent());
+        em.flush();
+
+        assertThat(friendRepository.findById(request.getId())).isEmpty();
+        assertThat(friendStatusRepository.findById(statusId)).isEmpty();
+        assertThat(pendingFriendRequests.count("user")).isZero();
+    }
+
+    @Test
+    void friendGraphFollowsAcceptedFriendRequests() throws Exception {
+        User current = userRepository.findOneByLogin("user").orElseThrow();
+        User other = userRepository.saveAndFlush(UserResourceIT.createEntity(em));
+        Friend created = null;
+        try {
+            restFriendMockMvc
+                .perform(
+                    post(ENTITY_API_URL + "/_batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(TestUtil.convertObjectToJsonBytes(List.of(other.getId())))
+                )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.[0].outcome").value("CREATED"));
+            created = friendRepository.findOneByUser1IdAndUser2Id(current.getId(), other.getId()).orElseThrow();
+            assertThat(friendGraph.areFriends(current.getId(), other.getId())).isFalse();
+            assertThat(pendingFriendRequests.count(other.getLogin())).isEqualTo(1);
+
+            // the recipient accepting the request puts the friendship in the graph
+            FriendStatus friendStatus = created.getStatus();
+            restFriendMockMvc
+                .perform(
+                    put("/api/friend-statuses/{id}", friendStatus.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(TestUtil.convertObjectToJsonBytes(friendStatus.status(FriendshipStatus.ACTIVE)))
+                )
+                .andExpect(status().isOk());
+            assertThat(friendGraph.areFriends(current.getId(), other.getId())).isTrue();
+            assertThat(pendingFriendRequests.count(other.getLogin())).isZero();
+        } finally {
+            if (created != null) {
+                friendRepository.deleteById(created.getId());
+                friendStatusRepository.deleteById(created.getStatus().getId());
+            }
+            userRepository.delete(other);
+            friendGraph.rebuild();
+        }
+    }
+
+    @AfterTransaction
+    public void rebuildFriendGraph() {
+        // friendships of rolled back tests must not linger in the graph
+        friendGraph.rebuild();
+    }
+
+    private static User idOnly(User user) {
+        User reference = new User();
+        reference.setId(user.getId());
+        return reference;
+    }
+
+    private Friend pendingRequest(User sender, User recipient, ZonedDateTime created) {
+        FriendStatus friendStatus = friendStatusRepository.saveAndFlush(
+            new FriendStatus().status(FriendshipStatus.PENDING).recipient(recipient).created(created).lastChanged(created)
+        );
+        pendingFriendRequests.changed(null, PendingFriendRequests.Snapshot.of(friendStatus));
+        return friendRepository.saveAndFlush(friendship(sender, recipient).status(friendStatus));
+    }
+
+    private static Friend friendship(User user, User otherUser) {
+        return user.getId() < otherUser.getId() ? new Friend().user1(user).user2(otherUser) : new Friend().user1(otherUser).user2(user);
+    }
 }
@@ -0,0 +1,163 @@
+package com.hofimefu.web.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import com.hofimefu.IntegrationTest;
+import com.hofimefu.config.ApplicationProperties;
+import com.hofimefu.domain.GlobalChat;
+import com.hofimefu.repository.GlobalChatPartitionRepository;
+import com.hofimefu.repository.GlobalChatRepository;
+import com.hofimefu.security.AuthoritiesConstants;
+import com.hofimefu.service.GlobalChatArchiveService;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Integration tests for the {@link GlobalChatArchiveResource} REST controller.
+ */
+@IntegrationTest
+@AutoConfigureMockMvc
+@WithMockUser(authorities = AuthoritiesConstants.ADMIN)
+class GlobalChatArchiveResourceIT {
+
+    private static final YearMonth ARCHIVED_MONTH = YearMonth.of(2000, 1);
+
+    private static final String ENTITY_API_URL = "/api/admin/global-chat-archives";
+
+    @Autowired
+    private GlobalChatRepository globalChatRepository;
+
+    @Autowired
+    private GlobalChatPartitionRepository globalChatPartitionRepository;
+
+    @Autowired
+    private GlobalChatArchiveService globalChatArchiveService;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
+    @Autowired
+    private DataSourceProperties dataSourceProperties;
+
+    @Autowired
+    private MockMvc restGlobalChatArchiveMockMvc;
+
+    @AfterEach
+    public void cleanup() throws IOException {
+        Files.deleteIfExists(Paths.get(applicationProperties.getChat().getArchive().getDirectory(), "global-chat-2000-01.ndjson.gz"));
+    }
+
+    @Test
+    @Transactional
+    void archiveAndStreamMonth() throws Exception {
+        // Initialize the database with messages of a month long past the retention, first held by the default partition
+        ZonedDateTime start = ARCHIVED_MONTH.atDay(1).atStartOfDay(ZoneOffset.UTC);
+        GlobalChat first = globalChatRepository.saveAndFlush(
+            new GlobalChat().message("first").created(start).authorLogin("ghost").authorName("Ghost Writer")
+        );
+        GlobalChat second = globalChatRepository.saveAndFlush(new GlobalChat().message("second").created(start.plusDays(30)));
+        GlobalChat kept = globalChatRepository.saveAndFlush(new GlobalChat().message("kept").created(start.plusMonths(1)));
+        globalChatPartitionRepository.createPartition(ARCHIVED_MONTH);
+        assertThat(globalChatPartitionRepository.findAttachedPartitions()).contains("global_chat_p2000_01");
+
+        globalChatArchiveService.maintainPartitions();
+
+        assertThat(globalChatPartitionRepository.findAttachedPartitions()).doesNotContain("global_chat_p2000_01");
+        assertThat(globalChatPartitionRepository.findDetachedPartitions()).doesNotContain("global_chat_p2000_01");
+        assertThat(globalChatRepository.findCreatedById(first.getId())).isEmpty();
+        assertThat(globalChatRepository.findCreatedById(kept.getId())).isPresent();
+
+        restGlobalChatArchiveMockMvc.perform(get(ENTITY_API_URL)).andExpect(status().isOk()).andExpect(jsonPath("$").value("2000-01"));
+
+        byte[] archive = restGlobalChatArchiveMockMvc
+            .perform(get(ENTITY_API_URL + "/2000-01"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(GlobalChatArchiveResource.NDJSON))
+            .andExpect(header().string("Content-Encoding", "gzip"))
+            .andReturn()
+            .getResponse()
+            .getContentAsByteArray();
+        List<String> lines;
+        try (
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(archive)), StandardCharsets.UTF_8)
+            )
+        ) {
+            lines = reader.lines().collect(Collectors.toList());
+        }
+        assertThat(lines).hasSize(2);
+        assertThat(lines.get(0))
+            .contains("\"id\":" + first.getId())
+            .contains("\"message\":\"first\"")
+            .contains("2000-01-01T00:00:00Z")
+            .contains("\"authorLogin\":\"ghost\"")
+            .contains("\"authorName\":\"Ghost Writer\"");
+        assertThat(lines.get(1)).contains("\"id\":" + second.getId());
+    }
+
+    @Test
+    @Transactional
+    void maintenanceIsLeftToTheInstanceHoldingTheLock() throws Exception {
+        globalChatRepository.saveAndFlush(new GlobalChat().message("first").created(ARCHIVED_MONTH.atDay(1).atStartOfDay(ZoneOffset.UTC)));
+        globalChatPartitionRepository.createPartition(ARCHIVED_MONTH);
+
+        try (
+            Connection otherInstance = DriverManager.getConnection(
+                dataSourceProperties.getUrl(),
+                dataSourceProperties.getUsername(),
+                dataSourceProperties.getPassword()
+            )
+        ) {
+            otherInstance.setAutoCommit(false);
+            try (Statement statement = otherInstance.createStatement()) {
+                statement.execute("select pg_advisory_xact_lock(hashtext('global-chat-partitions'))");
+            }
+
+            globalChatArchiveService.maintainPartitions();
+
+            assertThat(globalChatPartitionRepository.findAttachedPartitions()).contains("global_chat_p2000_01");
+            otherInstance.rollback();
+        }
+
+        globalChatArchiveService.maintainPartitions();
+
+        assertThat(globalChatPartitionRepository.findAttachedPartitions()).doesNotContain("global_chat_p2000_01");
+        assertThat(globalChatPartitionRepository.findDetachedPartitions()).doesNotContain("global_chat_p2000_01");
+    }
+
+    @Test
+    void getUnknownOrInvalidMonth() throws Exception {
+        restGlobalChatArchiveMockMvc.perform(get(ENTITY_API_URL + "/1999-12")).andExpect(status().isNotFound());
+        restGlobalChatArchiveMockMvc.perform(get(ENTITY_API_URL + "/december")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithMockUser
+    void getArchiveRequiresAdmin() throws Exception {
+        restGlobalChatArchiveMockMvc.perform(get(ENTITY_API_URL + "/2000-01")).andExpect(status().isForbidden());
+    }
+}
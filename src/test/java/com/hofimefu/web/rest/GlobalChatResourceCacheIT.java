@@ -0,0 +1,117 @@
+package com.hofimefu.web.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import com.hofimefu.IntegrationTest;
+import com.hofimefu.domain.GlobalChat;
+import com.hofimefu.service.GlobalChatService;
+import com.jayway.jsonpath.JsonPath;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+/**
+ * Integration tests of the {@link GlobalChatResource} timeline reads answered by the recent messages cache.
+ * <p>
+ * The cache only sees committed messages, so the messages are created through the API, in committed transactions,
+ * and deleted afterwards.
+ */
+@IntegrationTest
+@AutoConfigureMockMvc
+@WithMockUser
+@TestPropertySource(properties = "application.chat.cache.enabled=true")
+class GlobalChatResourceCacheIT {
+
+    private static final String ENTITY_API_URL = "/api/global-chats";
+
+    @Autowired
+    private GlobalChatService globalChatService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MockMvc restGlobalChatMockMvc;
+
+    private List<Long> createdIds;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void initTest() throws Exception {
+        createdIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            createdIds.add(createThroughApi(new GlobalChat().message("Cached message " + i).created(ZonedDateTime.now())));
+        }
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        statistics.setStatisticsEnabled(true);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        statistics.setStatisticsEnabled(false);
+        createdIds.forEach(globalChatService::delete);
+    }
+
+    @Test
+    void warmTimelineReadsRunNoQuery() throws Exception {
+        restGlobalChatMockMvc
+            .perform(get(ENTITY_API_URL + "?limit=2"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(contains(createdIds.get(2).intValue(), createdIds.get(1).intValue())));
+        restGlobalChatMockMvc
+            .perform(get(ENTITY_API_URL + "?limit=2&before=" + createdIds.get(1)))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[0].id").value(createdIds.get(0).intValue()));
+        restGlobalChatMockMvc
+            .perform(get(ENTITY_API_URL + "?since=" + createdIds.get(0)))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, eTag(createdIds.get(2))))
+            .andExpect(jsonPath("$.[*].id").value(contains(createdIds.get(1).intValue(), createdIds.get(2).intValue())));
+
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+
+    @Test
+    void conditionalGetOfAnUpToDateClientRunsNoQuery() throws Exception {
+        restGlobalChatMockMvc
+            .perform(get(ENTITY_API_URL + "?since=" + createdIds.get(2)).header(HttpHeaders.IF_NONE_MATCH, eTag(createdIds.get(2))))
+            .andExpect(status().isNotModified())
+            .andExpect(content().string(""));
+
+        // answered from memory without even borrowing a connection
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(statistics.getConnectCount()).isZero();
+    }
+
+    private Long createThroughApi(GlobalChat globalChat) throws Exception {
+        String body = restGlobalChatMockMvc
+            .perform(post(ENTITY_API_URL).contentType(MediaType.APPLICATION_JSON).content(TestUtil.convertObjectToJsonBytes(globalChat)))
+            .andExpect(status().isCreated())
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+        return Long.valueOf(JsonPath.read(body, "$.id").toString());
+    }
+
+    private static String eTag(Long id) {
+        return "\"" + id + "\"";
+    }
+}
@@ -2,13 +2,19 @@ package com.hofimefu.web.rest;
 
 import static com.hofimefu.web.rest.TestUtil.sameInstant;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.hasItem;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 import com.hofimefu.IntegrationTest;
 import com.hofimefu.domain.GlobalChat;
+import com.hofimefu.domain.User;
 import com.hofimefu.repository.GlobalChatRepository;
+import com.hofimefu.repository.UserRepository;
+import com.hofimefu.service.UserService;
+import com.hofimefu.service.dto.AdminUserDTO;
+import com.jayway.jsonpath.JsonPath;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
@@ -21,6 +27,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
@@ -49,6 +56,12 @@ class GlobalChatResourceIT {
     @Autowired
     private GlobalChatRepository globalChatRepository;
 
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserService userService;
+
     @Autowired
     private EntityManager em;
 
@@ -135,6 +148,156 @@ class GlobalChatResourceIT {
             .andExpect(jsonPath("$.[*].created").value(hasItem(sameInstant(DEFAULT_CREATED))));
     }
 
+    @Test
+    @Transactional
+    void getGlobalChatTimelineByCursor() throws Exception {
+        // Initialize the database with entries newer than anything else in the table
+        ZonedDateTime base = ZonedDateTime.of(2100, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        GlobalChat oldest = globalChatRepository.saveAndFlush(createEntity(em).created(base));
+        GlobalChat middle = globalChatRepository.saveAndFlush(createEntity(em).created(base.plusMinutes(1)));
+        GlobalChat newest = globalChatRepository.saveAndFlush(createEntity(em).created(base.plusMinutes(1)));
+
+        // Get the first page: entries sharing a created value are ordered by id
+        restGlobalChatMockMvc
+            .perform(get(ENTITY_API_URL + "?limit=2"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(GlobalChatResource.NEXT_CURSOR_HEADER, middle.getId().toString()))
+            .andExpect(jsonPath("$.[0].id").value(newest.getId().intValue()))
+            .andExpect(jsonPath("$.[1].id").value(middle.getId().intValue()));
+
+        // Get the next page from the cursor
+        restGlobalChatMockMvc
+            .perform(get(ENTITY_API_URL + "?before=" + middle.getId() + "&limit=1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[0].id").value(oldest.getId().intValue()));
+
+        // An unknown cursor yields an empty page without a next cursor
+        restGlobalChatMockMvc
+            .perform(get(ENTITY_API_URL + "?before=" + Long.MAX_VALUE))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist(GlobalChatResource.NEXT_CURSOR_HEADER))
+            .andExpect(jsonPath("$").isEmpty());
+    }
+
+    @Test
+    @Transactional
+    void getGlobalChatsSince() throws Exception {
+        // Initialize the database
+        GlobalChat known = globalChatRepository.saveAndFlush(createEntity(em));
+        GlobalChat first = globalChatRepository.saveAndFlush(createEntity(em));
+        GlobalChat second = globalChatRepository.saveAndFlush(createEntity(em));
+        String eTag = "\"" + second.getId() + "\"";
+
+        // Get only the newer entries, with the last of them as entity tag
+        restGlobalChatMockMvc
+            .perform(get(ENTITY_API_URL + "?since=" + known.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, eTag))
+            .andExpect(jsonPath("$.length()").value(2))
+            .andExpect(jsonPath("$.[0].id").value(first.getId().intValue()))
+            .andExpect(jsonPath("$.[1].id").value(second.getId().intValue()));
+
+        // An up to date client gets no body
+        restGlobalChatMockMvc
+            .perform(get(ENTITY_API_URL + "?since=" + second.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+            .andExpect(status().isNotModified())
+            .andExpect(content().string(""));
+
+        // Until a newer entry is created
+        GlobalChat third = globalChatRepository.saveAndFlush(createEntity(em));
+        restGlobalChatMockMvc
+            .perform(get(ENTITY_API_URL + "?since=" + second.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"" + third.getId() + "\""))
+            .andExpect(jsonPath("$.[*].id").value(contains(third.getId().intValue())));
+
+        // A since cursor cannot be combined with a before cursor
+        restGlobalChatMockMvc
+            .perform(get(ENTITY_API_URL + "?since=" + known.getId() + "&before=" + third.getId()))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    void searchGlobalChats() throws Exception {
+        // Initialize the database, which generates the search vector whichever way the messages are written
+        GlobalChat weak = createThroughApi(new GlobalChat().message("Zebrafish sighted near the pier").created(DEFAULT_CREATED));
+        GlobalChat strong = globalChatRepository.saveAndFlush(
+            new GlobalChat().message("Zebrafish, zebrafish everywhere").created(DEFAULT_CREATED).authorLogin("diver")
+        );
+        createThroughApi(new GlobalChat().message("Nothing to see here").created(DEFAULT_CREATED));
+
+        // Matches are ranked and paged
+        restGlobalChatMockMvc
+            .perform(get(ENTITY_API_URL + "/_search?q=zebrafish&size=1"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Total-Count", "2"))
+            .andExpect(jsonPath("$.length()").value(1))
+            .andExpect(jsonPath("$.[0].id").value(strong.getId().intValue()))
+            .andExpect(jsonPath("$.[0].authorLogin").value("diver"))
+            .andExpect(jsonPath("$.[0].user").doesNotExist());
+
+        // An updated message is searchable by its new text
+        weak.setMessage("Kingfisher sighted near the pier");
+        restGlobalChatMockMvc
+            .perform(
+                put(ENTITY_API_URL_ID, weak.getId()).contentType(MediaType.APPLICATION_JSON).content(TestUtil.convertObjectToJsonBytes(weak))
+            )
+            .andExpect(status().isOk());
+        restGlobalChatMockMvc
+            .perform(get(ENTITY_API_URL + "/_search?q=kingfisher"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(hasItem(weak.getId().intValue())));
+        restGlobalChatMockMvc
+            .perform(get(ENTITY_API_URL + "/_search?q=zebrafish"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Total-Count", "1"));
+    }
+
+    @Test
+    @Transactional
+    void createGlobalChatStoresAuthorSnapshot() throws Exception {
+        User user = UserResourceIT.createEntity(em);
+        userRepository.saveAndFlush(user);
+        User author = new User();
+        author.setId(user.getId());
+        GlobalChat created = createThroughApi(new GlobalChat().message(DEFAULT_MESSAGE).created(DEFAULT_CREATED).user(author));
+
+        restGlobalChatMockMvc
+            .perform(get(ENTITY_API_URL + "?since={since}", created.getId() - 1))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].authorLogin").value(contains(user.getLogin())))
+            .andExpect(jsonPath("$.[*].authorName").value(contains(user.getFirstName() + " " + user.getLastName())))
+            .andExpect(jsonPath("$.[*].user").doesNotExist());
+
+        // renaming the user rewrites the snapshot
+        AdminUserDTO renamed = new AdminUserDTO(user);
+        renamed.setFirstName("Jane");
+        userService.updateUser(renamed);
+        em.flush();
+        em.clear();
+
+        assertThat(globalChatRepository.findById(created.getId()))
+            .hasValueSatisfying(globalChat -> assertThat(globalChat.getAuthorName()).isEqualTo("Jane " + user.getLastName()));
+    }
+
+    private GlobalChat createThroughApi(GlobalChat globalChat) throws Exception {
+        String body = restGlobalChatMockMvc
+            .perform(post(ENTITY_API_URL).contentType(MediaType.APPLICATION_JSON).content(TestUtil.convertObjectToJsonBytes(globalChat)))
+            .andExpect(status().isCreated())
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+        return globalChat.id(Long.valueOf(JsonPath.read(body, "$.id").toString()));
+    }
+
+    @Test
+    void streamGlobalChats() throws Exception {
+        restGlobalChatMockMvc
+            .perform(get(ENTITY_API_URL + "/stream").accept(MediaType.TEXT_EVENT_STREAM))
+            .andExpect(request().asyncStarted());
+    }
+
     @Test
     @Transactional
     void getGlobalChat() throws Exception {